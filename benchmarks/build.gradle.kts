@@ -0,0 +1,51 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+
+plugins {
+  java
+  id("me.champeau.jmh") version "0.7.2"
+  id("com.diffplug.spotless") version "6.20.0"
+}
+
+java { toolchain { languageVersion.set(JavaLanguageVersion.of(17)) } }
+
+group = "hu.bme.mit.ftsrg"
+
+version = "0.1.0"
+
+repositories {
+  mavenCentral()
+  maven { url = uri("https://jitpack.io") }
+}
+
+dependencies {
+  jmh(project(":lib"))
+  jmh(testFixtures(project(":lib")))
+  jmh("org.hyperledger.fabric-chaincode-java:fabric-chaincode-shim:2.5.0")
+  jmh("org.hyperledger.fabric:fabric-protos:0.3.0")
+}
+
+jmh {
+  jmhVersion.set("1.37")
+  fork.set(1)
+  warmupIterations.set(3)
+  iterations.set(5)
+  profilers.add("gc")
+  resultFormat.set("JSON")
+  // Run a subset with e.g. `./gradlew :benchmarks:jmh -PjmhIncludes=Registry`
+  if (project.hasProperty("jmhIncludes")) {
+    includes.add(project.property("jmhIncludes").toString())
+  }
+}
+
+spotless {
+  java {
+    target("src/*/java/**/*.java")
+    importOrder()
+    removeUnusedImports()
+    googleJavaFormat()
+    formatAnnotations()
+    toggleOffOn()
+    licenseHeader("/* SPDX-License-Identifier: Apache-2.0 */", "package ")
+  }
+  kotlinGradle { ktfmt() }
+}
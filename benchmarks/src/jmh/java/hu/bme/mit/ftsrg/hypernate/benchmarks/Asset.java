@@ -0,0 +1,27 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.benchmarks;
+
+import hu.bme.mit.ftsrg.hypernate.annotations.AttributeInfo;
+import hu.bme.mit.ftsrg.hypernate.annotations.PrimaryKey;
+import hu.bme.mit.ftsrg.hypernate.mappers.IntegerZeroPadder;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/** Entity used by the benchmarks; its serialized size grows with the number of tags. */
+@PrimaryKey({
+  @AttributeInfo(name = "owner"),
+  @AttributeInfo(name = "assetID", mapper = IntegerZeroPadder.class)
+})
+public record Asset(String owner, int assetID, String color, int size, List<String> tags) {
+
+  static final String OWNER = "owner";
+
+  static Asset sample(final int assetID, final int tagCount) {
+    return new Asset(
+        OWNER,
+        assetID,
+        "blue",
+        42,
+        IntStream.range(0, tagCount).mapToObj(i -> "tag-" + i).toList());
+  }
+}
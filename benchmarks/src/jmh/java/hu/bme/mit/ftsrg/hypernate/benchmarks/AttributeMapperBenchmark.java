@@ -0,0 +1,53 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.benchmarks;
+
+import hu.bme.mit.ftsrg.hypernate.mappers.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/** Cost of the built-in {@link AttributeMapper}s. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AttributeMapperBenchmark {
+
+  private final AttributeMapper integerZeroPadder = new IntegerZeroPadder();
+  private final AttributeMapper integerFlipperAndZeroPadder = new IntegerFlipperAndZeroPadder();
+  private final AttributeMapper longZeroPadder = new LongZeroPadder();
+  private final AttributeMapper longFlipperAndZeroPadder = new LongFlipperAndZeroPadder();
+  private final AttributeMapper objectToString = new ObjectToString();
+
+  private Integer intValue = 123_456;
+  private Long longValue = 123_456_789_012L;
+  private String stringValue = "asset-123456";
+
+  @Benchmark
+  public String integerZeroPadder() {
+    return integerZeroPadder.apply(intValue);
+  }
+
+  @Benchmark
+  public String integerFlipperAndZeroPadder() {
+    return integerFlipperAndZeroPadder.apply(intValue);
+  }
+
+  @Benchmark
+  public String longZeroPadder() {
+    return longZeroPadder.apply(longValue);
+  }
+
+  @Benchmark
+  public String longFlipperAndZeroPadder() {
+    return longFlipperAndZeroPadder.apply(longValue);
+  }
+
+  @Benchmark
+  public String objectToString() {
+    return objectToString.apply(stringValue);
+  }
+}
@@ -0,0 +1,44 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.benchmarks;
+
+import hu.bme.mit.ftsrg.hypernate.util.JSON;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** {@link JSON} serialization and deserialization across entity sizes. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonBenchmark {
+
+  /** Number of tags in the entity: roughly 100 B, 1 KB and 100 KB serialized. */
+  @Param({"1", "100", "10000"})
+  int tagCount;
+
+  private Asset asset;
+
+  private String json;
+
+  @Setup
+  public void setUp() {
+    asset = Asset.sample(1, tagCount);
+    json = JSON.serialize(asset);
+  }
+
+  @Benchmark
+  public String serialize() {
+    return JSON.serialize(asset);
+  }
+
+  @Benchmark
+  public Asset deserialize() {
+    return JSON.deserialize(json, Asset.class);
+  }
+}
@@ -0,0 +1,93 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.benchmarks;
+
+import hu.bme.mit.ftsrg.hypernate.registry.Registry;
+import hu.bme.mit.ftsrg.hypernate.testing.InMemoryChaincodeStub;
+import hu.bme.mit.ftsrg.hypernate.testing.InMemoryLedger;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * CRUD hot paths of {@link Registry} against an {@link InMemoryChaincodeStub}.
+ *
+ * <p>The stub accumulates the read-write set of its transaction, so the benchmarks move on to a new
+ * (empty) transaction every {@value #OPERATIONS_PER_TRANSACTION} operations; otherwise the write
+ * set of {@link #mustCreate()} and the range reads of {@link #readAll()} would grow throughout the
+ * iteration. The uncommitted transactions are dropped, and the cost of starting one is amortized
+ * over its operations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RegistryBenchmark {
+
+  /** Operations in a transaction, i.e., the maximum size of its read-write set. */
+  static final int OPERATIONS_PER_TRANSACTION = 100;
+
+  @Param({"10", "1000"})
+  int entityCount;
+
+  private InMemoryLedger ledger;
+
+  private Registry registry;
+
+  private int operations;
+
+  private int nextCreated;
+
+  private int nextRead;
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    ledger = new InMemoryLedger();
+    final InMemoryChaincodeStub seeding = ledger.newTransaction().build();
+    final Registry seeder = new Registry(seeding);
+    for (int i = 0; i < entityCount; i++) {
+      seeder.mustCreate(Asset.sample(i, 4));
+    }
+    seeding.commit();
+
+    nextRead = 0;
+    operations = 0;
+    newTransaction();
+  }
+
+  @Benchmark
+  public void mustCreate() {
+    registry().mustCreate(Asset.sample(nextCreated++, 4));
+  }
+
+  @Benchmark
+  public Asset mustRead() {
+    nextRead = (nextRead + 1) % entityCount;
+    return registry().mustRead(Asset.class, Asset.OWNER, nextRead);
+  }
+
+  @Benchmark
+  public List<Asset> readAll() {
+    return registry().readAll(Asset.class);
+  }
+
+  private Registry registry() {
+    if (++operations > OPERATIONS_PER_TRANSACTION) {
+      newTransaction();
+      operations = 1;
+    }
+    return registry;
+  }
+
+  private void newTransaction() {
+    registry = new Registry(ledger.newTransaction().build());
+    // The creates of the dropped transaction were never committed, so their keys are free again
+    nextCreated = entityCount;
+  }
+}
@@ -0,0 +1,87 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.benchmarks;
+
+import hu.bme.mit.ftsrg.hypernate.middleware.LoggingStubMiddleware;
+import hu.bme.mit.ftsrg.hypernate.middleware.StubMiddlewareChain;
+import hu.bme.mit.ftsrg.hypernate.middleware.WriteBackCachedStubMiddleware;
+import hu.bme.mit.ftsrg.hypernate.testing.InMemoryLedger;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Dispatch cost of a {@link StubMiddlewareChain}.
+ *
+ * <p>With a depth of at least one, the layer closest to the stub is a {@link
+ * WriteBackCachedStubMiddleware}, and the rest are {@link LoggingStubMiddleware}s.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StubMiddlewareChainBenchmark {
+
+  private static final String KEY = "key";
+
+  @Param({"0", "1", "2", "3", "4", "5"})
+  int depth;
+
+  private ChaincodeStub stub;
+
+  private ChaincodeStub first;
+
+  private ChaincodeStub flattened;
+
+  @Setup
+  public void setUp() {
+    final InMemoryLedger ledger = new InMemoryLedger();
+    ledger.put(KEY, "value".getBytes(StandardCharsets.UTF_8));
+    stub = ledger.newTransaction().build();
+
+    final StubMiddlewareChain.Builder builder = StubMiddlewareChain.builder(stub);
+    if (depth > 0) {
+      builder.push(new WriteBackCachedStubMiddleware());
+    }
+    for (int i = 1; i < depth; i++) {
+      builder.push(new LoggingStubMiddleware());
+    }
+    final StubMiddlewareChain chain = builder.build();
+    first = chain.getFirst();
+    flattened = chain.getFlattened();
+  }
+
+  /** A read the cache can serve after the first invocation. */
+  @Benchmark
+  public byte[] getState() {
+    return first.getState(KEY);
+  }
+
+  /** A call no middleware overrides. */
+  @Benchmark
+  public String getTxId() {
+    return first.getTxId();
+  }
+
+  /** A call no middleware overrides, through the flattened chain. */
+  @Benchmark
+  public String getTxIdFlattened() {
+    return flattened.getTxId();
+  }
+
+  /** Building a chain, as done for each transaction. */
+  @Benchmark
+  public ChaincodeStub buildChain() {
+    final StubMiddlewareChain.Builder builder = StubMiddlewareChain.builder(stub);
+    for (int i = 0; i < depth; i++) {
+      builder.push(LoggingStubMiddleware.class);
+    }
+    return builder.build().getFirst();
+  }
+}
@@ -5,6 +5,7 @@ import org.gradle.api.tasks.testing.logging.TestLogEvent
 
 plugins {
   `java-library`
+  `java-test-fixtures`
   id("com.github.johnrengelman.shadow") version "8.1.1"
   id("com.diffplug.spotless") version "6.20.0"
   id("com.adarshr.test-logger") version "3.2.0"
@@ -30,6 +31,9 @@ dependencies {
   implementation("org.hyperledger.fabric-chaincode-java:fabric-chaincode-shim:2.5.0")
   implementation("org.hyperledger.fabric:fabric-protos:0.3.0")
 
+  testFixturesApi("org.hyperledger.fabric-chaincode-java:fabric-chaincode-shim:2.5.0")
+  testFixturesApi("org.hyperledger.fabric:fabric-protos:0.3.0")
+
   aspect("com.jcabi:jcabi-aspects:0.26.0")
 
   testImplementation("org.slf4j:slf4j-simple:2.0.13")
@@ -53,6 +57,37 @@ tasks.test {
   }
 }
 
+val appCdsArchive by
+    tasks.registering(JavaExec::class) {
+      group = "build"
+      description =
+          "Records an AppCDS archive of the classes loaded by bootstrapping the contracts given " +
+              "in -PcdsContracts (comma-separated class names) on the shaded jar of the " +
+              "chaincode given in -PcdsJar (absolute path), or on the shaded jar of the library."
+      val cdsJar = findProperty("cdsJar") as String?
+      val contracts =
+          (findProperty("cdsContracts") as String?)?.split(",")?.filter { it.isNotBlank() }
+              ?: emptyList()
+      // The archive is only used with the same classpath, so train on the jar that will run
+      val jar: Any = cdsJar?.let { file(it) } ?: tasks.shadowJar.flatMap { it.archiveFile }
+      val archive = layout.buildDirectory.file("cds/hypernate.jsa")
+      inputs.file(jar)
+      outputs.file(archive)
+      classpath = files(jar)
+      mainClass.set("hu.bme.mit.ftsrg.hypernate.contract.HypernateBootstrap")
+      javaLauncher.set(javaToolchains.launcherFor(java.toolchain))
+      args(contracts)
+      doFirst {
+        if (cdsJar == null && contracts.isNotEmpty()) {
+          throw GradleException(
+              "-PcdsContracts needs -PcdsJar, the shaded jar of the chaincode with the contracts")
+        }
+        val archiveFile = archive.get().asFile
+        archiveFile.parentFile.mkdirs()
+        jvmArgs("-XX:ArchiveClassesAtExit=${archiveFile.absolutePath}")
+      }
+    }
+
 spotless {
   java {
     importOrder()
@@ -0,0 +1,52 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Grants access to a part of the world state, enforced by the {@code
+ * AccessControlStubMiddleware} subclass it is declared on.
+ *
+ * <p>A policy protects the keys of its {@link #entities()} (including their chunks and index
+ * entries) and the keys starting with its {@link #keyPrefixes()}. The most specific protected
+ * prefix of a key decides: the key can be accessed if any policy of that prefix grants the access
+ * to the client; keys without a protected prefix can be accessed by anyone.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Repeatable(AccessPolicies.class)
+public @interface AccessPolicy {
+
+  /**
+   * Entities whose keys the policy protects. Entities stored in a {@link PrivateDataCollection} are
+   * not allowed: private data is not checked, restrict the members of the collection instead.
+   */
+  Class<?>[] entities() default {};
+
+  /** Raw key prefixes the policy protects, e.g., of keys not written by the {@code Registry}. */
+  String[] keyPrefixes() default {};
+
+  /** Kinds of access the policy grants. */
+  Access[] access() default {Access.READ, Access.WRITE};
+
+  /** MSP IDs of the clients granted access; empty for any MSP. */
+  String[] mspIds() default {};
+
+  /**
+   * Certificate attributes the clients granted access must have, as {@code name=value}, or {@code
+   * name} for any value.
+   */
+  String[] attributes() default {};
+
+  /** Kind of access to the world state. */
+  enum Access {
+    /** Point reads and scans. */
+    READ,
+    /** Writes and deletes. */
+    WRITE
+  }
+}
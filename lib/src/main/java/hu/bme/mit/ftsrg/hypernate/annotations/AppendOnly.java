@@ -0,0 +1,28 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an entity as an append-only child record of a parent entity, e.g., an audit trail entry,
+ * an order event or a comment.
+ *
+ * <p>Records are appended blindly under keys of their own, made of the {@link #parent()} and
+ * {@link #ordering()} attributes and the ID of the appending transaction, so appenders neither read
+ * nor rewrite the parent and do not conflict with each other. The records of a parent are read in
+ * key order, so the mappers of the {@link #ordering()} attributes must preserve the order of the
+ * values (e.g., {@link hu.bme.mit.ftsrg.hypernate.mappers.LongZeroPadder}).
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface AppendOnly {
+
+  /** Attributes identifying the parent, in key order. */
+  AttributeInfo[] parent();
+
+  /** Attributes ordering the records of a parent, in key order. */
+  AttributeInfo[] ordering() default {};
+}
@@ -0,0 +1,26 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a large attribute of an entity (e.g., a list of attachments) to be stored in chunks under
+ * keys of its own instead of inline in the entity.
+ *
+ * <p>The attribute is serialized as {@code null} in the entity, so reading the entity does not
+ * transfer it; load it with {@code Registry#loadChunked} when needed. When the entity is updated, a
+ * {@code null} attribute leaves the stored chunks as they are, and of a new value only the chunks
+ * that differ from the stored ones are written.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Chunked {
+
+  int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+  /** The maximum size of a chunk in bytes. */
+  int chunkSize() default DEFAULT_CHUNK_SIZE;
+}
@@ -0,0 +1,22 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Stores the annotated entity in a private data collection instead of the world state.
+ *
+ * <p>If {@link #members()} is not empty and the organisation of the executing peer is not listed
+ * there, existence checks use {@code getPrivateDataHash}, which does not require membership.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface PrivateDataCollection {
+  String name();
+
+  /** MSP IDs of the organisations that are members of the collection. */
+  String[] members() default {};
+}
@@ -7,11 +7,26 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+/**
+ * Declares a secondary index of an entity, maintained by the {@code Registry} on every create,
+ * update and delete.
+ *
+ * <p>Each entity has an index entry keyed by the values of the {@link #attributes()} followed by
+ * the primary keys of the entity; entities with a {@code null} index attribute are not indexed. The
+ * value of the entry holds the {@link #include() included} attributes, so queries that only need
+ * those can be answered from the index alone, without reading the entities.
+ */
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.TYPE)
 @Repeatable(QueryIndices.class)
 public @interface QueryIndex {
+
+  /** Name of the index, unique among the indexes of the entity. */
   String name();
 
+  /** Attributes the index is keyed by, in key order. */
   AttributeInfo[] attributes();
+
+  /** Attributes copied into the index entries, making the index a covering one. */
+  String[] include() default {};
 }
@@ -0,0 +1,21 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Reuse parsed instances of the annotated entity across transactions.
+ *
+ * <p>The entity is still read from the ledger every time, but deserialization is skipped when the
+ * bytes read match ones parsed earlier. Since the same instance may be handed out to concurrently
+ * executing transactions, only records and classes with final fields only can be annotated, and
+ * their field values must be immutable, too.
+ *
+ * @see hu.bme.mit.ftsrg.hypernate.registry.ParsedEntityCache
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface SharedParseCache {}
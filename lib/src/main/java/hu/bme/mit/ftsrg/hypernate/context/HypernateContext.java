@@ -1,6 +1,7 @@
 /* SPDX-License-Identifier: Apache-2.0 */
 package hu.bme.mit.ftsrg.hypernate.context;
 
+import hu.bme.mit.ftsrg.hypernate.middleware.AccessControlStubMiddleware;
 import hu.bme.mit.ftsrg.hypernate.middleware.StubMiddleware;
 import hu.bme.mit.ftsrg.hypernate.middleware.StubMiddlewareChain;
 import hu.bme.mit.ftsrg.hypernate.middleware.notification.HypernateNotification;
@@ -10,6 +11,7 @@ import java.util.List;
 import java.util.concurrent.Flow;
 import java.util.concurrent.Flow.Subscriber;
 import lombok.Getter;
+import org.hyperledger.fabric.contract.ClientIdentity;
 import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.shim.ChaincodeStub;
 
@@ -17,6 +19,11 @@ import org.hyperledger.fabric.shim.ChaincodeStub;
  * Context enriched with {@link Registry} and {@link StubMiddleware}s
  *
  * <p>The registry can be used to manage entities.
+ *
+ * <p>The identity of the client is parsed once per transaction, when the context is created, and is
+ * shared with the {@link AccessControlStubMiddleware}s of the chain; use the {@code getClient*}
+ * methods rather than creating {@link ClientIdentity} objects from {@link
+ * ChaincodeStub#getCreator()}, which would parse the certificate of the client again.
  */
 public class HypernateContext extends Context {
 
@@ -31,10 +38,59 @@ public class HypernateContext extends Context {
   @Getter private final Registry registry;
 
   public HypernateContext(final StubMiddlewareChain middlewareChain) {
-    super(middlewareChain.getFirst());
+    this(middlewareChain, middlewareChain.getFlattened());
+  }
+
+  private HypernateContext(final StubMiddlewareChain middlewareChain, final ChaincodeStub stub) {
+    super(stub);
     this.middlewareChain = middlewareChain;
     this.fabricStub = middlewareChain.fabricStub();
-    this.registry = new Registry(middlewareChain.getFirst());
+    this.registry = new Registry(stub);
+    middlewareChain.forEach(
+        mw -> {
+          if (mw instanceof AccessControlStubMiddleware accessControl) {
+            accessControl.setClientIdentitySource(this::getClientIdentity);
+          }
+        });
+  }
+
+  /**
+   * Get the MSP ID of the client submitting the transaction.
+   *
+   * @return the MSP ID of the client
+   */
+  public String getClientMspId() {
+    return getClientIdentity().getMSPID();
+  }
+
+  /**
+   * Get the unique ID of the client submitting the transaction.
+   *
+   * @return the ID of the client
+   */
+  public String getClientId() {
+    return getClientIdentity().getId();
+  }
+
+  /**
+   * Get an attribute of the certificate of the client submitting the transaction.
+   *
+   * @param name the name of the attribute
+   * @return the value of the attribute, or {@code null} if the client does not have it
+   */
+  public String getClientAttribute(final String name) {
+    return getClientIdentity().getAttributeValue(name);
+  }
+
+  /**
+   * Check an attribute of the certificate of the client submitting the transaction.
+   *
+   * @param name the name of the attribute
+   * @param value the expected value of the attribute
+   * @return whether the client has the attribute with the given value
+   */
+  public boolean hasClientAttribute(final String name, final String value) {
+    return value.equals(getClientAttribute(name));
   }
 
   /**
@@ -0,0 +1,276 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.contract;
+
+import hu.bme.mit.ftsrg.hypernate.annotations.AppendOnly;
+import hu.bme.mit.ftsrg.hypernate.annotations.AttributeInfo;
+import hu.bme.mit.ftsrg.hypernate.annotations.PrimaryKey;
+import hu.bme.mit.ftsrg.hypernate.metrics.EntityProfiler;
+import hu.bme.mit.ftsrg.hypernate.metrics.FunctionCosts;
+import hu.bme.mit.ftsrg.hypernate.middleware.StubMiddleware;
+import hu.bme.mit.ftsrg.hypernate.middleware.StubMiddlewareChain;
+import hu.bme.mit.ftsrg.hypernate.middleware.notification.TransactionBegin;
+import hu.bme.mit.ftsrg.hypernate.middleware.notification.TransactionEnd;
+import hu.bme.mit.ftsrg.hypernate.registry.ParsedEntityCache;
+import hu.bme.mit.ftsrg.hypernate.registry.Registry;
+import hu.bme.mit.ftsrg.hypernate.util.JSON;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves the one-off costs of a contract from its first transactions to its startup.
+ *
+ * <p>Without a bootstrap, the annotations and mappers of the entities, the JSON serializers and the
+ * middlewares are resolved lazily when the first transactions need them, and the code paths of the
+ * first transactions run in the interpreter. {@link #run(HypernateContract)} discovers the entities
+ * of the contract, {@link Registry#prepare(Class) prepares} them, then runs synthetic transactions
+ * creating, reading, updating and deleting a placeholder instance of each entity (see {@link
+ * JSON#sampleOf(Class)}) through the middleware chain of the contract, against an in-memory stub,
+ * so the JIT compiler has seen the hot paths before the peer sends the first transaction. Call it
+ * from the constructor of the contract:
+ *
+ * <pre>{@code
+ * @Contract(name = "bank")
+ * @EntityInfo({Account.class, Transfer.class})
+ * @MiddlewareInfo(WriteBackCachedStubMiddleware.class)
+ * public class BankContract implements HypernateContract {
+ *
+ *   public BankContract() {
+ *     HypernateBootstrap.run(this);
+ *   }
+ * }
+ * }</pre>
+ *
+ * <p>The entities are the classes listed in {@link EntityInfo} and the classes annotated with
+ * {@link PrimaryKey} or {@link AppendOnly} in the parameter and return types of the public methods
+ * of the contract, including type arguments (e.g., {@code List<Account>}). The warm-up is
+ * best-effort: an entity that fails is logged and left out of the rest of the warm-up. The {@link
+ * EntityProfiler}, the {@link FunctionCosts} and the {@link ParsedEntityCache} are suspended during
+ * the warm-up, so run it before the contract serves transactions.
+ *
+ * <p>{@link #main(String[])} runs the bootstrap of the given contract classes, so it can be the
+ * training run of an AppCDS archive (see the {@code appCdsArchive} task of the build).
+ */
+public final class HypernateBootstrap {
+
+  /** Number of warm-up transactions; enough for the hot paths to reach the C1 compiler. */
+  public static final int DEFAULT_ITERATIONS = 200;
+
+  private static final Logger logger = LoggerFactory.getLogger(HypernateBootstrap.class);
+
+  /** Classes of the contracts bootstrapped so far, so {@link #main(String[])} runs each once. */
+  private static final Set<Class<?>> bootstrapped = ConcurrentHashMap.newKeySet();
+
+  private HypernateBootstrap() {}
+
+  /**
+   * Summary of a bootstrap.
+   *
+   * @param entities the entities that were prepared and warmed up without failure
+   * @param middlewares the classes of the middlewares in the chain of the contract
+   * @param iterations the number of warm-up transactions
+   * @param elapsed the time the bootstrap took
+   */
+  public record Report(
+      List<Class<?>> entities,
+      List<Class<? extends StubMiddleware>> middlewares,
+      int iterations,
+      Duration elapsed) {}
+
+  /**
+   * Prepare and warm up a contract with {@value #DEFAULT_ITERATIONS} warm-up transactions.
+   *
+   * @param contract the contract to bootstrap
+   * @return the summary of the bootstrap
+   */
+  public static Report run(final HypernateContract contract) {
+    return run(contract, DEFAULT_ITERATIONS);
+  }
+
+  /**
+   * Prepare and warm up a contract.
+   *
+   * @param contract the contract to bootstrap
+   * @param iterations the number of warm-up transactions; 0 only prepares the entities
+   * @return the summary of the bootstrap
+   */
+  public static Report run(final HypernateContract contract, final int iterations) {
+    if (iterations < 0) {
+      throw new IllegalArgumentException("Number of iterations must not be negative");
+    }
+
+    bootstrapped.add(contract.getClass());
+    final long start = System.nanoTime();
+    final Map<Class<?>, Object> samples = new LinkedHashMap<>();
+    for (final Class<?> entity : discoverEntities(contract.getClass())) {
+      try {
+        Registry.prepare(entity);
+        samples.put(entity, JSON.sampleOf(entity));
+      } catch (RuntimeException e) {
+        logger.warn("Failed to prepare entity {} -- skipping its warm-up", entity.getName(), e);
+      }
+    }
+
+    final List<Class<? extends StubMiddleware>> middlewares = new ArrayList<>();
+    contract.initMiddlewares(WarmUpStub.create(-1)).forEach(mw -> middlewares.add(mw.getClass()));
+
+    // Keep the synthetic transactions out of the process-wide metrics and parse cache
+    final boolean profiling = EntityProfiler.getInstance().isEnabled();
+    final boolean costing = FunctionCosts.getInstance().isEnabled();
+    final boolean parseCaching = ParsedEntityCache.getInstance().isEnabled();
+    EntityProfiler.getInstance().setEnabled(false);
+    FunctionCosts.getInstance().setEnabled(false);
+    ParsedEntityCache.getInstance().setEnabled(false);
+    try {
+      for (int i = 0; i < iterations && !samples.isEmpty(); i++) {
+        final StubMiddlewareChain chain = contract.initMiddlewares(WarmUpStub.create(i));
+        final Registry registry = new Registry(chain.getFlattened());
+        chain.forEach(mw -> mw.onNext(new TransactionBegin()));
+        samples
+            .entrySet()
+            .removeIf(sample -> !exercise(registry, sample.getKey(), sample.getValue()));
+        chain.forEach(mw -> mw.onNext(new TransactionEnd()));
+      }
+    } finally {
+      EntityProfiler.getInstance().setEnabled(profiling);
+      FunctionCosts.getInstance().setEnabled(costing);
+      ParsedEntityCache.getInstance().setEnabled(parseCaching);
+    }
+
+    final Report report =
+        new Report(
+            List.copyOf(samples.keySet()),
+            List.copyOf(middlewares),
+            iterations,
+            Duration.ofNanos(System.nanoTime() - start));
+    logger.info(
+        "Bootstrapped {} in {} ms: {} entities, {} middlewares, {} warm-up transactions",
+        contract.getClass().getName(),
+        report.elapsed().toMillis(),
+        report.entities().size(),
+        report.middlewares().size(),
+        iterations);
+    return report;
+  }
+
+  /**
+   * Find the entities of a contract.
+   *
+   * @param contractClass the class of the contract
+   * @return the entities listed in {@link EntityInfo} and found in the public method signatures
+   */
+  public static Set<Class<?>> discoverEntities(final Class<?> contractClass) {
+    final Set<Class<?>> entities = new LinkedHashSet<>();
+    final EntityInfo entityInfo = contractClass.getAnnotation(EntityInfo.class);
+    if (entityInfo != null) {
+      entities.addAll(Arrays.asList(entityInfo.value()));
+    }
+
+    for (final Method method : contractClass.getMethods()) {
+      if (method.getDeclaringClass() == Object.class || Modifier.isStatic(method.getModifiers())) {
+        continue;
+      }
+      collectEntities(method.getGenericReturnType(), entities);
+      for (final Type parameterType : method.getGenericParameterTypes()) {
+        collectEntities(parameterType, entities);
+      }
+    }
+    return entities;
+  }
+
+  /**
+   * Bootstrap contracts by class name, e.g., as the training run of an AppCDS archive.
+   *
+   * <p>The contracts must have a public no-arg constructor. Contracts that bootstrap themselves in
+   * their constructor (as recommended above) are not bootstrapped a second time. Without arguments,
+   * only the classes of Hypernate itself are loaded.
+   *
+   * @param args the fully qualified names of the contract classes
+   * @throws ReflectiveOperationException if a contract cannot be loaded or instantiated
+   */
+  public static void main(final String[] args) throws ReflectiveOperationException {
+    if (args.length == 0) {
+      run(new HypernateContract() {});
+      return;
+    }
+
+    for (final String className : args) {
+      final Object contract = Class.forName(className).getDeclaredConstructor().newInstance();
+      if (!(contract instanceof HypernateContract hypernateContract)) {
+        throw new IllegalArgumentException(className + " is not a HypernateContract");
+      }
+      if (bootstrapped.contains(contract.getClass())) {
+        logger.info("{} bootstrapped itself in its constructor -- not running it again", className);
+      } else {
+        run(hypernateContract);
+      }
+    }
+  }
+
+  private static void collectEntities(final Type type, final Set<Class<?>> entities) {
+    if (type instanceof Class<?> clazz) {
+      if (clazz.isArray()) {
+        collectEntities(clazz.getComponentType(), entities);
+      } else if (clazz.isAnnotationPresent(PrimaryKey.class)
+          || clazz.isAnnotationPresent(AppendOnly.class)) {
+        entities.add(clazz);
+      }
+    } else if (type instanceof ParameterizedType parameterized) {
+      collectEntities(parameterized.getRawType(), entities);
+      for (final Type argument : parameterized.getActualTypeArguments()) {
+        collectEntities(argument, entities);
+      }
+    } else if (type instanceof GenericArrayType array) {
+      collectEntities(array.getGenericComponentType(), entities);
+    } else if (type instanceof WildcardType wildcard) {
+      for (final Type bound : wildcard.getUpperBounds()) {
+        collectEntities(bound, entities);
+      }
+    }
+  }
+
+  private static boolean exercise(
+      final Registry registry, final Class<?> entity, final Object sample) {
+    try {
+      if (entity.isAnnotationPresent(PrimaryKey.class)) {
+        registry.tryCreate(sample);
+        registry.tryRead(entity, keyParts(sample, entity.getAnnotation(PrimaryKey.class).value()));
+        registry.tryUpdate(sample);
+        registry.readAll(entity);
+        registry.tryDelete(sample);
+      } else {
+        registry.append(sample);
+        registry.readAllAppended(
+            entity, keyParts(sample, entity.getAnnotation(AppendOnly.class).parent()));
+      }
+      return true;
+    } catch (RuntimeException e) {
+      logger.warn("Warm-up of entity {} failed -- skipping it", entity.getName(), e);
+      return false;
+    }
+  }
+
+  private static Object[] keyParts(final Object sample, final AttributeInfo[] attributes) {
+    final Object[] keyParts = new Object[attributes.length];
+    for (int i = 0; i < attributes.length; i++) {
+      try {
+        final Field field = sample.getClass().getDeclaredField(attributes[i].name());
+        field.setAccessible(true);
+        keyParts[i] = field.get(sample);
+      } catch (NoSuchFieldException | IllegalAccessException e) {
+        throw new IllegalStateException(
+            "Cannot read key attribute '%s' of the sample".formatted(attributes[i].name()), e);
+      }
+    }
+    return keyParts;
+  }
+}
@@ -12,7 +12,12 @@ import org.hyperledger.fabric.contract.Context;
 import org.hyperledger.fabric.contract.ContractInterface;
 import org.hyperledger.fabric.shim.ChaincodeStub;
 
-/** Contract base class enriched with default before-/after-transaction notification handling. */
+/**
+ * Contract base class enriched with default before-/after-transaction notification handling.
+ *
+ * <p>Call {@link HypernateBootstrap#run(HypernateContract)} from the constructor of the contract to
+ * move the one-off costs of the first transactions to the startup of the chaincode.
+ */
 public interface HypernateContract extends ContractInterface {
 
   @Override
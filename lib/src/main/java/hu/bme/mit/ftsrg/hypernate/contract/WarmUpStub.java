@@ -0,0 +1,191 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.contract;
+
+import hu.bme.mit.ftsrg.hypernate.registry.KeyRange;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import org.hyperledger.fabric.protos.peer.QueryResponseMetadata;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+/**
+ * Throw-away {@link ChaincodeStub} the warm-up of {@link HypernateBootstrap} runs against.
+ *
+ * <p>Only the calls the warm-up makes are implemented: point reads and writes, range and
+ * partial-key scans of the world state and of private data (kept in maps sorted in the order of
+ * the peer), composite keys and the identifiers of the transaction. Writes are visible to later
+ * reads of the same stub, paginated scans return everything on one page, and rich queries and
+ * histories are empty. Every other call throws {@link UnsupportedOperationException}, which makes
+ * the warm-up skip the entity that needed it.
+ */
+final class WarmUpStub implements InvocationHandler {
+
+  static final String FUNCTION = "hypernate-warm-up";
+
+  private static final String WORLD_STATE = "";
+
+  private static final String MAX_UNICODE_RUNE =
+      new String(Character.toChars(Character.MAX_CODE_POINT));
+
+  private final Map<String, NavigableMap<String, byte[]>> namespaces = new HashMap<>();
+
+  private final String txId;
+
+  private final Instant txTimestamp = Instant.now();
+
+  private WarmUpStub(final int iteration) {
+    this.txId = "warm-up-" + iteration;
+  }
+
+  /**
+   * Create the stub of a warm-up transaction.
+   *
+   * @param iteration the index of the warm-up transaction
+   * @return an empty in-memory stub
+   */
+  static ChaincodeStub create(final int iteration) {
+    return (ChaincodeStub)
+        Proxy.newProxyInstance(
+            ChaincodeStub.class.getClassLoader(),
+            new Class<?>[] {ChaincodeStub.class},
+            new WarmUpStub(iteration));
+  }
+
+  @Override
+  public Object invoke(final Object proxy, final Method method, final Object[] args)
+      throws Throwable {
+    final String name = method.getName();
+    final boolean privateData = name.contains("PrivateData");
+    // The private data methods take the collection first
+    final String namespace = privateData ? (String) args[0] : WORLD_STATE;
+    final int first = privateData ? 1 : 0;
+    return switch (name) {
+      case "getState", "getPrivateData" -> read(namespace, (String) args[first]);
+      case "putState", "putPrivateData" ->
+          write(namespace, (String) args[first], (byte[]) args[first + 1]);
+      case "delState", "delPrivateData" -> write(namespace, (String) args[first], null);
+      case "getStateByRange", "getStateByRangeWithPagination", "getPrivateDataByRange" ->
+          scan(namespace, (String) args[first], (String) args[first + 1]);
+      case "getStateByPartialCompositeKey",
+          "getStateByPartialCompositeKeyWithPagination",
+          "getPrivateDataByPartialCompositeKey" -> {
+        final String prefix = partialKey(args, first);
+        yield scan(namespace, prefix, prefix + MAX_UNICODE_RUNE);
+      }
+      case "getQueryResult", "getQueryResultWithPagination", "getHistoryForKey" ->
+          new Results<>(List.of());
+      case "createCompositeKey" -> new CompositeKey((String) args[0], (String[]) args[1]);
+      case "splitCompositeKey" -> CompositeKey.parseCompositeKey((String) args[0]);
+      case "getTxId" -> txId;
+      case "getTxTimestamp" -> txTimestamp;
+      case "getFunction", "getChannelId", "getMspId" -> FUNCTION;
+      case "getArgs" -> List.of(FUNCTION.getBytes(StandardCharsets.UTF_8));
+      case "getStringArgs" -> List.of(FUNCTION);
+      case "getParameters" -> List.of();
+      case "toString" -> "WarmUpStub[" + txId + "]";
+      case "hashCode" -> System.identityHashCode(proxy);
+      case "equals" -> proxy == args[0];
+      default -> {
+        if (method.isDefault()) {
+          yield InvocationHandler.invokeDefault(proxy, method, args);
+        }
+        throw new UnsupportedOperationException(name + " is not available during the warm-up");
+      }
+    };
+  }
+
+  private byte[] read(final String namespace, final String key) {
+    final NavigableMap<String, byte[]> entries = namespaces.get(namespace);
+    final byte[] value = entries == null ? null : entries.get(key);
+    return value == null ? new byte[0] : value;
+  }
+
+  private Object write(final String namespace, final String key, final byte[] value) {
+    final NavigableMap<String, byte[]> entries =
+        namespaces.computeIfAbsent(namespace, n -> new TreeMap<>(KeyRange.KEY_ORDER));
+    if (value == null || value.length == 0) {
+      entries.remove(key);
+    } else {
+      entries.put(key, value);
+    }
+    return null;
+  }
+
+  private Results<KeyValue> scan(
+      final String namespace, final String startKey, final String endKey) {
+    NavigableMap<String, byte[]> entries =
+        namespaces.getOrDefault(namespace, new TreeMap<>(KeyRange.KEY_ORDER));
+    if (startKey != null && !startKey.isEmpty()) {
+      entries = entries.tailMap(startKey, true);
+    }
+    if (endKey != null && !endKey.isEmpty()) {
+      entries = entries.headMap(endKey, false);
+    }
+    return new Results<>(
+        entries.entrySet().stream()
+            .map(entry -> (KeyValue) new Entry(entry.getKey(), entry.getValue()))
+            .toList());
+  }
+
+  private static String partialKey(final Object[] args, final int first) {
+    if (args[first] instanceof CompositeKey compositeKey) {
+      return compositeKey.toString();
+    }
+    final String objectType = (String) args[first];
+    if (args.length > first + 1 && args[first + 1] instanceof String[] attributes) {
+      return new CompositeKey(objectType, attributes).toString();
+    }
+    // Like the shim, take a string without the composite key namespace as an object type
+    return objectType.startsWith(CompositeKey.NAMESPACE)
+        ? objectType
+        : new CompositeKey(objectType).toString();
+  }
+
+  // The shim has unrelated interfaces for plain and paginated results
+  private record Results<T>(List<T> results)
+      implements QueryResultsIterator<T>, QueryResultsIteratorWithMetadata<T> {
+
+    @Override
+    public Iterator<T> iterator() {
+      return results.iterator();
+    }
+
+    @Override
+    public QueryResponseMetadata getMetadata() {
+      return null;
+    }
+
+    @Override
+    public void close() {}
+  }
+
+  private record Entry(String key, byte[] value) implements KeyValue {
+
+    @Override
+    public String getKey() {
+      return key;
+    }
+
+    @Override
+    public byte[] getValue() {
+      return value;
+    }
+
+    @Override
+    public String getStringValue() {
+      return new String(value, StandardCharsets.UTF_8);
+    }
+  }
+}
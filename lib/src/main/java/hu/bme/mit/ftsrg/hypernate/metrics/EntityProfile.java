@@ -0,0 +1,41 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.metrics;
+
+/**
+ * Serialization costs of an entity type since the last {@link EntityProfiler#reset()}.
+ *
+ * @param entity the name of the entity class
+ * @param serializedBytes the sizes of the serialized entities
+ * @param serializationNanos the times taken to serialize the entities
+ * @param deserializationNanos the times taken to deserialize the entities (shared parse cache hits
+ *     excluded)
+ * @param keyMappingNanos the times taken to map the primary keys of the entities to key attributes
+ * @param oversized the number of serialized entities larger than the lowest size threshold
+ */
+public record EntityProfile(
+    String entity,
+    Histogram.Snapshot serializedBytes,
+    Histogram.Snapshot serializationNanos,
+    Histogram.Snapshot deserializationNanos,
+    Histogram.Snapshot keyMappingNanos,
+    long oversized) {
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s: %d serialized (mean %.0f B, p99 <= %d B, max %d B, %d oversized, mean %.1f us), "
+            + "%d deserialized (mean %.1f us, p99 <= %d us), %d key mappings (mean %.1f us)",
+        entity,
+        serializedBytes.count(),
+        serializedBytes.mean(),
+        serializedBytes.percentile(0.99),
+        serializedBytes.max(),
+        oversized,
+        serializationNanos.mean() / 1_000,
+        deserializationNanos.count(),
+        deserializationNanos.mean() / 1_000,
+        deserializationNanos.percentile(0.99) / 1_000,
+        keyMappingNanos.count(),
+        keyMappingNanos.mean() / 1_000);
+  }
+}
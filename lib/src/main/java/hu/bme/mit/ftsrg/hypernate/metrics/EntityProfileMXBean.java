@@ -0,0 +1,33 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.metrics;
+
+/**
+ * Management interface of the profile of an entity type, registered by {@link
+ * EntityProfiler#registerMBeans()}.
+ *
+ * @see EntityProfile
+ */
+public interface EntityProfileMXBean {
+
+  long getSerializations();
+
+  double getMeanSerializedBytes();
+
+  long getSerializedBytesP99();
+
+  long getMaxSerializedBytes();
+
+  long getOversized();
+
+  double getMeanSerializationMicros();
+
+  long getDeserializations();
+
+  double getMeanDeserializationMicros();
+
+  double getDeserializationMicrosP99();
+
+  long getKeyMappings();
+
+  double getMeanKeyMappingMicros();
+}
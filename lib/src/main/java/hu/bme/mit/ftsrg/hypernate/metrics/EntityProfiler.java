@@ -0,0 +1,330 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process-wide histograms of serialized size, serialization, deserialization and key-mapping time
+ * per entity type.
+ *
+ * <p>Fed by the {@code Registry}. A warning is logged the first time an entity type is serialized
+ * to a value larger than each of the {@link #getSizeThresholds() size thresholds}; {@link
+ * EntityProfile#oversized()} counts every value over the lowest one. The profiles are available
+ * from {@link #snapshot()} and, after {@link #registerMBeans()}, over JMX: the profiler itself as
+ * {@value #JMX_DOMAIN}{@code :type=EntityProfiler} and each entity type as {@value
+ * #JMX_DOMAIN}{@code :type=EntityProfile,name=<class name>}.
+ */
+public final class EntityProfiler implements EntityProfilerMXBean {
+
+  /** Sizes (in bytes) over which stored entities are reported unless configured otherwise. */
+  public static final long[] DEFAULT_SIZE_THRESHOLDS = {64 * 1024, 256 * 1024, 1024 * 1024};
+
+  /** Domain of the JMX object names of the profiler. */
+  public static final String JMX_DOMAIN = "hu.bme.mit.ftsrg.hypernate";
+
+  private static final Logger logger = LoggerFactory.getLogger(EntityProfiler.class);
+
+  private static final EntityProfiler instance = new EntityProfiler();
+
+  private final Map<Class<?>, Profile> profiles = new ConcurrentHashMap<>();
+
+  private volatile boolean enabled = true;
+
+  private volatile long[] sizeThresholds = DEFAULT_SIZE_THRESHOLDS.clone();
+
+  private volatile MBeanServer mBeanServer;
+
+  /** Create a profiler independent of the {@link #getInstance() shared} one. */
+  public EntityProfiler() {}
+
+  /**
+   * Get the profiler shared by all registries of the process.
+   *
+   * @return the shared profiler
+   */
+  public static EntityProfiler getInstance() {
+    return instance;
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @Override
+  public void setEnabled(final boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  @Override
+  public long[] getSizeThresholds() {
+    return sizeThresholds.clone();
+  }
+
+  /**
+   * Set the sizes over which serialized entities are reported.
+   *
+   * @param sizeThresholds the positive thresholds in bytes, in any order; empty disables the
+   *     warnings
+   */
+  @Override
+  public void setSizeThresholds(final long[] sizeThresholds) {
+    final long[] sorted = Arrays.stream(sizeThresholds).sorted().distinct().toArray();
+    if (sorted.length > 0 && sorted[0] <= 0) {
+      throw new IllegalArgumentException("Size thresholds must be positive");
+    }
+    this.sizeThresholds = sorted;
+    profiles.values().forEach(profile -> profile.warned.set(0));
+  }
+
+  /**
+   * Record the serialization of an entity.
+   *
+   * @param clazz the class of the entity
+   * @param size the size of the serialized entity in bytes
+   * @param nanos the time the serialization took
+   */
+  public void recordSerialization(final Class<?> clazz, final long size, final long nanos) {
+    if (!enabled) {
+      return;
+    }
+
+    final Profile profile = profile(clazz);
+    profile.serializedBytes.record(size);
+    profile.serializationNanos.record(nanos);
+
+    final long[] thresholds = sizeThresholds;
+    int crossed = 0;
+    while (crossed < thresholds.length && size > thresholds[crossed]) {
+      crossed++;
+    }
+    if (crossed == 0) {
+      return;
+    }
+
+    profile.oversized.increment();
+    final int warned = profile.warned.get();
+    if (crossed > warned && profile.warned.compareAndSet(warned, crossed)) {
+      logger.warn(
+          "Entity of type {} serialized to {} bytes, over the size threshold of {} bytes",
+          clazz.getName(),
+          size,
+          thresholds[crossed - 1]);
+    }
+  }
+
+  /**
+   * Record the deserialization of an entity.
+   *
+   * @param clazz the class of the entity
+   * @param nanos the time the deserialization took
+   */
+  public void recordDeserialization(final Class<?> clazz, final long nanos) {
+    if (enabled) {
+      profile(clazz).deserializationNanos.record(nanos);
+    }
+  }
+
+  /**
+   * Record the mapping of the primary keys of an entity to key attributes.
+   *
+   * @param clazz the class of the entity
+   * @param nanos the time the mapping took
+   */
+  public void recordKeyMapping(final Class<?> clazz, final long nanos) {
+    if (enabled) {
+      profile(clazz).keyMappingNanos.record(nanos);
+    }
+  }
+
+  /**
+   * Get the current profiles.
+   *
+   * @return the profiles keyed by entity class name
+   */
+  public Map<String, EntityProfile> snapshot() {
+    return profiles.values().stream()
+        .map(Profile::snapshot)
+        .collect(Collectors.toMap(EntityProfile::entity, p -> p));
+  }
+
+  @Override
+  public String[] getEntityTypes() {
+    return profiles.keySet().stream().map(Class::getName).sorted().toArray(String[]::new);
+  }
+
+  @Override
+  public void reset() {
+    profiles.keySet().forEach(this::unregister);
+    profiles.clear();
+  }
+
+  /**
+   * Register the profiler and the profile of each entity type with the platform MBean server.
+   *
+   * @throws JMException if the profiler could not be registered
+   */
+  public void registerMBeans() throws JMException {
+    registerMBeans(ManagementFactory.getPlatformMBeanServer());
+  }
+
+  /**
+   * Register the profiler and the profile of each entity type, including those profiled later,
+   * with an MBean server.
+   *
+   * @param server the MBean server
+   * @throws JMException if the profiler could not be registered
+   */
+  public void registerMBeans(final MBeanServer server) throws JMException {
+    server.registerMBean(this, new ObjectName(JMX_DOMAIN + ":type=EntityProfiler"));
+    mBeanServer = server;
+    profiles.forEach(this::register);
+  }
+
+  private Profile profile(final Class<?> clazz) {
+    final Profile profile = profiles.get(clazz);
+    if (profile != null) {
+      return profile;
+    }
+
+    return profiles.computeIfAbsent(
+        clazz,
+        c -> {
+          final Profile created = new Profile(c.getName());
+          register(c, created);
+          return created;
+        });
+  }
+
+  private void register(final Class<?> clazz, final Profile profile) {
+    final MBeanServer server = mBeanServer;
+    if (server == null) {
+      return;
+    }
+
+    try {
+      server.registerMBean(profile, objectName(clazz));
+    } catch (InstanceAlreadyExistsException e) {
+      logger.debug("Profile of {} is already registered", clazz.getName());
+    } catch (JMException e) {
+      logger.warn("Failed to register the profile of {} with JMX", clazz.getName(), e);
+    }
+  }
+
+  private void unregister(final Class<?> clazz) {
+    final MBeanServer server = mBeanServer;
+    if (server == null) {
+      return;
+    }
+
+    try {
+      server.unregisterMBean(objectName(clazz));
+    } catch (JMException e) {
+      logger.debug("Profile of {} was not registered", clazz.getName());
+    }
+  }
+
+  private static ObjectName objectName(final Class<?> clazz) throws JMException {
+    return new ObjectName(
+        JMX_DOMAIN + ":type=EntityProfile,name=" + ObjectName.quote(clazz.getName()));
+  }
+
+  private static final class Profile implements EntityProfileMXBean {
+
+    private final String entity;
+
+    private final Histogram serializedBytes = new Histogram();
+
+    private final Histogram serializationNanos = new Histogram();
+
+    private final Histogram deserializationNanos = new Histogram();
+
+    private final Histogram keyMappingNanos = new Histogram();
+
+    private final LongAdder oversized = new LongAdder();
+
+    /** Number of size thresholds crossed so far, i.e., already warned about. */
+    private final AtomicInteger warned = new AtomicInteger();
+
+    private Profile(final String entity) {
+      this.entity = entity;
+    }
+
+    EntityProfile snapshot() {
+      return new EntityProfile(
+          entity,
+          serializedBytes.snapshot(),
+          serializationNanos.snapshot(),
+          deserializationNanos.snapshot(),
+          keyMappingNanos.snapshot(),
+          oversized.sum());
+    }
+
+    @Override
+    public long getSerializations() {
+      return serializedBytes.snapshot().count();
+    }
+
+    @Override
+    public double getMeanSerializedBytes() {
+      return serializedBytes.snapshot().mean();
+    }
+
+    @Override
+    public long getSerializedBytesP99() {
+      return serializedBytes.snapshot().percentile(0.99);
+    }
+
+    @Override
+    public long getMaxSerializedBytes() {
+      return serializedBytes.snapshot().max();
+    }
+
+    @Override
+    public long getOversized() {
+      return oversized.sum();
+    }
+
+    @Override
+    public double getMeanSerializationMicros() {
+      return serializationNanos.snapshot().mean() / 1_000;
+    }
+
+    @Override
+    public long getDeserializations() {
+      return deserializationNanos.snapshot().count();
+    }
+
+    @Override
+    public double getMeanDeserializationMicros() {
+      return deserializationNanos.snapshot().mean() / 1_000;
+    }
+
+    @Override
+    public double getDeserializationMicrosP99() {
+      return deserializationNanos.snapshot().percentile(0.99) / 1_000.0;
+    }
+
+    @Override
+    public long getKeyMappings() {
+      return keyMappingNanos.snapshot().count();
+    }
+
+    @Override
+    public double getMeanKeyMappingMicros() {
+      return keyMappingNanos.snapshot().mean() / 1_000;
+    }
+  }
+}
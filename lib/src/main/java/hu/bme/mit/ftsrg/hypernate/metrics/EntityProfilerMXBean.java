@@ -0,0 +1,20 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.metrics;
+
+/** Management interface of an {@link EntityProfiler}. */
+public interface EntityProfilerMXBean {
+
+  boolean isEnabled();
+
+  void setEnabled(boolean enabled);
+
+  long[] getSizeThresholds();
+
+  void setSizeThresholds(long[] sizeThresholds);
+
+  /** Names of the profiled entity classes. */
+  String[] getEntityTypes();
+
+  /** Drop all profiles. */
+  void reset();
+}
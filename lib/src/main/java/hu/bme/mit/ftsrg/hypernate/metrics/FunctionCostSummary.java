@@ -0,0 +1,51 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.metrics;
+
+import java.time.Duration;
+
+/**
+ * Aggregated ledger cost of a contract function since the last {@link FunctionCosts#reset()}.
+ *
+ * @param function the name of the contract function
+ * @param transactions the number of transactions of the function
+ * @param gets the number of point reads
+ * @param puts the number of writes
+ * @param deletes the number of deletions
+ * @param scans the number of range, partial composite key, rich and history queries
+ * @param bytesRead the bytes returned by point reads and scans
+ * @param bytesWritten the bytes written
+ * @param keysScanned the number of results consumed from scans
+ * @param chaincodeTime the time spent in the chaincode, i.e., not waiting on the peer
+ * @param peerTime the time spent waiting on the peer
+ */
+public record FunctionCostSummary(
+    String function,
+    long transactions,
+    long gets,
+    long puts,
+    long deletes,
+    long scans,
+    long bytesRead,
+    long bytesWritten,
+    long keysScanned,
+    Duration chaincodeTime,
+    Duration peerTime) {
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s: %d tx, %d gets, %d puts, %d deletes, %d scans (%d keys), %d B read, %d B written, "
+            + "%d ms in chaincode, %d ms on peer",
+        function,
+        transactions,
+        gets,
+        puts,
+        deletes,
+        scans,
+        keysScanned,
+        bytesRead,
+        bytesWritten,
+        chaincodeTime.toMillis(),
+        peerTime.toMillis());
+  }
+}
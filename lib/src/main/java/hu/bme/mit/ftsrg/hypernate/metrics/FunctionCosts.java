@@ -0,0 +1,183 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.metrics;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process-wide running aggregates of ledger cost per contract function.
+ *
+ * <p>Fed by the {@code CostAttributingStubMiddleware}. A summary of all functions, most peer time
+ * first, is logged at most once per {@link #getLogInterval() log interval}; the check happens when
+ * a transaction is recorded, so no background thread is needed.
+ */
+public final class FunctionCosts {
+
+  public static final Duration DEFAULT_LOG_INTERVAL = Duration.ofMinutes(1);
+
+  private static final Logger logger = LoggerFactory.getLogger(FunctionCosts.class);
+
+  private static final FunctionCosts instance = new FunctionCosts();
+
+  private final Map<String, Aggregate> aggregates = new ConcurrentHashMap<>();
+
+  private final AtomicLong lastLogged = new AtomicLong(System.nanoTime());
+
+  private volatile Duration logInterval = DEFAULT_LOG_INTERVAL;
+
+  private volatile boolean enabled = true;
+
+  /** Create an aggregator independent of the {@link #getInstance() shared} one. */
+  public FunctionCosts() {}
+
+  /**
+   * Get the aggregator shared by all transactions of the process.
+   *
+   * @return the shared aggregator
+   */
+  public static FunctionCosts getInstance() {
+    return instance;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Enable or disable the aggregation; transactions finished while disabled are not recorded.
+   *
+   * @param enabled whether to record transactions
+   */
+  public void setEnabled(final boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public Duration getLogInterval() {
+    return logInterval;
+  }
+
+  /**
+   * Set how often the summary is logged.
+   *
+   * @param logInterval the minimum time between two summaries; {@link Duration#ZERO} disables them
+   */
+  public void setLogInterval(final Duration logInterval) {
+    if (logInterval.isNegative()) {
+      throw new IllegalArgumentException("Log interval must not be negative");
+    }
+    this.logInterval = logInterval;
+  }
+
+  /**
+   * Add a finished transaction to the aggregates of its function.
+   *
+   * @param function the contract function the transaction invoked
+   * @param cost the ledger interactions of the transaction
+   * @param elapsedNanos the duration of the transaction, including the time waiting on the peer
+   */
+  public void record(final String function, final TransactionCost cost, final long elapsedNanos) {
+    if (!enabled) {
+      return;
+    }
+
+    aggregates.computeIfAbsent(function, Aggregate::new).add(cost, elapsedNanos);
+    logSummaryIfDue();
+  }
+
+  /**
+   * Get the current aggregates.
+   *
+   * @return the summaries keyed by function name
+   */
+  public Map<String, FunctionCostSummary> snapshot() {
+    return aggregates.values().stream()
+        .map(Aggregate::summary)
+        .collect(Collectors.toMap(FunctionCostSummary::function, s -> s));
+  }
+
+  /** Drop all aggregates. */
+  public void reset() {
+    aggregates.clear();
+  }
+
+  private void logSummaryIfDue() {
+    final Duration interval = logInterval;
+    if (interval.isZero() || !logger.isInfoEnabled()) {
+      return;
+    }
+    final long now = System.nanoTime();
+    final long last = lastLogged.get();
+    if (now - last < interval.toNanos() || !lastLogged.compareAndSet(last, now)) {
+      return;
+    }
+    logger.info("Ledger cost per contract function:");
+    snapshot().values().stream()
+        .sorted(Comparator.comparing(FunctionCostSummary::peerTime).reversed())
+        .forEach(summary -> logger.info("  {}", summary));
+  }
+
+  private static final class Aggregate {
+
+    private final String function;
+
+    private final LongAdder transactions = new LongAdder();
+
+    private final LongAdder gets = new LongAdder();
+
+    private final LongAdder puts = new LongAdder();
+
+    private final LongAdder deletes = new LongAdder();
+
+    private final LongAdder scans = new LongAdder();
+
+    private final LongAdder bytesRead = new LongAdder();
+
+    private final LongAdder bytesWritten = new LongAdder();
+
+    private final LongAdder keysScanned = new LongAdder();
+
+    private final LongAdder chaincodeNanos = new LongAdder();
+
+    private final LongAdder peerNanos = new LongAdder();
+
+    private Aggregate(final String function) {
+      this.function = function;
+    }
+
+    void add(final TransactionCost cost, final long elapsedNanos) {
+      final long peer = cost.getPeerNanos();
+      transactions.increment();
+      gets.add(cost.getGets());
+      puts.add(cost.getPuts());
+      deletes.add(cost.getDeletes());
+      scans.add(cost.getScans());
+      bytesRead.add(cost.getBytesRead());
+      bytesWritten.add(cost.getBytesWritten());
+      keysScanned.add(cost.getKeysScanned());
+      chaincodeNanos.add(Math.max(0, elapsedNanos - peer));
+      peerNanos.add(peer);
+    }
+
+    FunctionCostSummary summary() {
+      return new FunctionCostSummary(
+          function,
+          transactions.sum(),
+          gets.sum(),
+          puts.sum(),
+          deletes.sum(),
+          scans.sum(),
+          bytesRead.sum(),
+          bytesWritten.sum(),
+          keysScanned.sum(),
+          Duration.ofNanos(chaincodeNanos.sum()),
+          Duration.ofNanos(peerNanos.sum()));
+    }
+  }
+}
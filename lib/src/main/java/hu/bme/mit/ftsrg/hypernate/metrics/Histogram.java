@@ -0,0 +1,92 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values with power-of-two buckets.
+ *
+ * <p>Bucket {@code i} counts the values below {@code 2^i} and at least {@code 2^(i-1)}, so
+ * percentiles are reported as the upper bound of their bucket, within a factor of two.
+ */
+public final class Histogram {
+
+  private static final int BUCKETS = Long.SIZE + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+  private final LongAdder sum = new LongAdder();
+
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Add a value.
+   *
+   * @param value the value; negative values are counted as zero
+   */
+  public void record(final long value) {
+    final long v = Math.max(0, value);
+    counts.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(v));
+    sum.add(v);
+    max.accumulateAndGet(v, Math::max);
+  }
+
+  /**
+   * Get the current state of the histogram.
+   *
+   * @return a copy of the counts
+   */
+  public Snapshot snapshot() {
+    final long[] buckets = new long[BUCKETS];
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets[i] = counts.get(i);
+      count += buckets[i];
+    }
+    return new Snapshot(count, sum.sum(), max.get(), buckets);
+  }
+
+  /**
+   * State of a {@link Histogram}.
+   *
+   * @param count the number of values
+   * @param sum the sum of the values
+   * @param max the largest value
+   * @param buckets the number of values in each power-of-two bucket
+   */
+  public record Snapshot(long count, long sum, long max, long[] buckets) {
+
+    /**
+     * Get the mean of the values.
+     *
+     * @return the mean, or 0 if there are no values
+     */
+    public double mean() {
+      return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Get an upper bound of a percentile of the values.
+     *
+     * @param quantile the quantile, between 0 and 1 (e.g., 0.99)
+     * @return the upper bound of the bucket holding the percentile, at most {@link #max()}
+     */
+    public long percentile(final double quantile) {
+      if (quantile < 0 || quantile > 1) {
+        throw new IllegalArgumentException("Quantile must be between 0 and 1");
+      }
+
+      final long rank = Math.max(1, (long) Math.ceil(quantile * count));
+      long seen = 0;
+      for (int i = 0; i < buckets.length; i++) {
+        seen += buckets[i];
+        if (seen >= rank) {
+          return i == 0 ? 0 : Math.min(max, i == Long.SIZE ? Long.MAX_VALUE : (1L << i) - 1);
+        }
+      }
+      return max;
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ledger interactions of a single transaction, collected while it runs.
+ *
+ * <p>Counters may be updated from several threads, e.g., when reads are issued concurrently.
+ *
+ * @see FunctionCosts
+ */
+public final class TransactionCost {
+
+  private final LongAdder gets = new LongAdder();
+
+  private final LongAdder puts = new LongAdder();
+
+  private final LongAdder deletes = new LongAdder();
+
+  private final LongAdder scans = new LongAdder();
+
+  private final LongAdder bytesRead = new LongAdder();
+
+  private final LongAdder bytesWritten = new LongAdder();
+
+  private final LongAdder keysScanned = new LongAdder();
+
+  private final LongAdder peerNanos = new LongAdder();
+
+  public void recordGet(final byte[] value) {
+    gets.increment();
+    bytesRead.add(length(value));
+  }
+
+  public void recordPut(final byte[] value) {
+    puts.increment();
+    bytesWritten.add(length(value));
+  }
+
+  public void recordDelete() {
+    deletes.increment();
+  }
+
+  public void recordScan() {
+    scans.increment();
+  }
+
+  /** Record a key-value pair consumed from a scan. */
+  public void recordScanned(final byte[] value) {
+    keysScanned.increment();
+    bytesRead.add(length(value));
+  }
+
+  /** Record time spent waiting on the peer. */
+  public void recordPeerTime(final long nanos) {
+    peerNanos.add(nanos);
+  }
+
+  public long getGets() {
+    return gets.sum();
+  }
+
+  public long getPuts() {
+    return puts.sum();
+  }
+
+  public long getDeletes() {
+    return deletes.sum();
+  }
+
+  public long getScans() {
+    return scans.sum();
+  }
+
+  public long getBytesRead() {
+    return bytesRead.sum();
+  }
+
+  public long getBytesWritten() {
+    return bytesWritten.sum();
+  }
+
+  public long getKeysScanned() {
+    return keysScanned.sum();
+  }
+
+  public long getPeerNanos() {
+    return peerNanos.sum();
+  }
+
+  private static int length(final byte[] value) {
+    return value == null ? 0 : value.length;
+  }
+}
@@ -0,0 +1,360 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.middleware;
+
+import com.jcabi.aspects.Loggable;
+import hu.bme.mit.ftsrg.hypernate.annotations.AccessPolicy;
+import hu.bme.mit.ftsrg.hypernate.annotations.AccessPolicy.Access;
+import hu.bme.mit.ftsrg.hypernate.annotations.PrivateDataCollection;
+import hu.bme.mit.ftsrg.hypernate.middleware.notification.TransactionEnd;
+import hu.bme.mit.ftsrg.hypernate.registry.Registry;
+import java.io.IOException;
+import java.security.cert.CertificateException;
+import java.util.*;
+import java.util.function.Supplier;
+import org.hyperledger.fabric.contract.ClientIdentity;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stub middleware that enforces the {@link AccessPolicy}s declared on its class on every access to
+ * the world state.
+ *
+ * <p>Declare the policies on a subclass and add that to the chain:
+ *
+ * <pre>{@code
+ * @AccessPolicy(entities = Account.class, mspIds = "BankMSP")
+ * @AccessPolicy(keyPrefixes = "audit", access = Access.WRITE, attributes = "role=auditor")
+ * public class BankAccessControl extends AccessControlStubMiddleware {}
+ * }</pre>
+ *
+ * <p>The policies of a class are compiled once into a prefix trie of the protected keys, so a
+ * check walks the key once, whatever the number of policies. Point reads and writes (including the
+ * string variants, the key-level endorsement policies and the history of a key) are checked
+ * against the most specific protected prefix of the key; scans are only allowed if every protected
+ * prefix they may reach grants the read, and rich queries, whose keys are unknown, if every read
+ * policy does. The identity of the client is parsed at most once per transaction (shared with the
+ * {@link hu.bme.mit.ftsrg.hypernate.context.HypernateContext}), and so is each decision. Private
+ * data is not checked; its collections have their own membership, and policies listing a {@link
+ * PrivateDataCollection} entity are rejected.
+ *
+ * <p>Put the middleware closer to the contract than any caching middleware, so that every read
+ * and write of the contract is checked.
+ *
+ * @see StubMiddleware
+ */
+@Loggable(Loggable.DEBUG)
+public class AccessControlStubMiddleware extends StubMiddleware {
+
+  private static final ClassValue<Node> POLICIES =
+      new ClassValue<>() {
+        @Override
+        protected Node computeValue(final Class<?> middlewareClass) {
+          return compile(middlewareClass.getAnnotationsByType(AccessPolicy.class));
+        }
+      };
+
+  private final Logger logger = LoggerFactory.getLogger(AccessControlStubMiddleware.class);
+
+  private final Node policies;
+
+  private final Map<List<Grant>, Boolean> decisions = new IdentityHashMap<>();
+
+  private Supplier<ClientIdentity> clientIdentitySource = this::parseClientIdentity;
+
+  private ClientIdentity clientIdentity;
+
+  public AccessControlStubMiddleware() {
+    this.policies = POLICIES.get(getClass());
+  }
+
+  /**
+   * Use an already parsed identity of the client instead of parsing the creator of the
+   * transaction again.
+   *
+   * @param clientIdentitySource the supplier of the identity, called at most once per transaction
+   */
+  public void setClientIdentitySource(final Supplier<ClientIdentity> clientIdentitySource) {
+    this.clientIdentitySource = clientIdentitySource;
+  }
+
+  @Override
+  public byte[] getState(final String key) {
+    check(key, Access.READ);
+    return this.nextStub.getState(key);
+  }
+
+  @Override
+  public void putState(final String key, final byte[] value) {
+    check(key, Access.WRITE);
+    this.nextStub.putState(key, value);
+  }
+
+  @Override
+  public void delState(final String key) {
+    check(key, Access.WRITE);
+    this.nextStub.delState(key);
+  }
+
+  @Override
+  public String getStringState(final String key) {
+    check(key, Access.READ);
+    return this.nextStub.getStringState(key);
+  }
+
+  @Override
+  public void putStringState(final String key, final String value) {
+    check(key, Access.WRITE);
+    this.nextStub.putStringState(key, value);
+  }
+
+  @Override
+  public byte[] getStateValidationParameter(final String key) {
+    check(key, Access.READ);
+    return this.nextStub.getStateValidationParameter(key);
+  }
+
+  @Override
+  public void setStateValidationParameter(final String key, final byte[] value) {
+    check(key, Access.WRITE);
+    this.nextStub.setStateValidationParameter(key, value);
+  }
+
+  /**
+   * Get the history of a key, i.e., every value it ever had, which needs read access to the key.
+   *
+   * @param key the key
+   * @return the modifications of the key
+   */
+  @Override
+  public QueryResultsIterator<KeyModification> getHistoryForKey(final String key) {
+    check(key, Access.READ);
+    return this.nextStub.getHistoryForKey(key);
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getStateByRange(
+      final String startKey, final String endKey) {
+    checkScan(commonPrefix(startKey, endKey));
+    return this.nextStub.getStateByRange(startKey, endKey);
+  }
+
+  @Override
+  public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(
+      final String startKey, final String endKey, final int pageSize, final String bookmark) {
+    checkScan(commonPrefix(startKey, endKey));
+    return this.nextStub.getStateByRangeWithPagination(startKey, endKey, pageSize, bookmark);
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String compositeKey) {
+    checkScan(
+        compositeKey.startsWith(CompositeKey.NAMESPACE)
+            ? compositeKey
+            : new CompositeKey(compositeKey).toString());
+    return this.nextStub.getStateByPartialCompositeKey(compositeKey);
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(
+      final String objectType, final String... attributes) {
+    checkScan(new CompositeKey(objectType, attributes).toString());
+    return this.nextStub.getStateByPartialCompositeKey(objectType, attributes);
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(
+      final CompositeKey compositeKey) {
+    checkScan(compositeKey.toString());
+    return this.nextStub.getStateByPartialCompositeKey(compositeKey);
+  }
+
+  @Override
+  public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(
+      final CompositeKey compositeKey, final int pageSize, final String bookmark) {
+    checkScan(compositeKey.toString());
+    return this.nextStub.getStateByPartialCompositeKeyWithPagination(
+        compositeKey, pageSize, bookmark);
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getQueryResult(final String query) {
+    checkScan("");
+    return this.nextStub.getQueryResult(query);
+  }
+
+  @Override
+  public QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(
+      final String query, final int pageSize, final String bookmark) {
+    checkScan("");
+    return this.nextStub.getQueryResultWithPagination(query, pageSize, bookmark);
+  }
+
+  /** Forget the identity of the client and the decisions; see {@link TransactionEnd}. */
+  @Override
+  protected void onTransactionEnd() {
+    clientIdentity = null;
+    decisions.clear();
+  }
+
+  private void check(final String key, final Access access) {
+    Node node = policies;
+    List<Grant> deciding = node.grants.get(access);
+    for (int i = 0; i < key.length(); i++) {
+      node = node.children.get(key.charAt(i));
+      if (node == null) {
+        break;
+      }
+      deciding = node.grants.getOrDefault(access, deciding);
+    }
+
+    if (deciding != null && !isGranted(deciding)) {
+      throw denied(access, key);
+    }
+  }
+
+  private void checkScan(final String prefix) {
+    check(prefix, Access.READ);
+
+    Node node = policies;
+    for (int i = 0; i < prefix.length() && node != null; i++) {
+      node = node.children.get(prefix.charAt(i));
+    }
+    // Every more specific prefix the scan may reach must grant the read as well
+    final Deque<Node> below = new ArrayDeque<>();
+    if (node != null) {
+      below.addAll(node.children.values());
+    }
+    while (!below.isEmpty()) {
+      final Node next = below.pop();
+      final List<Grant> grants = next.grants.get(Access.READ);
+      if (grants != null && !isGranted(grants)) {
+        throw denied(Access.READ, prefix);
+      }
+      below.addAll(next.children.values());
+    }
+  }
+
+  private boolean isGranted(final List<Grant> grants) {
+    return decisions.computeIfAbsent(
+        grants, g -> g.stream().anyMatch(grant -> grant.matches(getClientIdentity())));
+  }
+
+  private ClientIdentity getClientIdentity() {
+    if (clientIdentity == null) {
+      clientIdentity = clientIdentitySource.get();
+    }
+    return clientIdentity;
+  }
+
+  private ClientIdentity parseClientIdentity() {
+    try {
+      return new ClientIdentity(this.nextStub);
+    } catch (CertificateException | IOException e) {
+      throw new AccessDeniedException("Could not parse the identity of the client", e);
+    }
+  }
+
+  private AccessDeniedException denied(final Access access, final String key) {
+    final String printableKey = key.replace(CompositeKey.NAMESPACE, "\\u0000");
+    logger.warn(
+        "Denied {} access to '{}' for a client of {}",
+        access,
+        printableKey,
+        getClientIdentity().getMSPID());
+    return new AccessDeniedException(
+        "Client of %s has no %s access to '%s'"
+            .formatted(getClientIdentity().getMSPID(), access, printableKey));
+  }
+
+  private static String commonPrefix(final String startKey, final String endKey) {
+    if (endKey.isEmpty()) {
+      // An empty end key means the end of the key space
+      return "";
+    }
+
+    int i = 0;
+    while (i < startKey.length() && i < endKey.length() && startKey.charAt(i) == endKey.charAt(i)) {
+      i++;
+    }
+    return startKey.substring(0, i);
+  }
+
+  private static Node compile(final AccessPolicy[] declared) {
+    final Node root = new Node();
+    for (final AccessPolicy policy : declared) {
+      final List<String> prefixes = new ArrayList<>(List.of(policy.keyPrefixes()));
+      for (final Class<?> entity : policy.entities()) {
+        if (entity.isAnnotationPresent(PrivateDataCollection.class)) {
+          throw new IllegalArgumentException(
+              "Private data is not checked, restrict the members of the collection of %s instead"
+                  .formatted(entity.getName()));
+        }
+        prefixes.addAll(Registry.getKeyPrefixes(entity));
+      }
+      if (prefixes.isEmpty() || policy.access().length == 0) {
+        throw new IllegalArgumentException("Access policy protects nothing: " + policy);
+      }
+
+      final Grant grant = Grant.of(policy);
+      for (final String prefix : prefixes) {
+        Node node = root;
+        for (int i = 0; i < prefix.length(); i++) {
+          node = node.children.computeIfAbsent(prefix.charAt(i), c -> new Node());
+        }
+        for (final Access access : policy.access()) {
+          node.grants.computeIfAbsent(access, a -> new ArrayList<>()).add(grant);
+        }
+      }
+    }
+    return root;
+  }
+
+  private static final class Node {
+
+    private final Map<Character, Node> children = new HashMap<>();
+
+    private final Map<Access, List<Grant>> grants = new EnumMap<>(Access.class);
+  }
+
+  /**
+   * The clients an {@link AccessPolicy} grants access to.
+   *
+   * @param mspIds the MSP IDs of the clients; empty for any
+   * @param attributes the required certificate attributes, with {@code null} for any value
+   */
+  private record Grant(Set<String> mspIds, Map<String, String> attributes) {
+
+    static Grant of(final AccessPolicy policy) {
+      final Map<String, String> attributes = new HashMap<>();
+      for (final String attribute : policy.attributes()) {
+        final int separator = attribute.indexOf('=');
+        if (separator < 0) {
+          attributes.put(attribute, null);
+        } else {
+          attributes.put(attribute.substring(0, separator), attribute.substring(separator + 1));
+        }
+      }
+      return new Grant(Set.of(policy.mspIds()), attributes);
+    }
+
+    boolean matches(final ClientIdentity identity) {
+      if (!mspIds.isEmpty() && !mspIds.contains(identity.getMSPID())) {
+        return false;
+      }
+
+      for (final Map.Entry<String, String> attribute : attributes.entrySet()) {
+        final String value = identity.getAttributeValue(attribute.getKey());
+        if (value == null
+            || (attribute.getValue() != null && !attribute.getValue().equals(value))) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
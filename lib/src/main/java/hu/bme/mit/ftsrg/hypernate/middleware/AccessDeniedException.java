@@ -0,0 +1,9 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.middleware;
+
+import hu.bme.mit.ftsrg.hypernate.HypernateException;
+import lombok.experimental.StandardException;
+
+/** Exception thrown when no access policy grants the client an access to the world state. */
+@StandardException
+public class AccessDeniedException extends HypernateException {}
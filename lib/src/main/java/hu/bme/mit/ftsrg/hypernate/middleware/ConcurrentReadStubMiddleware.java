@@ -0,0 +1,124 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.middleware;
+
+import com.jcabi.aspects.Loggable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stub middleware that issues the reads of {@link #getStates(List)} concurrently instead of one
+ * round-trip after the other.
+ *
+ * <p>Results keep the order of the keys, duplicate keys are read once, and if reads fail, the
+ * exception of the first failing key (in input order) is thrown with the others suppressed.
+ *
+ * <p><b>Only use this middleware if the stub below it can serve concurrent requests</b>, such as
+ * the in-memory stub of the test fixtures. The Fabric Java shim (up to at least 2.5) exchanges
+ * messages with the peer one request at a time per transaction, so concurrent calls on its stub
+ * are not supported; neither are they on the other middlewares of this package. Middlewares
+ * between the caller and this one must forward {@link #getStates(List)} (as {@link
+ * WriteBackCachedStubMiddleware} does), otherwise the reads arrive here one by one.
+ *
+ * @see StubMiddleware
+ */
+@Loggable(Loggable.DEBUG)
+public class ConcurrentReadStubMiddleware extends StubMiddleware {
+
+  public static final int DEFAULT_MAX_CONCURRENCY = 16;
+
+  private static final ExecutorService DEFAULT_EXECUTOR =
+      Executors.newCachedThreadPool(
+          new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+              final Thread thread =
+                  new Thread(runnable, "hypernate-read-" + count.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+
+  private final Logger logger = LoggerFactory.getLogger(ConcurrentReadStubMiddleware.class);
+
+  private final Executor executor;
+
+  private final int maxConcurrency;
+
+  public ConcurrentReadStubMiddleware() {
+    this(DEFAULT_EXECUTOR, DEFAULT_MAX_CONCURRENCY);
+  }
+
+  /**
+   * @param executor the executor issuing the reads; reads block, so it should not be a pool with a
+   *     small, fixed number of threads shared with other work
+   * @param maxConcurrency the maximum number of reads in flight at once
+   */
+  public ConcurrentReadStubMiddleware(final Executor executor, final int maxConcurrency) {
+    if (maxConcurrency < 1) {
+      throw new IllegalArgumentException("Maximum concurrency must be positive");
+    }
+    this.executor = executor;
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  /**
+   * Get the raw states at multiple keys, reading distinct keys concurrently.
+   *
+   * @param keys the queried keys
+   * @return the raw states in the order of {@code keys}
+   */
+  @Override
+  public List<byte[]> getStates(final List<String> keys) {
+    final List<String> distinctKeys = keys.stream().distinct().toList();
+    if (distinctKeys.size() < 2) {
+      return super.getStates(keys);
+    }
+
+    logger.debug("Reading {} keys with up to {} in flight", distinctKeys.size(), maxConcurrency);
+    final Semaphore permits = new Semaphore(maxConcurrency);
+    final List<CompletableFuture<byte[]>> reads = new ArrayList<>(distinctKeys.size());
+    for (final String key : distinctKeys) {
+      permits.acquireUninterruptibly();
+      reads.add(
+          CompletableFuture.supplyAsync(() -> this.nextStub.getState(key), executor)
+              .whenComplete((value, failure) -> permits.release()));
+    }
+
+    final Map<String, byte[]> values = new HashMap<>();
+    RuntimeException failure = null;
+    for (int i = 0; i < distinctKeys.size(); i++) {
+      try {
+        values.put(distinctKeys.get(i), reads.get(i).join());
+      } catch (CompletionException e) {
+        final Throwable cause = e.getCause() != null ? e.getCause() : e;
+        if (failure == null) {
+          failure =
+              cause instanceof RuntimeException runtimeException
+                  ? runtimeException
+                  : new IllegalStateException("Failed to read " + distinctKeys.get(i), cause);
+        } else {
+          failure.addSuppressed(cause);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+
+    return keys.stream().map(values::get).toList();
+  }
+}
@@ -0,0 +1,280 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.middleware;
+
+import com.jcabi.aspects.Loggable;
+import hu.bme.mit.ftsrg.hypernate.metrics.FunctionCosts;
+import hu.bme.mit.ftsrg.hypernate.metrics.TransactionCost;
+import hu.bme.mit.ftsrg.hypernate.middleware.notification.TransactionBegin;
+import hu.bme.mit.ftsrg.hypernate.middleware.notification.TransactionEnd;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stub middleware that attributes every ledger interaction to the running contract function.
+ *
+ * <p>The function is taken from {@link ChaincodeStub#getFunction()} at {@link TransactionBegin}.
+ * Gets, puts, deletes, scans, bytes read and written, keys scanned and the time spent waiting on
+ * the next stub are collected for the transaction and added to the per-function aggregates of
+ * {@link FunctionCosts} at {@link TransactionEnd}. The rest of the transaction's duration counts as
+ * time in the chaincode.
+ *
+ * <p>Push this middleware first, so that it is closest to the Fabric stub and sees the calls that
+ * actually reach the peer (e.g., the writes flushed by a {@link WriteBackCachedStubMiddleware} at
+ * the end of the transaction). The time spent fetching further pages of a scan while iterating it
+ * counts as chaincode time.
+ *
+ * @see StubMiddleware
+ */
+@Loggable(Loggable.DEBUG)
+public class CostAttributingStubMiddleware extends StubMiddleware {
+
+  /** Function name used when the stub does not report one. */
+  public static final String UNKNOWN_FUNCTION = "<unknown>";
+
+  private final Logger logger = LoggerFactory.getLogger(CostAttributingStubMiddleware.class);
+
+  private final FunctionCosts costs;
+
+  private String function = UNKNOWN_FUNCTION;
+
+  private long transactionStart = System.nanoTime();
+
+  private TransactionCost cost = new TransactionCost();
+
+  public CostAttributingStubMiddleware() {
+    this(FunctionCosts.getInstance());
+  }
+
+  /**
+   * @param costs the aggregator to add the costs of the transaction to
+   */
+  public CostAttributingStubMiddleware(final FunctionCosts costs) {
+    this.costs = costs;
+  }
+
+  /**
+   * Get the ledger interactions of the current transaction so far.
+   *
+   * @return the cost of the running transaction
+   */
+  public TransactionCost getTransactionCost() {
+    return cost;
+  }
+
+  @Override
+  protected void onTransactionBegin() {
+    final String current = this.nextStub.getFunction();
+    function = current == null || current.isEmpty() ? UNKNOWN_FUNCTION : current;
+    cost = new TransactionCost();
+    transactionStart = System.nanoTime();
+  }
+
+  @Override
+  protected void onTransactionEnd() {
+    logger.debug("Attributing ledger cost of the transaction to '{}'", function);
+    costs.record(function, cost, System.nanoTime() - transactionStart);
+  }
+
+  @Override
+  public byte[] getState(final String key) {
+    final byte[] value = timed(() -> this.nextStub.getState(key));
+    cost.recordGet(value);
+    return value;
+  }
+
+  @Override
+  public List<byte[]> getStates(final List<String> keys) {
+    final List<byte[]> values = timed(() -> StubMiddleware.getStates(this.nextStub, keys));
+    final Set<String> distinctKeys = new HashSet<>();
+    for (int i = 0; i < keys.size(); i++) {
+      if (distinctKeys.add(keys.get(i))) {
+        cost.recordGet(values.get(i));
+      }
+    }
+    return values;
+  }
+
+  @Override
+  public byte[] getPrivateData(final String collection, final String key) {
+    final byte[] value = timed(() -> this.nextStub.getPrivateData(collection, key));
+    cost.recordGet(value);
+    return value;
+  }
+
+  @Override
+  public byte[] getPrivateDataHash(final String collection, final String key) {
+    final byte[] value = timed(() -> this.nextStub.getPrivateDataHash(collection, key));
+    cost.recordGet(value);
+    return value;
+  }
+
+  @Override
+  public void putState(final String key, final byte[] value) {
+    timed(() -> this.nextStub.putState(key, value));
+    cost.recordPut(value);
+  }
+
+  @Override
+  public void putPrivateData(final String collection, final String key, final byte[] value) {
+    timed(() -> this.nextStub.putPrivateData(collection, key, value));
+    cost.recordPut(value);
+  }
+
+  @Override
+  public void delState(final String key) {
+    timed(() -> this.nextStub.delState(key));
+    cost.recordDelete();
+  }
+
+  @Override
+  public void delPrivateData(final String collection, final String key) {
+    timed(() -> this.nextStub.delPrivateData(collection, key));
+    cost.recordDelete();
+  }
+
+  @Override
+  public void purgePrivateData(final String collection, final String key) {
+    timed(() -> this.nextStub.purgePrivateData(collection, key));
+    cost.recordDelete();
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getStateByRange(
+      final String startKey, final String endKey) {
+    return scan(timed(() -> this.nextStub.getStateByRange(startKey, endKey)));
+  }
+
+  @Override
+  public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(
+      final String startKey, final String endKey, final int pageSize, final String bookmark) {
+    return scan(
+        timed(
+            () ->
+                this.nextStub.getStateByRangeWithPagination(
+                    startKey, endKey, pageSize, bookmark)));
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String compositeKey) {
+    return scan(timed(() -> this.nextStub.getStateByPartialCompositeKey(compositeKey)));
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(
+      final String objectType, final String... attributes) {
+    return scan(
+        timed(() -> this.nextStub.getStateByPartialCompositeKey(objectType, attributes)));
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(
+      final CompositeKey compositeKey) {
+    return scan(timed(() -> this.nextStub.getStateByPartialCompositeKey(compositeKey)));
+  }
+
+  @Override
+  public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(
+      final CompositeKey compositeKey, final int pageSize, final String bookmark) {
+    return scan(
+        timed(
+            () ->
+                this.nextStub.getStateByPartialCompositeKeyWithPagination(
+                    compositeKey, pageSize, bookmark)));
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getQueryResult(final String query) {
+    return scan(timed(() -> this.nextStub.getQueryResult(query)));
+  }
+
+  @Override
+  public QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(
+      final String query, final int pageSize, final String bookmark) {
+    return scan(
+        timed(() -> this.nextStub.getQueryResultWithPagination(query, pageSize, bookmark)));
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getPrivateDataByRange(
+      final String collection, final String startKey, final String endKey) {
+    return scan(timed(() -> this.nextStub.getPrivateDataByRange(collection, startKey, endKey)));
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(
+      final String collection, final String compositeKey) {
+    return scan(
+        timed(() -> this.nextStub.getPrivateDataByPartialCompositeKey(collection, compositeKey)));
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(
+      final String collection, final CompositeKey compositeKey) {
+    return scan(
+        timed(() -> this.nextStub.getPrivateDataByPartialCompositeKey(collection, compositeKey)));
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(
+      final String collection, final String objectType, final String... attributes) {
+    return scan(
+        timed(
+            () ->
+                this.nextStub.getPrivateDataByPartialCompositeKey(
+                    collection, objectType, attributes)));
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getPrivateDataQueryResult(
+      final String collection, final String query) {
+    return scan(timed(() -> this.nextStub.getPrivateDataQueryResult(collection, query)));
+  }
+
+  @Override
+  public QueryResultsIterator<KeyModification> getHistoryForKey(final String key) {
+    cost.recordScan();
+    return new ObservingQueryResultsIterator<>(
+        timed(() -> this.nextStub.getHistoryForKey(key)),
+        modification -> cost.recordScanned(modification.getValue()));
+  }
+
+  private QueryResultsIterator<KeyValue> scan(final QueryResultsIterator<KeyValue> results) {
+    cost.recordScan();
+    return new ObservingQueryResultsIterator<>(results, kv -> cost.recordScanned(kv.getValue()));
+  }
+
+  private QueryResultsIteratorWithMetadata<KeyValue> scan(
+      final QueryResultsIteratorWithMetadata<KeyValue> results) {
+    cost.recordScan();
+    return new ObservingQueryResultsIteratorWithMetadata<>(
+        results, kv -> cost.recordScanned(kv.getValue()));
+  }
+
+  private <T> T timed(final Supplier<T> call) {
+    final long start = System.nanoTime();
+    try {
+      return call.get();
+    } finally {
+      cost.recordPeerTime(System.nanoTime() - start);
+    }
+  }
+
+  private void timed(final Runnable call) {
+    final long start = System.nanoTime();
+    try {
+      call.run();
+    } finally {
+      cost.recordPeerTime(System.nanoTime() - start);
+    }
+  }
+}
@@ -0,0 +1,78 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.middleware;
+
+import com.jcabi.aspects.Loggable;
+import hu.bme.mit.ftsrg.hypernate.middleware.notification.TransactionEnd;
+import hu.bme.mit.ftsrg.hypernate.util.EventBatch;
+import java.util.ArrayList;
+import java.util.List;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stub middleware that collects all {@link ChaincodeStub#setEvent(String, byte[])} calls and emits
+ * them as a single batched event once the transaction is finished.
+ *
+ * <p>Fabric only keeps the last event set by a transaction, so without this middleware all but
+ * the last event are lost. Listeners can decode the batched payload with {@link
+ * EventBatch#decode(byte[])}.
+ *
+ * @see StubMiddleware
+ */
+@Loggable(Loggable.DEBUG)
+public class EventBatchingStubMiddleware extends StubMiddleware {
+
+  /** Name of the batched event unless configured otherwise. */
+  public static final String DEFAULT_BATCH_EVENT_NAME = "hypernate.events";
+
+  private final Logger logger = LoggerFactory.getLogger(EventBatchingStubMiddleware.class);
+
+  private final String batchEventName;
+
+  private final List<EventBatch.Event> events = new ArrayList<>();
+
+  public EventBatchingStubMiddleware() {
+    this(DEFAULT_BATCH_EVENT_NAME);
+  }
+
+  /**
+   * @param batchEventName the name of the batched event emitted at the end of the transaction
+   */
+  public EventBatchingStubMiddleware(final String batchEventName) {
+    this.batchEventName = batchEventName;
+  }
+
+  /**
+   * Record the event instead of setting it right away.
+   *
+   * <p>The batched event is only set during {@link #onTransactionEnd()}.
+   *
+   * @param name the event name
+   * @param payload the event payload
+   */
+  @Override
+  public void setEvent(final String name, final byte[] payload) {
+    logger.debug("Recording event '{}' for the batch", name);
+    events.add(new EventBatch.Event(name, payload));
+  }
+
+  /**
+   * Get the events recorded so far.
+   *
+   * @return the events in emission order
+   */
+  public List<EventBatch.Event> getRecordedEvents() {
+    return List.copyOf(events);
+  }
+
+  /** Emit the batched event unless no events were recorded; see {@link TransactionEnd}. */
+  @Override
+  protected void onTransactionEnd() {
+    if (events.isEmpty()) return;
+
+    logger.debug("Emitting batch of {} events as '{}'", events.size(), batchEventName);
+    this.nextStub.setEvent(batchEventName, EventBatch.encode(events));
+    events.clear();
+  }
+}
@@ -0,0 +1,542 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.middleware;
+
+import java.lang.reflect.Method;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.hyperledger.fabric.protos.peer.ChaincodeEvent;
+import org.hyperledger.fabric.protos.peer.SignedProposal;
+import org.hyperledger.fabric.shim.Chaincode;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+/**
+ * {@link ChaincodeStub} that sends each method straight to the first layer of a middleware chain
+ * overriding it.
+ *
+ * <p>A {@link StubMiddleware} passes the methods it does not override to its next stub, so without
+ * flattening, a call that only the Fabric stub handles (e.g., {@link #getTxId()}) goes through
+ * every layer of the chain. The layers overriding each method are looked up once per middleware
+ * class; routing a chain only picks the topmost of them for each method.
+ *
+ * <p>A layer overriding {@link StubMiddleware#getState(String)} but not {@link
+ * StubMiddleware#getStates(List)} still handles {@link #getStates(List)}, since its inherited
+ * {@code getStates} reads through its own {@code getState}. Likewise, a layer overriding {@link
+ * StubMiddleware#invokeChaincode(String, List, String)} handles {@link
+ * #invokeChaincodeReadOnly(String, List, String)}.
+ */
+final class FlattenedStub implements ChaincodeStub {
+
+  private static final List<Method> ROUTES = new ArrayList<>();
+
+  private static final int GET_ARGS = route("getArgs");
+  private static final int GET_STRING_ARGS = route("getStringArgs");
+  private static final int GET_FUNCTION = route("getFunction");
+  private static final int GET_PARAMETERS = route("getParameters");
+  private static final int GET_TX_ID = route("getTxId");
+  private static final int GET_CHANNEL_ID = route("getChannelId");
+  private static final int INVOKE_CHAINCODE_ON_CHANNEL =
+      route("invokeChaincode", String.class, List.class, String.class);
+  private static final int INVOKE_CHAINCODE = route("invokeChaincode", String.class, List.class);
+  private static final int INVOKE_CHAINCODE_WITH_STRING_ARGS_ON_CHANNEL =
+      route("invokeChaincodeWithStringArgs", String.class, List.class, String.class);
+  private static final int INVOKE_CHAINCODE_WITH_STRING_ARGS =
+      route("invokeChaincodeWithStringArgs", String.class, List.class);
+  private static final int INVOKE_CHAINCODE_WITH_STRING_VARARGS =
+      route("invokeChaincodeWithStringArgs", String.class, String[].class);
+  private static final int GET_STATE = route("getState", String.class);
+  private static final int GET_STRING_STATE = route("getStringState", String.class);
+  private static final int GET_STATE_VALIDATION_PARAMETER =
+      route("getStateValidationParameter", String.class);
+  private static final int PUT_STATE = route("putState", String.class, byte[].class);
+  private static final int PUT_STRING_STATE = route("putStringState", String.class, String.class);
+  private static final int SET_STATE_VALIDATION_PARAMETER =
+      route("setStateValidationParameter", String.class, byte[].class);
+  private static final int DEL_STATE = route("delState", String.class);
+  private static final int GET_STATE_BY_RANGE =
+      route("getStateByRange", String.class, String.class);
+  private static final int GET_STATE_BY_RANGE_WITH_PAGINATION =
+      route("getStateByRangeWithPagination", String.class, String.class, int.class, String.class);
+  private static final int GET_STATE_BY_PARTIAL_KEY =
+      route("getStateByPartialCompositeKey", String.class);
+  private static final int GET_STATE_BY_PARTIAL_KEY_PARTS =
+      route("getStateByPartialCompositeKey", String.class, String[].class);
+  private static final int GET_STATE_BY_PARTIAL_COMPOSITE_KEY =
+      route("getStateByPartialCompositeKey", CompositeKey.class);
+  private static final int GET_STATE_BY_PARTIAL_KEY_WITH_PAGINATION =
+      route(
+          "getStateByPartialCompositeKeyWithPagination",
+          CompositeKey.class,
+          int.class,
+          String.class);
+  private static final int CREATE_COMPOSITE_KEY =
+      route("createCompositeKey", String.class, String[].class);
+  private static final int SPLIT_COMPOSITE_KEY = route("splitCompositeKey", String.class);
+  private static final int GET_QUERY_RESULT = route("getQueryResult", String.class);
+  private static final int GET_QUERY_RESULT_WITH_PAGINATION =
+      route("getQueryResultWithPagination", String.class, int.class, String.class);
+  private static final int GET_HISTORY_FOR_KEY = route("getHistoryForKey", String.class);
+  private static final int GET_PRIVATE_DATA = route("getPrivateData", String.class, String.class);
+  private static final int GET_PRIVATE_DATA_UTF8 =
+      route("getPrivateDataUTF8", String.class, String.class);
+  private static final int GET_PRIVATE_DATA_HASH =
+      route("getPrivateDataHash", String.class, String.class);
+  private static final int GET_PRIVATE_DATA_VALIDATION_PARAMETER =
+      route("getPrivateDataValidationParameter", String.class, String.class);
+  private static final int PUT_PRIVATE_DATA =
+      route("putPrivateData", String.class, String.class, byte[].class);
+  private static final int PUT_PRIVATE_DATA_STRING =
+      route("putPrivateData", String.class, String.class, String.class);
+  private static final int SET_PRIVATE_DATA_VALIDATION_PARAMETER =
+      route("setPrivateDataValidationParameter", String.class, String.class, byte[].class);
+  private static final int DEL_PRIVATE_DATA = route("delPrivateData", String.class, String.class);
+  private static final int PURGE_PRIVATE_DATA =
+      route("purgePrivateData", String.class, String.class);
+  private static final int GET_PRIVATE_DATA_BY_RANGE =
+      route("getPrivateDataByRange", String.class, String.class, String.class);
+  private static final int GET_PRIVATE_DATA_BY_PARTIAL_KEY =
+      route("getPrivateDataByPartialCompositeKey", String.class, String.class);
+  private static final int GET_PRIVATE_DATA_BY_PARTIAL_COMPOSITE_KEY =
+      route("getPrivateDataByPartialCompositeKey", String.class, CompositeKey.class);
+  private static final int GET_PRIVATE_DATA_BY_PARTIAL_KEY_PARTS =
+      route("getPrivateDataByPartialCompositeKey", String.class, String.class, String[].class);
+  private static final int GET_PRIVATE_DATA_QUERY_RESULT =
+      route("getPrivateDataQueryResult", String.class, String.class);
+  private static final int SET_EVENT = route("setEvent", String.class, byte[].class);
+  private static final int GET_EVENT = route("getEvent");
+  private static final int GET_SIGNED_PROPOSAL = route("getSignedProposal");
+  private static final int GET_TX_TIMESTAMP = route("getTxTimestamp");
+  private static final int GET_CREATOR = route("getCreator");
+  private static final int GET_TRANSIENT = route("getTransient");
+  private static final int GET_BINDING = route("getBinding");
+  private static final int GET_MSP_ID = route("getMspId");
+
+  private static final ClassValue<boolean[]> OVERRIDES =
+      new ClassValue<>() {
+        @Override
+        protected boolean[] computeValue(final Class<?> type) {
+          final boolean[] overrides = new boolean[ROUTES.size()];
+          for (int slot = 0; slot < overrides.length; slot++) {
+            overrides[slot] = overrides(type, ROUTES.get(slot));
+          }
+          return overrides;
+        }
+      };
+
+  private static final ClassValue<Boolean> HANDLES_GET_STATES =
+      handling(GET_STATE, "getStates", List.class);
+
+  private static final ClassValue<Boolean> HANDLES_INVOKE_CHAINCODE_READ_ONLY =
+      handling(
+          INVOKE_CHAINCODE_ON_CHANNEL,
+          "invokeChaincodeReadOnly",
+          String.class,
+          List.class,
+          String.class);
+
+  private final ChaincodeStub[] targets;
+
+  private final ChaincodeStub getStatesTarget;
+
+  private final ChaincodeStub invokeChaincodeReadOnlyTarget;
+
+  private FlattenedStub(
+      final ChaincodeStub[] targets,
+      final ChaincodeStub getStatesTarget,
+      final ChaincodeStub invokeChaincodeReadOnlyTarget) {
+    this.targets = targets;
+    this.getStatesTarget = getStatesTarget;
+    this.invokeChaincodeReadOnlyTarget = invokeChaincodeReadOnlyTarget;
+  }
+
+  /**
+   * Flatten (part of) a middleware chain.
+   *
+   * @param layers the middlewares, in chaining order (the first handles calls first)
+   * @param bottom the stub below the last middleware, usually the Fabric stub
+   * @return a stub routing each method to the first of {@code layers} overriding it, or to {@code
+   *     bottom}; {@code bottom} itself if there are no layers
+   */
+  static ChaincodeStub over(final List<StubMiddleware> layers, final ChaincodeStub bottom) {
+    if (layers.isEmpty()) {
+      return bottom;
+    }
+
+    final ChaincodeStub[] targets = new ChaincodeStub[ROUTES.size()];
+    Arrays.fill(targets, bottom);
+    ChaincodeStub getStatesTarget = bottom;
+    ChaincodeStub invokeChaincodeReadOnlyTarget = bottom;
+    // Walk upwards so that the topmost overriding layer wins
+    for (int i = layers.size() - 1; i >= 0; i--) {
+      final StubMiddleware layer = layers.get(i);
+      final boolean[] overrides = OVERRIDES.get(layer.getClass());
+      for (int slot = 0; slot < targets.length; slot++) {
+        if (overrides[slot]) {
+          targets[slot] = layer;
+        }
+      }
+      if (HANDLES_GET_STATES.get(layer.getClass())) {
+        getStatesTarget = layer;
+      }
+      if (HANDLES_INVOKE_CHAINCODE_READ_ONLY.get(layer.getClass())) {
+        invokeChaincodeReadOnlyTarget = layer;
+      }
+    }
+    return new FlattenedStub(targets, getStatesTarget, invokeChaincodeReadOnlyTarget);
+  }
+
+  private static int route(final String name, final Class<?>... parameterTypes) {
+    try {
+      ROUTES.add(ChaincodeStub.class.getMethod(name, parameterTypes));
+    } catch (NoSuchMethodException e) {
+      throw new IllegalStateException("ChaincodeStub has no method " + name, e);
+    }
+    return ROUTES.size() - 1;
+  }
+
+  // A layer handles a method of StubMiddleware if it overrides it or the method of ChaincodeStub
+  // its default implementation calls
+  private static ClassValue<Boolean> handling(
+      final int slot, final String name, final Class<?>... parameterTypes) {
+    final Method method;
+    try {
+      method = StubMiddleware.class.getMethod(name, parameterTypes);
+    } catch (NoSuchMethodException e) {
+      throw new IllegalStateException("StubMiddleware has no method " + name, e);
+    }
+    return new ClassValue<>() {
+      @Override
+      protected Boolean computeValue(final Class<?> type) {
+        return OVERRIDES.get(type)[slot] || overrides(type, method);
+      }
+    };
+  }
+
+  // The pass-through implementations of StubMiddleware (@Delegate) and ChaincodeStub (default
+  // methods) do not count as overrides
+  private static boolean overrides(final Class<?> type, final Method method) {
+    try {
+      final Class<?> declaringClass =
+          type.getMethod(method.getName(), method.getParameterTypes()).getDeclaringClass();
+      return declaringClass != StubMiddleware.class && declaringClass != ChaincodeStub.class;
+    } catch (NoSuchMethodException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Get the raw states at multiple keys through the first layer handling them.
+   *
+   * @param keys the queried keys
+   * @return the raw states in the order of {@code keys}
+   * @see StubMiddleware#getStates(List)
+   */
+  List<byte[]> getStates(final List<String> keys) {
+    return StubMiddleware.getStates(getStatesTarget, keys);
+  }
+
+  /**
+   * Invoke a chaincode function that does not write through the first layer handling such calls.
+   *
+   * @param chaincodeName the name of the chaincode to invoke
+   * @param args the function name and the arguments
+   * @param channel the channel of the chaincode; {@code null} for the channel of the transaction
+   * @return the response of the chaincode
+   * @see StubMiddleware#invokeChaincodeReadOnly(String, List, String)
+   */
+  Chaincode.Response invokeChaincodeReadOnly(
+      final String chaincodeName, final List<byte[]> args, final String channel) {
+    return StubMiddleware.invokeChaincodeReadOnly(
+        invokeChaincodeReadOnlyTarget, chaincodeName, args, channel);
+  }
+
+  @Override
+  public List<byte[]> getArgs() {
+    return targets[GET_ARGS].getArgs();
+  }
+
+  @Override
+  public List<String> getStringArgs() {
+    return targets[GET_STRING_ARGS].getStringArgs();
+  }
+
+  @Override
+  public String getFunction() {
+    return targets[GET_FUNCTION].getFunction();
+  }
+
+  @Override
+  public List<String> getParameters() {
+    return targets[GET_PARAMETERS].getParameters();
+  }
+
+  @Override
+  public String getTxId() {
+    return targets[GET_TX_ID].getTxId();
+  }
+
+  @Override
+  public String getChannelId() {
+    return targets[GET_CHANNEL_ID].getChannelId();
+  }
+
+  @Override
+  public Chaincode.Response invokeChaincode(
+      final String chaincodeName, final List<byte[]> args, final String channel) {
+    return targets[INVOKE_CHAINCODE_ON_CHANNEL].invokeChaincode(chaincodeName, args, channel);
+  }
+
+  @Override
+  public Chaincode.Response invokeChaincode(final String chaincodeName, final List<byte[]> args) {
+    return targets[INVOKE_CHAINCODE].invokeChaincode(chaincodeName, args);
+  }
+
+  @Override
+  public Chaincode.Response invokeChaincodeWithStringArgs(
+      final String chaincodeName, final List<String> args, final String channel) {
+    return targets[INVOKE_CHAINCODE_WITH_STRING_ARGS_ON_CHANNEL]
+        .invokeChaincodeWithStringArgs(chaincodeName, args, channel);
+  }
+
+  @Override
+  public Chaincode.Response invokeChaincodeWithStringArgs(
+      final String chaincodeName, final List<String> args) {
+    return targets[INVOKE_CHAINCODE_WITH_STRING_ARGS]
+        .invokeChaincodeWithStringArgs(chaincodeName, args);
+  }
+
+  @Override
+  public Chaincode.Response invokeChaincodeWithStringArgs(
+      final String chaincodeName, final String... args) {
+    return targets[INVOKE_CHAINCODE_WITH_STRING_VARARGS]
+        .invokeChaincodeWithStringArgs(chaincodeName, args);
+  }
+
+  @Override
+  public byte[] getState(final String key) {
+    return targets[GET_STATE].getState(key);
+  }
+
+  @Override
+  public String getStringState(final String key) {
+    return targets[GET_STRING_STATE].getStringState(key);
+  }
+
+  @Override
+  public byte[] getStateValidationParameter(final String key) {
+    return targets[GET_STATE_VALIDATION_PARAMETER].getStateValidationParameter(key);
+  }
+
+  @Override
+  public void putState(final String key, final byte[] value) {
+    targets[PUT_STATE].putState(key, value);
+  }
+
+  @Override
+  public void putStringState(final String key, final String value) {
+    targets[PUT_STRING_STATE].putStringState(key, value);
+  }
+
+  @Override
+  public void setStateValidationParameter(final String key, final byte[] value) {
+    targets[SET_STATE_VALIDATION_PARAMETER].setStateValidationParameter(key, value);
+  }
+
+  @Override
+  public void delState(final String key) {
+    targets[DEL_STATE].delState(key);
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getStateByRange(
+      final String startKey, final String endKey) {
+    return targets[GET_STATE_BY_RANGE].getStateByRange(startKey, endKey);
+  }
+
+  @Override
+  public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(
+      final String startKey, final String endKey, final int pageSize, final String bookmark) {
+    return targets[GET_STATE_BY_RANGE_WITH_PAGINATION]
+        .getStateByRangeWithPagination(startKey, endKey, pageSize, bookmark);
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String compositeKey) {
+    return targets[GET_STATE_BY_PARTIAL_KEY].getStateByPartialCompositeKey(compositeKey);
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(
+      final String objectType, final String... attributes) {
+    return targets[GET_STATE_BY_PARTIAL_KEY_PARTS]
+        .getStateByPartialCompositeKey(objectType, attributes);
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(
+      final CompositeKey compositeKey) {
+    return targets[GET_STATE_BY_PARTIAL_COMPOSITE_KEY].getStateByPartialCompositeKey(compositeKey);
+  }
+
+  @Override
+  public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(
+      final CompositeKey compositeKey, final int pageSize, final String bookmark) {
+    return targets[GET_STATE_BY_PARTIAL_KEY_WITH_PAGINATION]
+        .getStateByPartialCompositeKeyWithPagination(compositeKey, pageSize, bookmark);
+  }
+
+  @Override
+  public CompositeKey createCompositeKey(final String objectType, final String... attributes) {
+    return targets[CREATE_COMPOSITE_KEY].createCompositeKey(objectType, attributes);
+  }
+
+  @Override
+  public CompositeKey splitCompositeKey(final String compositeKey) {
+    return targets[SPLIT_COMPOSITE_KEY].splitCompositeKey(compositeKey);
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getQueryResult(final String query) {
+    return targets[GET_QUERY_RESULT].getQueryResult(query);
+  }
+
+  @Override
+  public QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(
+      final String query, final int pageSize, final String bookmark) {
+    return targets[GET_QUERY_RESULT_WITH_PAGINATION]
+        .getQueryResultWithPagination(query, pageSize, bookmark);
+  }
+
+  @Override
+  public QueryResultsIterator<KeyModification> getHistoryForKey(final String key) {
+    return targets[GET_HISTORY_FOR_KEY].getHistoryForKey(key);
+  }
+
+  @Override
+  public byte[] getPrivateData(final String collection, final String key) {
+    return targets[GET_PRIVATE_DATA].getPrivateData(collection, key);
+  }
+
+  @Override
+  public String getPrivateDataUTF8(final String collection, final String key) {
+    return targets[GET_PRIVATE_DATA_UTF8].getPrivateDataUTF8(collection, key);
+  }
+
+  @Override
+  public byte[] getPrivateDataHash(final String collection, final String key) {
+    return targets[GET_PRIVATE_DATA_HASH].getPrivateDataHash(collection, key);
+  }
+
+  @Override
+  public byte[] getPrivateDataValidationParameter(final String collection, final String key) {
+    return targets[GET_PRIVATE_DATA_VALIDATION_PARAMETER]
+        .getPrivateDataValidationParameter(collection, key);
+  }
+
+  @Override
+  public void putPrivateData(final String collection, final String key, final byte[] value) {
+    targets[PUT_PRIVATE_DATA].putPrivateData(collection, key, value);
+  }
+
+  @Override
+  public void putPrivateData(final String collection, final String key, final String value) {
+    targets[PUT_PRIVATE_DATA_STRING].putPrivateData(collection, key, value);
+  }
+
+  @Override
+  public void setPrivateDataValidationParameter(
+      final String collection, final String key, final byte[] value) {
+    targets[SET_PRIVATE_DATA_VALIDATION_PARAMETER]
+        .setPrivateDataValidationParameter(collection, key, value);
+  }
+
+  @Override
+  public void delPrivateData(final String collection, final String key) {
+    targets[DEL_PRIVATE_DATA].delPrivateData(collection, key);
+  }
+
+  @Override
+  public void purgePrivateData(final String collection, final String key) {
+    targets[PURGE_PRIVATE_DATA].purgePrivateData(collection, key);
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getPrivateDataByRange(
+      final String collection, final String startKey, final String endKey) {
+    return targets[GET_PRIVATE_DATA_BY_RANGE].getPrivateDataByRange(collection, startKey, endKey);
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(
+      final String collection, final String compositeKey) {
+    return targets[GET_PRIVATE_DATA_BY_PARTIAL_KEY]
+        .getPrivateDataByPartialCompositeKey(collection, compositeKey);
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(
+      final String collection, final CompositeKey compositeKey) {
+    return targets[GET_PRIVATE_DATA_BY_PARTIAL_COMPOSITE_KEY]
+        .getPrivateDataByPartialCompositeKey(collection, compositeKey);
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(
+      final String collection, final String objectType, final String... attributes) {
+    return targets[GET_PRIVATE_DATA_BY_PARTIAL_KEY_PARTS]
+        .getPrivateDataByPartialCompositeKey(collection, objectType, attributes);
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getPrivateDataQueryResult(
+      final String collection, final String query) {
+    return targets[GET_PRIVATE_DATA_QUERY_RESULT].getPrivateDataQueryResult(collection, query);
+  }
+
+  @Override
+  public void setEvent(final String name, final byte[] payload) {
+    targets[SET_EVENT].setEvent(name, payload);
+  }
+
+  @Override
+  public ChaincodeEvent getEvent() {
+    return targets[GET_EVENT].getEvent();
+  }
+
+  @Override
+  public SignedProposal getSignedProposal() {
+    return targets[GET_SIGNED_PROPOSAL].getSignedProposal();
+  }
+
+  @Override
+  public Instant getTxTimestamp() {
+    return targets[GET_TX_TIMESTAMP].getTxTimestamp();
+  }
+
+  @Override
+  public byte[] getCreator() {
+    return targets[GET_CREATOR].getCreator();
+  }
+
+  @Override
+  public Map<String, byte[]> getTransient() {
+    return targets[GET_TRANSIENT].getTransient();
+  }
+
+  @Override
+  public byte[] getBinding() {
+    return targets[GET_BINDING].getBinding();
+  }
+
+  @Override
+  public String getMspId() {
+    return targets[GET_MSP_ID].getMspId();
+  }
+}
@@ -0,0 +1,89 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.middleware;
+
+import com.jcabi.aspects.Loggable;
+import hu.bme.mit.ftsrg.hypernate.middleware.notification.TransactionEnd;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import lombok.Getter;
+import org.hyperledger.fabric.shim.Chaincode;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stub middleware that reuses the responses of identical read-only chaincode invocations within a
+ * transaction.
+ *
+ * <p>Only invocations made with {@link StubMiddleware#invokeChaincodeReadOnly(ChaincodeStub,
+ * String, List, String)} (e.g., by a {@link hu.bme.mit.ftsrg.hypernate.registry.RemoteRegistry})
+ * are memoized, keyed by the chaincode, the channel and the arguments; plain {@link
+ * ChaincodeStub#invokeChaincode(String, List, String)} calls always reach the called chaincode.
+ * Reads do not see the writes of the transaction in Fabric, so a read-only function returns the
+ * same response for the same arguments throughout the transaction. Responses with an error status
+ * are not memoized.
+ *
+ * @see StubMiddleware
+ */
+@Loggable(Loggable.DEBUG)
+public class InvocationMemoizingStubMiddleware extends StubMiddleware {
+
+  private final Logger logger = LoggerFactory.getLogger(InvocationMemoizingStubMiddleware.class);
+
+  private final Map<Invocation, Chaincode.Response> responses = new HashMap<>();
+
+  /** Number of read-only invocations answered with a memoized response. */
+  @Getter private long hits = 0;
+
+  /** Number of read-only invocations passed on to the next layer. */
+  @Getter private long misses = 0;
+
+  /**
+   * Invoke a read-only chaincode function, unless it has already been invoked with the same
+   * arguments in this transaction.
+   *
+   * @param chaincodeName the name of the chaincode to invoke
+   * @param args the function name and the arguments
+   * @param channel the channel of the chaincode; {@code null} for the channel of the transaction
+   * @return the response of the chaincode, possibly memoized
+   */
+  @Override
+  public Chaincode.Response invokeChaincodeReadOnly(
+      final String chaincodeName, final List<byte[]> args, final String channel) {
+    final Invocation invocation = Invocation.of(chaincodeName, args, channel);
+    final Chaincode.Response memoized = responses.get(invocation);
+    if (memoized != null) {
+      logger.debug("Reusing the response of a read-only invocation of {}", chaincodeName);
+      hits++;
+      return memoized;
+    }
+
+    misses++;
+    final Chaincode.Response response =
+        StubMiddleware.invokeChaincodeReadOnly(this.nextStub, chaincodeName, args, channel);
+    if (response.getStatus() == Chaincode.Response.Status.SUCCESS) {
+      responses.put(invocation, response);
+    }
+    return response;
+  }
+
+  /** Forget the memoized responses; see {@link TransactionEnd}. */
+  @Override
+  protected void onTransactionEnd() {
+    responses.clear();
+  }
+
+  private record Invocation(String chaincodeName, String channel, List<ByteBuffer> args) {
+
+    static Invocation of(
+        final String chaincodeName, final List<byte[]> args, final String channel) {
+      // Copy the arguments, the caller may reuse its buffers
+      return new Invocation(
+          chaincodeName,
+          channel == null ? "" : channel,
+          args.stream().map(arg -> ByteBuffer.wrap(arg.clone())).toList());
+    }
+  }
+}
@@ -0,0 +1,61 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.middleware;
+
+import java.util.Iterator;
+import java.util.function.Consumer;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+
+/**
+ * {@link QueryResultsIterator} decorator that hands every element to an observer before returning
+ * it to the caller.
+ *
+ * <p>Elements are observed lazily, i.e., only the ones actually consumed by the caller.
+ *
+ * @param <T> the element type
+ */
+class ObservingQueryResultsIterator<T> implements QueryResultsIterator<T> {
+
+  private final Iterable<T> delegate;
+
+  private final AutoCloseable closeable;
+
+  private final Consumer<? super T> observer;
+
+  ObservingQueryResultsIterator(
+      final QueryResultsIterator<T> delegate, final Consumer<? super T> observer) {
+    this(delegate, delegate, observer);
+  }
+
+  // The paginated iterators of the shim are not QueryResultsIterators, only alike
+  ObservingQueryResultsIterator(
+      final Iterable<T> delegate,
+      final AutoCloseable closeable,
+      final Consumer<? super T> observer) {
+    this.delegate = delegate;
+    this.closeable = closeable;
+    this.observer = observer;
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    final Iterator<T> iterator = delegate.iterator();
+    return new Iterator<>() {
+      @Override
+      public boolean hasNext() {
+        return iterator.hasNext();
+      }
+
+      @Override
+      public T next() {
+        final T element = iterator.next();
+        observer.accept(element);
+        return element;
+      }
+    };
+  }
+
+  @Override
+  public void close() throws Exception {
+    closeable.close();
+  }
+}
@@ -0,0 +1,28 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.middleware;
+
+import java.util.function.Consumer;
+import org.hyperledger.fabric.protos.peer.QueryResponseMetadata;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+/**
+ * Paginated variant of {@link ObservingQueryResultsIterator}.
+ *
+ * @param <T> the element type
+ */
+class ObservingQueryResultsIteratorWithMetadata<T> extends ObservingQueryResultsIterator<T>
+    implements QueryResultsIteratorWithMetadata<T> {
+
+  private final QueryResultsIteratorWithMetadata<T> delegate;
+
+  ObservingQueryResultsIteratorWithMetadata(
+      final QueryResultsIteratorWithMetadata<T> delegate, final Consumer<? super T> observer) {
+    super(delegate, delegate, observer);
+    this.delegate = delegate;
+  }
+
+  @Override
+  public QueryResponseMetadata getMetadata() {
+    return delegate.getMetadata();
+  }
+}
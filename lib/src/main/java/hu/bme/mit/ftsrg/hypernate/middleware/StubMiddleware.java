@@ -5,9 +5,14 @@ import com.jcabi.aspects.Loggable;
 import hu.bme.mit.ftsrg.hypernate.middleware.notification.HypernateNotification;
 import hu.bme.mit.ftsrg.hypernate.middleware.notification.TransactionBegin;
 import hu.bme.mit.ftsrg.hypernate.middleware.notification.TransactionEnd;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Flow.Subscriber;
 import java.util.concurrent.Flow.Subscription;
+import java.util.function.Function;
 import lombok.experimental.Delegate;
+import org.hyperledger.fabric.shim.Chaincode;
 import org.hyperledger.fabric.shim.ChaincodeStub;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,6 +33,112 @@ public abstract class StubMiddleware implements ChaincodeStub, Subscriber<Hypern
   /** The next {@link ChaincodeStub} in the chain. */
   @Delegate ChaincodeStub nextStub;
 
+  /**
+   * Get the raw states at multiple keys.
+   *
+   * <p>Duplicate keys are only read once. By default, the keys are read one after the other
+   * through {@link #getState(String)}, so the first failing key (in input order) determines the
+   * exception thrown. Middlewares can override this method to batch or overlap the reads, but
+   * must keep these semantics.
+   *
+   * @param keys the queried keys
+   * @return the raw states in the order of {@code keys}
+   */
+  public List<byte[]> getStates(final List<String> keys) {
+    return readSerially(keys, this::getState);
+  }
+
+  /**
+   * Get the raw states at multiple keys from any stub.
+   *
+   * <p>Uses {@link #getStates(List)} if {@code stub} is a middleware (or a flattened chain of
+   * middlewares), and serial {@link ChaincodeStub#getState(String)} calls otherwise.
+   *
+   * @param stub the stub to read from
+   * @param keys the queried keys
+   * @return the raw states in the order of {@code keys}
+   */
+  public static List<byte[]> getStates(final ChaincodeStub stub, final List<String> keys) {
+    if (stub instanceof StubMiddleware middleware) {
+      return middleware.getStates(keys);
+    } else if (stub instanceof FlattenedStub flattened) {
+      return flattened.getStates(keys);
+    } else {
+      return readSerially(keys, stub::getState);
+    }
+  }
+
+  /**
+   * Get the private data at multiple keys of a collection from any stub.
+   *
+   * <p>Duplicate keys are only read once, with serial {@link ChaincodeStub#getPrivateData(String,
+   * String)} calls.
+   *
+   * @param stub the stub to read from
+   * @param collection the private data collection
+   * @param keys the queried keys
+   * @return the private data in the order of {@code keys}
+   */
+  public static List<byte[]> getPrivateData(
+      final ChaincodeStub stub, final String collection, final List<String> keys) {
+    return readSerially(keys, key -> stub.getPrivateData(collection, key));
+  }
+
+  /**
+   * Invoke a chaincode function that does not write to the ledger.
+   *
+   * <p>Marking an invocation read-only lets middlewares such as {@link
+   * InvocationMemoizingStubMiddleware} reuse its response. By default, it is handled as a {@link
+   * #invokeChaincode(String, List, String)} call of this middleware.
+   *
+   * @param chaincodeName the name of the chaincode to invoke
+   * @param args the function name and the arguments
+   * @param channel the channel of the chaincode; {@code null} for the channel of the transaction
+   * @return the response of the chaincode
+   */
+  public Chaincode.Response invokeChaincodeReadOnly(
+      final String chaincodeName, final List<byte[]> args, final String channel) {
+    return invokeChaincode(chaincodeName, args, channel);
+  }
+
+  /**
+   * Invoke a chaincode function that does not write to the ledger through any stub.
+   *
+   * <p>Uses {@link #invokeChaincodeReadOnly(String, List, String)} if {@code stub} is a middleware
+   * (or a flattened chain of middlewares), and {@link ChaincodeStub#invokeChaincode(String, List,
+   * String)} otherwise.
+   *
+   * @param stub the stub to invoke the chaincode through
+   * @param chaincodeName the name of the chaincode to invoke
+   * @param args the function name and the arguments
+   * @param channel the channel of the chaincode; {@code null} for the channel of the transaction
+   * @return the response of the chaincode
+   */
+  public static Chaincode.Response invokeChaincodeReadOnly(
+      final ChaincodeStub stub,
+      final String chaincodeName,
+      final List<byte[]> args,
+      final String channel) {
+    if (stub instanceof StubMiddleware middleware) {
+      return middleware.invokeChaincodeReadOnly(chaincodeName, args, channel);
+    } else if (stub instanceof FlattenedStub flattened) {
+      return flattened.invokeChaincodeReadOnly(chaincodeName, args, channel);
+    } else {
+      return stub.invokeChaincode(chaincodeName, args, channel);
+    }
+  }
+
+  private static List<byte[]> readSerially(
+      final List<String> keys, final Function<String, byte[]> reader) {
+    final Map<String, byte[]> values = new HashMap<>();
+    for (final String key : keys) {
+      if (!values.containsKey(key)) {
+        values.put(key, reader.apply(key));
+      }
+    }
+    return keys.stream().map(values::get).toList();
+  }
+
   @Override
   public void onSubscribe(Subscription subscription) {}
 
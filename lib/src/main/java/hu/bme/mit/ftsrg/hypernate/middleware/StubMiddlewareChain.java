@@ -63,6 +63,19 @@ public record StubMiddlewareChain(ChaincodeStub fabricStub, List<StubMiddleware>
     }
   }
 
+  /**
+   * Get a flattened entry point of the chain.
+   *
+   * <p>The returned stub behaves like {@link #getFirst()}, but calls each method directly on the
+   * first middleware overriding it (or on the Fabric stub if none does), skipping the layers that
+   * would only pass the call on. {@link Builder#build()} links the middlewares the same way.
+   *
+   * @return the flattened chain or the Fabric stub if there are no middleware
+   */
+  public ChaincodeStub getFlattened() {
+    return FlattenedStub.over(middlewares, fabricStub);
+  }
+
   /**
    * Iterate over the list of {@link StubMiddleware}s in the chain.
    *
@@ -120,9 +133,16 @@ public record StubMiddlewareChain(ChaincodeStub fabricStub, List<StubMiddleware>
     /**
      * Build the middleware chain.
      *
+     * <p>Each middleware is linked to the {@link #getFlattened() flattened} rest of the chain, so
+     * the calls it passes on go directly to the next middleware overriding the method.
+     *
      * @return the middleware chain with all the {@link #push(Class) add}ed {@link StubMiddleware}s.
      */
     public StubMiddlewareChain build() {
+      for (int i = 0; i < middlewares.size(); i++) {
+        middlewares.get(i).nextStub =
+            FlattenedStub.over(middlewares.subList(i + 1, middlewares.size()), fabricStub);
+      }
       return new StubMiddlewareChain(fabricStub, middlewares);
     }
 
@@ -3,25 +3,123 @@ package hu.bme.mit.ftsrg.hypernate.middleware;
 
 import com.jcabi.aspects.Loggable;
 import hu.bme.mit.ftsrg.hypernate.middleware.notification.TransactionEnd;
+import hu.bme.mit.ftsrg.hypernate.registry.KeyRange;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import lombok.Getter;
+import org.hyperledger.fabric.protos.peer.QueryResponseMetadata;
 import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Stub middleware that caches reads in a local state.
  *
+ * <p>Besides point reads, the key-value pairs returned by range and partial composite key queries
+ * are also recorded as clean cache entries as they are iterated, so later point reads of the same
+ * keys are served locally. In turn, these queries see the writes and deletions of the transaction
+ * in the queried range: their results are merged with the written entries, which are kept sorted by
+ * key. Pages of paginated queries only include the written entries up to the next page. Rich
+ * queries cannot be merged, so they do not see the writes of the transaction.
+ *
+ * <p>Private data is cached the same way, in a separate cache for each collection. Private data
+ * hashes are computed locally for entries already in the cache.
+ *
+ * <p>The memory held by the cache is bounded by a budget (see {@link #getBudget()}), estimated
+ * from the sizes of the keys and values. Over the budget, the least recently used clean entries
+ * are evicted and re-read from the next layer when needed again; entries written or deleted by the
+ * transaction are never evicted. A written entry only keeps the hash of the value originally read,
+ * so writing that value back makes the entry clean again instead of flushing a no-op write. To use
+ * a different budget with {@link MiddlewareInfo}, subclass this middleware with a no-arg
+ * constructor.
+ *
  * @see StubMiddleware
  */
 @Loggable(Loggable.DEBUG)
-public final class WriteBackCachedStubMiddleware extends StubMiddleware {
+public class WriteBackCachedStubMiddleware extends StubMiddleware {
+
+  /** Default budget of the cache: 64 MiB. */
+  public static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+  /** Estimated bytes held by a cache entry besides its key and value. */
+  static final int ENTRY_OVERHEAD = 96;
+
+  /** Order of keys on the peer, i.e., the order of their UTF-8 encodings. */
+  static final Comparator<String> KEY_ORDER = KeyRange.KEY_ORDER;
+
+  /** Where range queries start if no start key is given; below it are the composite keys. */
+  private static final String UNSPECIFIED_START_KEY = "\u0001";
+
+  private static final String MAX_UNICODE_RUNE =
+      new String(Character.toChars(Character.MAX_CODE_POINT));
 
   private final Logger logger = LoggerFactory.getLogger(WriteBackCachedStubMiddleware.class);
 
-  private final Map<String, CachedItem> cache = new HashMap<>();
+  private final Cache cache = new Cache();
+
+  private final Map<String, Cache> privateCaches = new HashMap<>();
+
+  private final Map<String, Map<String, byte[]>> privateHashes = new HashMap<>();
+
+  private final boolean cacheRichQueryResults;
+
+  @Getter private final long budget;
+
+  /** Estimated bytes held by the cache entries of the world state and the private data. */
+  @Getter private long cachedBytes = 0;
+
+  /** Number of reads served from the cache. */
+  @Getter private long hits = 0;
+
+  /** Number of reads passed on to the next layer. */
+  @Getter private long misses = 0;
+
+  /** Number of clean entries evicted to stay within the budget. */
+  @Getter private long evictions = 0;
+
+  public WriteBackCachedStubMiddleware() {
+    this(false);
+  }
+
+  /**
+   * @param cacheRichQueryResults whether to record the results of rich queries in the cache, too;
+   *     rich queries are not re-executed during validation, so serving later point reads from their
+   *     results leaves those keys out of the transaction's read set
+   */
+  public WriteBackCachedStubMiddleware(final boolean cacheRichQueryResults) {
+    this(cacheRichQueryResults, DEFAULT_BUDGET);
+  }
+
+  /**
+   * @param cacheRichQueryResults whether to record the results of rich queries in the cache, too
+   * @param budget the estimated number of bytes the cache may hold before evicting clean entries;
+   *     entries written or deleted by the transaction are kept even beyond the budget
+   */
+  public WriteBackCachedStubMiddleware(final boolean cacheRichQueryResults, final long budget) {
+    if (budget < 0) {
+      throw new IllegalArgumentException("Budget must not be negative");
+    }
+    this.cacheRichQueryResults = cacheRichQueryResults;
+    this.budget = budget;
+  }
 
   /**
    * Get the raw state at {@code key} but only call down to the peer if we have not seen the value
@@ -32,23 +130,38 @@ public final class WriteBackCachedStubMiddleware extends StubMiddleware {
    */
   @Override
   public byte[] getState(final String key) {
-    CachedItem cached = cache.get(key);
-
-    // New read, add to cache
-    if (cached == null) {
-      logger.debug("Cache miss for key={} while reading; getting from next layer & caching", key);
-      final byte[] value = this.nextStub.getState(key);
-      cached = new CachedItem(key, value);
-      cache.put(key, cached);
-    }
+    return read(cache, key, this.nextStub::getState);
+  }
 
-    // Already marked for deletion
-    if (cached.isToDelete()) {
-      logger.debug("Value at key={} marked for deletion; returning null", key);
-      return null;
+  /**
+   * Get the raw states at multiple keys, reading all keys not seen before with a single {@link
+   * StubMiddleware#getStates(ChaincodeStub, List)} call to the next layer.
+   *
+   * @param keys the queried keys
+   * @return the raw states in the order of {@code keys}
+   */
+  @Override
+  public List<byte[]> getStates(final List<String> keys) {
+    final List<String> missed =
+        keys.stream().filter(key -> !cache.contains(key)).distinct().toList();
+    // Keep the values read here, they may be evicted before being returned
+    final Map<String, byte[]> loaded = new HashMap<>();
+    if (!missed.isEmpty()) {
+      logger.debug("Cache miss for {} keys; getting them from next layer & caching", missed.size());
+      misses += missed.size();
+      final List<byte[]> values = StubMiddleware.getStates(this.nextStub, missed);
+      for (int i = 0; i < missed.size(); i++) {
+        loaded.put(missed.get(i), values.get(i));
+        cache.insert(CachedItem.loaded(missed.get(i), values.get(i)));
+      }
     }
-
-    return cached.getValue();
+    return keys.stream()
+        .map(
+            key ->
+                loaded.containsKey(key)
+                    ? loaded.get(key)
+                    : read(cache, key, this.nextStub::getState))
+        .toList();
   }
 
   /**
@@ -63,24 +176,7 @@ public final class WriteBackCachedStubMiddleware extends StubMiddleware {
    */
   @Override
   public void putState(final String key, final byte[] value) {
-    CachedItem cached = cache.get(key);
-
-    // Blind write!
-    if (cached == null) {
-      logger.debug(
-          "Cache miss for key={} while writing; creating new cache entry with null value", key);
-      cached = new CachedItem(key, null); // Initial value set later
-      cache.put(key, cached);
-    }
-
-    if (cached.isToDelete()) {
-      logger.debug("Entry at key={} already deleted; cannot update", key);
-      throw new RuntimeException("Ledger entry " + key + " is already marked for deletion");
-    }
-
-    logger.debug(
-        "Setting value for cache item with key={} to a {}-long byte array", key, value.length);
-    cached.setValue(value); // Sets the dirty flag if needed
+    write(cache, key, value);
   }
 
   /**
@@ -93,34 +189,641 @@ public final class WriteBackCachedStubMiddleware extends StubMiddleware {
    */
   @Override
   public void delState(final String key) {
+    delete(cache, key);
+  }
+
+  /**
+   * Get the private data at {@code key} in {@code collection} but only call down to the peer if we
+   * have not seen the value before.
+   *
+   * @param collection the private data collection
+   * @param key the queried key
+   * @return the private data at {@code key}
+   */
+  @Override
+  public byte[] getPrivateData(final String collection, final String key) {
+    return read(privateCache(collection), key, k -> this.nextStub.getPrivateData(collection, k));
+  }
+
+  /**
+   * Get the hash of the private data at {@code key} in {@code collection}.
+   *
+   * <p>If the value itself is already in the cache (because it was read or written in this
+   * transaction), the hash is computed locally. Otherwise, the hash is fetched from the next layer
+   * and cached.
+   *
+   * @param collection the private data collection
+   * @param key the queried key
+   * @return the SHA-256 hash of the private data at {@code key}
+   */
+  @Override
+  public byte[] getPrivateDataHash(final String collection, final String key) {
+    final CachedItem cached = privateCache(collection).get(key);
+    if (cached != null) {
+      hits++;
+      if (cached.isToDelete() || !cached.hasValue()) return null;
+
+      logger.debug("Computing hash of cached private data at key={} locally", key);
+      return sha256(cached.getValue());
+    }
+
+    return privateHashes
+        .computeIfAbsent(collection, c -> new HashMap<>())
+        .computeIfAbsent(key, k -> this.nextStub.getPrivateDataHash(collection, k));
+  }
+
+  /**
+   * Write private data at {@code key} in {@code collection}, but only update the cache for now.
+   *
+   * <p>The {@link ChaincodeStub#putPrivateData(String, String, byte[])} call will only actually
+   * occur during {@link #dispose()}.
+   *
+   * @param collection the private data collection
+   * @param key the key to write
+   * @param value the value to write at the key
+   */
+  @Override
+  public void putPrivateData(final String collection, final String key, final byte[] value) {
+    write(privateCache(collection), key, value);
+  }
+
+  /**
+   * Delete the private data at {@code key} in {@code collection}, but only mark it as deleted in
+   * our cache for now.
+   *
+   * <p>The {@link ChaincodeStub#delPrivateData(String, String)} call will only actually occur
+   * during {@link #dispose()}.
+   *
+   * @param collection the private data collection
+   * @param key the key to delete
+   */
+  @Override
+  public void delPrivateData(final String collection, final String key) {
+    delete(privateCache(collection), key);
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getStateByRange(
+      final String startKey, final String endKey) {
+    return merging(
+        cache,
+        rangeStart(startKey),
+        rangeEnd(endKey),
+        this.nextStub.getStateByRange(startKey, endKey));
+  }
+
+  @Override
+  public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(
+      final String startKey, final String endKey, final int pageSize, final String bookmark) {
+    return merging(
+        cache,
+        rangeStart(startKey),
+        rangeEnd(endKey),
+        pageSize,
+        bookmark,
+        this.nextStub.getStateByRangeWithPagination(startKey, endKey, pageSize, bookmark));
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String compositeKey) {
+    final String prefix =
+        compositeKey.startsWith(CompositeKey.NAMESPACE)
+            ? compositeKey
+            : new CompositeKey(compositeKey).toString();
+    return merging(
+        cache,
+        prefix,
+        prefix + MAX_UNICODE_RUNE,
+        this.nextStub.getStateByPartialCompositeKey(compositeKey));
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(
+      final String objectType, final String... attributes) {
+    final String prefix = new CompositeKey(objectType, attributes).toString();
+    return merging(
+        cache,
+        prefix,
+        prefix + MAX_UNICODE_RUNE,
+        this.nextStub.getStateByPartialCompositeKey(objectType, attributes));
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(
+      final CompositeKey compositeKey) {
+    final String prefix = compositeKey.toString();
+    return merging(
+        cache,
+        prefix,
+        prefix + MAX_UNICODE_RUNE,
+        this.nextStub.getStateByPartialCompositeKey(compositeKey));
+  }
+
+  @Override
+  public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(
+      final CompositeKey compositeKey, final int pageSize, final String bookmark) {
+    final String prefix = compositeKey.toString();
+    return merging(
+        cache,
+        prefix,
+        prefix + MAX_UNICODE_RUNE,
+        pageSize,
+        bookmark,
+        this.nextStub.getStateByPartialCompositeKeyWithPagination(
+            compositeKey, pageSize, bookmark));
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getQueryResult(final String query) {
+    final QueryResultsIterator<KeyValue> results = this.nextStub.getQueryResult(query);
+    return cacheRichQueryResults ? recording(cache, results) : results;
+  }
+
+  @Override
+  public QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(
+      final String query, final int pageSize, final String bookmark) {
+    final QueryResultsIteratorWithMetadata<KeyValue> results =
+        this.nextStub.getQueryResultWithPagination(query, pageSize, bookmark);
+    return cacheRichQueryResults ? recording(cache, results) : results;
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getPrivateDataByRange(
+      final String collection, final String startKey, final String endKey) {
+    return merging(
+        privateCache(collection),
+        rangeStart(startKey),
+        rangeEnd(endKey),
+        this.nextStub.getPrivateDataByRange(collection, startKey, endKey));
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(
+      final String collection, final String compositeKey) {
+    final String prefix =
+        compositeKey.startsWith(CompositeKey.NAMESPACE)
+            ? compositeKey
+            : new CompositeKey(compositeKey).toString();
+    return merging(
+        privateCache(collection),
+        prefix,
+        prefix + MAX_UNICODE_RUNE,
+        this.nextStub.getPrivateDataByPartialCompositeKey(collection, compositeKey));
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(
+      final String collection, final CompositeKey compositeKey) {
+    final String prefix = compositeKey.toString();
+    return merging(
+        privateCache(collection),
+        prefix,
+        prefix + MAX_UNICODE_RUNE,
+        this.nextStub.getPrivateDataByPartialCompositeKey(collection, compositeKey));
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(
+      final String collection, final String objectType, final String... attributes) {
+    final String prefix = new CompositeKey(objectType, attributes).toString();
+    return merging(
+        privateCache(collection),
+        prefix,
+        prefix + MAX_UNICODE_RUNE,
+        this.nextStub.getPrivateDataByPartialCompositeKey(collection, objectType, attributes));
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getPrivateDataQueryResult(
+      final String collection, final String query) {
+    final QueryResultsIterator<KeyValue> results =
+        this.nextStub.getPrivateDataQueryResult(collection, query);
+    return cacheRichQueryResults ? recording(privateCache(collection), results) : results;
+  }
+
+  /**
+   * Apply the cache changes.
+   *
+   * <p>This method is called in the handler for the {@link TransactionEnd} notification.
+   */
+  public void dispose() {
+    logger.debug(
+        "Cache statistics: {} hits, {} misses, {} evictions, {} of {} bytes held",
+        hits,
+        misses,
+        evictions,
+        cachedBytes,
+        budget);
+    flush(cache, this.nextStub::putState, this.nextStub::delState);
+    privateCaches.forEach(
+        (collection, privateCache) ->
+            flush(
+                privateCache,
+                (key, value) -> this.nextStub.putPrivateData(collection, key, value),
+                key -> this.nextStub.delPrivateData(collection, key)));
+  }
+
+  @Override
+  protected void onTransactionEnd() {
+    dispose();
+  }
+
+  private byte[] read(final Cache cache, final String key, final Function<String, byte[]> loader) {
     CachedItem cached = cache.get(key);
 
+    // New read, add to cache
+    if (cached == null) {
+      logger.debug("Cache miss for key={} while reading; getting from next layer & caching", key);
+      misses++;
+      final byte[] value = loader.apply(key);
+      cached = CachedItem.loaded(key, value);
+      cache.insert(cached);
+    } else {
+      hits++;
+    }
+
+    // Already marked for deletion
+    if (cached.isToDelete()) {
+      logger.debug("Value at key={} marked for deletion; returning null", key);
+      return null;
+    }
+
+    return cached.getValue();
+  }
+
+  private void write(final Cache cache, final String key, final byte[] value) {
+    CachedItem cached = cache.remove(key);
+
+    // Blind write!
+    if (cached == null) {
+      logger.debug(
+          "Cache miss for key={} while writing; creating new cache entry with null value", key);
+      cached = CachedItem.blind(key); // Initial value set later
+    }
+
+    try {
+      if (cached.isToDelete()) {
+        logger.debug("Entry at key={} already deleted; cannot update", key);
+        throw new RuntimeException("Ledger entry " + key + " is already marked for deletion");
+      }
+
+      logger.debug(
+          "Setting value for cache item with key={} to a {}-long byte array", key, value.length);
+      cached.setValue(value); // Sets or clears the dirty flag if needed
+    } finally {
+      cache.insert(cached);
+    }
+  }
+
+  private void delete(final Cache cache, final String key) {
+    CachedItem cached = cache.remove(key);
+
     // Blind delete!
     if (cached == null) {
       logger.debug(
           "Cache miss for key={} while deleting; creating new cache entry with null value", key);
-      cached = new CachedItem(key, null);
-      cache.put(key, cached);
+      cached = CachedItem.blind(key);
     }
 
     logger.debug("Deleting value from cache with key={}", key);
     cached.delete();
+    cache.insert(cached);
+  }
+
+  private void flush(
+      final Cache cache, final BiConsumer<String, byte[]> putter, final Consumer<String> deleter) {
+    for (final CachedItem item : cache.dirty.values()) {
+      if (item.isToDelete()) deleter.accept(item.getKey());
+      else if (item.hasValue()) putter.accept(item.getKey(), item.getValue());
+    }
+  }
+
+  private Cache privateCache(final String collection) {
+    return privateCaches.computeIfAbsent(collection, c -> new Cache());
   }
 
   /**
-   * Apply the cache changes.
+   * Evict clean entries until the cache is within its budget.
    *
-   * <p>This method should normally be called in a handler for the {@link TransactionEnd}
-   * notification.
+   * @param preferred the cache to evict from first, i.e., the one just added to
    */
-  public void dispose() {
-    for (final Map.Entry<String, CachedItem> entry : cache.entrySet()) {
-      final CachedItem item = entry.getValue();
+  private void evictOverflow(final Cache preferred) {
+    if (cachedBytes <= budget) return;
+
+    preferred.evictClean();
+    if (cachedBytes > budget) cache.evictClean();
+    for (final Cache privateCache : privateCaches.values()) {
+      if (cachedBytes <= budget) return;
+      privateCache.evictClean();
+    }
+    if (cachedBytes > budget) {
+      logger.debug(
+          "Written entries alone take {} bytes, over the budget of {} bytes", cachedBytes, budget);
+    }
+  }
+
+  private QueryResultsIterator<KeyValue> recording(
+      final Cache cache, final QueryResultsIterator<KeyValue> results) {
+    return new ObservingQueryResultsIterator<>(results, kv -> recordScanned(cache, kv));
+  }
+
+  private QueryResultsIteratorWithMetadata<KeyValue> recording(
+      final Cache cache, final QueryResultsIteratorWithMetadata<KeyValue> results) {
+    return new ObservingQueryResultsIteratorWithMetadata<>(results, kv -> recordScanned(cache, kv));
+  }
 
-      if (item == null || !item.isDirty() || item.getValue() == null) continue;
+  /**
+   * Merge the results of a query with the entries written or deleted in the queried range.
+   *
+   * @param cache the cache holding the written entries
+   * @param lowerKey the first key of the range
+   * @param upperKey the key after the range; {@code null} if unbounded
+   * @param results the results of the next layer
+   * @return the merged results
+   */
+  private QueryResultsIterator<KeyValue> merging(
+      final Cache cache,
+      final String lowerKey,
+      final String upperKey,
+      final QueryResultsIterator<KeyValue> results) {
+    return new MergedQueryResultsIterator(cache, lowerKey, upperKey, recording(cache, results));
+  }
 
-      if (item.isToDelete()) this.nextStub.delState(item.getKey());
-      else this.nextStub.putState(item.getKey(), item.getValue());
+  /**
+   * Merge a page of query results with the entries written or deleted in the range of the page.
+   *
+   * <p>The page starts at {@code bookmark} (or at the start of the range) and ends before the
+   * bookmark of the next page (or at the end of the range on the last page), so every written entry
+   * is returned on exactly one page. Pages may thus hold more entries than {@code pageSize}; the
+   * metadata is that of the next layer.
+   */
+  private QueryResultsIteratorWithMetadata<KeyValue> merging(
+      final Cache cache,
+      final String lowerKey,
+      final String upperKey,
+      final int pageSize,
+      final String bookmark,
+      final QueryResultsIteratorWithMetadata<KeyValue> results) {
+    final QueryResponseMetadata metadata = results.getMetadata();
+    final boolean lastPage =
+        metadata == null
+            || metadata.getBookmark().isEmpty()
+            || metadata.getFetchedRecordsCount() < pageSize;
+    return new MergedQueryResultsIteratorWithMetadata(
+        cache,
+        bookmark == null || bookmark.isEmpty() ? lowerKey : bookmark,
+        lastPage ? upperKey : metadata.getBookmark(),
+        recording(cache, results));
+  }
+
+  /**
+   * Record a key-value pair returned by a query as a clean cache entry.
+   *
+   * <p>Entries already in the cache are left alone: they are either the same value or have been
+   * written/deleted by this transaction, and the latter must win.
+   *
+   * @param cache the cache to record the key-value pair in
+   * @param kv the key-value pair returned by the next layer
+   */
+  private void recordScanned(final Cache cache, final KeyValue kv) {
+    final String key = kv.getKey();
+    if (cache.contains(key)) return;
+
+    logger.debug("Caching value for key={} returned by a query", key);
+    cache.insert(CachedItem.loaded(key, kv.getValue()));
+  }
+
+  private static String rangeStart(final String startKey) {
+    return startKey == null || startKey.isEmpty() ? UNSPECIFIED_START_KEY : startKey;
+  }
+
+  private static String rangeEnd(final String endKey) {
+    return endKey == null || endKey.isEmpty() ? null : endKey;
+  }
+
+  private static byte[] sha256(final byte[] value) {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(value);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+    }
+  }
+
+  /**
+   * Cache entries of the world state or of a private data collection.
+   *
+   * <p>Clean entries are kept in access order, so the least recently used are evicted first. Dirty
+   * entries are kept apart and are never evicted.
+   */
+  private final class Cache {
+
+    private final NavigableMap<String, CachedItem> dirty = new TreeMap<>(KEY_ORDER);
+
+    private final LinkedHashMap<String, CachedItem> clean = new LinkedHashMap<>(16, 0.75f, true);
+
+    CachedItem get(final String key) {
+      final CachedItem item = dirty.get(key);
+      return item != null ? item : clean.get(key);
+    }
+
+    boolean contains(final String key) {
+      return dirty.containsKey(key) || clean.containsKey(key);
+    }
+
+    /**
+     * Find the first written or deleted entry in a range.
+     *
+     * @param from the key to search from
+     * @param inclusive whether {@code from} itself is in the range
+     * @param to the key after the range; {@code null} if unbounded
+     * @return the first dirty entry in the range or {@code null} if there is none
+     */
+    Map.Entry<String, CachedItem> firstDirty(
+        final String from, final boolean inclusive, final String to) {
+      final Map.Entry<String, CachedItem> entry =
+          inclusive ? dirty.ceilingEntry(from) : dirty.higherEntry(from);
+      return entry == null || (to != null && KEY_ORDER.compare(entry.getKey(), to) >= 0)
+          ? null
+          : entry;
+    }
+
+    /** Add an entry not in the cache, then evict clean entries if over the budget. */
+    void insert(final CachedItem item) {
+      (item.isDirty() ? dirty : clean).put(item.getKey(), item);
+      cachedBytes += item.size();
+      evictOverflow(this);
+    }
+
+    /** Take out an entry, e.g., to change it and {@link #insert(CachedItem) insert} it again. */
+    CachedItem remove(final String key) {
+      CachedItem item = dirty.remove(key);
+      if (item == null) item = clean.remove(key);
+      if (item != null) cachedBytes -= item.size();
+      return item;
+    }
+
+    void evictClean() {
+      final Iterator<CachedItem> iterator = clean.values().iterator();
+      while (cachedBytes > budget && iterator.hasNext()) {
+        final CachedItem item = iterator.next();
+        iterator.remove();
+        cachedBytes -= item.size();
+        evictions++;
+        logger.trace("Evicted clean entry with key={} from the cache", item.getKey());
+      }
+    }
+  }
+
+  /**
+   * Query results merged with the written and deleted entries of a {@link Cache} in a key range.
+   *
+   * <p>Both the results and the written entries are sorted by key, so each step takes whichever
+   * comes first; on equal keys, the written entry wins. The written entries are looked up one step
+   * at a time in the sorted map of dirty entries, so each step costs O(log n) and writes made
+   * during the iteration are seen once the iteration gets to their keys.
+   */
+  private class MergedQueryResultsIterator implements QueryResultsIterator<KeyValue> {
+
+    private final Cache cache;
+
+    private final String lowerKey;
+
+    private final String upperKey;
+
+    private final Iterable<KeyValue> results;
+
+    private final AutoCloseable closeable;
+
+    MergedQueryResultsIterator(
+        final Cache cache,
+        final String lowerKey,
+        final String upperKey,
+        final QueryResultsIterator<KeyValue> results) {
+      this(cache, lowerKey, upperKey, results, results);
+    }
+
+    MergedQueryResultsIterator(
+        final Cache cache,
+        final String lowerKey,
+        final String upperKey,
+        final Iterable<KeyValue> results,
+        final AutoCloseable closeable) {
+      this.cache = cache;
+      this.lowerKey = lowerKey;
+      this.upperKey = upperKey;
+      this.results = results;
+      this.closeable = closeable;
+    }
+
+    @Override
+    public Iterator<KeyValue> iterator() {
+      final Iterator<KeyValue> fromNextLayer = results.iterator();
+      return new Iterator<>() {
+
+        private KeyValue nextResult;
+
+        private String lastWrittenKey;
+
+        private KeyValue next;
+
+        @Override
+        public boolean hasNext() {
+          advance();
+          return next != null;
+        }
+
+        @Override
+        public KeyValue next() {
+          advance();
+          if (next == null) {
+            throw new NoSuchElementException();
+          }
+          final KeyValue element = next;
+          next = null;
+          return element;
+        }
+
+        private void advance() {
+          while (next == null) {
+            if (nextResult == null && fromNextLayer.hasNext()) {
+              nextResult = fromNextLayer.next();
+            }
+            final Map.Entry<String, CachedItem> written =
+                lastWrittenKey == null
+                    ? cache.firstDirty(lowerKey, true, upperKey)
+                    : cache.firstDirty(lastWrittenKey, false, upperKey);
+            if (written == null && nextResult == null) {
+              return;
+            }
+
+            if (written != null
+                && (nextResult == null
+                    || KEY_ORDER.compare(written.getKey(), nextResult.getKey()) <= 0)) {
+              if (nextResult != null && written.getKey().equals(nextResult.getKey())) {
+                nextResult = null;
+              }
+              lastWrittenKey = written.getKey();
+              next = visible(written.getValue());
+            } else {
+              // The key may have been written after the merge got past it
+              final CachedItem item = cache.dirty.get(nextResult.getKey());
+              next = item == null ? nextResult : visible(item);
+              nextResult = null;
+            }
+          }
+        }
+      };
+    }
+
+    @Override
+    public void close() throws Exception {
+      closeable.close();
+    }
+
+    // Deleted entries are not returned, nor are the ones written empty (the peer deletes them)
+    private static KeyValue visible(final CachedItem item) {
+      if (item.isToDelete() || !item.hasValue() || item.getValue().length == 0) {
+        return null;
+      }
+      return new CachedKeyValue(item.getKey(), item.getValue());
+    }
+  }
+
+  private final class MergedQueryResultsIteratorWithMetadata extends MergedQueryResultsIterator
+      implements QueryResultsIteratorWithMetadata<KeyValue> {
+
+    private final QueryResultsIteratorWithMetadata<KeyValue> results;
+
+    MergedQueryResultsIteratorWithMetadata(
+        final Cache cache,
+        final String lowerKey,
+        final String upperKey,
+        final QueryResultsIteratorWithMetadata<KeyValue> results) {
+      super(cache, lowerKey, upperKey, results, results);
+      this.results = results;
+    }
+
+    @Override
+    public QueryResponseMetadata getMetadata() {
+      return results.getMetadata();
+    }
+  }
+
+  private record CachedKeyValue(String key, byte[] value) implements KeyValue {
+
+    @Override
+    public String getKey() {
+      return key;
+    }
+
+    @Override
+    public byte[] getValue() {
+      return value;
+    }
+
+    @Override
+    public String getStringValue() {
+      return new String(value, StandardCharsets.UTF_8);
     }
   }
 
@@ -133,27 +836,65 @@ public final class WriteBackCachedStubMiddleware extends StubMiddleware {
     private boolean toDelete = false;
     private boolean dirty = false;
 
-    CachedItem(final String key, final byte[] value) {
+    /** Whether {@link #value} was read from the next layer, i.e., it is the original value. */
+    private boolean original;
+
+    /** Hash of the original value, once it has been overwritten; {@code null} if unknown. */
+    private byte[] originalHash;
+
+    private int originalLength;
+
+    private CachedItem(final String key, final byte[] value, final boolean original) {
       this.key = key;
       this.value = value;
+      this.original = original;
+    }
+
+    static CachedItem loaded(final String key, final byte[] value) {
+      return new CachedItem(key, value, true);
+    }
+
+    static CachedItem blind(final String key) {
+      return new CachedItem(key, null, false);
     }
 
     public void setValue(final byte[] value) {
       if (Arrays.equals(this.value, value)) return;
 
+      if (this.original && this.value != null) {
+        this.originalHash = sha256(this.value);
+        this.originalLength = this.value.length;
+      }
+      this.original = false;
       this.value = value;
-      this.dirty = true;
+      this.dirty = !isOriginal(value);
     }
 
     public void delete() {
       if (!this.toDelete) {
         this.toDelete = true;
         this.dirty = true;
+        this.value = null;
       }
     }
 
     public boolean hasValue() {
       return this.value != null;
     }
+
+    /** Estimated number of bytes held by this entry. */
+    long size() {
+      return ENTRY_OVERHEAD
+          + 2L * key.length()
+          + (value == null ? 0 : value.length)
+          + (originalHash == null ? 0 : originalHash.length);
+    }
+
+    private boolean isOriginal(final byte[] value) {
+      return originalHash != null
+          && value != null
+          && value.length == originalLength
+          && Arrays.equals(sha256(value), originalHash);
+    }
   }
 }
@@ -0,0 +1,132 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.registry;
+
+import com.jcabi.aspects.Loggable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A named counter that can be changed by concurrent transactions without MVCC read conflicts.
+ *
+ * <p>Every change is written blindly, i.e., without reading the current value, as a delta under a
+ * key of its own: object type {@value #COUNTER_TYPE}, attributes the name of the counter, the ID of
+ * the transaction and a sequence number. The value of the counter is the sum of its deltas, read
+ * with a partial composite key scan; {@link #compact()} folds the deltas into a single one.
+ *
+ * <p>As with every ledger read in Fabric, {@link #read()} does not see the changes made by the
+ * running transaction.
+ *
+ * @see Registry#counter(String)
+ */
+@Loggable(Loggable.DEBUG)
+public final class Counter {
+
+  /** Object type of the keys storing the deltas of counters. */
+  public static final String COUNTER_TYPE = "HYPERNATE~COUNTER";
+
+  private static final Logger logger = LoggerFactory.getLogger(Counter.class);
+
+  private final Registry registry;
+
+  private final ChaincodeStub stub;
+
+  private final String name;
+
+  Counter(final Registry registry, final ChaincodeStub stub, final String name) {
+    this.registry = registry;
+    this.stub = stub;
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Add to the counter without reading it.
+   *
+   * @param delta the amount to add; nothing is written if it is zero
+   */
+  public void increment(final long delta) {
+    if (delta == 0) {
+      return;
+    }
+
+    final String key =
+        stub.createCompositeKey(
+                COUNTER_TYPE, name, stub.getTxId(), registry.nextBlindWriteSequence())
+            .toString();
+    stub.putState(key, Long.toString(delta).getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Subtract from the counter without reading it.
+   *
+   * @param delta the amount to subtract
+   */
+  public void decrement(final long delta) {
+    increment(Math.negateExact(delta));
+  }
+
+  /**
+   * Read the value of the counter by summing its deltas.
+   *
+   * @return the value of the counter; {@code 0} if it was never changed
+   * @throws ArithmeticException if the value overflows a {@code long}
+   */
+  public long read() {
+    return sum(scanDeltas());
+  }
+
+  /**
+   * Replace the deltas of the counter with a single delta holding its value.
+   *
+   * <p>Compaction reads every delta, so it conflicts with transactions changing the counter in the
+   * same block; run it when the counter is not under load.
+   *
+   * @return the value of the counter
+   */
+  public long compact() {
+    final List<KeyValue> deltas = scanDeltas();
+    final long value = sum(deltas);
+    if (deltas.size() < 2) {
+      logger.debug("Counter {} has {} deltas -- nothing to compact", name, deltas.size());
+      return value;
+    }
+
+    deltas.forEach(kv -> stub.delState(kv.getKey()));
+    increment(value);
+    logger.debug("Compacted {} deltas of counter {} into {}", deltas.size(), name, value);
+    return value;
+  }
+
+  private List<KeyValue> scanDeltas() {
+    final List<KeyValue> deltas = new ArrayList<>();
+    final QueryResultsIterator<KeyValue> results =
+        stub.getStateByPartialCompositeKey(COUNTER_TYPE, name);
+    try {
+      results.forEach(deltas::add);
+    } finally {
+      try {
+        results.close();
+      } catch (Exception e) {
+        logger.warn("Failed to close query results iterator", e);
+      }
+    }
+    return deltas;
+  }
+
+  private static long sum(final List<KeyValue> deltas) {
+    long sum = 0;
+    for (final KeyValue kv : deltas) {
+      sum = Math.addExact(sum, Long.parseLong(kv.getStringValue()));
+    }
+    return sum;
+  }
+}
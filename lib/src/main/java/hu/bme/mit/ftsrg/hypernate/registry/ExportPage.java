@@ -0,0 +1,23 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.registry;
+
+/**
+ * A page of entities exported by {@link Registry#exportPage(Class, KeyRange, int, String)}.
+ *
+ * @param lines the entities as JSON lines, each terminated by a newline
+ * @param count the number of entities on the page
+ * @param bookmark the bookmark to pass to get the next page; empty if this is the last page
+ */
+public record ExportPage(String lines, int count, String bookmark) {
+
+  public ExportPage {
+    bookmark = bookmark == null ? "" : bookmark;
+  }
+
+  /**
+   * @return whether there might be further pages after this one
+   */
+  public boolean hasNext() {
+    return !bookmark.isEmpty();
+  }
+}
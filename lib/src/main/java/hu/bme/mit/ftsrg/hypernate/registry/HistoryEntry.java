@@ -0,0 +1,16 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.registry;
+
+import java.time.Instant;
+
+/**
+ * A version of an entity in its history.
+ *
+ * @param txId the ID of the transaction that wrote the version
+ * @param timestamp the timestamp of the transaction
+ * @param isDelete whether the transaction deleted the entity
+ * @param entity the entity as written by the transaction; {@code null} if it was deleted
+ * @param <T> the entity type
+ * @see Registry#history(Class, TimeWindow, Object...)
+ */
+public record HistoryEntry<T>(String txId, Instant timestamp, boolean isDelete, T entity) {}
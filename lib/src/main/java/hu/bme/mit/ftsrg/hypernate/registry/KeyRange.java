@@ -0,0 +1,52 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.registry;
+
+import java.util.Comparator;
+
+/**
+ * A contiguous range of the composite keys of an entity type, e.g., one part of a {@link
+ * KeySpaceSplitter split}.
+ *
+ * @param startKey the first key of the range (inclusive); {@code null} if unbounded
+ * @param endKey the end of the range (exclusive); {@code null} if unbounded
+ */
+public record KeyRange(String startKey, String endKey) {
+
+  /** The range containing every key. */
+  public static final KeyRange ALL = new KeyRange(null, null);
+
+  /**
+   * The order of the keys in the world state, i.e., the order of their UTF-8 bytes (or code
+   * points), which differs from {@link String#compareTo(String)} for supplementary characters.
+   */
+  public static final Comparator<String> KEY_ORDER = KeyRange::compareKeys;
+
+  public KeyRange {
+    if (startKey != null && endKey != null && KEY_ORDER.compare(endKey, startKey) < 0) {
+      throw new IllegalArgumentException("The end of the range must not precede its start");
+    }
+  }
+
+  public boolean contains(final String key) {
+    return (startKey == null || KEY_ORDER.compare(key, startKey) >= 0)
+        && (endKey == null || KEY_ORDER.compare(key, endKey) < 0);
+  }
+
+  private static int compareKeys(final String a, final String b) {
+    final int length = Math.min(a.length(), b.length());
+    for (int i = 0; i < length; i++) {
+      final char x = a.charAt(i);
+      final char y = b.charAt(i);
+      if (x != y) {
+        return codePointOrder(x) - codePointOrder(y);
+      }
+    }
+    return a.length() - b.length();
+  }
+
+  // UTF-16 sorts surrogates (i.e., supplementary code points) before U+E000..U+FFFF, UTF-8 after
+  private static int codePointOrder(final char c) {
+    if (c < 0xD800) return c;
+    return c >= 0xE000 ? c - 0x800 : c + 0x2000;
+  }
+}
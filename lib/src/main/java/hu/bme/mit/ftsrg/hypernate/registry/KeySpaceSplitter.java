@@ -0,0 +1,90 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.registry;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+
+/**
+ * Divides the key space of an entity type into ranges that can be exported or migrated in
+ * parallel, e.g., by different clients.
+ *
+ * <p>The ranges are contiguous and cover every key, whatever the keys are. The boundaries are
+ * spread evenly over the strings starting with {@code commonPrefix} and continuing with characters
+ * of {@code alphabet}, compared to the (mapped) value of the first primary key attribute, so the
+ * ranges are balanced if those values are spread evenly, too. For example, for zero-padded
+ * numbers below 10<sup>9</sup> mapped by {@link hu.bme.mit.ftsrg.hypernate.mappers.LongZeroPadder},
+ * use {@link #DIGITS} and a {@code commonPrefix} of ten zeros.
+ *
+ * @param alphabet the characters the first primary key attribute is made of after the common
+ *     prefix, in ascending order
+ * @param commonPrefix the prefix shared by the first primary key attribute of every entity
+ */
+public record KeySpaceSplitter(String alphabet, String commonPrefix) {
+
+  public static final String DIGITS = "0123456789";
+
+  public static final String HEX = "0123456789abcdef";
+
+  public static final String ALPHANUMERIC =
+      "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+  public static final KeySpaceSplitter DEFAULT = new KeySpaceSplitter(ALPHANUMERIC, "");
+
+  public KeySpaceSplitter {
+    if (alphabet == null || alphabet.length() < 2) {
+      throw new IllegalArgumentException("Alphabet must have at least two characters");
+    }
+    for (int i = 1; i < alphabet.length(); i++) {
+      if (alphabet.charAt(i - 1) >= alphabet.charAt(i)) {
+        throw new IllegalArgumentException("Alphabet must be in strictly ascending order");
+      }
+    }
+    commonPrefix = commonPrefix == null ? "" : commonPrefix;
+  }
+
+  /**
+   * Divide the key space of an entity type.
+   *
+   * @param clazz the class of the entity
+   * @param parts the number of ranges
+   * @return the ranges in key order; the first starts and the last ends unbounded
+   */
+  public List<KeyRange> split(final Class<?> clazz, final int parts) {
+    if (parts < 1) {
+      throw new IllegalArgumentException("Number of parts must be positive");
+    }
+
+    final String prefix = new CompositeKey(Registry.getObjectType(clazz)).toString() + commonPrefix;
+    final int radix = alphabet.length();
+    int length = 1;
+    long space = radix;
+    while (space < parts) {
+      length++;
+      space = Math.multiplyExact(space, radix);
+    }
+
+    final List<String> boundaries = new ArrayList<>(parts + 1);
+    boundaries.add(null);
+    for (int i = 1; i < parts; i++) {
+      boundaries.add(prefix + encode(i * space / parts, length));
+    }
+    boundaries.add(null);
+
+    final List<KeyRange> ranges = new ArrayList<>(parts);
+    for (int i = 0; i < parts; i++) {
+      ranges.add(new KeyRange(boundaries.get(i), boundaries.get(i + 1)));
+    }
+    return ranges;
+  }
+
+  private String encode(final long ordinal, final int length) {
+    final char[] digits = new char[length];
+    long remainder = ordinal;
+    for (int i = length - 1; i >= 0; i--) {
+      digits[i] = alphabet.charAt((int) (remainder % alphabet.length()));
+      remainder /= alphabet.length();
+    }
+    return new String(digits);
+  }
+}
@@ -0,0 +1,26 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.registry;
+
+import java.util.List;
+
+/**
+ * A page of the results of a paginated read.
+ *
+ * @param items the entities on the page
+ * @param bookmark the bookmark to pass to get the next page; empty if this is the last page
+ * @param <T> the entity type
+ */
+public record Page<T>(List<T> items, String bookmark) {
+
+  public Page {
+    items = List.copyOf(items);
+    bookmark = bookmark == null ? "" : bookmark;
+  }
+
+  /**
+   * @return whether there might be further pages after this one
+   */
+  public boolean hasNext() {
+    return !bookmark.isEmpty();
+  }
+}
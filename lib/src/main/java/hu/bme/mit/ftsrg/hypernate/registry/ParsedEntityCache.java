@@ -0,0 +1,218 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.registry;
+
+import hu.bme.mit.ftsrg.hypernate.annotations.SharedParseCache;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process-wide cache of parsed entities, keyed by the raw bytes they were parsed from.
+ *
+ * <p>Only used for entities annotated with {@link SharedParseCache}. The cache is bounded by the
+ * total size of the raw bytes it holds (see {@link #getMaxBytes()}), which it keeps a copy of for
+ * the lookups. When it is full, entries are evicted in CLOCK (second chance) order: an entry hit
+ * since the eviction hand last passed it is spared once, so frequently read entities stay cached
+ * without the bookkeeping of a strict LRU on every hit. Values larger than the whole cache are not
+ * cached.
+ */
+public final class ParsedEntityCache {
+
+  /** Total size of the cached raw values unless configured otherwise: 4 MiB. */
+  public static final long DEFAULT_MAX_BYTES = 4L * 1024 * 1024;
+
+  private static final Logger logger = LoggerFactory.getLogger(ParsedEntityCache.class);
+
+  private static final ParsedEntityCache instance = new ParsedEntityCache(DEFAULT_MAX_BYTES);
+
+  private final Map<ContentKey, Entry> entries = new ConcurrentHashMap<>();
+
+  /** The entries in insertion order, circled by the eviction hand. */
+  private final Queue<Entry> clock = new ConcurrentLinkedQueue<>();
+
+  private final AtomicLong bytes = new AtomicLong();
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  private volatile long maxBytes;
+
+  private volatile boolean enabled = true;
+
+  ParsedEntityCache(final long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Get the cache shared by all {@link Registry} instances.
+   *
+   * @return the shared cache
+   */
+  public static ParsedEntityCache getInstance() {
+    return instance;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Enable or disable the cache; while disabled, every entity is parsed and nothing is cached.
+   *
+   * @param enabled whether to use the cache
+   */
+  public void setEnabled(final boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Set the maximum total size of the raw values the cached entities were parsed from.
+   *
+   * @param maxBytes the new bound in bytes; {@code 0} effectively disables the cache
+   */
+  public void setMaxBytes(final long maxBytes) {
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("Maximum size must not be negative");
+    }
+    this.maxBytes = maxBytes;
+    evictOverflow();
+  }
+
+  /**
+   * Get the total size of the raw values of the cached entities.
+   *
+   * @return the size in bytes
+   */
+  public long getBytes() {
+    return bytes.get();
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /** Remove all cached entities. */
+  public void clear() {
+    Entry entry;
+    while ((entry = clock.poll()) != null) {
+      remove(entry);
+    }
+  }
+
+  /**
+   * Get the entity parsed from {@code buffer}, parsing and caching it if necessary.
+   *
+   * @param clazz the class of the entity
+   * @param buffer the raw bytes read from the ledger
+   * @param parser the function to parse {@code buffer} with on a cache miss
+   * @return the parsed entity
+   * @param <T> the entity type
+   */
+  <T> T get(final Class<T> clazz, final byte[] buffer, final Function<byte[], T> parser) {
+    if (!enabled) {
+      return parser.apply(buffer);
+    }
+
+    final Entry cached = entries.get(new ContentKey(clazz, buffer));
+    if (cached != null) {
+      hits.increment();
+      if (!cached.referenced) {
+        cached.referenced = true;
+      }
+      return clazz.cast(cached.entity);
+    }
+
+    misses.increment();
+    final T parsed = parser.apply(buffer);
+    if (parsed != null && buffer.length <= maxBytes) {
+      // Copy the bytes, the caller may reuse its buffer
+      final Entry entry = new Entry(new ContentKey(clazz, buffer.clone()), parsed);
+      if (entries.putIfAbsent(entry.key, entry) == null) {
+        clock.add(entry);
+        bytes.addAndGet(buffer.length);
+        evictOverflow();
+      }
+    }
+    return parsed;
+  }
+
+  private void evictOverflow() {
+    Entry entry;
+    while (bytes.get() > maxBytes && (entry = clock.poll()) != null) {
+      if (entry.referenced) {
+        // Second chance: clear the bit and move the entry behind the hand
+        entry.referenced = false;
+        clock.add(entry);
+      } else {
+        remove(entry);
+        logger.trace("Evicted parsed {} from the shared parse cache", entry.key.type().getName());
+      }
+    }
+  }
+
+  private void remove(final Entry entry) {
+    if (entries.remove(entry.key, entry)) {
+      bytes.addAndGet(-entry.key.content().length);
+    }
+  }
+
+  private static final class Entry {
+
+    private final ContentKey key;
+
+    private final Object entity;
+
+    /** Whether the entry was hit since the eviction hand last passed it. */
+    private volatile boolean referenced;
+
+    private Entry(final ContentKey key, final Object entity) {
+      this.key = key;
+      this.entity = entity;
+    }
+  }
+
+  private record ContentKey(Class<?> type, byte[] content, int hash) {
+
+    ContentKey(final Class<?> type, final byte[] content) {
+      this(type, content, 31 * type.hashCode() + Arrays.hashCode(content));
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      return o instanceof ContentKey other
+          && hash == other.hash
+          && type == other.type
+          && Arrays.equals(content, other.content);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public String toString() {
+      return "ContentKey[type=%s, length=%d]".formatted(type.getName(), content.length);
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.registry;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects attribute changes of an existing entity and applies them as a single patch.
+ *
+ * <pre>{@code
+ * registry.patchBuilder(Account.class, accountId)
+ *     .set("balance", newBalance)
+ *     .set("status", Status.FROZEN)
+ *     .apply();
+ * }</pre>
+ *
+ * @param <T> the entity type
+ * @see Registry#patch(Class, Map, Object...)
+ */
+public final class PatchBuilder<T> {
+
+  private final Registry registry;
+
+  private final Class<T> clazz;
+
+  private final Object[] keyParts;
+
+  private final Map<String, Object> changes = new LinkedHashMap<>();
+
+  PatchBuilder(final Registry registry, final Class<T> clazz, final Object[] keyParts) {
+    this.registry = registry;
+    this.clazz = clazz;
+    this.keyParts = keyParts;
+  }
+
+  /**
+   * Set the new value of an attribute; setting the same attribute again overrides the value.
+   *
+   * @param attribute the name of the attribute
+   * @param value the new value
+   * @return this builder
+   */
+  public PatchBuilder<T> set(final String attribute, final Object value) {
+    changes.put(attribute, value);
+    return this;
+  }
+
+  /**
+   * Apply the collected changes to the entity.
+   *
+   * @throws EntityNotFoundException if the entity was not found
+   */
+  public void apply() throws EntityNotFoundException {
+    registry.patch(clazz, changes, keyParts);
+  }
+}
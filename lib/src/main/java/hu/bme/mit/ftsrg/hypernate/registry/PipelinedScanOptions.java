@@ -0,0 +1,29 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.registry;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tuning parameters of {@link Registry#readAllPipelined(Class, PipelinedScanOptions)}.
+ *
+ * @param batchSize the number of raw values deserialized together by a worker
+ * @param maxInFlightBatches the number of batches that may be fetched but not yet deserialized;
+ *     fetching blocks when this limit is reached, bounding the memory held by raw values
+ * @param executor the executor deserializing the batches
+ */
+public record PipelinedScanOptions(int batchSize, int maxInFlightBatches, Executor executor) {
+
+  public static final PipelinedScanOptions DEFAULT =
+      new PipelinedScanOptions(
+          64, 2 * ForkJoinPool.getCommonPoolParallelism(), ForkJoinPool.commonPool());
+
+  public PipelinedScanOptions {
+    if (batchSize < 1 || maxInFlightBatches < 1) {
+      throw new IllegalArgumentException("Batch size and in-flight batch count must be positive");
+    }
+    if (executor == null) {
+      throw new IllegalArgumentException("Executor must not be null");
+    }
+  }
+}
@@ -2,35 +2,105 @@
 package hu.bme.mit.ftsrg.hypernate.registry;
 
 import com.jcabi.aspects.Loggable;
+import hu.bme.mit.ftsrg.hypernate.annotations.AppendOnly;
 import hu.bme.mit.ftsrg.hypernate.annotations.AttributeInfo;
+import hu.bme.mit.ftsrg.hypernate.annotations.Chunked;
 import hu.bme.mit.ftsrg.hypernate.annotations.PrimaryKey;
+import hu.bme.mit.ftsrg.hypernate.annotations.PrivateDataCollection;
+import hu.bme.mit.ftsrg.hypernate.annotations.QueryIndex;
+import hu.bme.mit.ftsrg.hypernate.annotations.SharedParseCache;
+import hu.bme.mit.ftsrg.hypernate.mappers.AttributeMapper;
+import hu.bme.mit.ftsrg.hypernate.mappers.IntegerZeroPadder;
+import hu.bme.mit.ftsrg.hypernate.metrics.EntityProfiler;
+import hu.bme.mit.ftsrg.hypernate.middleware.ConcurrentReadStubMiddleware;
+import hu.bme.mit.ftsrg.hypernate.middleware.StubMiddleware;
 import hu.bme.mit.ftsrg.hypernate.util.JSON;
+import java.io.ByteArrayOutputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 import lombok.experimental.UtilityClass;
 import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Entity-level access to the ledger.
+ *
+ * <p>Entities annotated with {@link PrivateDataCollection} are stored in the given private data
+ * collection, all other entities in the world state.
+ *
+ * <p>Attributes annotated with {@link Chunked} are split into chunks stored under the object type
+ * of the entity suffixed with {@value #CHUNK_TYPE_SUFFIX}, keyed by the primary keys of the entity,
+ * the name of the attribute and the index of the chunk. They are not read with the entity, but
+ * with {@link #loadChunked(Object, String)}.
+ *
+ * <p>The entries of {@link QueryIndex}es are stored under the object type of the entity followed
+ * by {@value #INDEX_TYPE_INFIX} and the name of the index, and are kept up to date by every create,
+ * update, patch and delete. They are queried with {@link #readByIndex(Class, String, Object...)}
+ * and, for covering indexes, {@link #readProjections(Class, String, Class, Object...)}.
+ *
+ * <p>The size of the serialized entities and the time spent serializing, deserializing and mapping
+ * their keys are recorded per entity type by the {@link EntityProfiler}.
+ */
 @Loggable(Loggable.DEBUG)
 public class Registry {
 
+  /** Suffix of the object type of the keys storing the chunks of {@link Chunked} attributes. */
+  public static final String CHUNK_TYPE_SUFFIX = "~CHUNK";
+
+  /** Infix between the object type of an entity and the name of its {@link QueryIndex}. */
+  public static final String INDEX_TYPE_INFIX = "~IDX~";
+
+  /** Value of the entries of indexes without {@link QueryIndex#include() included} attributes. */
+  private static final byte[] EMPTY_INDEX_ENTRY = "{}".getBytes(StandardCharsets.UTF_8);
+
+  /** Pads the sequence numbers of blind writes, so the keys of a transaction sort in order. */
+  private static final AttributeMapper sequencePadder = new IntegerZeroPadder();
+
   private static final Logger logger = LoggerFactory.getLogger(Registry.class);
 
   private final ChaincodeStub stub;
 
+  private int blindWriteSequence;
+
   public Registry(final ChaincodeStub stub) {
     this.stub = stub;
   }
 
+  /**
+   * Resolve everything needed to store and read an entity type ahead of the first transaction.
+   *
+   * <p>Otherwise this happens lazily on first use: the annotations are validated, the attribute
+   * mappers instantiated, the key fields looked up and the JSON serializers built. Called by {@code
+   * HypernateBootstrap} for the entities of a contract.
+   *
+   * @param clazz the class of the entity
+   * @throws MissingPrimaryKeysException if the class has neither a {@link PrimaryKey} nor an {@link
+   *     AppendOnly} annotation
+   * @throws RuntimeException if a mapper cannot be instantiated or a key attribute has no field
+   */
+  public static void prepare(final Class<?> clazz) {
+    EntityUtil.prepare(clazz);
+  }
+
   /**
    * Create a new entity.
    *
@@ -42,8 +112,12 @@ public class Registry {
     assertNotExists(entity);
 
     final String key = getCompositeKey(entity);
-    final byte[] buffer = EntityUtil.toBuffer(entity);
-    stub.putState(key, buffer);
+    final byte[] buffer =
+        EntityUtil.hasChunkedFields(entity.getClass())
+            ? writeChunks(entity, Map.of())
+            : EntityUtil.toBuffer(entity);
+    writeValue(entity.getClass(), key, buffer);
+    updateIndexEntries(entity.getClass(), Map.of(), getIndexEntries(entity));
   }
 
   /**
@@ -67,16 +141,48 @@ public class Registry {
   /**
    * Update an existing entity.
    *
+   * <p>{@link Chunked} attributes that are {@code null} are left as they are on the ledger; of the
+   * others, only the chunks that changed are written.
+   *
    * @param entity the entity to update
    * @param <T> the entity type
    * @throws EntityNotFoundException if the entity does not yet exist on the ledger
    */
   public <T> void mustUpdate(final T entity) throws EntityNotFoundException {
-    assertExists(entity);
+    final Class<?> clazz = entity.getClass();
+    final byte[] buffer;
+    Map<String, byte[]> previousIndexEntries = Map.of();
+    if (EntityUtil.hasChunkedFields(clazz) || EntityUtil.hasIndexes(clazz)) {
+      final byte[] stored = readStored(entity);
+      if (EntityUtil.hasIndexes(clazz)) {
+        previousIndexEntries = getIndexEntries(EntityUtil.fromBuffer(stored, clazz));
+      }
+      buffer =
+          EntityUtil.hasChunkedFields(clazz)
+              ? writeChunks(entity, JSON.readChunks(stored))
+              : EntityUtil.toBuffer(entity);
+    } else {
+      assertExists(entity);
+      buffer = EntityUtil.toBuffer(entity);
+    }
 
     final String key = getCompositeKey(entity);
-    final byte[] buffer = EntityUtil.toBuffer(entity);
-    stub.putState(key, buffer);
+    writeValue(clazz, key, buffer);
+    updateIndexEntries(clazz, previousIndexEntries, getIndexEntries(entity));
+  }
+
+  /**
+   * Create an entity, or update it if it already exists.
+   *
+   * <p>Nothing is written if the entity is stored with the same value already, so repeating an
+   * upsert is cheap.
+   *
+   * @param entity the entity to create or update
+   * @return {@code true} if the entity was created or changed, {@code false} if it was unchanged
+   * @param <T> the entity type
+   */
+  public <T> boolean upsert(final T entity) {
+    return upsert(entity, readValue(entity.getClass(), getCompositeKey(entity)));
   }
 
   /**
@@ -98,17 +204,95 @@ public class Registry {
   }
 
   /**
-   * Delete an existing entity.
+   * Update some attributes of an existing entity without deserializing and serializing all of it.
+   *
+   * <p>The stored value is changed in place, so the cost is proportional to the size of the stored
+   * value rather than to the complexity of the entity class. Primary key attributes cannot be
+   * patched, since that would move the entity to another key; neither can attributes of a {@link
+   * QueryIndex} or {@link Chunked} attributes. Patching an attribute {@link QueryIndex#include()
+   * included} in an index deserializes the entity to refresh its index entries.
+   *
+   * @param clazz the class of the entity
+   * @param changes the new values by attribute name
+   * @param keyParts the list of primary keys identifying the entity
+   * @param <T> the entity type
+   * @throws EntityNotFoundException if an entity with the given primary keys was not found
+   * @throws IllegalArgumentException if an attribute does not exist or cannot be patched, or its
+   *     new value does not fit its type
+   * @see #patchBuilder(Class, Object...)
+   */
+  public <T> void patch(
+      final Class<T> clazz, final Map<String, ?> changes, final Object... keyParts)
+      throws EntityNotFoundException {
+    EntityUtil.assertPatchable(clazz, changes.keySet());
+
+    final String key = getCompositeKey(clazz, keyParts);
+    final byte[] data = readValue(clazz, key);
+    if (data == null || data.length == 0) {
+      throw new EntityNotFoundException(key);
+    }
+
+    if (changes.isEmpty()) {
+      logger.debug("No changes to entity at key {} -- not writing it", key);
+      return;
+    }
+    final long start = System.nanoTime();
+    final byte[] patched = JSON.patch(data, clazz, changes);
+    EntityProfiler.getInstance()
+        .recordSerialization(clazz, patched.length, System.nanoTime() - start);
+    writeValue(clazz, key, patched);
+    if (EntityUtil.includesAny(clazz, changes.keySet())) {
+      updateIndexEntries(
+          clazz,
+          getIndexEntries(EntityUtil.fromBuffer(data, clazz)),
+          getIndexEntries(EntityUtil.fromBuffer(patched, clazz)));
+    }
+  }
+
+  /**
+   * Start building a patch of an existing entity.
+   *
+   * @param clazz the class of the entity
+   * @param keyParts the list of primary keys identifying the entity
+   * @return a builder collecting the changes, which updates the entity on {@link
+   *     PatchBuilder#apply()}
+   * @param <T> the entity type
+   * @see #patch(Class, Map, Object...)
+   */
+  public <T> PatchBuilder<T> patchBuilder(final Class<T> clazz, final Object... keyParts) {
+    return new PatchBuilder<>(this, clazz, keyParts);
+  }
+
+  /**
+   * Delete an existing entity, including the chunks of its {@link Chunked} attributes and its
+   * {@link QueryIndex} entries.
    *
    * @param entity the entity to delete
    * @param <T> the entity type
    * @throws EntityNotFoundException if the entity was not found in the ledger
    */
   public <T> void mustDelete(final T entity) throws EntityNotFoundException {
-    assertExists(entity);
+    final Class<?> clazz = entity.getClass();
+    if (EntityUtil.hasChunkedFields(clazz) || EntityUtil.hasIndexes(clazz)) {
+      final byte[] stored = readStored(entity);
+      if (EntityUtil.hasChunkedFields(clazz)) {
+        JSON.readChunks(stored)
+            .forEach(
+                (attribute, hashes) -> {
+                  for (int i = 0; i < hashes.size(); i++) {
+                    deleteValue(clazz, getChunkKey(entity, attribute, i));
+                  }
+                });
+      }
+      if (EntityUtil.hasIndexes(clazz)) {
+        updateIndexEntries(clazz, getIndexEntries(EntityUtil.fromBuffer(stored, clazz)), Map.of());
+      }
+    } else {
+      assertExists(entity);
+    }
 
     final String key = getCompositeKey(entity);
-    stub.delState(key);
+    deleteValue(entity.getClass(), key);
   }
 
   /**
@@ -139,23 +323,8 @@ public class Registry {
    * @throws EntityNotFoundException if an entity with the given primary keys was not found
    */
   public <T> T mustRead(Class<T> clazz, Object... keyParts) throws EntityNotFoundException {
-    int primaryKeyCount = EntityUtil.getPrimaryKeyCount(clazz);
-    if (primaryKeyCount == 0) {
-      throw new MissingPrimaryKeysException(
-          String.format("%s does not have a primary key annotation", clazz));
-    }
-
-    if (keyParts.length != primaryKeyCount) {
-      throw new IllegalArgumentException(
-          "The number of key parts provided does not match number of primary keys for "
-              + clazz.getName());
-    }
-
-    final String key =
-        stub.createCompositeKey(
-                EntityUtil.getType(clazz), EntityUtil.mapKeyPartsToString(clazz, keyParts))
-            .toString();
-    final byte[] data = stub.getState(key);
+    final String key = getCompositeKey(clazz, keyParts);
+    final byte[] data = readValue(clazz, key);
 
     if (data == null || data.length == 0) {
       throw new EntityNotFoundException(key);
@@ -181,6 +350,398 @@ public class Registry {
     }
   }
 
+  /**
+   * Load a {@link Chunked} attribute of an entity.
+   *
+   * <p>The chunks are fetched with a single {@link StubMiddleware#getStates(ChaincodeStub, List)}
+   * call (for entities in the world state), after reading the entity for the list of its chunks.
+   *
+   * @param entity the entity, e.g., as returned by {@link #mustRead(Class, Object...)}
+   * @param attribute the name of the attribute
+   * @return the value of the attribute, or {@code null} if it was never set
+   * @param <V> the type of the attribute
+   * @throws EntityNotFoundException if the entity was not found in the ledger
+   * @throws IllegalArgumentException if the attribute is not {@link Chunked}
+   * @throws SerializationException if a chunk is missing or the attribute could not be
+   *     deserialized
+   */
+  public <V> V loadChunked(final Object entity, final String attribute)
+      throws EntityNotFoundException {
+    final Field field = EntityUtil.getChunkedField(entity.getClass(), attribute);
+    final List<String> hashes = readChunks(entity).getOrDefault(attribute, List.of());
+    if (hashes.isEmpty()) {
+      return null;
+    }
+
+    final List<byte[]> chunks =
+        readValues(
+            entity.getClass(),
+            IntStream.range(0, hashes.size())
+                .mapToObj(i -> getChunkKey(entity, attribute, i))
+                .toList());
+    final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    for (int i = 0; i < chunks.size(); i++) {
+      final byte[] chunk = chunks.get(i);
+      if (chunk == null || chunk.length == 0) {
+        throw new SerializationException(
+            "Chunk %d of attribute '%s' is missing".formatted(i, attribute));
+      }
+      buffer.writeBytes(chunk);
+    }
+    logger.debug("Loaded {} bytes in {} chunks of '{}'", buffer.size(), chunks.size(), attribute);
+    return JSON.deserialize(buffer.toString(StandardCharsets.UTF_8), field.getGenericType());
+  }
+
+  /**
+   * Read multiple entities of the same type at once.
+   *
+   * <p>The values are fetched with a single {@link StubMiddleware#getStates(ChaincodeStub, List)}
+   * call, so a middleware such as {@link ConcurrentReadStubMiddleware} can overlap the round-trips.
+   * Duplicate keys are read and deserialized only once.
+   *
+   * @param clazz the class of the entities
+   * @param keys the primary keys identifying each entity
+   * @return the entities in the order of {@code keys}, with {@code null} for those not found
+   * @param <T> the entity type
+   * @throws SerializationException if an entity could not be deserialized; the first such entity
+   *     in the order of {@code keys} is reported
+   */
+  public <T> List<T> readMany(final Class<T> clazz, final List<Object[]> keys) {
+    final List<String> compositeKeys =
+        keys.stream().map(keyParts -> getCompositeKey(clazz, keyParts)).toList();
+    final List<byte[]> values = readValues(clazz, compositeKeys);
+
+    final Map<String, T> entities = new HashMap<>();
+    final List<T> results = new ArrayList<>(keys.size());
+    for (int i = 0; i < compositeKeys.size(); i++) {
+      final byte[] value = values.get(i);
+      if (value == null || value.length == 0) {
+        logger.debug("Entity at key {} not found -- returning null", compositeKeys.get(i));
+        results.add(null);
+      } else {
+        results.add(
+            entities.computeIfAbsent(
+                compositeKeys.get(i), key -> EntityUtil.fromBuffer(value, clazz)));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Read the entities matching a {@link QueryIndex}.
+   *
+   * <p>The index is scanned for the matching entries, then the entities are fetched with a single
+   * {@link StubMiddleware#getStates(ChaincodeStub, List)} call (for entities in the world state).
+   * If the index includes every attribute needed, {@link #readProjections(Class, String, Class,
+   * Object...)} avoids fetching the entities.
+   *
+   * @param clazz the class of the entities
+   * @param indexName the name of the index
+   * @param indexKeyParts the values of the first (or all) attributes of the index
+   * @return the matching entities in the order of the index
+   * @param <T> the entity type
+   * @throws IllegalArgumentException if the entity has no such index, or more values are given
+   *     than the index has attributes
+   */
+  public <T> List<T> readByIndex(
+      final Class<T> clazz, final String indexName, final Object... indexKeyParts) {
+    final int primaryKeyCount = EntityUtil.getPrimaryKeyCount(clazz);
+    final List<String> keys = new ArrayList<>();
+    final QueryResultsIterator<KeyValue> results =
+        scanValues(clazz, getIndexKey(clazz, indexName, indexKeyParts));
+    try {
+      for (final KeyValue kv : results) {
+        final List<String> attributes = stub.splitCompositeKey(kv.getKey()).getAttributes();
+        keys.add(
+            stub.createCompositeKey(
+                    EntityUtil.getType(clazz),
+                    attributes
+                        .subList(attributes.size() - primaryKeyCount, attributes.size())
+                        .toArray(String[]::new))
+                .toString());
+      }
+    } finally {
+      closeQuietly(results);
+    }
+
+    final List<byte[]> values = readValues(clazz, keys);
+    final List<T> entities = new ArrayList<>(keys.size());
+    for (int i = 0; i < keys.size(); i++) {
+      final byte[] value = values.get(i);
+      if (value == null || value.length == 0) {
+        logger.warn("Index '{}' refers to missing entity at key {}", indexName, keys.get(i));
+      } else {
+        entities.add(EntityUtil.fromBuffer(value, clazz));
+      }
+    }
+    return entities;
+  }
+
+  /**
+   * Read the {@link QueryIndex#include() included} attributes of the entities matching a covering
+   * {@link QueryIndex}, straight from the entries of the index.
+   *
+   * <p>A single scan of the index answers the query; the entities themselves are not read.
+   *
+   * @param clazz the class of the entities
+   * @param indexName the name of the index
+   * @param projection the class to deserialize the included attributes of each entity into; all of
+   *     its properties must be included in the index
+   * @param indexKeyParts the values of the first (or all) attributes of the index
+   * @return the projections of the matching entities in the order of the index
+   * @param <P> the projection type
+   * @throws IllegalArgumentException if the entity has no such index, more values are given than
+   *     the index has attributes, or the projection has a property not included in the index
+   */
+  public <P> List<P> readProjections(
+      final Class<?> clazz,
+      final String indexName,
+      final Class<P> projection,
+      final Object... indexKeyParts) {
+    final QueryIndex index = EntityUtil.getIndex(clazz, indexName);
+    final Set<String> missing = new TreeSet<>(JSON.propertyNames(projection));
+    missing.removeAll(Arrays.asList(index.include()));
+    if (!missing.isEmpty()) {
+      throw new IllegalArgumentException(
+          "Index '%s' of %s does not include %s of %s"
+              .formatted(indexName, clazz.getName(), missing, projection.getName()));
+    }
+
+    final List<P> projections = new ArrayList<>();
+    final QueryResultsIterator<KeyValue> results =
+        scanValues(clazz, getIndexKey(clazz, indexName, indexKeyParts));
+    try {
+      results.forEach(kv -> projections.add(JSON.deserializeProjection(kv.getValue(), projection)));
+    } finally {
+      closeQuietly(results);
+    }
+    return projections;
+  }
+
+  /**
+   * Stream the whole history of an entity.
+   *
+   * @param clazz the class of the entity
+   * @param keyParts the list of primary keys identifying the entity
+   * @return the versions of the entity, newest first; close the stream when done
+   * @param <T> the entity type
+   * @see #history(Class, TimeWindow, Object...)
+   */
+  public <T> Stream<HistoryEntry<T>> history(final Class<T> clazz, final Object... keyParts) {
+    return history(clazz, TimeWindow.ALL, keyParts);
+  }
+
+  /**
+   * Stream the history of an entity within a time window.
+   *
+   * <p>The stream is lazy: the history is fetched from the peer as it is consumed, and a version is
+   * deserialized only when it reaches the end of the pipeline, so filtering versions or
+   * short-circuiting (e.g., with {@link Stream#limit(long)}) avoids deserializing the rest. Fabric
+   * returns the history newest first; the versions newer than the window are skipped, and the
+   * stream ends at the first version older than the window.
+   *
+   * <p>The stream holds a query iterator open on the peer, so close it, e.g., with
+   * try-with-resources.
+   *
+   * @param clazz the class of the entity
+   * @param window the window of transaction timestamps to return versions from
+   * @param keyParts the list of primary keys identifying the entity
+   * @return the versions of the entity within the window, newest first
+   * @param <T> the entity type
+   * @throws UnsupportedOperationException if the entity is stored in a private data collection,
+   *     whose history Fabric does not keep
+   */
+  public <T> Stream<HistoryEntry<T>> history(
+      final Class<T> clazz, final TimeWindow window, final Object... keyParts) {
+    if (EntityUtil.getCollection(clazz) != null) {
+      throw new UnsupportedOperationException("Fabric does not keep the history of private data");
+    }
+
+    final String key = getCompositeKey(clazz, keyParts);
+    final QueryResultsIterator<KeyModification> results = stub.getHistoryForKey(key);
+    return StreamSupport.stream(results.spliterator(), false)
+        .onClose(() -> closeQuietly(results))
+        .filter(modification -> !window.isAfterEnd(modification.getTimestamp()))
+        .takeWhile(modification -> !window.isBeforeStart(modification.getTimestamp()))
+        .map(
+            modification ->
+                new HistoryEntry<>(
+                    modification.getTxId(),
+                    modification.getTimestamp(),
+                    modification.isDeleted(),
+                    modification.isDeleted()
+                        ? null
+                        : EntityUtil.fromBuffer(modification.getValue(), clazz)));
+  }
+
+  /**
+   * Append a record to its parent without reading or rewriting anything.
+   *
+   * <p>The record is written under the object type of its class, keyed by its {@link
+   * AppendOnly#parent()} and {@link AppendOnly#ordering()} attributes, the ID of the transaction
+   * and a zero-padded sequence number, so concurrent appenders do not conflict and the records of a
+   * transaction are read back in the order they were appended. The sequence number is kept by
+   * the {@code Registry}, so use a single {@code Registry} per transaction (as {@code
+   * HypernateContext} does).
+   *
+   * @param record the record to append
+   * @param <T> the record type
+   * @throws IllegalArgumentException if the class of the record is not {@link AppendOnly}
+   */
+  public <T> void append(final T record) {
+    final AppendOnly appendOnly = EntityUtil.getAppendOnlyAnnot(record.getClass());
+    final List<String> attributes = new ArrayList<>();
+    attributes.addAll(Arrays.asList(EntityUtil.getAttributeKeys(record, appendOnly.parent())));
+    attributes.addAll(Arrays.asList(EntityUtil.getAttributeKeys(record, appendOnly.ordering())));
+    attributes.add(stub.getTxId());
+    attributes.add(nextBlindWriteSequence());
+
+    final String key =
+        stub.createCompositeKey(EntityUtil.getType(record), attributes.toArray(String[]::new))
+            .toString();
+    writeValue(record.getClass(), key, EntityUtil.toBuffer(record));
+  }
+
+  /**
+   * Read all records appended to a parent.
+   *
+   * @param clazz the class of the records
+   * @param parentKeyParts the values of the {@link AppendOnly#parent()} attributes
+   * @return the records in key order, i.e., ordered by their {@link AppendOnly#ordering()}
+   *     attributes, then by the appending transaction, then in the order they were appended
+   * @param <T> the record type
+   */
+  public <T> List<T> readAllAppended(final Class<T> clazz, final Object... parentKeyParts) {
+    final String partialKey = getAppendOnlyParentKey(clazz, parentKeyParts).toString();
+    final List<T> records = new ArrayList<>();
+    final QueryResultsIterator<KeyValue> results = scanValues(clazz, partialKey);
+    try {
+      results.forEach(kv -> records.add(EntityUtil.fromBuffer(kv.getValue(), clazz)));
+    } finally {
+      closeQuietly(results);
+    }
+    return records;
+  }
+
+  /**
+   * Read a page of the records appended to a parent.
+   *
+   * <p>Fabric only allows paginated queries in transactions that do not write, and not on private
+   * data collections.
+   *
+   * @param clazz the class of the records
+   * @param pageSize the maximum number of records on the page
+   * @param bookmark the bookmark of the previous page, or empty for the first page
+   * @param parentKeyParts the values of the {@link AppendOnly#parent()} attributes
+   * @return the records of the page in key order and the bookmark of the next page
+   * @param <T> the record type
+   * @throws UnsupportedOperationException if the records are stored in a private data collection
+   */
+  public <T> Page<T> readAppended(
+      final Class<T> clazz,
+      final int pageSize,
+      final String bookmark,
+      final Object... parentKeyParts) {
+    if (EntityUtil.getCollection(clazz) != null) {
+      throw new UnsupportedOperationException(
+          "Paginated queries are not supported on private data; use readAllAppended instead");
+    }
+
+    final CompositeKey partialKey = getAppendOnlyParentKey(clazz, parentKeyParts);
+    final List<T> records = new ArrayList<>(pageSize);
+    final QueryResultsIteratorWithMetadata<KeyValue> results =
+        stub.getStateByPartialCompositeKeyWithPagination(
+            partialKey, pageSize, bookmark == null ? "" : bookmark);
+    try {
+      results.forEach(kv -> records.add(EntityUtil.fromBuffer(kv.getValue(), clazz)));
+      final String next =
+          records.size() < pageSize || results.getMetadata() == null
+              ? ""
+              : results.getMetadata().getBookmark();
+      return new Page<>(records, next);
+    } finally {
+      closeQuietly(results);
+    }
+  }
+
+  /**
+   * Get a counter that concurrent transactions can change without MVCC read conflicts.
+   *
+   * <p>The deltas written by a transaction are numbered by its {@code Registry}, so use a single
+   * {@code Registry} per transaction (as {@code HypernateContext} does).
+   *
+   * @param name the name of the counter
+   * @return the counter
+   */
+  public Counter counter(final String name) {
+    return new Counter(this, stub, name);
+  }
+
+  String nextBlindWriteSequence() {
+    return sequencePadder.apply(blindWriteSequence++);
+  }
+
+  static String getObjectType(final Class<?> clazz) {
+    return EntityUtil.getType(clazz);
+  }
+
+  /**
+   * Get the prefixes of the keys storing the entities of a type, their {@link Chunked} attributes
+   * and their {@link QueryIndex} entries.
+   *
+   * @param clazz the class of the entity
+   * @return the key prefixes in the world state (or in the private data collection)
+   */
+  public static List<String> getKeyPrefixes(final Class<?> clazz) {
+    final String type = EntityUtil.getType(clazz);
+    return List.of(
+        new CompositeKey(type).toString(),
+        new CompositeKey(type + CHUNK_TYPE_SUFFIX).toString(),
+        CompositeKey.NAMESPACE + type + INDEX_TYPE_INFIX);
+  }
+
+  static String[] getKeyAttributes(final Class<?> clazz, final Object... keyParts) {
+    checkKeyCount(clazz, keyParts.length);
+    return EntityUtil.mapKeyPartsToString(clazz, keyParts);
+  }
+
+  static <T> T parse(final byte[] buffer, final Class<T> clazz) {
+    return EntityUtil.fromBuffer(buffer, clazz);
+  }
+
+  /**
+   * Whether the entities of a type can be read by a {@link RemoteRegistry}: they are stored in the
+   * world state, have a primary key and have no {@link Chunked} attributes.
+   */
+  static boolean isRemotelyReadable(final Class<?> clazz) {
+    return EntityUtil.getPrimaryKeyCount(clazz) > 0
+        && EntityUtil.getCollection(clazz) == null
+        && !EntityUtil.hasChunkedFields(clazz);
+  }
+
+  /**
+   * Read the stored values of multiple entities of the same type at once, for a {@link
+   * RemoteRegistry}.
+   *
+   * @param clazz the class of the entities
+   * @param keyAttributes the mapped primary keys of each entity, see {@link
+   *     #getKeyAttributes(Class, Object...)}
+   * @return the stored values in the order of {@code keyAttributes}, with {@code null} for the
+   *     entities not found
+   */
+  List<byte[]> readStored(final Class<?> clazz, final List<List<String>> keyAttributes) {
+    final List<String> keys = new ArrayList<>(keyAttributes.size());
+    for (final List<String> attributes : keyAttributes) {
+      checkKeyCount(clazz, attributes.size());
+      keys.add(
+          stub.createCompositeKey(EntityUtil.getType(clazz), attributes.toArray(String[]::new))
+              .toString());
+    }
+
+    final List<byte[]> values = readValues(clazz, keys);
+    return values.stream().map(value -> value == null || value.length == 0 ? null : value).toList();
+  }
+
   /**
    * Read all entities of a given type.
    *
@@ -190,7 +751,7 @@ public class Registry {
    */
   public <T> List<T> readAll(final Class<T> clazz) {
     final String key = stub.createCompositeKey(EntityUtil.getType(clazz)).toString();
-    Iterator<KeyValue> iterator = stub.getStateByPartialCompositeKey(key).iterator();
+    Iterator<KeyValue> iterator = scanValues(clazz, key).iterator();
     Iterable<KeyValue> iterable = () -> iterator;
     return StreamSupport.stream(iterable.spliterator(), false)
         .map(
@@ -206,15 +767,395 @@ public class Registry {
         .collect(Collectors.toList());
   }
 
+  /**
+   * Read all entities of a given type using the {@link PipelinedScanOptions#DEFAULT default}
+   * pipeline settings.
+   *
+   * @param clazz the class of the entity
+   * @return a list of all entities read (might be empty)
+   * @param <T> the entity type
+   * @see #readAllPipelined(Class, PipelinedScanOptions)
+   */
+  public <T> List<T> readAllPipelined(final Class<T> clazz) {
+    return readAllPipelined(clazz, PipelinedScanOptions.DEFAULT);
+  }
+
+  /**
+   * Read all entities of a given type, deserializing them on worker threads while the next results
+   * are being fetched.
+   *
+   * <p>Results are fetched from the stub on the calling thread in batches of {@link
+   * PipelinedScanOptions#batchSize()}, and each batch is handed over to the executor for
+   * deserialization. Fetching waits for the oldest batch when {@link
+   * PipelinedScanOptions#maxInFlightBatches()} batches are pending. The order of the returned
+   * entities is the same as the order of the ledger's results.
+   *
+   * @param clazz the class of the entity
+   * @param options the pipeline settings
+   * @return a list of all entities read (might be empty)
+   * @param <T> the entity type
+   * @throws SerializationException if any of the entities could not be deserialized
+   */
+  public <T> List<T> readAllPipelined(final Class<T> clazz, final PipelinedScanOptions options) {
+    final String key = stub.createCompositeKey(EntityUtil.getType(clazz)).toString();
+    final Deque<CompletableFuture<List<T>>> inFlight = new ArrayDeque<>();
+    final List<T> entities = new ArrayList<>();
+
+    final QueryResultsIterator<KeyValue> results = scanValues(clazz, key);
+    try {
+      List<byte[]> batch = new ArrayList<>(options.batchSize());
+      for (final KeyValue kv : results) {
+        batch.add(kv.getValue());
+        if (batch.size() == options.batchSize()) {
+          if (inFlight.size() == options.maxInFlightBatches()) {
+            entities.addAll(await(inFlight.removeFirst()));
+          }
+          inFlight.addLast(deserializeAsync(batch, clazz, options));
+          batch = new ArrayList<>(options.batchSize());
+        }
+      }
+      if (!batch.isEmpty()) {
+        inFlight.addLast(deserializeAsync(batch, clazz, options));
+      }
+
+      while (!inFlight.isEmpty()) {
+        entities.addAll(await(inFlight.removeFirst()));
+      }
+    } finally {
+      inFlight.forEach(f -> f.cancel(false));
+      closeQuietly(results);
+    }
+
+    logger.debug("Read {} entities of type {} through the pipeline", entities.size(), clazz);
+    return entities;
+  }
+
+  /**
+   * Export a page of all entities of a given type.
+   *
+   * @param clazz the class of the entities
+   * @param pageSize the maximum number of entities on the page
+   * @param bookmark the bookmark of the previous page, or empty for the first page
+   * @return the page of entities as JSON lines
+   * @see #exportPage(Class, KeyRange, int, String)
+   */
+  public ExportPage exportPage(final Class<?> clazz, final int pageSize, final String bookmark) {
+    return exportPage(clazz, KeyRange.ALL, pageSize, bookmark);
+  }
+
+  /**
+   * Export a page of the entities of a given type within a key range, e.g., for a migration.
+   *
+   * <p>The entities are exported as stored, one compact JSON document per line, without
+   * deserializing them. Pages can be {@link #importPage(Class, String) imported} into another
+   * channel or chaincode. Split the key space with a {@link KeySpaceSplitter} to export the ranges
+   * in parallel.
+   *
+   * <p>The first page of a range starts at {@link KeyRange#startKey()}, passed to the peer as the
+   * bookmark; the bookmarks of range queries are the next key to return. Fabric only allows
+   * paginated queries in transactions that do not write, and not on private data collections.
+   *
+   * @param clazz the class of the entities
+   * @param range the range of keys to export
+   * @param pageSize the maximum number of entities on the page
+   * @param bookmark the bookmark of the previous page, or empty for the first page of the range
+   * @return the page of entities as JSON lines and the bookmark of the next page of the range
+   * @throws UnsupportedOperationException if the entities are stored in a private data collection
+   *     or have {@link Chunked} attributes, whose chunks are not exported
+   */
+  public ExportPage exportPage(
+      final Class<?> clazz, final KeyRange range, final int pageSize, final String bookmark) {
+    if (EntityUtil.getCollection(clazz) != null) {
+      throw new UnsupportedOperationException(
+          "Paginated queries are not supported on private data");
+    }
+    if (EntityUtil.hasChunkedFields(clazz)) {
+      throw new UnsupportedOperationException(
+          "Cannot export %s: chunked attributes are not exported".formatted(clazz.getName()));
+    }
+    if (pageSize < 1) {
+      throw new IllegalArgumentException("Page size must be positive");
+    }
+
+    final String start =
+        bookmark == null || bookmark.isEmpty()
+            ? Objects.requireNonNullElse(range.startKey(), "")
+            : bookmark;
+    final StringBuilder lines = new StringBuilder();
+    int count = 0;
+    boolean rangeEnded = false;
+    final QueryResultsIteratorWithMetadata<KeyValue> results =
+        stub.getStateByPartialCompositeKeyWithPagination(
+            stub.createCompositeKey(EntityUtil.getType(clazz)), pageSize, start);
+    try {
+      for (final KeyValue kv : results) {
+        if (!range.contains(kv.getKey())) {
+          rangeEnded = true;
+          break;
+        }
+        lines.append(kv.getStringValue()).append('\n');
+        count++;
+      }
+      final String next =
+          rangeEnded || count < pageSize || results.getMetadata() == null
+              ? ""
+              : results.getMetadata().getBookmark();
+      logger.debug("Exported {} entities of type {}", count, clazz.getName());
+      return new ExportPage(lines.toString(), count, next);
+    } finally {
+      closeQuietly(results);
+    }
+  }
+
+  /**
+   * Import a page of entities, creating the missing ones and updating the others.
+   *
+   * <p>The stored values are fetched with a single {@link StubMiddleware#getStates(ChaincodeStub,
+   * List)} call (for entities in the world state), and entities stored with the same value already
+   * are not written, so importing a page again (e.g., after a failed transaction) is idempotent
+   * and cheap. Import one page per transaction; if an entity occurs more than once, its last line
+   * wins.
+   *
+   * @param clazz the class of the entities
+   * @param lines the entities as JSON lines, e.g., {@link ExportPage#lines()}; blank lines are
+   *     skipped
+   * @return the number of entities created or changed
+   * @param <T> the entity type
+   * @throws SerializationException if a line could not be deserialized
+   */
+  public <T> int importPage(final Class<T> clazz, final String lines) {
+    final Map<String, T> entities = new LinkedHashMap<>();
+    lines
+        .lines()
+        .filter(line -> !line.isBlank())
+        .map(line -> EntityUtil.fromBuffer(line.getBytes(StandardCharsets.UTF_8), clazz))
+        .forEach(
+            entity -> {
+              final String key = getCompositeKey(entity);
+              entities.remove(key);
+              entities.put(key, entity);
+            });
+
+    final List<byte[]> stored = readValues(clazz, List.copyOf(entities.keySet()));
+    int written = 0;
+    int i = 0;
+    for (final T entity : entities.values()) {
+      if (upsert(entity, stored.get(i++))) {
+        written++;
+      }
+    }
+    logger.debug("Imported {} entities of type {}, {} changed", i, clazz.getName(), written);
+    return written;
+  }
+
+  private static <T> CompletableFuture<List<T>> deserializeAsync(
+      final List<byte[]> batch, final Class<T> clazz, final PipelinedScanOptions options) {
+    return CompletableFuture.supplyAsync(
+        () -> batch.stream().map(value -> EntityUtil.fromBuffer(value, clazz)).toList(),
+        options.executor());
+  }
+
+  private static <T> List<T> await(final CompletableFuture<List<T>> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for deserialization", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw new SerializationException("Failed to deserialize entity", e.getCause());
+    }
+  }
+
+  private static void closeQuietly(final AutoCloseable closeable) {
+    try {
+      closeable.close();
+    } catch (Exception e) {
+      logger.warn("Failed to close query results iterator", e);
+    }
+  }
+
   @Loggable(Loggable.DEBUG)
-  private boolean keyExists(final String key) {
-    final byte[] valueOnLedger = stub.getState(key);
+  private boolean keyExists(final Class<?> clazz, final String key) {
+    final PrivateDataCollection collection = EntityUtil.getCollection(clazz);
+    final byte[] valueOnLedger;
+    if (collection != null && !isMember(collection)) {
+      logger.debug("Not a member of collection {}; checking hash only", collection.name());
+      valueOnLedger = stub.getPrivateDataHash(collection.name(), key);
+    } else {
+      valueOnLedger = readValue(clazz, key);
+    }
     return valueOnLedger != null && valueOnLedger.length > 0;
   }
 
   @Loggable(Loggable.DEBUG)
   private <T> boolean exists(final T ent) {
-    return keyExists(getCompositeKey(ent));
+    return keyExists(ent.getClass(), getCompositeKey(ent));
+  }
+
+  private boolean isMember(final PrivateDataCollection collection) {
+    return collection.members().length == 0
+        || Arrays.asList(collection.members()).contains(stub.getMspId());
+  }
+
+  private byte[] readValue(final Class<?> clazz, final String key) {
+    final PrivateDataCollection collection = EntityUtil.getCollection(clazz);
+    return collection == null
+        ? stub.getState(key)
+        : stub.getPrivateData(collection.name(), key);
+  }
+
+  private <T> Map<String, List<String>> readChunks(final T entity)
+      throws EntityNotFoundException {
+    return JSON.readChunks(readStored(entity));
+  }
+
+  private <T> byte[] readStored(final T entity) throws EntityNotFoundException {
+    final String key = getCompositeKey(entity);
+    final byte[] value = readValue(entity.getClass(), key);
+    if (value == null || value.length == 0) {
+      throw new EntityNotFoundException(key);
+    }
+
+    return value;
+  }
+
+  private <T> boolean upsert(final T entity, final byte[] stored) {
+    final Class<?> clazz = entity.getClass();
+    final boolean exists = stored != null && stored.length > 0;
+    final byte[] buffer =
+        EntityUtil.hasChunkedFields(clazz)
+            ? writeChunks(entity, exists ? JSON.readChunks(stored) : Map.of())
+            : EntityUtil.toBuffer(entity);
+    if (exists && Arrays.equals(stored, buffer)) {
+      logger.debug("{} is stored with the same value already -- not writing it", entity);
+      return false;
+    }
+
+    writeValue(clazz, getCompositeKey(entity), buffer);
+    updateIndexEntries(
+        clazz,
+        exists && EntityUtil.hasIndexes(clazz)
+            ? getIndexEntries(EntityUtil.fromBuffer(stored, clazz))
+            : Map.of(),
+        getIndexEntries(entity));
+    return true;
+  }
+
+  private Map<String, byte[]> getIndexEntries(final Object entity) {
+    final List<QueryIndex> indexes = EntityUtil.getIndexes(entity.getClass());
+    if (indexes.isEmpty()) {
+      return Map.of();
+    }
+
+    final String[] primaryKeys = EntityUtil.getPrimaryKeys(entity);
+    final Map<String, byte[]> entries = new HashMap<>();
+    for (final QueryIndex index : indexes) {
+      final String[] indexKeys = EntityUtil.getIndexKeys(entity, index);
+      if (indexKeys == null) {
+        logger.debug("Index attribute of '{}' is null -- not indexing {}", index.name(), entity);
+        continue;
+      }
+
+      final String[] attributes = Arrays.copyOf(indexKeys, indexKeys.length + primaryKeys.length);
+      System.arraycopy(primaryKeys, 0, attributes, indexKeys.length, primaryKeys.length);
+      final String key =
+          stub.createCompositeKey(EntityUtil.getIndexType(entity.getClass(), index), attributes)
+              .toString();
+      entries.put(
+          key,
+          index.include().length == 0
+              ? EMPTY_INDEX_ENTRY
+              : JSON.project(entity, index.include()));
+    }
+    return entries;
+  }
+
+  private void updateIndexEntries(
+      final Class<?> clazz,
+      final Map<String, byte[]> previousEntries,
+      final Map<String, byte[]> entries) {
+    previousEntries.keySet().stream()
+        .filter(key -> !entries.containsKey(key))
+        .forEach(key -> deleteValue(clazz, key));
+    entries.forEach(
+        (key, value) -> {
+          if (!Arrays.equals(previousEntries.get(key), value)) {
+            writeValue(clazz, key, value);
+          }
+        });
+  }
+
+  private <T> byte[] writeChunks(final T entity, final Map<String, List<String>> previousChunks) {
+    final Map<String, List<String>> chunks = new TreeMap<>();
+    for (final Field field : EntityUtil.getChunkedFields(entity.getClass())) {
+      final String attribute = field.getName();
+      final List<String> previousHashes = previousChunks.getOrDefault(attribute, List.of());
+      final Object value = EntityUtil.getFieldValue(entity, field);
+      if (value == null) {
+        logger.debug("Chunked attribute '{}' is not set -- keeping stored chunks", attribute);
+        chunks.put(attribute, previousHashes);
+        continue;
+      }
+
+      final byte[] buffer = JSON.serialize(value).getBytes(StandardCharsets.UTF_8);
+      final int chunkSize = field.getAnnotation(Chunked.class).chunkSize();
+      final List<String> hashes = new ArrayList<>();
+      for (int offset = 0, i = 0; offset < buffer.length; offset += chunkSize, i++) {
+        final byte[] chunk =
+            Arrays.copyOfRange(buffer, offset, Math.min(buffer.length, offset + chunkSize));
+        final String hash = EntityUtil.hash(chunk);
+        hashes.add(hash);
+        if (i >= previousHashes.size() || !previousHashes.get(i).equals(hash)) {
+          writeValue(entity.getClass(), getChunkKey(entity, attribute, i), chunk);
+        }
+      }
+      for (int i = hashes.size(); i < previousHashes.size(); i++) {
+        deleteValue(entity.getClass(), getChunkKey(entity, attribute, i));
+      }
+      chunks.put(attribute, hashes);
+    }
+
+    final long start = System.nanoTime();
+    final byte[] serialized = JSON.serializeWithChunks(entity, chunks);
+    EntityProfiler.getInstance()
+        .recordSerialization(entity.getClass(), serialized.length, System.nanoTime() - start);
+    return serialized;
+  }
+
+  private List<byte[]> readValues(final Class<?> clazz, final List<String> keys) {
+    final PrivateDataCollection collection = EntityUtil.getCollection(clazz);
+    return collection == null
+        ? StubMiddleware.getStates(stub, keys)
+        : StubMiddleware.getPrivateData(stub, collection.name(), keys);
+  }
+
+  private void writeValue(final Class<?> clazz, final String key, final byte[] value) {
+    final PrivateDataCollection collection = EntityUtil.getCollection(clazz);
+    if (collection == null) {
+      stub.putState(key, value);
+    } else {
+      stub.putPrivateData(collection.name(), key, value);
+    }
+  }
+
+  private void deleteValue(final Class<?> clazz, final String key) {
+    final PrivateDataCollection collection = EntityUtil.getCollection(clazz);
+    if (collection == null) {
+      stub.delState(key);
+    } else {
+      stub.delPrivateData(collection.name(), key);
+    }
+  }
+
+  private QueryResultsIterator<KeyValue> scanValues(
+      final Class<?> clazz, final String partialKey) {
+    final PrivateDataCollection collection = EntityUtil.getCollection(clazz);
+    return collection == null
+        ? stub.getStateByPartialCompositeKey(partialKey)
+        : stub.getPrivateDataByPartialCompositeKey(collection.name(), partialKey);
   }
 
   @Loggable(Loggable.DEBUG)
@@ -231,6 +1172,62 @@ public class Registry {
     }
   }
 
+  private String getCompositeKey(final Class<?> clazz, final Object... keyParts) {
+    return stub.createCompositeKey(EntityUtil.getType(clazz), getKeyAttributes(clazz, keyParts))
+        .toString();
+  }
+
+  private static void checkKeyCount(final Class<?> clazz, final int count) {
+    int primaryKeyCount = EntityUtil.getPrimaryKeyCount(clazz);
+    if (primaryKeyCount == 0) {
+      throw new MissingPrimaryKeysException(
+          String.format("%s does not have a primary key annotation", clazz));
+    }
+
+    if (count != primaryKeyCount) {
+      throw new IllegalArgumentException(
+          "The number of key parts provided does not match number of primary keys for "
+              + clazz.getName());
+    }
+  }
+
+  private CompositeKey getAppendOnlyParentKey(
+      final Class<?> clazz, final Object... parentKeyParts) {
+    final AttributeInfo[] parent = EntityUtil.getAppendOnlyAnnot(clazz).parent();
+    if (parentKeyParts.length != parent.length) {
+      throw new IllegalArgumentException(
+          "The number of key parts provided does not match number of parent attributes for "
+              + clazz.getName());
+    }
+
+    return stub.createCompositeKey(
+        EntityUtil.getType(clazz), EntityUtil.mapKeyPartsToString(parent, parentKeyParts));
+  }
+
+  private String getIndexKey(
+      final Class<?> clazz, final String indexName, final Object... indexKeyParts) {
+    final QueryIndex index = EntityUtil.getIndex(clazz, indexName);
+    if (indexKeyParts.length > index.attributes().length) {
+      throw new IllegalArgumentException(
+          "More key parts provided than index '%s' of %s has attributes"
+              .formatted(indexName, clazz.getName()));
+    }
+
+    return stub.createCompositeKey(
+            EntityUtil.getIndexType(clazz, index),
+            EntityUtil.mapKeyPartsToString(index.attributes(), indexKeyParts))
+        .toString();
+  }
+
+  private <T> String getChunkKey(final T ent, final String attribute, final int index) {
+    final String[] primaryKeys = EntityUtil.getPrimaryKeys(ent);
+    final String[] attributes = Arrays.copyOf(primaryKeys, primaryKeys.length + 2);
+    attributes[primaryKeys.length] = attribute;
+    attributes[primaryKeys.length + 1] = Integer.toString(index);
+    return stub.createCompositeKey(EntityUtil.getType(ent) + CHUNK_TYPE_SUFFIX, attributes)
+        .toString();
+  }
+
   private <T> String getCompositeKey(final T ent) {
     return stub.createCompositeKey(EntityUtil.getType(ent), EntityUtil.getPrimaryKeys(ent))
         .toString();
@@ -241,6 +1238,248 @@ public class Registry {
 
     private final Logger logger = LoggerFactory.getLogger(EntityUtil.class);
 
+    private final ClassValue<Boolean> usesSharedParseCache =
+        new ClassValue<>() {
+          @Override
+          protected Boolean computeValue(final Class<?> clazz) {
+            if (clazz.getAnnotation(SharedParseCache.class) == null) {
+              return false;
+            }
+
+            boolean immutable = true;
+            // Inherited fields are shared just as well, so check the superclasses too
+            for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+              immutable &=
+                  c.isRecord()
+                      || Arrays.stream(c.getDeclaredFields())
+                          .filter(f -> !Modifier.isStatic(f.getModifiers()))
+                          .allMatch(f -> Modifier.isFinal(f.getModifiers()));
+            }
+            if (!immutable) {
+              throw new IllegalArgumentException(
+                  "%s must be a record or have final fields only to use the shared parse cache"
+                      .formatted(clazz.getName()));
+            }
+
+            return true;
+          }
+        };
+
+    private final ClassValue<List<Field>> chunkedFields =
+        new ClassValue<>() {
+          @Override
+          protected List<Field> computeValue(final Class<?> clazz) {
+            final List<Field> fields =
+                Arrays.stream(clazz.getDeclaredFields())
+                    .filter(f -> f.isAnnotationPresent(Chunked.class))
+                    .toList();
+            for (final Field field : fields) {
+              if (field.getType().isPrimitive()) {
+                throw new IllegalArgumentException(
+                    "Chunked attribute '%s' of %s must not be primitive"
+                        .formatted(field.getName(), clazz.getName()));
+              }
+              if (field.getAnnotation(Chunked.class).chunkSize() < 1) {
+                throw new IllegalArgumentException(
+                    "Chunk size of attribute '%s' of %s must be positive"
+                        .formatted(field.getName(), clazz.getName()));
+              }
+              field.setAccessible(true);
+            }
+            return fields;
+          }
+        };
+
+    /** Mappers are stateless, so a single instance of each is shared. */
+    private final ClassValue<Function<Object, String>> mappers =
+        new ClassValue<>() {
+          @Override
+          @SuppressWarnings("unchecked")
+          protected Function<Object, String> computeValue(final Class<?> mapperClass) {
+            Constructor<?> mapperCtor;
+            try {
+              mapperCtor = mapperClass.getDeclaredConstructor();
+            } catch (NoSuchMethodException e) {
+              logger.error(
+                  "Could not find no-arg constructor for mapper {}", mapperClass.getName());
+              throw new RuntimeException(e);
+            }
+
+            Function<Object, String> mapper;
+            try {
+              mapper = (Function<Object, String>) mapperCtor.newInstance();
+            } catch (InstantiationException e) {
+              logger.error("Failed to instantiate mapper {}", mapperClass.getName());
+              throw new RuntimeException(e);
+            } catch (IllegalAccessException e) {
+              logger.error("Could not access constructor for mapper {}", mapperClass.getName());
+              throw new RuntimeException(e);
+            } catch (InvocationTargetException e) {
+              logger.error(
+                  "An exception was thrown by the constructor of mapper {}",
+                  mapperClass.getName());
+              throw new RuntimeException(e);
+            }
+            logger.trace("Successfully instantiated mapper of type {}", mapperClass.getName());
+
+            return mapper;
+          }
+        };
+
+    private final ClassValue<Map<String, Field>> attributeFields =
+        new ClassValue<>() {
+          @Override
+          protected Map<String, Field> computeValue(final Class<?> clazz) {
+            final Map<String, Field> fields = new HashMap<>();
+            for (final Field field : clazz.getDeclaredFields()) {
+              if (!Modifier.isStatic(field.getModifiers())) {
+                field.setAccessible(true);
+                fields.put(field.getName(), field);
+              }
+            }
+            return Map.copyOf(fields);
+          }
+        };
+
+    void prepare(final Class<?> clazz) {
+      final PrimaryKey primaryKey = clazz.getAnnotation(PrimaryKey.class);
+      final AppendOnly appendOnly = clazz.getAnnotation(AppendOnly.class);
+      if (primaryKey == null && appendOnly == null) {
+        throw new MissingPrimaryKeysException(
+            String.format("%s has neither a primary key nor an append-only annotation", clazz));
+      }
+
+      final List<AttributeInfo> attributes = new ArrayList<>();
+      if (primaryKey != null) {
+        attributes.addAll(Arrays.asList(primaryKey.value()));
+      }
+      if (appendOnly != null) {
+        attributes.addAll(Arrays.asList(appendOnly.parent()));
+        attributes.addAll(Arrays.asList(appendOnly.ordering()));
+      }
+      for (final QueryIndex index : clazz.getAnnotationsByType(QueryIndex.class)) {
+        attributes.addAll(Arrays.asList(index.attributes()));
+      }
+      for (final AttributeInfo attrInfo : attributes) {
+        mappers.get(attrInfo.mapper());
+        getAttributeField(clazz, attrInfo.name());
+      }
+
+      usesSharedParseCache.get(clazz);
+      chunkedFields.get(clazz);
+      indexes.get(clazz);
+      JSON.prepare(clazz);
+      logger.debug("Prepared {} with {} key attributes", clazz.getName(), attributes.size());
+    }
+
+    private final ClassValue<List<QueryIndex>> indexes =
+        new ClassValue<>() {
+          @Override
+          protected List<QueryIndex> computeValue(final Class<?> clazz) {
+            final List<QueryIndex> declared =
+                List.of(clazz.getAnnotationsByType(QueryIndex.class));
+            final Set<String> names = new HashSet<>();
+            for (final QueryIndex index : declared) {
+              if (!names.add(index.name())) {
+                throw new IllegalArgumentException(
+                    "%s has multiple indexes named '%s'".formatted(clazz.getName(), index.name()));
+              }
+              for (final String attribute : index.include()) {
+                if (!attributeFields.get(clazz).containsKey(attribute)) {
+                  throw new IllegalArgumentException(
+                      "Index '%s' of %s includes unknown attribute '%s'"
+                          .formatted(index.name(), clazz.getName(), attribute));
+                }
+                if (chunkedFields.get(clazz).stream()
+                    .anyMatch(f -> f.getName().equals(attribute))) {
+                  throw new IllegalArgumentException(
+                      "Index '%s' of %s cannot include chunked attribute '%s'"
+                          .formatted(index.name(), clazz.getName(), attribute));
+                }
+              }
+            }
+            return declared;
+          }
+        };
+
+    boolean hasIndexes(final Class<?> clazz) {
+      return !indexes.get(clazz).isEmpty();
+    }
+
+    List<QueryIndex> getIndexes(final Class<?> clazz) {
+      return indexes.get(clazz);
+    }
+
+    QueryIndex getIndex(final Class<?> clazz, final String name) {
+      return indexes.get(clazz).stream()
+          .filter(index -> index.name().equals(name))
+          .findFirst()
+          .orElseThrow(
+              () ->
+                  new IllegalArgumentException(
+                      "%s has no index '%s'".formatted(clazz.getName(), name)));
+    }
+
+    String getIndexType(final Class<?> clazz, final QueryIndex index) {
+      return getType(clazz) + INDEX_TYPE_INFIX + index.name();
+    }
+
+    boolean includesAny(final Class<?> clazz, final Set<String> attributes) {
+      return indexes.get(clazz).stream()
+          .flatMap(index -> Arrays.stream(index.include()))
+          .anyMatch(attributes::contains);
+    }
+
+    String[] getIndexKeys(final Object entity, final QueryIndex index) {
+      final AttributeInfo[] attrInfos = index.attributes();
+      final String[] keys = new String[attrInfos.length];
+      for (int i = 0; i < attrInfos.length; i++) {
+        final Object value = getFieldValueForAttr(entity, attrInfos[i]);
+        if (value == null) {
+          return null;
+        }
+        keys[i] = applyAttrMapper(attrInfos[i], value);
+      }
+      return keys;
+    }
+
+    boolean hasChunkedFields(final Class<?> clazz) {
+      return !chunkedFields.get(clazz).isEmpty();
+    }
+
+    List<Field> getChunkedFields(final Class<?> clazz) {
+      return chunkedFields.get(clazz);
+    }
+
+    Field getChunkedField(final Class<?> clazz, final String attribute) {
+      return chunkedFields.get(clazz).stream()
+          .filter(f -> f.getName().equals(attribute))
+          .findFirst()
+          .orElseThrow(
+              () ->
+                  new IllegalArgumentException(
+                      "%s has no chunked attribute '%s'".formatted(clazz.getName(), attribute)));
+    }
+
+    Object getFieldValue(final Object entity, final Field field) {
+      try {
+        return field.get(entity);
+      } catch (IllegalAccessException e) {
+        logger.error(
+            "Could not access field {} in class {}", field.getName(), entity.getClass().getName());
+        throw new RuntimeException(e);
+      }
+    }
+
+    String hash(final byte[] chunk) {
+      try {
+        return Base64.getEncoder()
+            .encodeToString(MessageDigest.getInstance("SHA-256").digest(chunk));
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException("SHA-256 is not available", e);
+      }
+    }
+
     <T> String getType(final T entity) {
       return getType(entity.getClass());
     }
@@ -249,6 +1488,10 @@ public class Registry {
       return clazz.getName().toUpperCase();
     }
 
+    PrivateDataCollection getCollection(final Class<?> clazz) {
+      return clazz.getAnnotation(PrivateDataCollection.class);
+    }
+
     <T> int getPrimaryKeyCount(final Class<T> clazz) {
       return clazz.getAnnotation(PrimaryKey.class) != null
           ? clazz.getAnnotation(PrimaryKey.class).value().length
@@ -256,19 +1499,23 @@ public class Registry {
     }
 
     <T> String[] getPrimaryKeys(final T entity) {
-      return Arrays.stream(getPrimaryKeyAnnot(entity.getClass()).value())
-          .map(
-              attrInfo -> {
-                logger.debug("Processing primary key attribute {}", attrInfo.name());
-                final Object value = getFieldValueForAttr(entity, attrInfo);
-                final String mappedKey = applyAttrMapper(attrInfo, value);
-                logger.debug(
-                    "Result of primary key mapping for attribute {} is {}",
-                    attrInfo.name(),
-                    mappedKey);
-                return mappedKey;
-              })
-          .toArray(String[]::new);
+      final long start = System.nanoTime();
+      final String[] keys =
+          Arrays.stream(getPrimaryKeyAnnot(entity.getClass()).value())
+              .map(
+                  attrInfo -> {
+                    logger.debug("Processing primary key attribute {}", attrInfo.name());
+                    final Object value = getFieldValueForAttr(entity, attrInfo);
+                    final String mappedKey = applyAttrMapper(attrInfo, value);
+                    logger.debug(
+                        "Result of primary key mapping for attribute {} is {}",
+                        attrInfo.name(),
+                        mappedKey);
+                    return mappedKey;
+                  })
+              .toArray(String[]::new);
+      EntityProfiler.getInstance().recordKeyMapping(entity.getClass(), System.nanoTime() - start);
+      return keys;
     }
 
     <T> String[] mapKeyPartsToString(final T entity, final Object... keyParts) {
@@ -276,20 +1523,83 @@ public class Registry {
     }
 
     <T> String[] mapKeyPartsToString(final Class<T> clazz, final Object... keyParts) {
-      final AttributeInfo[] attrInfos = getPrimaryKeyAnnot(clazz).value();
+      final long start = System.nanoTime();
+      final String[] keys = mapKeyPartsToString(getPrimaryKeyAnnot(clazz).value(), keyParts);
+      EntityProfiler.getInstance().recordKeyMapping(clazz, System.nanoTime() - start);
+      return keys;
+    }
+
+    String[] mapKeyPartsToString(final AttributeInfo[] attrInfos, final Object... keyParts) {
       return IntStream.range(0, Math.min(attrInfos.length, keyParts.length))
           .mapToObj(i -> applyAttrMapper(attrInfos[i], keyParts[i]))
           .toArray(String[]::new);
     }
 
+    void assertPatchable(final Class<?> clazz, final Set<String> attributes) {
+      for (final String attribute : attributes) {
+        for (final AttributeInfo attrInfo : getPrimaryKeyAnnot(clazz).value()) {
+          if (attrInfo.name().equals(attribute)) {
+            throw new IllegalArgumentException(
+                "Cannot patch primary key attribute '%s' of %s"
+                    .formatted(attribute, clazz.getName()));
+          }
+        }
+        if (chunkedFields.get(clazz).stream().anyMatch(f -> f.getName().equals(attribute))) {
+          throw new IllegalArgumentException(
+              "Cannot patch chunked attribute '%s' of %s; update the entity instead"
+                  .formatted(attribute, clazz.getName()));
+        }
+        for (final QueryIndex index : clazz.getAnnotationsByType(QueryIndex.class)) {
+          for (final AttributeInfo attrInfo : index.attributes()) {
+            if (attrInfo.name().equals(attribute)) {
+              throw new IllegalArgumentException(
+                  "Cannot patch attribute '%s' of %s: it is part of query index '%s'"
+                      .formatted(attribute, clazz.getName(), index.name()));
+            }
+          }
+        }
+      }
+    }
+
+    <T> String[] getAttributeKeys(final T entity, final AttributeInfo[] attrInfos) {
+      return Arrays.stream(attrInfos)
+          .map(attrInfo -> applyAttrMapper(attrInfo, getFieldValueForAttr(entity, attrInfo)))
+          .toArray(String[]::new);
+    }
+
+    AppendOnly getAppendOnlyAnnot(final Class<?> clazz) {
+      final AppendOnly appendOnly = clazz.getAnnotation(AppendOnly.class);
+      if (appendOnly == null) {
+        throw new IllegalArgumentException(
+            "%s does not have an append-only annotation".formatted(clazz.getName()));
+      }
+
+      return appendOnly;
+    }
+
     <T> byte[] toBuffer(final T entity) {
-      return toJson(entity).getBytes(StandardCharsets.UTF_8);
+      final long start = System.nanoTime();
+      final byte[] buffer = toJson(entity).getBytes(StandardCharsets.UTF_8);
+      EntityProfiler.getInstance()
+          .recordSerialization(entity.getClass(), buffer.length, System.nanoTime() - start);
+      return buffer;
     }
 
     <T> T fromBuffer(final byte[] buffer, final Class<T> clazz) {
+      if (usesSharedParseCache.get(clazz)) {
+        return ParsedEntityCache.getInstance().get(clazz, buffer, b -> parse(b, clazz));
+      }
+
+      return parse(buffer, clazz);
+    }
+
+    private <T> T parse(final byte[] buffer, final Class<T> clazz) {
       final String json = new String(buffer, StandardCharsets.UTF_8);
       logger.debug("Parsing entity from JSON: {}", json);
-      return JSON.deserialize(json, clazz);
+      final long start = System.nanoTime();
+      final T entity = JSON.deserialize(json, clazz);
+      EntityProfiler.getInstance().recordDeserialization(clazz, System.nanoTime() - start);
+      return entity;
     }
 
     <T> String toJson(final T entity) {
@@ -307,47 +1617,11 @@ public class Registry {
     }
 
     private String applyAttrMapper(final AttributeInfo attrInfo, final Object keyPart) {
-      Class<? extends Function<Object, String>> mapperClass = attrInfo.mapper();
-      Constructor<? extends Function<Object, String>> mapperCtor;
-      try {
-        mapperCtor = mapperClass.getDeclaredConstructor();
-      } catch (NoSuchMethodException e) {
-        logger.error("Could not find no-arg constructor for mapper {}", mapperClass.getName());
-        throw new RuntimeException(e);
-      }
-
-      Function<Object, String> mapper;
-      try {
-        mapper = mapperCtor.newInstance();
-      } catch (InstantiationException e) {
-        logger.error("Failed to instantiate mapper {}", mapperClass.getName());
-        throw new RuntimeException(e);
-      } catch (IllegalAccessException e) {
-        logger.error("Could not access constructor for mapper {}", mapperClass.getName());
-        throw new RuntimeException(e);
-      } catch (InvocationTargetException e) {
-        logger.error(
-            "An exception was thrown by the constructor of mapper {}", mapperClass.getName());
-        throw new RuntimeException(e);
-      }
-      logger.trace(
-          "Successfully instantiated mapper of type {} for primary key attribute {}",
-          mapperClass.getName(),
-          attrInfo.name());
-
-      return mapper.apply(keyPart);
+      return mappers.get(attrInfo.mapper()).apply(keyPart);
     }
 
     private <T> Object getFieldValueForAttr(final T ent, final AttributeInfo attrInfo) {
-      final Field field;
-      try {
-        field = ent.getClass().getDeclaredField(attrInfo.name());
-      } catch (NoSuchFieldException e) {
-        logger.error(
-            "Could not find field {} in class {}", attrInfo.name(), ent.getClass().getName());
-        throw new RuntimeException(e);
-      }
-      field.setAccessible(true);
+      final Field field = getAttributeField(ent.getClass(), attrInfo.name());
       logger.trace("Found field for primary key attribute {}", attrInfo.name());
 
       final Object value;
@@ -361,5 +1635,15 @@ public class Registry {
 
       return value;
     }
+
+    private Field getAttributeField(final Class<?> clazz, final String name) {
+      final Field field = attributeFields.get(clazz).get(name);
+      if (field == null) {
+        logger.error("Could not find field {} in class {}", name, clazz.getName());
+        throw new RuntimeException(new NoSuchFieldException(name));
+      }
+
+      return field;
+    }
   }
 }
@@ -0,0 +1,8 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.registry;
+
+import lombok.experimental.StandardException;
+
+/** Exception thrown when the called chaincode failed to serve a {@link RemoteRegistry} read. */
+@StandardException
+public class RemoteReadException extends DataAccessException {}
@@ -0,0 +1,218 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.registry;
+
+import com.jcabi.aspects.Loggable;
+import hu.bme.mit.ftsrg.hypernate.context.HypernateContext;
+import hu.bme.mit.ftsrg.hypernate.middleware.InvocationMemoizingStubMiddleware;
+import hu.bme.mit.ftsrg.hypernate.middleware.StubMiddleware;
+import hu.bme.mit.ftsrg.hypernate.util.JSON;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import org.hyperledger.fabric.contract.Context;
+import org.hyperledger.fabric.shim.Chaincode;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Entity reads from the world state of another chaincode.
+ *
+ * <p>Each {@link #readMany(Class, List)} packs the keys of the entities into a single {@link
+ * ChaincodeStub#invokeChaincode(String, List, String)} call of the {@value #READ_MANY_FUNCTION}
+ * function of the called contract. The calls are marked read-only (see {@link
+ * StubMiddleware#invokeChaincodeReadOnly(ChaincodeStub, String, List, String)}), so an {@link
+ * InvocationMemoizingStubMiddleware} in the chain answers repeated reads of the same entities from
+ * memory.
+ *
+ * <p>Remote reads are opt-in: the called contract must declare the function itself, run its own
+ * checks and answer with {@link #serve(Context, Collection, String)}, listing the entities it lets
+ * other chaincodes read:
+ *
+ * <pre>{@code
+ * @Transaction(intent = Transaction.TYPE.EVALUATE)
+ * public String hypernateReadMany(final Context ctx, final String request) {
+ *   // check the caller, e.g., its MSP ID
+ *   return RemoteRegistry.serve(ctx, List.of(Asset.class), request);
+ * }
+ * }</pre>
+ *
+ * <p>Only entities with a primary key, stored in the world state and without {@link
+ * hu.bme.mit.ftsrg.hypernate.annotations.Chunked} attributes can be read remotely.
+ */
+@Loggable(Loggable.DEBUG)
+public final class RemoteRegistry {
+
+  /** Name of the function serving the reads in the called chaincode. */
+  public static final String READ_MANY_FUNCTION = "hypernateReadMany";
+
+  private static final Logger logger = LoggerFactory.getLogger(RemoteRegistry.class);
+
+  private final ChaincodeStub stub;
+
+  private final String chaincodeName;
+
+  private final String function;
+
+  private final String channel;
+
+  /**
+   * Read from a chaincode on the channel of the transaction with a single (default) contract.
+   *
+   * @param stub the stub of the transaction, e.g., the first of the middleware chain
+   * @param chaincodeName the name of the called chaincode
+   */
+  public RemoteRegistry(final ChaincodeStub stub, final String chaincodeName) {
+    this(stub, chaincodeName, null, null);
+  }
+
+  /**
+   * Read from a contract of a chaincode.
+   *
+   * @param stub the stub of the transaction, e.g., the first of the middleware chain
+   * @param chaincodeName the name of the called chaincode
+   * @param contractName the name of the contract in the chaincode, or {@code null} for the default
+   *     contract
+   * @param channel the channel of the chaincode, or {@code null} for the channel of the transaction
+   */
+  public RemoteRegistry(
+      final ChaincodeStub stub,
+      final String chaincodeName,
+      final String contractName,
+      final String channel) {
+    this.stub = stub;
+    this.chaincodeName = chaincodeName;
+    this.function =
+        contractName == null ? READ_MANY_FUNCTION : contractName + ":" + READ_MANY_FUNCTION;
+    this.channel = channel;
+  }
+
+  /**
+   * Read an entity if it exists.
+   *
+   * @param clazz the class of the entity
+   * @param keyParts the list of primary keys identifying the entity
+   * @return the entity read from the called chaincode if found, {@code null} otherwise
+   * @param <T> the entity type
+   * @throws RemoteReadException if the called chaincode failed to serve the read
+   */
+  public <T> T tryRead(final Class<T> clazz, final Object... keyParts) {
+    return readMany(clazz, Collections.singletonList(keyParts)).get(0);
+  }
+
+  /**
+   * Read multiple entities of the same type with a single chaincode invocation.
+   *
+   * @param clazz the class of the entities
+   * @param keys the primary keys identifying each entity
+   * @return the entities in the order of {@code keys}, with {@code null} for those not found
+   * @param <T> the entity type
+   * @throws UnsupportedOperationException if the entities cannot be read remotely
+   * @throws RemoteReadException if the called chaincode failed to serve the read
+   */
+  public <T> List<T> readMany(final Class<T> clazz, final List<Object[]> keys) {
+    if (!Registry.isRemotelyReadable(clazz)) {
+      throw new UnsupportedOperationException(
+          "%s cannot be read remotely".formatted(clazz.getName()));
+    }
+    if (keys.isEmpty()) {
+      return List.of();
+    }
+
+    final List<List<String>> keyAttributes =
+        keys.stream().map(keyParts -> List.of(Registry.getKeyAttributes(clazz, keyParts))).toList();
+    final String request =
+        JSON.serialize(new ReadManyRequest(Registry.getObjectType(clazz), keyAttributes));
+    final Chaincode.Response response =
+        StubMiddleware.invokeChaincodeReadOnly(
+            stub,
+            chaincodeName,
+            List.of(
+                function.getBytes(StandardCharsets.UTF_8),
+                request.getBytes(StandardCharsets.UTF_8)),
+            channel);
+    if (response.getStatus() != Chaincode.Response.Status.SUCCESS) {
+      throw new RemoteReadException(
+          "Chaincode %s failed to serve the read of %d entities of type %s: %s"
+              .formatted(chaincodeName, keys.size(), clazz.getName(), response.getMessage()));
+    }
+
+    final String[] values =
+        JSON.deserialize(new String(response.getPayload(), StandardCharsets.UTF_8), String[].class);
+    if (values.length != keys.size()) {
+      throw new RemoteReadException(
+          "Chaincode %s returned %d entities instead of %d"
+              .formatted(chaincodeName, values.length, keys.size()));
+    }
+
+    final List<T> results = new ArrayList<>(values.length);
+    for (final String value : values) {
+      results.add(
+          value == null ? null : Registry.parse(value.getBytes(StandardCharsets.UTF_8), clazz));
+    }
+    logger.debug(
+        "Read {} entities of type {} from {}", keys.size(), clazz.getName(), chaincodeName);
+    return results;
+  }
+
+  /**
+   * Serve a {@link #readMany(Class, List)} of another chaincode from a transaction of the contract.
+   *
+   * @param ctx the context of the transaction, a {@link HypernateContext}
+   * @param entities the entities the other chaincode may read
+   * @param request the request sent by the other chaincode
+   * @return the stored entities as a JSON array of strings, with {@code null} for those not found
+   * @throws IllegalArgumentException if the context is not a {@link HypernateContext}, or the
+   *     requested type is not among the remotely readable {@code entities}
+   */
+  public static String serve(
+      final Context ctx, final Collection<Class<?>> entities, final String request) {
+    if (!(ctx instanceof HypernateContext hypCtx)) {
+      throw new IllegalArgumentException("Remote reads need a HypernateContext");
+    }
+
+    return serve(hypCtx.getRegistry(), entities, request);
+  }
+
+  /**
+   * Serve a {@link #readMany(Class, List)} of another chaincode.
+   *
+   * @param registry the registry of the transaction
+   * @param entities the entities the other chaincode may read
+   * @param request the request sent by the other chaincode
+   * @return the stored entities as a JSON array of strings, with {@code null} for those not found
+   * @throws IllegalArgumentException if the requested type is not among the remotely readable
+   *     {@code entities}
+   */
+  public static String serve(
+      final Registry registry, final Collection<Class<?>> entities, final String request) {
+    final ReadManyRequest readMany = JSON.deserialize(request, ReadManyRequest.class);
+    final Class<?> clazz =
+        entities.stream()
+            .filter(entity -> Registry.getObjectType(entity).equals(readMany.type()))
+            .filter(Registry::isRemotelyReadable)
+            .findFirst()
+            .orElseThrow(
+                () ->
+                    new IllegalArgumentException(
+                        "Entity type %s cannot be read remotely".formatted(readMany.type())));
+
+    final String[] values =
+        registry.readStored(clazz, readMany.keys()).stream()
+            .map(value -> value == null ? null : new String(value, StandardCharsets.UTF_8))
+            .toArray(String[]::new);
+    logger.debug("Served {} entities of type {}", values.length, clazz.getName());
+    return JSON.serialize(Arrays.asList(values));
+  }
+
+  /**
+   * The request of a {@link #readMany(Class, List)}.
+   *
+   * @param type the object type of the entities
+   * @param keys the mapped primary keys of each entity
+   */
+  record ReadManyRequest(String type, List<List<String>> keys) {}
+}
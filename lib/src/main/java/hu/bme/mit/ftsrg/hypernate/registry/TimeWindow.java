@@ -0,0 +1,46 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.registry;
+
+import java.time.Instant;
+
+/**
+ * A window of transaction timestamps for filtering the history of an entity.
+ *
+ * @param from the start of the window (inclusive); {@code null} if unbounded
+ * @param to the end of the window (exclusive); {@code null} if unbounded
+ */
+public record TimeWindow(Instant from, Instant to) {
+
+  /** The window containing every timestamp. */
+  public static final TimeWindow ALL = new TimeWindow(null, null);
+
+  public TimeWindow {
+    if (from != null && to != null && to.isBefore(from)) {
+      throw new IllegalArgumentException("The end of the window must not precede its start");
+    }
+  }
+
+  public static TimeWindow since(final Instant from) {
+    return new TimeWindow(from, null);
+  }
+
+  public static TimeWindow until(final Instant to) {
+    return new TimeWindow(null, to);
+  }
+
+  public static TimeWindow between(final Instant from, final Instant to) {
+    return new TimeWindow(from, to);
+  }
+
+  public boolean contains(final Instant timestamp) {
+    return !isBeforeStart(timestamp) && !isAfterEnd(timestamp);
+  }
+
+  boolean isBeforeStart(final Instant timestamp) {
+    return from != null && timestamp.isBefore(from);
+  }
+
+  boolean isAfterEnd(final Instant timestamp) {
+    return to != null && !timestamp.isBefore(to);
+  }
+}
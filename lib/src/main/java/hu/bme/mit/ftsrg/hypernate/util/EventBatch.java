@@ -0,0 +1,112 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import lombok.experimental.UtilityClass;
+
+/**
+ * Codec for the batched chaincode events emitted by {@code EventBatchingStubMiddleware}.
+ *
+ * <p>Client applications can use {@link #decode(byte[])} on the payload of the batched event to
+ * get the individual events back.
+ *
+ * <p>The format is a version byte followed by the number of events and then, for each event, the
+ * length and UTF-8 bytes of its name and the length and bytes of its payload. All lengths and
+ * counts are 4-byte big-endian integers.
+ */
+@UtilityClass
+public final class EventBatch {
+
+  public static final byte FORMAT_VERSION = 1;
+
+  /**
+   * A single chaincode event.
+   *
+   * @param name the event name
+   * @param payload the event payload (never {@code null})
+   */
+  public record Event(String name, byte[] payload) {
+
+    public Event {
+      if (name == null) {
+        throw new IllegalArgumentException("Event name must not be null");
+      }
+      payload = payload == null ? new byte[0] : payload;
+    }
+  }
+
+  /**
+   * Encode a list of events into a single payload.
+   *
+   * @param events the events to encode (in emission order)
+   * @return the batched payload
+   */
+  public static byte[] encode(final List<Event> events) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeByte(FORMAT_VERSION);
+      out.writeInt(events.size());
+      for (final Event event : events) {
+        final byte[] name = event.name().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(name.length);
+        out.write(name);
+        out.writeInt(event.payload().length);
+        out.write(event.payload());
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to encode event batch", e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Decode a batched payload into the list of events it contains.
+   *
+   * @param batch the batched payload
+   * @return the events in emission order
+   * @throws IllegalArgumentException if {@code batch} is not a valid event batch
+   */
+  public static List<Event> decode(final byte[] batch) {
+    final ByteBuffer buffer = ByteBuffer.wrap(batch);
+    try {
+      final byte version = buffer.get();
+      if (version != FORMAT_VERSION) {
+        throw new IllegalArgumentException("Unsupported event batch format version " + version);
+      }
+
+      final int count = buffer.getInt();
+      final List<Event> events = new ArrayList<>(Math.min(count, buffer.remaining()));
+      for (int i = 0; i < count; i++) {
+        final String name = new String(readChunk(buffer), StandardCharsets.UTF_8);
+        events.add(new Event(name, readChunk(buffer)));
+      }
+
+      if (buffer.hasRemaining()) {
+        throw new IllegalArgumentException("Trailing bytes after the last event in the batch");
+      }
+
+      return Collections.unmodifiableList(events);
+    } catch (BufferUnderflowException e) {
+      throw new IllegalArgumentException("Truncated event batch", e);
+    }
+  }
+
+  private static byte[] readChunk(final ByteBuffer buffer) {
+    final int length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining()) {
+      throw new IllegalArgumentException("Invalid length " + length + " in event batch");
+    }
+    final byte[] chunk = new byte[length];
+    buffer.get(chunk);
+    return chunk;
+  }
+}
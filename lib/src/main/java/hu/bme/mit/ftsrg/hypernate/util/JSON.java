@@ -1,13 +1,40 @@
 /* SPDX-License-Identifier: Apache-2.0 */
 package hu.bme.mit.ftsrg.hypernate.util;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.deser.DeserializationProblemHandler;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
 import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.node.BooleanNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.fasterxml.jackson.databind.ser.std.NullSerializer;
 import com.jcabi.aspects.Loggable;
+import hu.bme.mit.ftsrg.hypernate.annotations.Chunked;
 import hu.bme.mit.ftsrg.hypernate.registry.SerializationException;
 import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 import lombok.experimental.UtilityClass;
 
 /** A convenience facade for a concrete JSON-serializer. */
@@ -15,8 +42,46 @@ import lombok.experimental.UtilityClass;
 @UtilityClass
 public final class JSON {
 
+  /**
+   * Name of the property listing the chunks of the {@link Chunked} attributes of a serialized
+   * entity.
+   */
+  public static final String CHUNKS_PROPERTY = "@chunks";
+
   private static final ObjectMapper mapper =
-      JsonMapper.builder().enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY).build();
+      JsonMapper.builder()
+          .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+          .addHandler(new ChunkManifestSkipper())
+          .build();
+
+  /** Writes entities stored with their chunks, i.e., without their {@link Chunked} attributes. */
+  private static final ObjectMapper chunkOmittingMapper =
+      mapper
+          .copy()
+          .registerModule(new SimpleModule().setSerializerModifier(new ChunkedAttributeOmitter()));
+
+  private static final ClassValue<Map<String, JavaType>> propertyTypes =
+      new ClassValue<>() {
+        @Override
+        protected Map<String, JavaType> computeValue(final Class<?> clazz) {
+          return mapper
+              .getSerializationConfig()
+              .introspect(mapper.constructType(clazz))
+              .findProperties()
+              .stream()
+              .collect(
+                  Collectors.toUnmodifiableMap(
+                      BeanPropertyDefinition::getName, BeanPropertyDefinition::getPrimaryType));
+        }
+      };
+
+  private static final ClassValue<ObjectReader> projectionReaders =
+      new ClassValue<>() {
+        @Override
+        protected ObjectReader computeValue(final Class<?> clazz) {
+          return mapper.readerFor(clazz).without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        }
+      };
 
   /**
    * Serialize an object to a JSON string.
@@ -47,4 +112,274 @@ public final class JSON {
       throw new SerializationException("Failed to deserialize from JSON", e);
     }
   }
+
+  /**
+   * Deserialize a JSON string into an object of a generic type.
+   *
+   * @param json The JSON string to deserialize
+   * @param type The type of the object to interpret the JSON as
+   * @return The resulting object
+   */
+  public static <T> T deserialize(final String json, final Type type)
+      throws SerializationException {
+    try {
+      return mapper.readValue(json, mapper.constructType(type));
+    } catch (IOException e) {
+      throw new SerializationException("Failed to deserialize from JSON", e);
+    }
+  }
+
+  /**
+   * Serialize an object with {@link Chunked} attributes, listing their chunks in the {@value
+   * #CHUNKS_PROPERTY} property.
+   *
+   * <p>Unlike the other methods of this class, the {@link Chunked} attributes are written as {@code
+   * null}; their values are stored in the chunks.
+   *
+   * @param obj The object to serialize
+   * @param chunks The hashes of the chunks of each {@link Chunked} attribute
+   * @return The JSON-serialization of <code>obj</code>
+   */
+  public static byte[] serializeWithChunks(
+      final Object obj, final Map<String, List<String>> chunks) throws SerializationException {
+    try {
+      final ObjectNode tree = chunkOmittingMapper.valueToTree(obj);
+      tree.set(CHUNKS_PROPERTY, mapper.valueToTree(chunks));
+      return mapper.writeValueAsBytes(tree);
+    } catch (IllegalArgumentException | JsonProcessingException e) {
+      throw new SerializationException("Failed to serialize to JSON", e);
+    }
+  }
+
+  /**
+   * Get the chunks listed in the {@value #CHUNKS_PROPERTY} property of a serialized object.
+   *
+   * @param json The serialized object
+   * @return The hashes of the chunks of each {@link Chunked} attribute; empty if none are listed
+   */
+  public static Map<String, List<String>> readChunks(final byte[] json)
+      throws SerializationException {
+    try {
+      final JsonNode chunks = mapper.readTree(json).get(CHUNKS_PROPERTY);
+      return chunks == null ? Map.of() : mapper.convertValue(chunks, new TypeReference<>() {});
+    } catch (IllegalArgumentException | IOException e) {
+      throw new SerializationException("Failed to deserialize from JSON", e);
+    }
+  }
+
+  /**
+   * Replace top-level properties of a serialized object without deserializing it into its class.
+   *
+   * <p>Each new value is checked against the type of the property in <code>clazz</code> and is
+   * serialized the way the property would be. The other properties are copied as they are and keep
+   * their position, so patching the serialization of an object gives the same result as
+   * serializing the changed object. A property missing from <code>json</code> is appended.
+   *
+   * @param json The JSON object to patch
+   * @param clazz The type of the object serialized in <code>json</code>
+   * @param changes The new values by property name
+   * @return The patched JSON object
+   * @throws IllegalArgumentException if <code>clazz</code> has no property with a given name, or a
+   *     value cannot be converted to the type of its property
+   */
+  public static byte[] patch(final byte[] json, final Class<?> clazz, final Map<String, ?> changes)
+      throws SerializationException {
+    final ObjectNode tree;
+    try {
+      if (!(mapper.readTree(json) instanceof ObjectNode node)) {
+        throw new SerializationException("Failed to patch JSON: not an object");
+      }
+      tree = node;
+    } catch (IOException e) {
+      throw new SerializationException("Failed to deserialize from JSON", e);
+    }
+
+    final Map<String, JavaType> types = propertyTypes.get(clazz);
+    changes.forEach((name, value) -> tree.set(name, toPropertyNode(clazz, types, name, value)));
+
+    try {
+      return mapper.writeValueAsBytes(tree);
+    } catch (JsonProcessingException e) {
+      throw new SerializationException("Failed to serialize to JSON", e);
+    }
+  }
+
+  /**
+   * Serialize some properties of an object to a JSON object.
+   *
+   * @param obj The object to serialize
+   * @param properties The names of the properties to keep
+   * @return The JSON object with the given properties of <code>obj</code>
+   */
+  public static byte[] project(final Object obj, final String... properties)
+      throws SerializationException {
+    try {
+      final ObjectNode tree = mapper.valueToTree(obj);
+      tree.retain(properties);
+      return mapper.writeValueAsBytes(tree);
+    } catch (IllegalArgumentException | JsonProcessingException e) {
+      throw new SerializationException("Failed to serialize to JSON", e);
+    }
+  }
+
+  /**
+   * Deserialize a JSON object into a type having some of its properties.
+   *
+   * @param json The JSON object to deserialize, e.g., created by {@link #project(Object,
+   *     String...)}
+   * @param clazz The type to interpret the JSON as; properties it does not have are ignored
+   * @return The resulting object
+   */
+  public static <T> T deserializeProjection(final byte[] json, final Class<T> clazz)
+      throws SerializationException {
+    try {
+      return projectionReaders.get(clazz).readValue(json);
+    } catch (IOException e) {
+      throw new SerializationException("Failed to deserialize from JSON", e);
+    }
+  }
+
+  /**
+   * Get the names of the properties of a type.
+   *
+   * @param clazz The type to introspect
+   * @return The names of the properties <code>clazz</code> is (de)serialized with
+   */
+  public static Set<String> propertyNames(final Class<?> clazz) {
+    return propertyTypes.get(clazz).keySet();
+  }
+
+  /**
+   * Build and cache the serializer and the deserializer of a type ahead of its first use.
+   *
+   * @param clazz The type to prepare
+   */
+  public static void prepare(final Class<?> clazz) {
+    mapper.writerFor(clazz);
+    mapper.readerFor(clazz);
+    propertyTypes.get(clazz);
+  }
+
+  /**
+   * Create a placeholder object of a type, e.g., for exercising code paths before real data exists.
+   *
+   * <p>String properties are set to {@code "warm-up"}, numbers to 1, booleans to {@code false} and
+   * enums to their first constant; the other properties are left unset.
+   *
+   * @param clazz The type of the object to create
+   * @return The resulting object
+   */
+  public static <T> T sampleOf(final Class<T> clazz) throws SerializationException {
+    final ObjectNode sample = mapper.createObjectNode();
+    propertyTypes
+        .get(clazz)
+        .forEach(
+            (name, type) -> {
+              final JsonNode value = sampleValue(type.getRawClass());
+              if (value != null) {
+                sample.set(name, value);
+              }
+            });
+
+    try {
+      return mapper.treeToValue(sample, clazz);
+    } catch (IllegalArgumentException | JsonProcessingException e) {
+      throw new SerializationException("Failed to create a sample of " + clazz.getName(), e);
+    }
+  }
+
+  private static JsonNode sampleValue(final Class<?> type) {
+    if (type == String.class) {
+      return TextNode.valueOf("warm-up");
+    }
+    if (type == boolean.class || type == Boolean.class) {
+      return BooleanNode.FALSE;
+    }
+    if (type.isPrimitive() || Number.class.isAssignableFrom(type)) {
+      return IntNode.valueOf(1);
+    }
+    if (type.isEnum() && type.getEnumConstants().length > 0) {
+      return mapper.valueToTree(type.getEnumConstants()[0]);
+    }
+    return null;
+  }
+
+  private static JsonNode toPropertyNode(
+      final Class<?> clazz,
+      final Map<String, JavaType> types,
+      final String name,
+      final Object value) {
+    final JavaType type = types.get(name);
+    if (type == null) {
+      throw new IllegalArgumentException(
+          "%s has no property '%s'".formatted(clazz.getName(), name));
+    }
+    if (value == null) {
+      if (type.isPrimitive()) {
+        throw new IllegalArgumentException(
+            "Property '%s' of %s cannot be null".formatted(name, clazz.getName()));
+      }
+      return NullNode.getInstance();
+    }
+
+    final Object converted;
+    try {
+      converted = mapper.convertValue(value, type);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(
+          "Value of property '%s' of %s is not a valid %s"
+              .formatted(name, clazz.getName(), type.getRawClass().getName()),
+          e);
+    }
+    return mapper.valueToTree(converted);
+  }
+
+  /** Writes {@link Chunked} attributes as {@code null}; their values are stored separately. */
+  private static final class ChunkedAttributeOmitter extends BeanSerializerModifier {
+
+    @Override
+    public List<BeanPropertyWriter> changeProperties(
+        final SerializationConfig config,
+        final BeanDescription beanDesc,
+        final List<BeanPropertyWriter> beanProperties) {
+      for (final BeanPropertyWriter writer : beanProperties) {
+        if (writer.getAnnotation(Chunked.class) != null
+            || isChunkedField(beanDesc.getBeanClass(), writer.getName())) {
+          writer.assignSerializer(NullSerializer.instance);
+        }
+      }
+      return beanProperties;
+    }
+
+    // The writers of records are their accessors, which do not have the annotations of the fields
+    private static boolean isChunkedField(final Class<?> clazz, final String name) {
+      for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+        try {
+          return c.getDeclaredField(name).isAnnotationPresent(Chunked.class);
+        } catch (NoSuchFieldException e) {
+          // Look in the superclass
+        }
+      }
+      return false;
+    }
+  }
+
+  /** Ignores the {@value #CHUNKS_PROPERTY} property when deserializing entities. */
+  private static final class ChunkManifestSkipper extends DeserializationProblemHandler {
+
+    @Override
+    public boolean handleUnknownProperty(
+        final DeserializationContext ctxt,
+        final JsonParser p,
+        final JsonDeserializer<?> deserializer,
+        final Object beanOrClass,
+        final String propertyName)
+        throws IOException {
+      if (!CHUNKS_PROPERTY.equals(propertyName)) {
+        return false;
+      }
+      p.skipChildren();
+      return true;
+    }
+  }
 }
@@ -0,0 +1,176 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import hu.bme.mit.ftsrg.hypernate.annotations.AttributeInfo;
+import hu.bme.mit.ftsrg.hypernate.annotations.PrimaryKey;
+import hu.bme.mit.ftsrg.hypernate.mappers.AttributeMapper;
+import hu.bme.mit.ftsrg.hypernate.mappers.IntegerFlipperAndZeroPadder;
+import hu.bme.mit.ftsrg.hypernate.mappers.IntegerZeroPadder;
+import hu.bme.mit.ftsrg.hypernate.mappers.LongFlipperAndZeroPadder;
+import hu.bme.mit.ftsrg.hypernate.mappers.LongZeroPadder;
+import hu.bme.mit.ftsrg.hypernate.mappers.ObjectToString;
+import hu.bme.mit.ftsrg.hypernate.middleware.StubMiddlewareChain;
+import hu.bme.mit.ftsrg.hypernate.middleware.WriteBackCachedStubMiddleware;
+import hu.bme.mit.ftsrg.hypernate.registry.EntityExistsException;
+import hu.bme.mit.ftsrg.hypernate.registry.Registry;
+import hu.bme.mit.ftsrg.hypernate.testing.InMemoryChaincodeStub;
+import hu.bme.mit.ftsrg.hypernate.testing.InMemoryLedger;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.stream.Stream;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayNameGeneration;
+import org.junit.jupiter.api.DisplayNameGenerator.ReplaceUnderscores;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Guards the bytes allocated per call on the hot paths against regressions.
+ *
+ * <p>Each operation is warmed up so that the JIT has compiled (and escape-analysed) it, then the
+ * allocations of the current thread are measured over many calls. The budgets are in {@code
+ * allocation-budgets.properties}; the stub is the in-memory one from the test fixtures, so its own
+ * (constant) allocations are included.
+ */
+@DisplayNameGeneration(ReplaceUnderscores.class)
+class AllocationBudgetTest {
+
+  private static final Logger logger = LoggerFactory.getLogger(AllocationBudgetTest.class);
+
+  private static final int WARMUP_ITERATIONS = 20_000;
+
+  private static final int MEASURED_ITERATIONS = 10_000;
+
+  /** Creates in a transaction; the cost of starting one is amortized over them. */
+  private static final int CREATES_PER_TRANSACTION = 100;
+
+  private static final String OWNER = "owner";
+
+  private static com.sun.management.ThreadMXBean threads;
+
+  private static Properties budgets;
+
+  /** Keeps the results alive so that the measured work is not eliminated. */
+  private static volatile Object sink;
+
+  @PrimaryKey({
+    @AttributeInfo(name = "owner"),
+    @AttributeInfo(name = "id", mapper = IntegerZeroPadder.class)
+  })
+  private record Asset(String owner, int id, String color, int size) {}
+
+  @BeforeAll
+  static void setup() throws IOException {
+    assumeTrue(
+        ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+            && bean.isThreadAllocatedMemorySupported(),
+        "Per-thread allocation counters are not supported by this JVM");
+    threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    threads.setThreadAllocatedMemoryEnabled(true);
+
+    budgets = new Properties();
+    try (InputStream in =
+        AllocationBudgetTest.class.getResourceAsStream("allocation-budgets.properties")) {
+      budgets.load(in);
+    }
+  }
+
+  @Test
+  void registry_must_read_stays_within_budget() throws EntityExistsException {
+    final InMemoryLedger ledger = new InMemoryLedger();
+    final InMemoryChaincodeStub seeding = ledger.newTransaction().build();
+    new Registry(seeding).mustCreate(new Asset(OWNER, 1, "blue", 42));
+    seeding.commit();
+    final Registry registry = new Registry(ledger.newTransaction().build());
+
+    assertWithinBudget(
+        "registry.mustRead", () -> sink = registry.mustRead(Asset.class, OWNER, 1));
+  }
+
+  @Test
+  void registry_must_create_stays_within_budget() {
+    final InMemoryLedger ledger = new InMemoryLedger();
+    final Registry[] registry = new Registry[1];
+    final int[] nextId = {0};
+
+    // Move on to a new transaction now and then, so the write set of the stub stays small
+    assertWithinBudget(
+        "registry.mustCreate",
+        () -> {
+          if (nextId[0] % CREATES_PER_TRANSACTION == 0) {
+            registry[0] = new Registry(ledger.newTransaction().build());
+          }
+          registry[0].mustCreate(new Asset(OWNER, nextId[0]++, "blue", 42));
+        });
+  }
+
+  @ParameterizedTest(name = "{0}")
+  @MethodSource("mappers")
+  void key_mapper_stays_within_budget(final AttributeMapper mapper, final Object value) {
+    assertWithinBudget(
+        "mapper." + mapper.getClass().getSimpleName(), () -> sink = mapper.apply(value));
+  }
+
+  static Stream<Arguments> mappers() {
+    return Stream.of(
+        Arguments.of(new IntegerZeroPadder(), 42),
+        Arguments.of(new IntegerFlipperAndZeroPadder(), 42),
+        Arguments.of(new LongZeroPadder(), 42L),
+        Arguments.of(new LongFlipperAndZeroPadder(), 42L),
+        Arguments.of(new ObjectToString(), "key"));
+  }
+
+  @Test
+  void write_back_cache_hit_stays_within_budget() {
+    final InMemoryLedger ledger = new InMemoryLedger();
+    ledger.put("key", "value".getBytes(StandardCharsets.UTF_8));
+    final ChaincodeStub cachedStub =
+        StubMiddlewareChain.builder(ledger.newTransaction().build())
+            .push(new WriteBackCachedStubMiddleware())
+            .build()
+            .getFirst();
+    cachedStub.getState("key");
+
+    assertWithinBudget("writeBackCache.hit", () -> sink = cachedStub.getState("key"));
+  }
+
+  private static void assertWithinBudget(final String name, final ThrowingRunnable operation) {
+    final long budget = Long.parseLong(budgets.getProperty(name));
+    final long perOperation = allocatedBytesPerOperation(operation);
+    logger.info("{}: {} bytes/op (budget: {} bytes/op)", name, perOperation, budget);
+    assertTrue(
+        perOperation <= budget,
+        () -> name + " allocates " + perOperation + " bytes/op, over its budget of " + budget);
+  }
+
+  private static long allocatedBytesPerOperation(final ThrowingRunnable operation) {
+    try {
+      for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+        operation.run();
+      }
+      final long before = threads.getCurrentThreadAllocatedBytes();
+      for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+        operation.run();
+      }
+      return (threads.getCurrentThreadAllocatedBytes() - before) / MEASURED_ITERATIONS;
+    } catch (Exception e) {
+      throw new AssertionError("Measured operation failed", e);
+    }
+  }
+
+  @FunctionalInterface
+  private interface ThrowingRunnable {
+    void run() throws Exception;
+  }
+}
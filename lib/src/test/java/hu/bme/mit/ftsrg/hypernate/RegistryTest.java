@@ -1,27 +1,67 @@
 /* SPDX-License-Identifier: Apache-2.0 */
 package hu.bme.mit.ftsrg.hypernate;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 
+import hu.bme.mit.ftsrg.hypernate.annotations.AppendOnly;
 import hu.bme.mit.ftsrg.hypernate.annotations.AttributeInfo;
+import hu.bme.mit.ftsrg.hypernate.annotations.Chunked;
 import hu.bme.mit.ftsrg.hypernate.annotations.PrimaryKey;
+import hu.bme.mit.ftsrg.hypernate.annotations.PrivateDataCollection;
+import hu.bme.mit.ftsrg.hypernate.annotations.QueryIndex;
+import hu.bme.mit.ftsrg.hypernate.annotations.SharedParseCache;
+import hu.bme.mit.ftsrg.hypernate.mappers.LongZeroPadder;
+import hu.bme.mit.ftsrg.hypernate.metrics.EntityProfile;
+import hu.bme.mit.ftsrg.hypernate.metrics.EntityProfiler;
+import hu.bme.mit.ftsrg.hypernate.middleware.InvocationMemoizingStubMiddleware;
+import hu.bme.mit.ftsrg.hypernate.middleware.StubMiddlewareChain;
+import hu.bme.mit.ftsrg.hypernate.middleware.notification.TransactionEnd;
+import hu.bme.mit.ftsrg.hypernate.registry.Counter;
 import hu.bme.mit.ftsrg.hypernate.registry.EntityExistsException;
 import hu.bme.mit.ftsrg.hypernate.registry.EntityNotFoundException;
+import hu.bme.mit.ftsrg.hypernate.registry.ExportPage;
+import hu.bme.mit.ftsrg.hypernate.registry.HistoryEntry;
+import hu.bme.mit.ftsrg.hypernate.registry.KeyRange;
+import hu.bme.mit.ftsrg.hypernate.registry.KeySpaceSplitter;
 import hu.bme.mit.ftsrg.hypernate.registry.MissingPrimaryKeysException;
+import hu.bme.mit.ftsrg.hypernate.registry.Page;
+import hu.bme.mit.ftsrg.hypernate.registry.PipelinedScanOptions;
 import hu.bme.mit.ftsrg.hypernate.registry.Registry;
+import hu.bme.mit.ftsrg.hypernate.registry.RemoteReadException;
+import hu.bme.mit.ftsrg.hypernate.registry.RemoteRegistry;
 import hu.bme.mit.ftsrg.hypernate.registry.SerializationException;
+import hu.bme.mit.ftsrg.hypernate.registry.TimeWindow;
+import hu.bme.mit.ftsrg.hypernate.testing.InMemoryChaincodeStub;
+import hu.bme.mit.ftsrg.hypernate.testing.InMemoryLedger;
+import hu.bme.mit.ftsrg.hypernate.testing.PeerRequest;
+import hu.bme.mit.ftsrg.hypernate.testing.ValidationCode;
 import hu.bme.mit.ftsrg.hypernate.util.JSON;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 import javax.annotation.Nonnull;
 import lombok.experimental.FieldNameConstants;
+import org.hyperledger.fabric.shim.Chaincode;
 import org.hyperledger.fabric.shim.ChaincodeStub;
 import org.hyperledger.fabric.shim.ledger.CompositeKey;
 import org.hyperledger.fabric.shim.ledger.KeyValue;
@@ -82,6 +122,25 @@ class RegistryTest {
         () -> registry.tryRead(KeylessTestEntity.class, keylessEntity.foo));
   }
 
+  private static KeyValue keyValue(final String key, final byte[] value) {
+    return new KeyValue() {
+      @Override
+      public String getKey() {
+        return key;
+      }
+
+      @Override
+      public byte[] getValue() {
+        return value;
+      }
+
+      @Override
+      public String getStringValue() {
+        return new String(value, UTF_8);
+      }
+    };
+  }
+
   @FieldNameConstants
   @PrimaryKey({
     @AttributeInfo(name = TestEntity.Fields.foo),
@@ -241,6 +300,840 @@ class RegistryTest {
     }
   }
 
+  @FieldNameConstants
+  @PrimaryKey(@AttributeInfo(name = SharedTestEntity.Fields.foo))
+  @SharedParseCache
+  private record SharedTestEntity(String foo) {}
+
+  @Nested
+  class given_shared_parse_cached_entity {
+
+    @Test
+    void when_read_twice_then_return_same_instance() {
+      given(stub.createCompositeKey(anyString(), any(String[].class)))
+          .willReturn(ENTITY_COMPOSITE_KEY);
+      given(stub.getState(ENTITY_COMPOSITE_KEY_STR))
+          .willReturn(JSON.serialize(new SharedTestEntity("fooValue")).getBytes(UTF_8));
+
+      SharedTestEntity first = registry.mustRead(SharedTestEntity.class, "fooValue");
+      SharedTestEntity second = registry.mustRead(SharedTestEntity.class, "fooValue");
+
+      assertSame(first, second);
+      then(stub).should(times(2)).getState(ENTITY_COMPOSITE_KEY_STR);
+    }
+
+    @Test
+    void when_entity_is_mutable_then_throw_illegal_argument() {
+      given(stub.createCompositeKey(anyString(), any(String[].class)))
+          .willReturn(ENTITY_COMPOSITE_KEY);
+      given(stub.getState(ENTITY_COMPOSITE_KEY_STR)).willReturn("{}".getBytes(UTF_8));
+
+      assertThrows(
+          IllegalArgumentException.class,
+          () -> registry.mustRead(MutableSharedTestEntity.class, "fooValue"));
+    }
+
+    @Test
+    void when_entity_inherits_mutable_field_then_throw_illegal_argument() {
+      given(stub.createCompositeKey(anyString(), any(String[].class)))
+          .willReturn(ENTITY_COMPOSITE_KEY);
+      given(stub.getState(ENTITY_COMPOSITE_KEY_STR)).willReturn("{}".getBytes(UTF_8));
+
+      assertThrows(
+          IllegalArgumentException.class,
+          () -> registry.mustRead(InheritedMutableSharedTestEntity.class, "fooValue"));
+    }
+  }
+
+  @PrimaryKey(@AttributeInfo(name = "foo"))
+  @SharedParseCache
+  private static class MutableSharedTestEntity {
+    public String foo;
+  }
+
+  private static class MutableTestEntityBase {
+    public long version;
+  }
+
+  @PrimaryKey(@AttributeInfo(name = "foo"))
+  @SharedParseCache
+  private static class InheritedMutableSharedTestEntity extends MutableTestEntityBase {
+    public final String foo = "fooValue";
+  }
+
+  @FieldNameConstants
+  @PrimaryKey(@AttributeInfo(name = AccountTestEntity.Fields.id))
+  @QueryIndex(
+      name = "byOwner",
+      attributes = @AttributeInfo(name = AccountTestEntity.Fields.owner))
+  private record AccountTestEntity(
+      String id, String owner, long balance, String status, List<String> tags) {}
+
+  @Nested
+  class given_patchable_entity {
+
+    private final AccountTestEntity account =
+        new AccountTestEntity("acc1", "alice", 100, "ACTIVE", List.of("a", "b"));
+
+    private void givenStored(final byte[] value) {
+      given(stub.createCompositeKey(anyString(), any(String[].class)))
+          .willReturn(ENTITY_COMPOSITE_KEY);
+      given(stub.getState(ENTITY_COMPOSITE_KEY_STR)).willReturn(value);
+    }
+
+    @Test
+    void when_patch_then_write_same_value_as_full_update() {
+      givenStored(JSON.serialize(account).getBytes(UTF_8));
+
+      registry.patch(
+          AccountTestEntity.class,
+          Map.of(AccountTestEntity.Fields.balance, 42, AccountTestEntity.Fields.status, "FROZEN"),
+          account.id());
+
+      final AccountTestEntity expected =
+          new AccountTestEntity("acc1", "alice", 42, "FROZEN", List.of("a", "b"));
+      then(stub)
+          .should()
+          .putState(ENTITY_COMPOSITE_KEY_STR, JSON.serialize(expected).getBytes(UTF_8));
+    }
+
+    @Test
+    void when_patch_with_builder_then_write_patched_value() {
+      givenStored(JSON.serialize(account).getBytes(UTF_8));
+
+      registry
+          .patchBuilder(AccountTestEntity.class, account.id())
+          .set(AccountTestEntity.Fields.tags, List.of())
+          .set(AccountTestEntity.Fields.status, null)
+          .apply();
+
+      final AccountTestEntity expected =
+          new AccountTestEntity("acc1", "alice", 100, null, List.of());
+      then(stub)
+          .should()
+          .putState(ENTITY_COMPOSITE_KEY_STR, JSON.serialize(expected).getBytes(UTF_8));
+    }
+
+    @Test
+    void when_patch_primary_key_or_indexed_attribute_then_throw_illegal_argument() {
+      assertThrows(
+          IllegalArgumentException.class,
+          () ->
+              registry.patch(
+                  AccountTestEntity.class,
+                  Map.of(AccountTestEntity.Fields.id, "acc2"),
+                  account.id()));
+      assertThrows(
+          IllegalArgumentException.class,
+          () ->
+              registry.patch(
+                  AccountTestEntity.class,
+                  Map.of(AccountTestEntity.Fields.owner, "bob"),
+                  account.id()));
+      then(stub).should(never()).putState(anyString(), any());
+    }
+
+    @Test
+    void when_patch_with_ill_typed_value_then_throw_illegal_argument() {
+      givenStored(JSON.serialize(account).getBytes(UTF_8));
+
+      assertThrows(
+          IllegalArgumentException.class,
+          () ->
+              registry.patch(
+                  AccountTestEntity.class,
+                  Map.of(AccountTestEntity.Fields.balance, "lots"),
+                  account.id()));
+      then(stub).should(never()).putState(anyString(), any());
+    }
+
+    @Test
+    void when_patch_missing_entity_then_throw_not_found() {
+      givenStored(new byte[0]);
+
+      assertThrows(
+          EntityNotFoundException.class,
+          () ->
+              registry.patch(
+                  AccountTestEntity.class,
+                  Map.of(AccountTestEntity.Fields.balance, 42),
+                  account.id()));
+    }
+  }
+
+  @Nested
+  class given_entity_history {
+
+    private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+
+    private final InMemoryLedger ledger = new InMemoryLedger();
+
+    private final List<AccountTestEntity> versions =
+        LongStream.rangeClosed(1, 3)
+            .mapToObj(balance -> new AccountTestEntity("acc1", "alice", balance, "ACTIVE", null))
+            .toList();
+
+    @BeforeEach
+    void writeHistory() {
+      inTransaction(0, ledgerRegistry -> ledgerRegistry.mustCreate(versions.get(0)));
+      inTransaction(1, ledgerRegistry -> ledgerRegistry.mustUpdate(versions.get(1)));
+      inTransaction(2, ledgerRegistry -> ledgerRegistry.mustUpdate(versions.get(2)));
+      inTransaction(3, ledgerRegistry -> ledgerRegistry.mustDelete(versions.get(2)));
+    }
+
+    private void inTransaction(final int hour, final Consumer<Registry> work) {
+      final InMemoryChaincodeStub transaction =
+          ledger.newTransaction().txTimestamp(START.plus(Duration.ofHours(hour))).build();
+      work.accept(new Registry(transaction));
+      assertEquals(ValidationCode.VALID, transaction.commit());
+    }
+
+    @Test
+    void when_history_then_stream_versions_newest_first() {
+      final Registry ledgerRegistry = new Registry(ledger.newTransaction().build());
+
+      try (Stream<HistoryEntry<AccountTestEntity>> history =
+          ledgerRegistry.history(AccountTestEntity.class, "acc1")) {
+        final List<HistoryEntry<AccountTestEntity>> entries = history.toList();
+
+        assertEquals(4, entries.size());
+        assertTrue(entries.get(0).isDelete());
+        assertNull(entries.get(0).entity());
+        assertEquals(
+            List.of(versions.get(2), versions.get(1), versions.get(0)),
+            entries.subList(1, 4).stream().map(HistoryEntry::entity).toList());
+      }
+    }
+
+    @Test
+    void when_history_within_window_then_stream_only_versions_in_window() {
+      final Registry ledgerRegistry = new Registry(ledger.newTransaction().build());
+      final TimeWindow window =
+          TimeWindow.between(START.plus(Duration.ofHours(1)), START.plus(Duration.ofHours(3)));
+
+      try (Stream<HistoryEntry<AccountTestEntity>> history =
+          ledgerRegistry.history(AccountTestEntity.class, window, "acc1")) {
+        assertEquals(
+            List.of(versions.get(2), versions.get(1)),
+            history.map(HistoryEntry::entity).toList());
+      }
+    }
+  }
+
+  @FieldNameConstants
+  @PrimaryKey(@AttributeInfo(name = DocumentTestEntity.Fields.id))
+  private record DocumentTestEntity(
+      String id, String title, @Chunked(chunkSize = 16) List<String> pages) {}
+
+  @Nested
+  class given_chunked_entity {
+
+    private static final List<String> PAGES =
+        List.of("first page", "second page", "third page", "fourth page");
+
+    private final InMemoryLedger ledger = new InMemoryLedger();
+
+    private final DocumentTestEntity document = new DocumentTestEntity("doc1", "Title", PAGES);
+
+    @BeforeEach
+    void createDocument() {
+      final InMemoryChaincodeStub transaction = ledger.newTransaction().build();
+      new Registry(transaction).mustCreate(document);
+      transaction.commit();
+    }
+
+    @Test
+    void when_must_read_then_chunked_attribute_is_not_loaded() {
+      final InMemoryChaincodeStub transaction = ledger.newTransaction().build();
+      final Registry ledgerRegistry = new Registry(transaction);
+
+      final DocumentTestEntity read = ledgerRegistry.mustRead(DocumentTestEntity.class, "doc1");
+
+      assertEquals(new DocumentTestEntity("doc1", "Title", null), read);
+      assertEquals(1, transaction.getRoundTrips(PeerRequest.GET_STATE));
+      assertEquals(PAGES, ledgerRegistry.loadChunked(read, DocumentTestEntity.Fields.pages));
+    }
+
+    @Test
+    void when_readAll_then_chunks_are_not_returned_as_entities() {
+      final Registry ledgerRegistry = new Registry(ledger.newTransaction().build());
+
+      assertEquals(
+          List.of(new DocumentTestEntity("doc1", "Title", null)),
+          ledgerRegistry.readAll(DocumentTestEntity.class));
+    }
+
+    @Test
+    void when_must_update_without_chunked_attribute_then_keep_chunks() {
+      final InMemoryChaincodeStub transaction = ledger.newTransaction().build();
+      new Registry(transaction).mustUpdate(new DocumentTestEntity("doc1", "New title", null));
+      transaction.commit();
+
+      assertEquals(1, transaction.getRoundTrips(PeerRequest.PUT_STATE));
+      final Registry ledgerRegistry = new Registry(ledger.newTransaction().build());
+      final DocumentTestEntity read = ledgerRegistry.mustRead(DocumentTestEntity.class, "doc1");
+      assertEquals("New title", read.title());
+      assertEquals(PAGES, ledgerRegistry.loadChunked(read, DocumentTestEntity.Fields.pages));
+    }
+
+    @Test
+    void when_must_update_last_page_then_rewrite_only_last_chunk() {
+      final List<String> pages = List.of("first page", "second page", "third page", "fourth pagE");
+      final InMemoryChaincodeStub transaction = ledger.newTransaction().build();
+      new Registry(transaction).mustUpdate(new DocumentTestEntity("doc1", "Title", pages));
+      transaction.commit();
+
+      assertEquals(2, transaction.getRoundTrips(PeerRequest.PUT_STATE));
+      final Registry ledgerRegistry = new Registry(ledger.newTransaction().build());
+      final DocumentTestEntity read = ledgerRegistry.mustRead(DocumentTestEntity.class, "doc1");
+      assertEquals(pages, ledgerRegistry.loadChunked(read, DocumentTestEntity.Fields.pages));
+    }
+
+    @Test
+    void when_must_delete_then_delete_chunks_too() {
+      final InMemoryChaincodeStub transaction = ledger.newTransaction().build();
+      new Registry(transaction).mustDelete(document);
+      transaction.commit();
+
+      assertEquals(0, ledger.size());
+    }
+
+    @Test
+    void when_patch_chunked_attribute_then_throw_illegal_argument() {
+      final Registry ledgerRegistry = new Registry(ledger.newTransaction().build());
+
+      assertThrows(
+          IllegalArgumentException.class,
+          () ->
+              ledgerRegistry.patch(
+                  DocumentTestEntity.class,
+                  Map.of(DocumentTestEntity.Fields.pages, List.of()),
+                  "doc1"));
+    }
+
+    @Test
+    void when_chunk_size_is_not_positive_then_throw_illegal_argument() {
+      final Registry ledgerRegistry = new Registry(ledger.newTransaction().build());
+
+      assertThrows(
+          IllegalArgumentException.class,
+          () -> ledgerRegistry.mustCreate(new EmptyChunkTestEntity("doc2", List.of("page"))));
+    }
+  }
+
+  @PrimaryKey(@AttributeInfo(name = "id"))
+  private record EmptyChunkTestEntity(String id, @Chunked(chunkSize = 0) List<String> pages) {}
+
+  @Nested
+  class given_counter {
+
+    private static final String COUNTER = "stock";
+
+    private final InMemoryLedger ledger = new InMemoryLedger();
+
+    @Test
+    void when_concurrent_transactions_change_it_then_none_conflict_and_read_sums_them() {
+      final List<InMemoryChaincodeStub> transactions =
+          IntStream.range(0, 5).mapToObj(i -> ledger.newTransaction().build()).toList();
+      for (final InMemoryChaincodeStub transaction : transactions) {
+        final Counter counter = new Registry(transaction).counter(COUNTER);
+        counter.increment(10);
+        counter.decrement(3);
+      }
+
+      assertEquals(
+          Collections.nCopies(transactions.size(), ValidationCode.VALID),
+          ledger.commit(transactions));
+      assertEquals(35, new Registry(ledger.newTransaction().build()).counter(COUNTER).read());
+    }
+
+    @Test
+    void when_compact_then_fold_deltas_into_one_and_keep_value() {
+      final InMemoryChaincodeStub changes = ledger.newTransaction().build();
+      final Registry changingRegistry = new Registry(changes);
+      IntStream.rangeClosed(1, 4).forEach(changingRegistry.counter(COUNTER)::increment);
+      changingRegistry.counter("other").increment(100);
+      changes.commit();
+
+      final InMemoryChaincodeStub compaction = ledger.newTransaction().build();
+      assertEquals(10, new Registry(compaction).counter(COUNTER).compact());
+      compaction.commit();
+
+      assertEquals(2, ledger.size());
+      assertEquals(10, new Registry(ledger.newTransaction().build()).counter(COUNTER).read());
+    }
+  }
+
+  @FieldNameConstants
+  @AppendOnly(
+      parent = @AttributeInfo(name = OrderEventTestEntity.Fields.orderId),
+      ordering =
+          @AttributeInfo(
+              name = OrderEventTestEntity.Fields.sequence,
+              mapper = LongZeroPadder.class))
+  private record OrderEventTestEntity(String orderId, long sequence, String event) {}
+
+  @AppendOnly(parent = @AttributeInfo(name = "orderId"))
+  private record OrderNoteTestEntity(String orderId, String note) {}
+
+  @Nested
+  class given_append_only_entity {
+
+    private final InMemoryLedger ledger = new InMemoryLedger();
+
+    private final List<OrderEventTestEntity> events =
+        List.of(
+            new OrderEventTestEntity("order1", 1, "created"),
+            new OrderEventTestEntity("order1", 2, "paid"),
+            new OrderEventTestEntity("order1", 10, "shipped"));
+
+    @BeforeEach
+    void appendConcurrently() {
+      final List<InMemoryChaincodeStub> transactions = new ArrayList<>();
+      for (final OrderEventTestEntity event :
+          List.of(events.get(2), events.get(0), events.get(1))) {
+        final InMemoryChaincodeStub transaction = ledger.newTransaction().build();
+        new Registry(transaction).append(event);
+        transactions.add(transaction);
+      }
+      final InMemoryChaincodeStub otherParent = ledger.newTransaction().build();
+      new Registry(otherParent).append(new OrderEventTestEntity("order10", 1, "created"));
+      transactions.add(otherParent);
+
+      assertEquals(
+          Collections.nCopies(transactions.size(), ValidationCode.VALID),
+          ledger.commit(transactions));
+    }
+
+    @Test
+    void when_readAllAppended_then_return_records_of_parent_in_order() {
+      final Registry ledgerRegistry = new Registry(ledger.newTransaction().build());
+
+      assertEquals(events, ledgerRegistry.readAllAppended(OrderEventTestEntity.class, "order1"));
+    }
+
+    @Test
+    void when_readAppended_then_return_pages_in_order() {
+      final Registry ledgerRegistry = new Registry(ledger.newTransaction().build());
+
+      final Page<OrderEventTestEntity> first =
+          ledgerRegistry.readAppended(OrderEventTestEntity.class, 2, "", "order1");
+      final Page<OrderEventTestEntity> second =
+          ledgerRegistry.readAppended(
+              OrderEventTestEntity.class, 2, first.bookmark(), "order1");
+
+      assertEquals(events.subList(0, 2), first.items());
+      assertTrue(first.hasNext());
+      assertEquals(events.subList(2, 3), second.items());
+      assertFalse(second.hasNext());
+    }
+
+    @Test
+    void when_transaction_appends_many_unordered_records_then_read_them_in_append_order() {
+      final List<OrderNoteTestEntity> notes =
+          IntStream.range(0, 12)
+              .mapToObj(i -> new OrderNoteTestEntity("order1", "note" + i))
+              .toList();
+      final InMemoryChaincodeStub transaction = ledger.newTransaction().build();
+      final Registry appender = new Registry(transaction);
+      notes.forEach(appender::append);
+      transaction.commit();
+
+      final Registry ledgerRegistry = new Registry(ledger.newTransaction().build());
+      assertEquals(notes, ledgerRegistry.readAllAppended(OrderNoteTestEntity.class, "order1"));
+      assertEquals(
+          notes.subList(0, 11),
+          ledgerRegistry.readAppended(OrderNoteTestEntity.class, 11, "", "order1").items());
+    }
+
+    @Test
+    void when_append_entity_without_annotation_then_throw_illegal_argument() {
+      final Registry ledgerRegistry = new Registry(ledger.newTransaction().build());
+
+      assertThrows(IllegalArgumentException.class, () -> ledgerRegistry.append(entity));
+    }
+  }
+
+  @FieldNameConstants
+  @PrimaryKey(@AttributeInfo(name = AssetTestEntity.Fields.id))
+  @QueryIndex(
+      name = "byOwner",
+      attributes = @AttributeInfo(name = AssetTestEntity.Fields.owner),
+      include = {AssetTestEntity.Fields.color, AssetTestEntity.Fields.size})
+  private record AssetTestEntity(String id, String owner, String color, int size) {}
+
+  private record AssetSummary(String color, int size) {}
+
+  @Nested
+  class given_covering_index {
+
+    private final InMemoryLedger ledger = new InMemoryLedger();
+
+    private final AssetTestEntity asset1 = new AssetTestEntity("asset1", "alice", "red", 5);
+    private final AssetTestEntity asset2 = new AssetTestEntity("asset2", "bob", "blue", 10);
+    private final AssetTestEntity asset3 = new AssetTestEntity("asset3", "alice", "green", 15);
+
+    private void inTransaction(final Consumer<Registry> work) {
+      final InMemoryChaincodeStub transaction = ledger.newTransaction().build();
+      work.accept(new Registry(transaction));
+      assertEquals(ValidationCode.VALID, transaction.commit());
+    }
+
+    @BeforeEach
+    void createAssets() {
+      inTransaction(
+          ledgerRegistry -> {
+            ledgerRegistry.mustCreate(asset1);
+            ledgerRegistry.mustCreate(asset2);
+            ledgerRegistry.mustCreate(asset3);
+          });
+    }
+
+    @Test
+    void when_readProjections_then_answer_from_index_without_reading_entities() {
+      final InMemoryChaincodeStub transaction = ledger.newTransaction().build();
+
+      final List<AssetSummary> summaries =
+          new Registry(transaction)
+              .readProjections(AssetTestEntity.class, "byOwner", AssetSummary.class, "alice");
+
+      assertEquals(List.of(new AssetSummary("red", 5), new AssetSummary("green", 15)), summaries);
+      assertEquals(0, transaction.getRoundTrips(PeerRequest.GET_STATE));
+      assertEquals(1, transaction.getRoundTrips(PeerRequest.GET_STATE_BY_RANGE));
+    }
+
+    @Test
+    void when_readByIndex_then_return_matching_entities() {
+      final Registry ledgerRegistry = new Registry(ledger.newTransaction().build());
+
+      assertEquals(
+          List.of(asset1, asset3),
+          ledgerRegistry.readByIndex(AssetTestEntity.class, "byOwner", "alice"));
+      assertEquals(
+          List.of(asset1, asset3, asset2),
+          ledgerRegistry.readByIndex(AssetTestEntity.class, "byOwner"));
+    }
+
+    @Test
+    void when_update_changes_indexed_attribute_then_entry_moves() {
+      inTransaction(
+          ledgerRegistry ->
+              ledgerRegistry.mustUpdate(new AssetTestEntity("asset1", "bob", "red", 5)));
+
+      final Registry ledgerRegistry = new Registry(ledger.newTransaction().build());
+      assertEquals(
+          List.of(asset3), ledgerRegistry.readByIndex(AssetTestEntity.class, "byOwner", "alice"));
+      assertEquals(
+          List.of(new AssetSummary("red", 5), new AssetSummary("blue", 10)),
+          ledgerRegistry.readProjections(
+              AssetTestEntity.class, "byOwner", AssetSummary.class, "bob"));
+    }
+
+    @Test
+    void when_patch_included_attribute_then_projection_is_refreshed() {
+      inTransaction(
+          ledgerRegistry ->
+              ledgerRegistry.patch(
+                  AssetTestEntity.class, Map.of(AssetTestEntity.Fields.color, "black"), "asset2"));
+
+      assertEquals(
+          List.of(new AssetSummary("black", 10)),
+          new Registry(ledger.newTransaction().build())
+              .readProjections(AssetTestEntity.class, "byOwner", AssetSummary.class, "bob"));
+    }
+
+    @Test
+    void when_delete_then_index_entry_is_deleted() {
+      inTransaction(ledgerRegistry -> ledgerRegistry.mustDelete(asset2));
+
+      assertEquals(4, ledger.size());
+      assertEquals(
+          List.of(),
+          new Registry(ledger.newTransaction().build())
+              .readByIndex(AssetTestEntity.class, "byOwner", "bob"));
+    }
+
+    @Test
+    void when_projection_has_attribute_not_included_then_throw_illegal_argument() {
+      final Registry ledgerRegistry = new Registry(ledger.newTransaction().build());
+
+      assertThrows(
+          IllegalArgumentException.class,
+          () ->
+              ledgerRegistry.readProjections(
+                  AssetTestEntity.class, "byOwner", AssetTestEntity.class, "alice"));
+    }
+  }
+
+  @Nested
+  class given_bulk_migration {
+
+    private static final int ENTITY_COUNT = 20;
+
+    private final InMemoryLedger source = new InMemoryLedger();
+
+    private final InMemoryLedger target = new InMemoryLedger();
+
+    private final List<AssetTestEntity> assets =
+        IntStream.range(0, ENTITY_COUNT)
+            .mapToObj(
+                i -> new AssetTestEntity("asset%02d".formatted(5 * i), "owner" + i % 3, "red", i))
+            .toList();
+
+    @BeforeEach
+    void createAssets() {
+      final InMemoryChaincodeStub transaction = source.newTransaction().build();
+      final Registry sourceRegistry = new Registry(transaction);
+      assets.forEach(sourceRegistry::mustCreate);
+      assertEquals(ValidationCode.VALID, transaction.commit());
+    }
+
+    private List<String> exportRange(final KeyRange range) {
+      final List<String> pages = new ArrayList<>();
+      String bookmark = "";
+      do {
+        final ExportPage page =
+            new Registry(source.newTransaction().build())
+                .exportPage(AssetTestEntity.class, range, 3, bookmark);
+        pages.add(page.lines());
+        bookmark = page.bookmark();
+      } while (!bookmark.isEmpty());
+      return pages;
+    }
+
+    @Test
+    void when_split_ranges_are_exported_then_every_entity_is_exported_once_in_order() {
+      final List<KeyRange> ranges =
+          new KeySpaceSplitter(KeySpaceSplitter.DIGITS, "asset").split(AssetTestEntity.class, 4);
+
+      final List<AssetTestEntity> exported = new ArrayList<>();
+      for (final KeyRange range : ranges) {
+        final List<AssetTestEntity> inRange = new ArrayList<>();
+        for (final String lines : exportRange(range)) {
+          lines.lines().forEach(line -> inRange.add(JSON.deserialize(line, AssetTestEntity.class)));
+        }
+        assertFalse(inRange.isEmpty(), () -> "Range " + ranges.indexOf(range) + " is empty");
+        exported.addAll(inRange);
+      }
+
+      assertEquals(4, ranges.size());
+      assertEquals(assets, exported);
+    }
+
+    @Test
+    void when_pages_are_imported_twice_then_second_import_writes_nothing() {
+      final List<String> pages = exportRange(KeyRange.ALL);
+
+      for (final String lines : pages) {
+        final InMemoryChaincodeStub transaction = target.newTransaction().build();
+        new Registry(transaction).importPage(AssetTestEntity.class, lines);
+        assertEquals(ValidationCode.VALID, transaction.commit());
+      }
+      final InMemoryChaincodeStub again = target.newTransaction().build();
+      final int written = new Registry(again).importPage(AssetTestEntity.class, pages.get(0));
+
+      assertEquals(0, written);
+      assertEquals(0, again.getRoundTrips(PeerRequest.PUT_STATE));
+      assertEquals(source.size(), target.size());
+      assertEquals(
+          assets, new Registry(target.newTransaction().build()).readAll(AssetTestEntity.class));
+    }
+
+    @Test
+    void when_upsert_then_create_missing_and_update_changed_entity() {
+      final InMemoryChaincodeStub transaction = source.newTransaction().build();
+      final Registry sourceRegistry = new Registry(transaction);
+
+      assertTrue(sourceRegistry.upsert(new AssetTestEntity("asset99", "owner0", "red", 99)));
+      assertTrue(sourceRegistry.upsert(new AssetTestEntity("asset00", "owner0", "blue", 0)));
+      assertFalse(sourceRegistry.upsert(assets.get(1)));
+      assertEquals(ValidationCode.VALID, transaction.commit());
+    }
+
+    @Test
+    void when_key_has_supplementary_character_then_range_follows_utf8_order() {
+      final String supplementary = new String(Character.toChars(0x1F600));
+
+      assertFalse(new KeyRange("a", "\uFFFF").contains(supplementary));
+      assertTrue(new KeyRange("\uFFFF", null).contains(supplementary));
+    }
+  }
+
+  @Nested
+  class given_remote_chaincode {
+
+    private final InMemoryLedger server = new InMemoryLedger();
+
+    private final List<AssetTestEntity> assets =
+        IntStream.range(0, 3)
+            .mapToObj(i -> new AssetTestEntity("asset" + i, "owner" + i, "red", i))
+            .toList();
+
+    private final AtomicInteger invocations = new AtomicInteger();
+
+    private InvocationMemoizingStubMiddleware memoizer;
+
+    private RemoteRegistry remote;
+
+    @BeforeEach
+    void setUp() {
+      final InMemoryChaincodeStub transaction = server.newTransaction().build();
+      assets.forEach(new Registry(transaction)::mustCreate);
+      assertEquals(ValidationCode.VALID, transaction.commit());
+
+      memoizer = new InvocationMemoizingStubMiddleware();
+      final ChaincodeStub client =
+          StubMiddlewareChain.builder(
+                  new InMemoryLedger().newTransaction().invocationHandler(this::serve).build())
+              .push(memoizer)
+              .build()
+              .getFlattened();
+      remote = new RemoteRegistry(client, "assets");
+    }
+
+    private Chaincode.Response serve(
+        final String chaincodeName, final List<byte[]> args, final String channel) {
+      invocations.incrementAndGet();
+      try {
+        final String payload =
+            RemoteRegistry.serve(
+                new Registry(server.newTransaction().build()),
+                List.of(AssetTestEntity.class),
+                new String(args.get(1), UTF_8));
+        return new Chaincode.Response(
+            Chaincode.Response.Status.SUCCESS, null, payload.getBytes(UTF_8));
+      } catch (IllegalArgumentException e) {
+        return new Chaincode.Response(
+            Chaincode.Response.Status.INTERNAL_SERVER_ERROR, e.getMessage(), null);
+      }
+    }
+
+    @Test
+    void when_reading_many_then_single_invocation_returns_entities_in_order() {
+      final List<AssetTestEntity> read =
+          remote.readMany(
+              AssetTestEntity.class,
+              List.of(new Object[] {"asset2"}, new Object[] {"missing"}, new Object[] {"asset0"}));
+
+      assertEquals(Arrays.asList(assets.get(2), null, assets.get(0)), read);
+      assertEquals(1, invocations.get());
+    }
+
+    @Test
+    void when_reading_same_entity_again_then_memoized_response_is_reused() {
+      assertEquals(assets.get(1), remote.tryRead(AssetTestEntity.class, "asset1"));
+      assertEquals(assets.get(1), remote.tryRead(AssetTestEntity.class, "asset1"));
+      assertNull(remote.tryRead(AssetTestEntity.class, "missing"));
+
+      assertEquals(2, invocations.get());
+      assertEquals(1, memoizer.getHits());
+
+      memoizer.onNext(new TransactionEnd());
+      remote.tryRead(AssetTestEntity.class, "asset1");
+
+      assertEquals(3, invocations.get());
+    }
+
+    @Test
+    void when_type_is_unknown_to_called_chaincode_then_throws_and_is_not_memoized() {
+      assertThrows(RemoteReadException.class, () -> remote.tryRead(TestEntity.class, "foo", 1));
+      assertThrows(RemoteReadException.class, () -> remote.tryRead(TestEntity.class, "foo", 1));
+
+      assertEquals(2, invocations.get());
+    }
+
+    @Test
+    void when_entity_is_private_then_remote_read_is_unsupported() {
+      assertThrows(
+          UnsupportedOperationException.class,
+          () -> remote.tryRead(PrivateTestEntity.class, "fooValue"));
+      assertEquals(0, invocations.get());
+    }
+  }
+
+  @Nested
+  class given_entity_profiler {
+
+    private final InMemoryLedger ledger = new InMemoryLedger();
+
+    @BeforeEach
+    void resetProfiler() {
+      EntityProfiler.getInstance().reset();
+    }
+
+    @Test
+    void when_entities_are_written_and_read_then_costs_are_recorded_per_type() {
+      final InMemoryChaincodeStub transaction = ledger.newTransaction().build();
+      new Registry(transaction).mustCreate(entity);
+      assertEquals(ValidationCode.VALID, transaction.commit());
+      new Registry(ledger.newTransaction().build()).mustRead(TestEntity.class, "fooValue", 110);
+
+      final EntityProfile profile =
+          EntityProfiler.getInstance().snapshot().get(TestEntity.class.getName());
+      assertEquals(1, profile.serializedBytes().count());
+      assertEquals(ENTITY_BUFFER.length, profile.serializedBytes().max());
+      assertEquals(1, profile.deserializationNanos().count());
+      assertTrue(profile.keyMappingNanos().count() >= 2);
+      assertEquals(0, profile.oversized());
+    }
+  }
+
+  @FieldNameConstants
+  @PrimaryKey(@AttributeInfo(name = PrivateTestEntity.Fields.foo))
+  @PrivateDataCollection(name = "collection", members = "Org1MSP")
+  private record PrivateTestEntity(String foo) {}
+
+  @Nested
+  class given_private_entity {
+
+    private final PrivateTestEntity privateEntity = new PrivateTestEntity("fooValue");
+
+    @BeforeEach
+    void stubCompositeKey() {
+      given(stub.createCompositeKey(anyString(), any(String[].class)))
+          .willReturn(ENTITY_COMPOSITE_KEY);
+    }
+
+    @Test
+    void when_member_and_must_create_then_call_private_data_methods() {
+      given(stub.getMspId()).willReturn("Org1MSP");
+      given(stub.getPrivateData("collection", ENTITY_COMPOSITE_KEY_STR)).willReturn(null);
+
+      registry.mustCreate(privateEntity);
+
+      then(stub)
+          .should()
+          .putPrivateData(eq("collection"), eq(ENTITY_COMPOSITE_KEY_STR), any(byte[].class));
+    }
+
+    @Test
+    void when_not_member_and_must_create_then_check_existence_by_hash() {
+      given(stub.getMspId()).willReturn("Org2MSP");
+      given(stub.getPrivateDataHash("collection", ENTITY_COMPOSITE_KEY_STR)).willReturn(null);
+
+      registry.mustCreate(privateEntity);
+
+      then(stub).should(never()).getPrivateData(anyString(), anyString());
+      then(stub)
+          .should()
+          .putPrivateData(eq("collection"), eq(ENTITY_COMPOSITE_KEY_STR), any(byte[].class));
+    }
+
+    @Test
+    void when_readMany_with_duplicate_keys_then_read_each_key_once() {
+      given(stub.getPrivateData("collection", ENTITY_COMPOSITE_KEY_STR))
+          .willReturn(JSON.serialize(privateEntity).getBytes(UTF_8));
+
+      final List<PrivateTestEntity> results =
+          registry.readMany(
+              PrivateTestEntity.class,
+              List.of(new Object[] {privateEntity.foo()}, new Object[] {privateEntity.foo()}));
+
+      assertEquals(List.of(privateEntity, privateEntity), results);
+      then(stub).should(times(1)).getPrivateData("collection", ENTITY_COMPOSITE_KEY_STR);
+    }
+  }
+
   @Nested
   class given_existing_entity {
 
@@ -372,6 +1265,32 @@ class RegistryTest {
       verifyNoMoreInteractions(stub);
     }
 
+    @Test
+    void when_readAllPipelined_then_return_entities_in_ledger_order() {
+      final List<TestEntity> entities =
+          IntStream.range(0, 100).mapToObj(i -> new TestEntity("foo", i)).toList();
+      given(stub.createCompositeKey(anyString())).willReturn(ENTITY_COMPOSITE_KEY);
+      given(stub.getStateByPartialCompositeKey(anyString()))
+          .willReturn(
+              new QueryResultsIterator<>() {
+                @Override
+                public void close() {}
+
+                @Override
+                public @Nonnull Iterator<KeyValue> iterator() {
+                  return entities.stream()
+                      .map(e -> keyValue(e.bar.toString(), JSON.serialize(e).getBytes(UTF_8)))
+                      .iterator();
+                }
+              });
+
+      List<TestEntity> results =
+          registry.readAllPipelined(
+              TestEntity.class, new PipelinedScanOptions(7, 2, ForkJoinPool.commonPool()));
+
+      assertEquals(entities, results);
+    }
+
     @Nested
     class when_must_read {
 
@@ -397,6 +1316,33 @@ class RegistryTest {
       }
     }
 
+    @Test
+    void when_readMany_then_return_entities_in_key_order_and_read_each_key_once() {
+      final CompositeKey missingKey =
+          new CompositeKey(TestEntity.class.getName(), "missing", entity.bar.toString());
+      given(stub.createCompositeKey(anyString(), any(String[].class)))
+          .willAnswer(
+              invocation ->
+                  Arrays.asList(invocation.getArguments()).contains("missing")
+                      ? missingKey
+                      : ENTITY_COMPOSITE_KEY);
+      given(stub.getState(ENTITY_COMPOSITE_KEY_STR)).willReturn(ENTITY_BUFFER);
+      given(stub.getState(missingKey.toString())).willReturn(new byte[0]);
+
+      final List<TestEntity> results =
+          registry.readMany(
+              TestEntity.class,
+              List.of(
+                  new Object[] {entity.foo, entity.bar},
+                  new Object[] {"missing", entity.bar},
+                  new Object[] {entity.foo, entity.bar}));
+
+      assertEquals(Arrays.asList(entity, null, entity), results);
+      assertSame(results.get(0), results.get(2));
+      then(stub).should(times(1)).getState(ENTITY_COMPOSITE_KEY_STR);
+      then(stub).should(times(1)).getState(missingKey.toString());
+    }
+
     @Nested
     class when_try_read {
 
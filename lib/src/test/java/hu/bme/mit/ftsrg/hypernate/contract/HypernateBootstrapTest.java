@@ -0,0 +1,140 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.contract;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import hu.bme.mit.ftsrg.hypernate.annotations.AppendOnly;
+import hu.bme.mit.ftsrg.hypernate.annotations.AttributeInfo;
+import hu.bme.mit.ftsrg.hypernate.annotations.PrimaryKey;
+import hu.bme.mit.ftsrg.hypernate.context.HypernateContext;
+import hu.bme.mit.ftsrg.hypernate.mappers.LongZeroPadder;
+import hu.bme.mit.ftsrg.hypernate.metrics.EntityProfiler;
+import hu.bme.mit.ftsrg.hypernate.metrics.FunctionCosts;
+import hu.bme.mit.ftsrg.hypernate.middleware.MiddlewareInfo;
+import hu.bme.mit.ftsrg.hypernate.middleware.StubMiddlewareChain;
+import hu.bme.mit.ftsrg.hypernate.middleware.WriteBackCachedStubMiddleware;
+import hu.bme.mit.ftsrg.hypernate.registry.ParsedEntityCache;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.junit.jupiter.api.DisplayNameGeneration;
+import org.junit.jupiter.api.DisplayNameGenerator.ReplaceUnderscores;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+@DisplayNameGeneration(ReplaceUnderscores.class)
+class HypernateBootstrapTest {
+
+  @PrimaryKey(@AttributeInfo(name = "id"))
+  record AssetTestEntity(String id, String owner, long value, boolean frozen) {}
+
+  @AppendOnly(
+      parent = @AttributeInfo(name = "assetId"),
+      ordering = @AttributeInfo(name = "sequence", mapper = LongZeroPadder.class))
+  record TransferTestEntity(String assetId, long sequence, String to) {}
+
+  @PrimaryKey(@AttributeInfo(name = "id"))
+  record ListedTestEntity(String id) {}
+
+  @PrimaryKey(@AttributeInfo(name = "id", mapper = LongZeroPadder.class))
+  record BrokenTestEntity(String id) {}
+
+  record NotAnEntity(String foo) {}
+
+  @EntityInfo(ListedTestEntity.class)
+  @MiddlewareInfo(WriteBackCachedStubMiddleware.class)
+  static class TestContract implements HypernateContract {
+
+    public List<AssetTestEntity> readAssets(final HypernateContext ctx) {
+      return List.of();
+    }
+
+    public void transfer(final HypernateContext ctx, final TransferTestEntity[] transfers) {}
+
+    public NotAnEntity describe(final NotAnEntity notAnEntity) {
+      return notAnEntity;
+    }
+  }
+
+  @Nested
+  class given_contract {
+
+    private final TestContract contract = new TestContract();
+
+    @Test
+    void when_discovering_entities_then_find_listed_and_signature_entities() {
+      assertEquals(
+          Set.of(ListedTestEntity.class, AssetTestEntity.class, TransferTestEntity.class),
+          HypernateBootstrap.discoverEntities(TestContract.class));
+    }
+
+    @Test
+    void when_running_then_warm_up_every_entity_through_middleware_chain() {
+      final HypernateBootstrap.Report report = HypernateBootstrap.run(contract, 10);
+
+      assertEquals(
+          Set.of(ListedTestEntity.class, AssetTestEntity.class, TransferTestEntity.class),
+          Set.copyOf(report.entities()));
+      assertEquals(List.of(WriteBackCachedStubMiddleware.class), report.middlewares());
+      assertEquals(10, report.iterations());
+    }
+
+    @Test
+    void when_running_then_leave_no_trace_in_process_wide_metrics_and_caches() {
+      final long parseCacheMisses = ParsedEntityCache.getInstance().getMisses();
+
+      HypernateBootstrap.run(contract, 10);
+
+      assertFalse(
+          EntityProfiler.getInstance().snapshot().containsKey(AssetTestEntity.class.getName()));
+      assertFalse(FunctionCosts.getInstance().snapshot().containsKey(WarmUpStub.FUNCTION));
+      assertEquals(parseCacheMisses, ParsedEntityCache.getInstance().getMisses());
+      assertTrue(EntityProfiler.getInstance().isEnabled());
+      assertTrue(FunctionCosts.getInstance().isEnabled());
+      assertTrue(ParsedEntityCache.getInstance().isEnabled());
+    }
+  }
+
+  @Nested
+  class given_self_bootstrapping_contract {
+
+    static class SelfBootstrappingContract implements HypernateContract {
+
+      static final AtomicInteger middlewareChains = new AtomicInteger();
+
+      SelfBootstrappingContract() {
+        HypernateBootstrap.run(this, 1);
+      }
+
+      @Override
+      public StubMiddlewareChain initMiddlewares(final ChaincodeStub fabricStub) {
+        middlewareChains.incrementAndGet();
+        return HypernateContract.super.initMiddlewares(fabricStub);
+      }
+    }
+
+    @Test
+    void when_running_main_then_do_not_bootstrap_it_again() throws ReflectiveOperationException {
+      SelfBootstrappingContract.middlewareChains.set(0);
+
+      HypernateBootstrap.main(new String[] {SelfBootstrappingContract.class.getName()});
+
+      assertEquals(1, SelfBootstrappingContract.middlewareChains.get());
+    }
+  }
+
+  @Nested
+  class given_contract_with_broken_entity {
+
+    @EntityInfo({AssetTestEntity.class, BrokenTestEntity.class, NotAnEntity.class})
+    static class BrokenContract implements HypernateContract {}
+
+    @Test
+    void when_running_then_skip_failing_entities_and_warm_up_the_rest() {
+      final HypernateBootstrap.Report report = HypernateBootstrap.run(new BrokenContract(), 10);
+
+      assertEquals(List.of(AssetTestEntity.class), report.entities());
+    }
+  }
+}
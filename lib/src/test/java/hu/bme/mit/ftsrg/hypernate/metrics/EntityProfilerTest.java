@@ -0,0 +1,88 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.*;
+
+@DisplayNameGeneration(DisplayNameGenerator.ReplaceUnderscores.class)
+class EntityProfilerTest {
+
+  record Small(String id) {}
+
+  record Large(String id) {}
+
+  EntityProfiler profiler;
+
+  @BeforeEach
+  void setUp() {
+    profiler = new EntityProfiler();
+    profiler.setSizeThresholds(new long[] {1_000, 100});
+  }
+
+  @Test
+  void when_recording_then_histograms_are_kept_per_entity_type() {
+    profiler.recordSerialization(Small.class, 10, 2_000);
+    profiler.recordSerialization(Small.class, 30, 4_000);
+    profiler.recordDeserialization(Small.class, 1_000);
+    profiler.recordKeyMapping(Large.class, 500);
+
+    final EntityProfile small = profiler.snapshot().get(Small.class.getName());
+    assertEquals(2, small.serializedBytes().count());
+    assertEquals(20, small.serializedBytes().mean());
+    assertEquals(30, small.serializedBytes().max());
+    assertEquals(30, small.serializedBytes().percentile(0.99));
+    assertEquals(15, small.serializedBytes().percentile(0.5));
+    assertEquals(1, small.deserializationNanos().count());
+    assertEquals(0, small.keyMappingNanos().count());
+    assertEquals(1, profiler.snapshot().get(Large.class.getName()).keyMappingNanos().count());
+  }
+
+  @Test
+  void when_value_crosses_size_thresholds_then_it_is_counted_as_oversized() {
+    assertArrayEquals(new long[] {100, 1_000}, profiler.getSizeThresholds());
+
+    profiler.recordSerialization(Large.class, 50, 0);
+    profiler.recordSerialization(Large.class, 500, 0);
+    profiler.recordSerialization(Large.class, 5_000, 0);
+
+    assertEquals(2, profiler.snapshot().get(Large.class.getName()).oversized());
+  }
+
+  @Test
+  void when_disabled_then_nothing_is_recorded() {
+    profiler.setEnabled(false);
+
+    profiler.recordSerialization(Small.class, 10, 0);
+
+    assertTrue(profiler.snapshot().isEmpty());
+  }
+
+  @Test
+  void when_registered_then_profiles_are_exposed_over_jmx() throws Exception {
+    final MBeanServer server = MBeanServerFactory.newMBeanServer();
+    profiler.recordSerialization(Small.class, 10, 0);
+    profiler.registerMBeans(server);
+    profiler.recordSerialization(Large.class, 500, 0);
+
+    final ObjectName large =
+        new ObjectName(
+            EntityProfiler.JMX_DOMAIN
+                + ":type=EntityProfile,name="
+                + ObjectName.quote(Large.class.getName()));
+    assertEquals(1L, server.getAttribute(large, "Oversized"));
+    assertArrayEquals(
+        new String[] {Large.class.getName(), Small.class.getName()},
+        (String[])
+            server.getAttribute(
+                new ObjectName(EntityProfiler.JMX_DOMAIN + ":type=EntityProfiler"),
+                "EntityTypes"));
+
+    profiler.reset();
+
+    assertFalse(server.isRegistered(large));
+  }
+}
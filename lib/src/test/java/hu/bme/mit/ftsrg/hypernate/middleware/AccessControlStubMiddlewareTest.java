@@ -0,0 +1,138 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.middleware;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+
+import hu.bme.mit.ftsrg.hypernate.annotations.AccessPolicy;
+import hu.bme.mit.ftsrg.hypernate.annotations.AccessPolicy.Access;
+import hu.bme.mit.ftsrg.hypernate.annotations.AttributeInfo;
+import hu.bme.mit.ftsrg.hypernate.annotations.PrimaryKey;
+import hu.bme.mit.ftsrg.hypernate.annotations.PrivateDataCollection;
+import hu.bme.mit.ftsrg.hypernate.middleware.notification.TransactionEnd;
+import hu.bme.mit.ftsrg.hypernate.registry.Registry;
+import hu.bme.mit.ftsrg.hypernate.testing.InMemoryLedger;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.hyperledger.fabric.contract.ClientIdentity;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@DisplayNameGeneration(DisplayNameGenerator.ReplaceUnderscores.class)
+@ExtendWith(MockitoExtension.class)
+class AccessControlStubMiddlewareTest {
+
+  @PrimaryKey(@AttributeInfo(name = "id"))
+  record Account(String id, long balance) {}
+
+  @AccessPolicy(entities = Account.class, mspIds = "BankMSP")
+  @AccessPolicy(keyPrefixes = "audit", access = Access.WRITE, attributes = "role=auditor")
+  static class BankAccessControl extends AccessControlStubMiddleware {}
+
+  @PrimaryKey(@AttributeInfo(name = "id"))
+  @PrivateDataCollection(name = "secrets", members = "BankMSP")
+  record Secret(String id) {}
+
+  @AccessPolicy(entities = Secret.class, mspIds = "BankMSP")
+  static class PrivateAccessControl extends AccessControlStubMiddleware {}
+
+  @Mock ClientIdentity identity;
+
+  final AtomicInteger identityLookups = new AtomicInteger();
+
+  BankAccessControl accessControl;
+
+  ChaincodeStub stub;
+
+  Registry registry;
+
+  @BeforeEach
+  void setUp() {
+    final InMemoryLedger ledger = new InMemoryLedger();
+    ledger.put("audit1", bytes("entry"));
+    accessControl = new BankAccessControl();
+    accessControl.setClientIdentitySource(
+        () -> {
+          identityLookups.incrementAndGet();
+          return identity;
+        });
+    stub =
+        StubMiddlewareChain.builder(ledger.newTransaction().build())
+            .push(accessControl)
+            .build()
+            .getFlattened();
+    registry = new Registry(stub);
+  }
+
+  @Test
+  void when_client_is_granted_then_entities_can_be_accessed() {
+    given(identity.getMSPID()).willReturn("BankMSP");
+
+    registry.mustCreate(new Account("acc1", 100));
+
+    assertNull(registry.tryRead(Account.class, "acc1"));
+    assertTrue(registry.readAll(Account.class).isEmpty());
+    assertEquals(1, identityLookups.get());
+  }
+
+  @Test
+  void when_client_is_of_other_msp_then_entity_access_is_denied() {
+    given(identity.getMSPID()).willReturn("OtherMSP");
+
+    assertThrows(AccessDeniedException.class, () -> registry.mustCreate(new Account("acc1", 100)));
+    assertThrows(AccessDeniedException.class, () -> registry.tryRead(Account.class, "acc1"));
+    assertThrows(AccessDeniedException.class, () -> registry.readAll(Account.class));
+    assertThrows(AccessDeniedException.class, () -> stub.getQueryResult("{}"));
+  }
+
+  @Test
+  void when_client_is_of_other_msp_then_history_and_string_state_are_denied() {
+    given(identity.getMSPID()).willReturn("OtherMSP");
+    final String key = Registry.getKeyPrefixes(Account.class).get(0) + "acc1\u0000";
+
+    assertThrows(AccessDeniedException.class, () -> registry.history(Account.class, "acc1"));
+    assertThrows(AccessDeniedException.class, () -> stub.getStringState(key));
+    assertThrows(AccessDeniedException.class, () -> stub.putStringState(key, "{}"));
+  }
+
+  @Test
+  void when_key_is_not_protected_then_anyone_can_access_it() {
+    stub.putState("other", bytes("value"));
+
+    assertArrayEquals(bytes("entry"), stub.getState("audit1"));
+    assertEquals(0, identityLookups.get());
+  }
+
+  @Test
+  void when_client_lacks_attribute_then_write_under_prefix_is_denied() {
+    given(identity.getMSPID()).willReturn("BankMSP");
+    given(identity.getAttributeValue("role")).willReturn("teller");
+
+    assertThrows(AccessDeniedException.class, () -> stub.putState("audit2", bytes("entry")));
+    assertThrows(AccessDeniedException.class, () -> stub.delState("audit1"));
+  }
+
+  @Test
+  void when_transaction_ends_then_identity_is_looked_up_again() {
+    given(identity.getAttributeValue("role")).willReturn("auditor");
+
+    stub.putState("audit2", bytes("entry"));
+    stub.putState("audit3", bytes("entry"));
+    accessControl.onNext(new TransactionEnd());
+    stub.putState("audit4", bytes("entry"));
+
+    assertEquals(2, identityLookups.get());
+  }
+
+  @Test
+  void when_policy_lists_private_entity_then_it_is_rejected() {
+    assertThrows(IllegalArgumentException.class, PrivateAccessControl::new);
+  }
+
+  private static byte[] bytes(final String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+}
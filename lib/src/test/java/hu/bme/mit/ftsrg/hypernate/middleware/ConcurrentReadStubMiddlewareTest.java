@@ -0,0 +1,127 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.middleware;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+
+import hu.bme.mit.ftsrg.hypernate.testing.InMemoryChaincodeStub;
+import hu.bme.mit.ftsrg.hypernate.testing.InMemoryLedger;
+import hu.bme.mit.ftsrg.hypernate.testing.LatencyModel;
+import hu.bme.mit.ftsrg.hypernate.testing.PeerRequest;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@DisplayNameGeneration(DisplayNameGenerator.ReplaceUnderscores.class)
+@ExtendWith(MockitoExtension.class)
+class ConcurrentReadStubMiddlewareTest {
+
+  private static final Duration LATENCY = Duration.ofMillis(50);
+  private static final int KEY_COUNT = 8;
+
+  ExecutorService executor;
+
+  @BeforeEach
+  void setUp() {
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Nested
+  class given_slow_peer {
+
+    InMemoryChaincodeStub ledgerStub;
+
+    ChaincodeStub concurrentStub;
+
+    @BeforeEach
+    void setUp() {
+      final InMemoryLedger ledger = new InMemoryLedger();
+      IntStream.range(0, KEY_COUNT).forEach(i -> ledger.put("key" + i, bytes("value" + i)));
+      ledgerStub = ledger.newTransaction().latency(LatencyModel.fixed(LATENCY)).build();
+      concurrentStub =
+          StubMiddlewareChain.builder(ledgerStub)
+              .push(new ConcurrentReadStubMiddleware(executor, KEY_COUNT))
+              .build()
+              .getFirst();
+    }
+
+    @Test
+    void when_reading_many_then_round_trips_overlap() {
+      final List<String> keys = IntStream.range(0, KEY_COUNT).mapToObj(i -> "key" + i).toList();
+
+      final long start = System.nanoTime();
+      final List<byte[]> values = StubMiddleware.getStates(concurrentStub, keys);
+      final Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+      assertTrue(
+          elapsed.compareTo(LATENCY.multipliedBy(KEY_COUNT / 2)) < 0,
+          () -> "Reading " + KEY_COUNT + " keys took " + elapsed);
+      for (int i = 0; i < KEY_COUNT; i++) {
+        assertArrayEquals(bytes("value" + i), values.get(i));
+      }
+    }
+
+    @Test
+    void when_reading_duplicates_and_missing_keys_then_keep_input_order_and_read_once() {
+      final List<byte[]> values =
+          StubMiddleware.getStates(concurrentStub, List.of("key1", "missing", "key0", "key1"));
+
+      assertArrayEquals(bytes("value1"), values.get(0));
+      assertEquals(0, values.get(1).length);
+      assertArrayEquals(bytes("value0"), values.get(2));
+      assertSame(values.get(0), values.get(3));
+      assertEquals(3, ledgerStub.getRoundTrips(PeerRequest.GET_STATE));
+    }
+  }
+
+  @Nested
+  class given_failing_peer {
+
+    @Mock ChaincodeStub fabricStub;
+
+    ChaincodeStub concurrentStub;
+
+    @BeforeEach
+    void setUp() {
+      concurrentStub =
+          StubMiddlewareChain.builder(fabricStub)
+              .push(new ConcurrentReadStubMiddleware(executor, 2))
+              .build()
+              .getFirst();
+    }
+
+    @Test
+    void when_several_reads_fail_then_throw_failure_of_first_key() {
+      final IllegalStateException first = new IllegalStateException("first");
+      final IllegalStateException second = new IllegalStateException("second");
+      given(fabricStub.getState("a")).willReturn(bytes("a"));
+      given(fabricStub.getState("b")).willThrow(first);
+      given(fabricStub.getState("c")).willThrow(second);
+
+      final IllegalStateException thrown =
+          assertThrows(
+              IllegalStateException.class,
+              () -> StubMiddleware.getStates(concurrentStub, List.of("a", "b", "c")));
+
+      assertSame(first, thrown);
+      assertArrayEquals(new Throwable[] {second}, thrown.getSuppressed());
+    }
+  }
+
+  private static byte[] bytes(final String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,73 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.middleware;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.BDDMockito.given;
+
+import hu.bme.mit.ftsrg.hypernate.metrics.FunctionCostSummary;
+import hu.bme.mit.ftsrg.hypernate.metrics.FunctionCosts;
+import hu.bme.mit.ftsrg.hypernate.middleware.notification.TransactionBegin;
+import hu.bme.mit.ftsrg.hypernate.middleware.notification.TransactionEnd;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@DisplayNameGeneration(DisplayNameGenerator.ReplaceUnderscores.class)
+@ExtendWith(MockitoExtension.class)
+class CostAttributingStubMiddlewareTest {
+
+  private static final String FUNCTION = "transfer";
+  private static final byte[] VALUE = "value".getBytes(StandardCharsets.UTF_8);
+
+  @Mock ChaincodeStub fabricStub;
+
+  FunctionCosts costs;
+
+  CostAttributingStubMiddleware middleware;
+
+  @BeforeEach
+  void setUp() {
+    costs = new FunctionCosts();
+    costs.setLogInterval(Duration.ZERO);
+    middleware = new CostAttributingStubMiddleware(costs);
+    StubMiddlewareChain.builder(fabricStub).push(middleware).build();
+    given(fabricStub.getFunction()).willReturn(FUNCTION);
+  }
+
+  @Test
+  void when_transaction_ends_then_its_interactions_are_attributed_to_its_function() {
+    given(fabricStub.getState("key")).willReturn(VALUE);
+
+    middleware.onNext(new TransactionBegin());
+    middleware.getState("key");
+    middleware.putState("key", VALUE);
+    middleware.putState("other", VALUE);
+    middleware.delState("key");
+    middleware.onNext(new TransactionEnd());
+
+    final FunctionCostSummary summary = costs.snapshot().get(FUNCTION);
+    assertEquals(1, summary.transactions());
+    assertEquals(1, summary.gets());
+    assertEquals(2, summary.puts());
+    assertEquals(1, summary.deletes());
+    assertEquals(VALUE.length, summary.bytesRead());
+    assertEquals(2L * VALUE.length, summary.bytesWritten());
+  }
+
+  @Test
+  void when_several_transactions_end_then_aggregates_accumulate() {
+    for (int i = 0; i < 3; i++) {
+      middleware.onNext(new TransactionBegin());
+      middleware.putState("key", VALUE);
+      middleware.onNext(new TransactionEnd());
+    }
+
+    final FunctionCostSummary summary = costs.snapshot().get(FUNCTION);
+    assertEquals(3, summary.transactions());
+    assertEquals(3, summary.puts());
+  }
+}
@@ -0,0 +1,93 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.middleware;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+
+import hu.bme.mit.ftsrg.hypernate.middleware.notification.TransactionEnd;
+import hu.bme.mit.ftsrg.hypernate.util.EventBatch;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@DisplayNameGeneration(DisplayNameGenerator.ReplaceUnderscores.class)
+@ExtendWith(MockitoExtension.class)
+class EventBatchingStubMiddlewareTest {
+
+  private static final String BATCH_EVENT = "batch";
+  private static final byte[] CREATED = "created".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] DELETED = "deleted".getBytes(StandardCharsets.UTF_8);
+
+  @Mock ChaincodeStub fabricStub;
+
+  EventBatchingStubMiddleware middleware;
+
+  ChaincodeStub stub;
+
+  @BeforeEach
+  void setUp() {
+    middleware = new EventBatchingStubMiddleware(BATCH_EVENT);
+    stub = StubMiddlewareChain.builder(fabricStub).push(middleware).build().getFlattened();
+  }
+
+  @Test
+  void when_events_are_set_then_they_are_buffered() {
+    stub.setEvent("AssetCreated", CREATED);
+    stub.setEvent("AssetDeleted", DELETED);
+
+    final List<EventBatch.Event> recorded = middleware.getRecordedEvents();
+    assertEquals(2, recorded.size());
+    assertEquals("AssetCreated", recorded.get(0).name());
+    assertArrayEquals(DELETED, recorded.get(1).payload());
+    then(fabricStub).should(never()).setEvent(anyString(), any());
+  }
+
+  @Test
+  void when_transaction_ends_then_exactly_one_batched_event_is_emitted() {
+    stub.setEvent("AssetCreated", CREATED);
+    stub.setEvent("AssetDeleted", DELETED);
+
+    middleware.onNext(new TransactionEnd());
+
+    final ArgumentCaptor<byte[]> payload = ArgumentCaptor.forClass(byte[].class);
+    then(fabricStub).should().setEvent(eq(BATCH_EVENT), payload.capture());
+    then(fabricStub).should().setEvent(anyString(), any());
+    final List<EventBatch.Event> batch = EventBatch.decode(payload.getValue());
+    assertEquals(
+        List.of("AssetCreated", "AssetDeleted"),
+        batch.stream().map(EventBatch.Event::name).toList());
+    assertArrayEquals(CREATED, batch.get(0).payload());
+    assertArrayEquals(DELETED, batch.get(1).payload());
+  }
+
+  @Test
+  void when_no_events_were_set_then_nothing_is_emitted() {
+    middleware.onNext(new TransactionEnd());
+
+    then(fabricStub).should(never()).setEvent(anyString(), any());
+  }
+
+  @Test
+  void when_next_transaction_sets_events_then_only_its_own_are_emitted() {
+    stub.setEvent("AssetCreated", CREATED);
+    middleware.onNext(new TransactionEnd());
+    stub.setEvent("AssetDeleted", DELETED);
+
+    middleware.onNext(new TransactionEnd());
+
+    final ArgumentCaptor<byte[]> payload = ArgumentCaptor.forClass(byte[].class);
+    then(fabricStub).should(times(2)).setEvent(eq(BATCH_EVENT), payload.capture());
+    final List<EventBatch.Event> second = EventBatch.decode(payload.getAllValues().get(1));
+    assertEquals(1, second.size());
+    assertEquals("AssetDeleted", second.get(0).name());
+    assertTrue(middleware.getRecordedEvents().isEmpty());
+  }
+}
@@ -0,0 +1,92 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.middleware;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.times;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import org.hyperledger.fabric.shim.Chaincode;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@DisplayNameGeneration(DisplayNameGenerator.ReplaceUnderscores.class)
+@ExtendWith(MockitoExtension.class)
+class InvocationMemoizingStubMiddlewareTest {
+
+  private static final Chaincode.Response OK =
+      new Chaincode.Response(Chaincode.Response.Status.SUCCESS, null, bytes("payload"));
+
+  private static final Chaincode.Response ERROR =
+      new Chaincode.Response(Chaincode.Response.Status.INTERNAL_SERVER_ERROR, "failed", null);
+
+  @Mock ChaincodeStub fabricStub;
+
+  InvocationMemoizingStubMiddleware memoizer;
+
+  ChaincodeStub stub;
+
+  @BeforeEach
+  void setUp() {
+    memoizer = new InvocationMemoizingStubMiddleware();
+    stub = StubMiddlewareChain.builder(fabricStub).push(memoizer).build().getFlattened();
+  }
+
+  @Test
+  void when_invoking_read_only_with_equal_arguments_then_peer_is_invoked_once() {
+    given(fabricStub.invokeChaincode(eq("cc"), anyList(), eq("ch"))).willReturn(OK);
+
+    assertSame(OK, StubMiddleware.invokeChaincodeReadOnly(stub, "cc", args("f", "a"), "ch"));
+    assertSame(OK, StubMiddleware.invokeChaincodeReadOnly(stub, "cc", args("f", "a"), "ch"));
+
+    then(fabricStub).should(times(1)).invokeChaincode(eq("cc"), anyList(), eq("ch"));
+    assertEquals(1, memoizer.getHits());
+    assertEquals(1, memoizer.getMisses());
+  }
+
+  @Test
+  void when_invoking_read_only_with_other_arguments_then_peer_is_invoked_again() {
+    given(fabricStub.invokeChaincode(eq("cc"), anyList(), isNull())).willReturn(OK);
+
+    StubMiddleware.invokeChaincodeReadOnly(stub, "cc", args("f", "a"), null);
+    StubMiddleware.invokeChaincodeReadOnly(stub, "cc", args("f", "b"), null);
+
+    then(fabricStub).should(times(2)).invokeChaincode(eq("cc"), anyList(), isNull());
+  }
+
+  @Test
+  void when_invoking_without_read_only_hint_then_response_is_not_memoized() {
+    given(fabricStub.invokeChaincode(eq("cc"), anyList(), eq("ch"))).willReturn(OK);
+
+    stub.invokeChaincode("cc", args("f", "a"), "ch");
+    stub.invokeChaincode("cc", args("f", "a"), "ch");
+
+    then(fabricStub).should(times(2)).invokeChaincode(eq("cc"), anyList(), eq("ch"));
+    assertEquals(0, memoizer.getMisses());
+  }
+
+  @Test
+  void when_invocation_fails_then_response_is_not_memoized() {
+    given(fabricStub.invokeChaincode(eq("cc"), anyList(), eq("ch"))).willReturn(ERROR);
+
+    StubMiddleware.invokeChaincodeReadOnly(stub, "cc", args("f", "a"), "ch");
+    StubMiddleware.invokeChaincodeReadOnly(stub, "cc", args("f", "a"), "ch");
+
+    then(fabricStub).should(times(2)).invokeChaincode(eq("cc"), anyList(), eq("ch"));
+  }
+
+  private static List<byte[]> args(final String... args) {
+    return Arrays.stream(args).map(InvocationMemoizingStubMiddlewareTest::bytes).toList();
+  }
+
+  private static byte[] bytes(final String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+}
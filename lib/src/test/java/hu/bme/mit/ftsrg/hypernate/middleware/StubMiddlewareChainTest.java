@@ -2,7 +2,10 @@
 package hu.bme.mit.ftsrg.hypernate.middleware;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import org.hyperledger.fabric.shim.ChaincodeStub;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -16,6 +19,24 @@ class StubMiddlewareChainTest {
   @Mock ChaincodeStub fabricStub;
   @Mock StubMiddleware testMiddleware;
 
+  static class PassThroughMiddleware extends StubMiddleware {}
+
+  static class TxIdMiddleware extends StubMiddleware {
+
+    @Override
+    public String getTxId() {
+      return "overridden";
+    }
+  }
+
+  static class ConstantStateMiddleware extends StubMiddleware {
+
+    @Override
+    public byte[] getState(final String key) {
+      return key.getBytes(StandardCharsets.UTF_8);
+    }
+  }
+
   @Test
   void when_empty_chain_then_only_contains_fabric_stub() {
     final StubMiddlewareChain chain = StubMiddlewareChain.emptyChain(fabricStub);
@@ -54,4 +75,47 @@ class StubMiddlewareChainTest {
       assertEquals(1, chain.middlewares().size());
     }
   }
+
+  @Nested
+  class given_chain_with_pass_through_layers {
+
+    final PassThroughMiddleware top = new PassThroughMiddleware();
+
+    StubMiddlewareChain chain;
+
+    @BeforeEach
+    void setUp() {
+      chain =
+          StubMiddlewareChain.builder(fabricStub)
+              .push(new ConstantStateMiddleware())
+              .push(new PassThroughMiddleware())
+              .push(new TxIdMiddleware())
+              .push(top)
+              .build();
+    }
+
+    @Test
+    void when_calling_overridden_method_then_first_overriding_layer_handles_it() {
+      assertEquals("overridden", chain.getFlattened().getTxId());
+      assertEquals("overridden", top.getTxId());
+      verifyNoInteractions(fabricStub);
+    }
+
+    @Test
+    void when_calling_method_no_layer_overrides_then_fabric_stub_handles_it() {
+      when(fabricStub.getMspId()).thenReturn("Org1MSP");
+
+      assertEquals("Org1MSP", chain.getFlattened().getMspId());
+      assertEquals("Org1MSP", top.getMspId());
+    }
+
+    @Test
+    void when_reading_multiple_states_then_get_state_override_handles_them() {
+      final List<byte[]> values = StubMiddleware.getStates(chain.getFlattened(), List.of("a", "b"));
+
+      assertArrayEquals("a".getBytes(StandardCharsets.UTF_8), values.get(0));
+      assertArrayEquals("b".getBytes(StandardCharsets.UTF_8), values.get(1));
+      verifyNoInteractions(fabricStub);
+    }
+  }
 }
@@ -0,0 +1,284 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.middleware;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+
+import hu.bme.mit.ftsrg.hypernate.middleware.notification.TransactionEnd;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import javax.annotation.Nonnull;
+import org.hyperledger.fabric.protos.peer.QueryResponseMetadata;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@DisplayNameGeneration(DisplayNameGenerator.ReplaceUnderscores.class)
+@ExtendWith(MockitoExtension.class)
+class WriteBackCachedStubMiddlewareTest {
+
+  private static final String KEY = "key";
+  private static final byte[] VALUE = "value".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] OTHER_VALUE = "other".getBytes(StandardCharsets.UTF_8);
+
+  @Mock ChaincodeStub fabricStub;
+
+  ChaincodeStub cachedStub;
+
+  @BeforeEach
+  void setUp() {
+    cachedStub =
+        StubMiddlewareChain.builder(fabricStub)
+            .push(new WriteBackCachedStubMiddleware())
+            .build()
+            .getFirst();
+  }
+
+  @Test
+  void when_reading_twice_then_only_first_read_reaches_the_peer() {
+    given(fabricStub.getState(KEY)).willReturn(VALUE);
+
+    assertArrayEquals(VALUE, cachedStub.getState(KEY));
+    assertArrayEquals(VALUE, cachedStub.getState(KEY));
+
+    then(fabricStub).should().getState(KEY);
+  }
+
+  @Test
+  void when_original_value_is_written_back_then_nothing_is_flushed() {
+    given(fabricStub.getState(KEY)).willReturn(VALUE);
+
+    cachedStub.getState(KEY);
+    cachedStub.putState(KEY, OTHER_VALUE);
+    cachedStub.putState(KEY, VALUE.clone());
+    ((StubMiddleware) cachedStub).onNext(new TransactionEnd());
+
+    then(fabricStub).should(never()).putState(anyString(), any());
+  }
+
+  @Nested
+  class given_exhausted_budget {
+
+    WriteBackCachedStubMiddleware middleware;
+
+    @BeforeEach
+    void setUp() {
+      middleware = new WriteBackCachedStubMiddleware(false, 0);
+      cachedStub = StubMiddlewareChain.builder(fabricStub).push(middleware).build().getFirst();
+    }
+
+    @Test
+    void when_reading_twice_then_clean_entry_is_evicted_and_read_again() {
+      given(fabricStub.getState(KEY)).willReturn(VALUE);
+
+      assertArrayEquals(VALUE, cachedStub.getState(KEY));
+      assertArrayEquals(VALUE, cachedStub.getState(KEY));
+
+      then(fabricStub).should(times(2)).getState(KEY);
+      assertEquals(2, middleware.getMisses());
+      assertEquals(2, middleware.getEvictions());
+      assertEquals(0, middleware.getCachedBytes());
+    }
+
+    @Test
+    void when_written_then_entry_is_kept_and_flushed_at_transaction_end() {
+      cachedStub.putState(KEY, VALUE);
+
+      assertArrayEquals(VALUE, cachedStub.getState(KEY));
+      middleware.onNext(new TransactionEnd());
+
+      then(fabricStub).should().putState(KEY, VALUE);
+      then(fabricStub).shouldHaveNoMoreInteractions();
+      assertEquals(1, middleware.getHits());
+      assertEquals(0, middleware.getEvictions());
+    }
+  }
+
+  @Nested
+  class given_partial_composite_key_scan {
+
+    @BeforeEach
+    void setUp() {
+      given(fabricStub.getStateByPartialCompositeKey(anyString()))
+          .willReturn(iteratorOf(keyValue(KEY, VALUE)));
+    }
+
+    @Test
+    void when_scanned_then_point_read_is_served_locally() {
+      cachedStub.getStateByPartialCompositeKey("prefix").forEach(kv -> {});
+
+      assertArrayEquals(VALUE, cachedStub.getState(KEY));
+      then(fabricStub).should(never()).getState(anyString());
+    }
+
+    @Test
+    void when_written_before_scan_then_own_write_wins() {
+      cachedStub.putState(KEY, OTHER_VALUE);
+      cachedStub.getStateByPartialCompositeKey("prefix").forEach(kv -> {});
+
+      assertArrayEquals(OTHER_VALUE, cachedStub.getState(KEY));
+    }
+  }
+
+  @Nested
+  class given_writes_in_scanned_range {
+
+    @BeforeEach
+    void setUp() {
+      cachedStub.putState("key1", OTHER_VALUE);
+      cachedStub.putState("key2", OTHER_VALUE);
+      cachedStub.delState("key3");
+      cachedStub.putState("key4", OTHER_VALUE);
+    }
+
+    @Test
+    void when_range_is_scanned_then_writes_and_deletions_are_merged_into_results() {
+      given(fabricStub.getStateByRange("key1", "key9"))
+          .willReturn(
+              iteratorOf(
+                  keyValue("key1", VALUE), keyValue("key3", VALUE), keyValue("key5", VALUE)));
+
+      final List<KeyValue> results = listOf(cachedStub.getStateByRange("key1", "key9"));
+
+      assertEquals(List.of("key1", "key2", "key4", "key5"), keysOf(results));
+      assertArrayEquals(OTHER_VALUE, results.get(0).getValue());
+      assertArrayEquals(VALUE, results.get(3).getValue());
+    }
+
+    @Test
+    void when_page_is_scanned_then_only_writes_before_next_page_are_merged() {
+      cachedStub.putState("key6", OTHER_VALUE);
+      given(fabricStub.getStateByRangeWithPagination("key1", "key9", 2, ""))
+          .willReturn(pageOf("key5", keyValue("key1", VALUE), keyValue("key3", VALUE)));
+
+      final List<KeyValue> results =
+          listOf(cachedStub.getStateByRangeWithPagination("key1", "key9", 2, ""));
+
+      assertEquals(List.of("key1", "key2", "key4"), keysOf(results));
+    }
+  }
+
+  @Nested
+  class given_private_data {
+
+    private static final String COLLECTION = "collection";
+
+    @Test
+    void when_reading_twice_then_only_first_read_reaches_the_peer() {
+      given(fabricStub.getPrivateData(COLLECTION, KEY)).willReturn(VALUE);
+
+      assertArrayEquals(VALUE, cachedStub.getPrivateData(COLLECTION, KEY));
+      assertArrayEquals(VALUE, cachedStub.getPrivateData(COLLECTION, KEY));
+
+      then(fabricStub).should().getPrivateData(COLLECTION, KEY);
+    }
+
+    @Test
+    void when_value_is_cached_then_hash_is_computed_locally() throws NoSuchAlgorithmException {
+      cachedStub.putPrivateData(COLLECTION, KEY, VALUE);
+
+      assertArrayEquals(
+          MessageDigest.getInstance("SHA-256").digest(VALUE),
+          cachedStub.getPrivateDataHash(COLLECTION, KEY));
+      then(fabricStub).should(never()).getPrivateDataHash(anyString(), anyString());
+    }
+
+    @Test
+    void when_written_twice_then_only_last_value_is_flushed_at_transaction_end() {
+      cachedStub.putPrivateData(COLLECTION, KEY, OTHER_VALUE);
+      cachedStub.putPrivateData(COLLECTION, KEY, VALUE);
+      ((StubMiddleware) cachedStub).onNext(new TransactionEnd());
+
+      then(fabricStub).should().putPrivateData(COLLECTION, KEY, VALUE);
+      then(fabricStub).shouldHaveNoMoreInteractions();
+    }
+  }
+
+  @Test
+  void when_rich_query_is_consumed_then_results_are_not_cached_by_default() {
+    given(fabricStub.getQueryResult(anyString())).willReturn(iteratorOf(keyValue(KEY, VALUE)));
+    given(fabricStub.getState(KEY)).willReturn(VALUE);
+
+    cachedStub.getQueryResult("{}").forEach(kv -> {});
+    cachedStub.getState(KEY);
+
+    then(fabricStub).should().getState(KEY);
+  }
+
+  private static KeyValue keyValue(final String key, final byte[] value) {
+    return new KeyValue() {
+      @Override
+      public String getKey() {
+        return key;
+      }
+
+      @Override
+      public byte[] getValue() {
+        return value;
+      }
+
+      @Override
+      public String getStringValue() {
+        return new String(value, StandardCharsets.UTF_8);
+      }
+    };
+  }
+
+  private static List<KeyValue> listOf(final Iterable<KeyValue> results) {
+    final List<KeyValue> list = new ArrayList<>();
+    results.forEach(list::add);
+    return list;
+  }
+
+  private static List<String> keysOf(final List<KeyValue> results) {
+    return results.stream().map(KeyValue::getKey).toList();
+  }
+
+  private static QueryResultsIteratorWithMetadata<KeyValue> pageOf(
+      final String nextBookmark, final KeyValue... keyValues) {
+    final QueryResponseMetadata metadata =
+        QueryResponseMetadata.newBuilder()
+            .setFetchedRecordsCount(keyValues.length)
+            .setBookmark(nextBookmark)
+            .build();
+    return new QueryResultsIteratorWithMetadata<>() {
+      @Override
+      public QueryResponseMetadata getMetadata() {
+        return metadata;
+      }
+
+      @Override
+      public void close() {}
+
+      @Override
+      public @Nonnull Iterator<KeyValue> iterator() {
+        return List.of(keyValues).iterator();
+      }
+    };
+  }
+
+  private static QueryResultsIterator<KeyValue> iteratorOf(final KeyValue... keyValues) {
+    return new QueryResultsIterator<>() {
+      @Override
+      public void close() {}
+
+      @Override
+      public @Nonnull Iterator<KeyValue> iterator() {
+        return List.of(keyValues).iterator();
+      }
+    };
+  }
+}
@@ -0,0 +1,69 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.registry;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.*;
+
+@DisplayNameGeneration(DisplayNameGenerator.ReplaceUnderscores.class)
+class ParsedEntityCacheTest {
+
+  ParsedEntityCache cache;
+
+  @BeforeEach
+  void setUp() {
+    cache = new ParsedEntityCache(20);
+  }
+
+  @Test
+  void when_same_bytes_are_read_again_then_parsed_instance_is_reused() {
+    final String first = get("0123456789");
+    final String second = get("0123456789");
+
+    assertSame(first, second);
+    assertEquals(1, cache.getHits());
+    assertEquals(10, cache.getBytes());
+  }
+
+  @Test
+  void when_bytes_exceed_bound_then_entry_not_hit_since_is_evicted() {
+    get("aaaaaaaaaa");
+    get("bbbbbbbbbb");
+    get("aaaaaaaaaa");
+
+    get("cccccccccc");
+
+    assertEquals(2, cache.size());
+    assertEquals(20, cache.getBytes());
+    final long misses = cache.getMisses();
+    get("aaaaaaaaaa");
+    assertEquals(misses, cache.getMisses());
+  }
+
+  @Test
+  void when_value_is_larger_than_cache_then_it_is_not_cached() {
+    get("0123456789abcdefghijklmnopqrstuvwxyz");
+
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getBytes());
+  }
+
+  @Test
+  void when_bound_is_lowered_then_entries_are_evicted() {
+    get("aaaaaaaaaa");
+    get("bbbbbbbbbb");
+
+    cache.setMaxBytes(10);
+
+    assertEquals(1, cache.size());
+    assertEquals(10, cache.getBytes());
+  }
+
+  private String get(final String value) {
+    return cache.get(
+        String.class,
+        value.getBytes(StandardCharsets.UTF_8),
+        b -> new String(b, StandardCharsets.UTF_8));
+  }
+}
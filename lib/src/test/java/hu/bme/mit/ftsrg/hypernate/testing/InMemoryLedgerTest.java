@@ -0,0 +1,112 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.testing;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.junit.jupiter.api.Test;
+
+public class InMemoryLedgerTest {
+
+  private static final byte[] VALUE = "value".getBytes(StandardCharsets.UTF_8);
+
+  private static final byte[] OTHER_VALUE = "other".getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  public void givenOwnWrite_whenGetState_thenReturnCommittedValue() {
+    /* --- given --- */
+    var ledger = new InMemoryLedger();
+    ledger.put("key", VALUE);
+    var stub = ledger.newTransaction().build();
+    stub.putState("key", OTHER_VALUE);
+
+    /* --- when & then --- */
+    assertThat(stub.getState("key")).isEqualTo(VALUE);
+    assertThat(stub.getState("missing")).isEmpty();
+  }
+
+  @Test
+  public void givenObjectTypeWithoutNamespace_whenScanPartialCompositeKey_thenMatchItsKeys()
+      throws Exception {
+    /* --- given --- */
+    var ledger = new InMemoryLedger();
+    ledger.put(new CompositeKey("Asset", "a1").toString(), VALUE);
+    ledger.put(new CompositeKey("AssetLog", "a1").toString(), VALUE);
+    var stub = ledger.newTransaction().build();
+
+    /* --- when --- */
+    var keys = new ArrayList<String>();
+    try (QueryResultsIterator<KeyValue> results = stub.getStateByPartialCompositeKey("Asset")) {
+      results.forEach(kv -> keys.add(kv.getKey()));
+    }
+
+    /* --- then --- */
+    assertThat(keys).containsExactly(new CompositeKey("Asset", "a1").toString());
+  }
+
+  @Test
+  public void givenTwoTransactionsReadingAndWritingSameKey_whenCommitBlock_thenSecondConflicts() {
+    /* --- given --- */
+    var ledger = new InMemoryLedger();
+    ledger.put("key", VALUE);
+    var first = ledger.newTransaction().build();
+    var second = ledger.newTransaction().build();
+    for (var stub : List.of(first, second)) {
+      stub.getState("key");
+      stub.putState("key", OTHER_VALUE);
+    }
+
+    /* --- when --- */
+    List<ValidationCode> codes = ledger.commit(List.of(first, second));
+
+    /* --- then --- */
+    assertThat(codes).containsExactly(ValidationCode.VALID, ValidationCode.MVCC_READ_CONFLICT);
+    assertThat(ledger.get("key")).isEqualTo(OTHER_VALUE);
+    assertThat(ledger.getVersion("key")).isEqualTo(new Version(1, 0));
+  }
+
+  @Test
+  public void givenKeyInsertedIntoScannedRange_whenCommit_thenPhantomReadConflict()
+      throws Exception {
+    /* --- given --- */
+    var ledger = new InMemoryLedger();
+    ledger.put("a", VALUE);
+    var scanning = ledger.newTransaction().build();
+    try (QueryResultsIterator<KeyValue> results = scanning.getStateByRange("a", "c")) {
+      results.forEach(kv -> {});
+    }
+    scanning.putState("summary", VALUE);
+
+    var inserting = ledger.newTransaction().build();
+    inserting.putState("b", VALUE);
+
+    /* --- when & then --- */
+    assertThat(ledger.commit(List.of(inserting, scanning)))
+        .containsExactly(ValidationCode.VALID, ValidationCode.PHANTOM_READ_CONFLICT);
+  }
+
+  @Test
+  public void givenLargeRange_whenConsumed_thenCountOneRoundTripPerPage() throws Exception {
+    /* --- given --- */
+    var ledger = new InMemoryLedger();
+    for (int i = 0; i < 250; i++) {
+      ledger.put(String.format("key%03d", i), VALUE);
+    }
+    var stub = ledger.newTransaction().build();
+
+    /* --- when --- */
+    try (QueryResultsIterator<KeyValue> results = stub.getStateByRange("", "")) {
+      results.forEach(kv -> {});
+    }
+
+    /* --- then --- */
+    assertThat(stub.getRoundTrips(PeerRequest.GET_STATE_BY_RANGE)).isEqualTo(1);
+    assertThat(stub.getRoundTrips(PeerRequest.QUERY_STATE_NEXT)).isEqualTo(2);
+    assertThat(stub.getRoundTrips(PeerRequest.QUERY_STATE_CLOSE)).isEqualTo(1);
+  }
+}
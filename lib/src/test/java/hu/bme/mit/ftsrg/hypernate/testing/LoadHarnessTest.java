@@ -0,0 +1,100 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.testing;
+
+import static org.assertj.core.api.Assertions.*;
+
+import hu.bme.mit.ftsrg.hypernate.context.HypernateContext;
+import hu.bme.mit.ftsrg.hypernate.contract.HypernateContract;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+public class LoadHarnessTest {
+
+  private static final int TRANSACTIONS = 20;
+
+  static class CounterContract implements HypernateContract {
+
+    int increment(final HypernateContext ctx, final int keyIndex) {
+      final String key = "counter" + keyIndex;
+      final byte[] current = ctx.getStub().getState(key);
+      final int value =
+          current.length == 0 ? 0 : Integer.parseInt(new String(current, StandardCharsets.UTF_8));
+      ctx.getStub().putState(key, Integer.toString(value + 1).getBytes(StandardCharsets.UTF_8));
+      return value + 1;
+    }
+
+    int read(final HypernateContext ctx, final int keyIndex) {
+      return ctx.getStub().getState("counter" + keyIndex).length;
+    }
+
+    int crash(final HypernateContext ctx, final int keyIndex) {
+      throw new AssertionError("crashed on key " + keyIndex);
+    }
+  }
+
+  @Test
+  public void givenHotKeyInSingleBlock_whenRun_thenAllButOneTransactionConflict()
+      throws InterruptedException {
+    /* --- given --- */
+    var harness =
+        LoadHarness.builder(new CounterContract(), new InMemoryLedger())
+            .transaction("increment", CounterContract::increment)
+            .transactions(TRANSACTIONS)
+            .concurrency(4)
+            .blockSize(TRANSACTIONS)
+            .blockTimeout(Duration.ofMinutes(1))
+            .keys(KeyDistribution.uniform(1))
+            .build();
+
+    /* --- when --- */
+    LoadReport report = harness.run();
+
+    /* --- then --- */
+    assertThat(report.blocks()).isEqualTo(1);
+    assertThat(report.committed()).isEqualTo(1);
+    assertThat(report.validationCodes())
+        .containsEntry(ValidationCode.MVCC_READ_CONFLICT, (long) TRANSACTIONS - 1);
+    assertThat(report.meanRoundTrips()).isEqualTo(2);
+  }
+
+  @Test
+  public void givenReadOnlyWorkload_whenRun_thenNothingIsInvalidated() throws InterruptedException {
+    /* --- given --- */
+    var harness =
+        LoadHarness.builder(new CounterContract(), new InMemoryLedger())
+            .transaction("read", CounterContract::read)
+            .transactions(TRANSACTIONS)
+            .blockSize(5)
+            .keys(KeyDistribution.zipfian(10, 1.0))
+            .build();
+
+    /* --- when --- */
+    LoadReport report = harness.run();
+
+    /* --- then --- */
+    assertThat(report.committed()).isEqualTo(TRANSACTIONS);
+    assertThat(report.invalidationRate()).isZero();
+    assertThat(report.endorsementFailures()).isZero();
+  }
+
+  @Test
+  @Timeout(10)
+  public void givenTransactionThrowingError_whenRun_thenItIsCountedAsFailed()
+      throws InterruptedException {
+    /* --- given --- */
+    var harness =
+        LoadHarness.builder(new CounterContract(), new InMemoryLedger())
+            .transaction("crash", CounterContract::crash)
+            .transactions(TRANSACTIONS)
+            .build();
+
+    /* --- when --- */
+    LoadReport report = harness.run();
+
+    /* --- then --- */
+    assertThat(report.endorsementFailures()).isEqualTo(TRANSACTIONS);
+    assertThat(report.committed()).isZero();
+  }
+}
@@ -0,0 +1,43 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.util;
+
+import static org.assertj.core.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class EventBatchTest {
+
+  @Test
+  public void givenEvents_whenEncodeAndDecode_thenReturnSameEventsInOrder() {
+    /* --- given --- */
+    var events =
+        List.of(
+            new EventBatch.Event("Created", "{\"id\":1}".getBytes(StandardCharsets.UTF_8)),
+            new EventBatch.Event("Transferred", new byte[0]),
+            new EventBatch.Event("Created", "{\"id\":2}".getBytes(StandardCharsets.UTF_8)));
+
+    /* --- when --- */
+    List<EventBatch.Event> decoded = EventBatch.decode(EventBatch.encode(events));
+
+    /* --- then --- */
+    assertThat(decoded).hasSize(3);
+    for (int i = 0; i < events.size(); i++) {
+      assertThat(decoded.get(i).name()).isEqualTo(events.get(i).name());
+      assertThat(decoded.get(i).payload()).isEqualTo(events.get(i).payload());
+    }
+  }
+
+  @Test
+  public void givenTruncatedBatch_whenDecode_thenThrowIllegalArgument() {
+    /* --- given --- */
+    byte[] batch = EventBatch.encode(List.of(new EventBatch.Event("Created", new byte[] {1, 2})));
+    byte[] truncated = Arrays.copyOf(batch, batch.length - 1);
+
+    /* --- when & then --- */
+    assertThatThrownBy(() -> EventBatch.decode(truncated))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
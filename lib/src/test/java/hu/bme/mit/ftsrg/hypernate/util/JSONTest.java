@@ -3,7 +3,11 @@ package hu.bme.mit.ftsrg.hypernate.util;
 
 import static org.assertj.core.api.Assertions.*;
 
+import hu.bme.mit.ftsrg.hypernate.annotations.Chunked;
 import hu.bme.mit.ftsrg.hypernate.registry.SerializationException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
 import org.junit.jupiter.api.Test;
 
 public class JSONTest {
@@ -33,7 +37,82 @@ public class JSONTest {
     assertThat(json).isEqualToIgnoringWhitespace("{\"number\": 100, \"string\": \"abc\"}");
   }
 
+  @Test
+  public void givenSerializedObject_whenPatch_thenReplaceOnlyChangedPropertiesInPlace()
+      throws SerializationException {
+    /* --- given --- */
+    var json = JSON.serialize(new Bar("abc", 100)).getBytes(StandardCharsets.UTF_8);
+
+    /* --- when --- */
+    byte[] patched = JSON.patch(json, Bar.class, Map.of("number", 42));
+
+    /* --- then --- */
+    assertThat(new String(patched, StandardCharsets.UTF_8))
+        .isEqualTo(JSON.serialize(new Bar("abc", 42)));
+  }
+
+  @Test
+  public void givenUnknownProperty_whenPatch_thenThrowIllegalArgument()
+      throws SerializationException {
+    /* --- given --- */
+    var json = JSON.serialize(new Bar("abc", 100)).getBytes(StandardCharsets.UTF_8);
+
+    /* --- when --- */
+    Throwable thrown = catchThrowable(() -> JSON.patch(json, Bar.class, Map.of("nope", 1)));
+
+    /* --- then --- */
+    assertThat(thrown).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void givenObject_whenProject_thenKeepOnlyGivenPropertiesForProjectionType()
+      throws SerializationException {
+    /* --- given --- */
+    var obj = new Bar("abc", 100);
+
+    /* --- when --- */
+    byte[] projected = JSON.project(obj, "string");
+
+    /* --- then --- */
+    assertThat(new String(projected, StandardCharsets.UTF_8))
+        .isEqualToIgnoringWhitespace("{\"string\": \"abc\"}");
+    assertThat(
+            JSON.deserializeProjection(
+                JSON.serialize(obj).getBytes(StandardCharsets.UTF_8), Foo.class))
+        .isEqualTo(new Foo("abc"));
+  }
+
+  @Test
+  public void givenChunkedAttribute_whenSerialize_thenKeepIt() throws SerializationException {
+    /* --- given --- */
+    var obj = new Document("abc", List.of("page"));
+
+    /* --- when --- */
+    String json = JSON.serialize(obj);
+
+    /* --- then --- */
+    assertThat(json).isEqualToIgnoringWhitespace("{\"pages\": [\"page\"], \"title\": \"abc\"}");
+  }
+
+  @Test
+  public void givenChunkedAttribute_whenSerializeWithChunks_thenWriteItAsNull()
+      throws SerializationException {
+    /* --- given --- */
+    var obj = new Document("abc", List.of("page"));
+
+    /* --- when --- */
+    byte[] json = JSON.serializeWithChunks(obj, Map.of("pages", List.of("hash")));
+
+    /* --- then --- */
+    assertThat(new String(json, StandardCharsets.UTF_8))
+        .isEqualToIgnoringWhitespace(
+            "{\"pages\": null, \"title\": \"abc\", \"@chunks\": {\"pages\": [\"hash\"]}}");
+    assertThat(JSON.readChunks(json)).isEqualTo(Map.of("pages", List.of("hash")));
+  }
+
   private record Foo(String string) {}
 
   private record Bar(String string, int number) {}
+
+  private record Document(String title, @Chunked List<String> pages) {}
 }
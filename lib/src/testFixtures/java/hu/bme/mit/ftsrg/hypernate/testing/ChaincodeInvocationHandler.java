@@ -0,0 +1,12 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.testing;
+
+import java.util.List;
+import org.hyperledger.fabric.shim.Chaincode;
+
+/** Answers chaincode-to-chaincode invocations made through an {@link InMemoryChaincodeStub}. */
+@FunctionalInterface
+public interface ChaincodeInvocationHandler {
+
+  Chaincode.Response invoke(String chaincodeName, List<byte[]> args, String channel);
+}
@@ -0,0 +1,692 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.testing;
+
+import com.google.protobuf.ByteString;
+import hu.bme.mit.ftsrg.hypernate.testing.InMemoryLedger.VersionedEntry;
+import hu.bme.mit.ftsrg.hypernate.testing.InMemoryLedger.VersionedValue;
+import hu.bme.mit.ftsrg.hypernate.testing.ReadWriteSet.Key;
+import hu.bme.mit.ftsrg.hypernate.testing.ReadWriteSet.RangeRead;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import org.hyperledger.fabric.protos.msp.SerializedIdentity;
+import org.hyperledger.fabric.protos.peer.ChaincodeEvent;
+import org.hyperledger.fabric.protos.peer.QueryResponseMetadata;
+import org.hyperledger.fabric.protos.peer.SignedProposal;
+import org.hyperledger.fabric.shim.Chaincode;
+import org.hyperledger.fabric.shim.ChaincodeStub;
+import org.hyperledger.fabric.shim.ledger.CompositeKey;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+import org.hyperledger.fabric.shim.ledger.KeyValue;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIterator;
+import org.hyperledger.fabric.shim.ledger.QueryResultsIteratorWithMetadata;
+
+/**
+ * {@link ChaincodeStub} simulating a single transaction against an {@link InMemoryLedger}.
+ *
+ * <p>The stub behaves like the shim talking to a peer: reads return the committed state (a
+ * transaction does not see its own writes), reads and writes are captured in a {@link
+ * ReadWriteSet} for validation at {@link InMemoryLedger#commit(List) commit}, and range queries
+ * fetch their results in pages of {@value #QUERY_PAGE_SIZE}. Every {@link PeerRequest} is counted
+ * and delayed according to the configured {@link LatencyModel}, so round-trips can be measured
+ * without a Fabric network.
+ *
+ * <p>Rich queries and key-level endorsement policies are not supported.
+ */
+public final class InMemoryChaincodeStub implements ChaincodeStub {
+
+  /** Number of range query results the peer returns per round-trip. */
+  public static final int QUERY_PAGE_SIZE = 100;
+
+  /** MSP ID of the peer and of the default creator. */
+  public static final String DEFAULT_MSP_ID = "Org1MSP";
+
+  private static final String UNSPECIFIED_START_KEY = new String(Character.toChars(1));
+
+  private static final String MAX_UNICODE_RUNE =
+      new String(Character.toChars(Character.MAX_CODE_POINT));
+
+  private static final byte[] DEFAULT_CERTIFICATE = loadDefaultCertificate();
+
+  private final InMemoryLedger ledger;
+
+  private final String txId;
+
+  private final String channelId;
+
+  private final String chaincodeName;
+
+  private final String mspId;
+
+  private final List<byte[]> args;
+
+  private final byte[] creator;
+
+  private final Map<String, byte[]> transientData;
+
+  private final Instant txTimestamp;
+
+  private final LatencyModel latencyModel;
+
+  private final ChaincodeInvocationHandler invocationHandler;
+
+  private final ReadWriteSet readWriteSet = new ReadWriteSet();
+
+  private final AtomicLongArray roundTrips = new AtomicLongArray(PeerRequest.values().length);
+
+  private final AtomicBoolean committed = new AtomicBoolean();
+
+  private volatile ChaincodeEvent event;
+
+  private InMemoryChaincodeStub(final Builder builder) {
+    this.ledger = builder.ledger;
+    this.txId = builder.txId;
+    this.channelId = builder.channelId;
+    this.chaincodeName = builder.chaincodeName;
+    this.mspId = builder.mspId;
+    this.args = List.copyOf(builder.args);
+    this.creator = builder.creator != null ? builder.creator : defaultCreator(builder.mspId);
+    this.transientData = Map.copyOf(builder.transientData);
+    this.txTimestamp = builder.txTimestamp != null ? builder.txTimestamp : Instant.now();
+    this.latencyModel = builder.latencyModel;
+    this.invocationHandler = builder.invocationHandler;
+  }
+
+  public InMemoryLedger getLedger() {
+    return ledger;
+  }
+
+  public ReadWriteSet getReadWriteSet() {
+    return readWriteSet;
+  }
+
+  /** Validates this transaction as a single-transaction block; see {@link InMemoryLedger}. */
+  public ValidationCode commit() {
+    return ledger.commit(this);
+  }
+
+  /** Total number of requests sent to the (simulated) peer so far. */
+  public long getRoundTrips() {
+    long total = 0;
+    for (int i = 0; i < roundTrips.length(); i++) {
+      total += roundTrips.get(i);
+    }
+    return total;
+  }
+
+  /** Number of requests of the given type sent to the (simulated) peer so far. */
+  public long getRoundTrips(final PeerRequest request) {
+    return roundTrips.get(request.ordinal());
+  }
+
+  void markCommitted() {
+    if (!committed.compareAndSet(false, true)) {
+      throw new IllegalStateException("Transaction " + txId + " has already been committed");
+    }
+  }
+
+  @Override
+  public List<byte[]> getArgs() {
+    return args.stream().map(byte[]::clone).toList();
+  }
+
+  @Override
+  public List<String> getStringArgs() {
+    return args.stream().map(arg -> new String(arg, StandardCharsets.UTF_8)).toList();
+  }
+
+  @Override
+  public String getFunction() {
+    return args.isEmpty() ? null : getStringArgs().get(0);
+  }
+
+  @Override
+  public List<String> getParameters() {
+    return args.isEmpty() ? List.of() : getStringArgs().subList(1, args.size());
+  }
+
+  @Override
+  public String getTxId() {
+    return txId;
+  }
+
+  @Override
+  public String getChannelId() {
+    return channelId;
+  }
+
+  @Override
+  public Chaincode.Response invokeChaincode(
+      final String chaincodeName, final List<byte[]> args, final String channel) {
+    roundTrip(PeerRequest.INVOKE_CHAINCODE);
+    return invocationHandler.invoke(chaincodeName, args, channel);
+  }
+
+  @Override
+  public byte[] getState(final String key) {
+    roundTrip(PeerRequest.GET_STATE);
+    return read(ReadWriteSet.WORLD_STATE, key);
+  }
+
+  @Override
+  public byte[] getStateValidationParameter(final String key) {
+    throw new UnsupportedOperationException("Key-level endorsement policies are not supported");
+  }
+
+  @Override
+  public void putState(final String key, final byte[] value) {
+    roundTrip(PeerRequest.PUT_STATE);
+    write(ReadWriteSet.WORLD_STATE, key, value);
+  }
+
+  @Override
+  public void setStateValidationParameter(final String key, final byte[] value) {
+    throw new UnsupportedOperationException("Key-level endorsement policies are not supported");
+  }
+
+  @Override
+  public void delState(final String key) {
+    roundTrip(PeerRequest.DEL_STATE);
+    write(ReadWriteSet.WORLD_STATE, key, null);
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getStateByRange(
+      final String startKey, final String endKey) {
+    CompositeKey.validateSimpleKeys(startKey, endKey);
+    return scan(ReadWriteSet.WORLD_STATE, rangeStart(startKey), rangeEnd(endKey));
+  }
+
+  @Override
+  public QueryResultsIteratorWithMetadata<KeyValue> getStateByRangeWithPagination(
+      final String startKey, final String endKey, final int pageSize, final String bookmark) {
+    CompositeKey.validateSimpleKeys(startKey, endKey);
+    return scanPage(rangeStart(startKey), rangeEnd(endKey), pageSize, bookmark);
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(final String compositeKey) {
+    final String prefix = normalizePartialKey(compositeKey);
+    return scan(ReadWriteSet.WORLD_STATE, prefix, prefix + MAX_UNICODE_RUNE);
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(
+      final String objectType, final String... attributes) {
+    return getStateByPartialCompositeKey(createCompositeKey(objectType, attributes));
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getStateByPartialCompositeKey(
+      final CompositeKey compositeKey) {
+    return getStateByPartialCompositeKey(compositeKey.toString());
+  }
+
+  @Override
+  public QueryResultsIteratorWithMetadata<KeyValue> getStateByPartialCompositeKeyWithPagination(
+      final CompositeKey compositeKey, final int pageSize, final String bookmark) {
+    final String prefix = compositeKey.toString();
+    return scanPage(prefix, prefix + MAX_UNICODE_RUNE, pageSize, bookmark);
+  }
+
+  @Override
+  public CompositeKey createCompositeKey(final String objectType, final String... attributes) {
+    return new CompositeKey(objectType, attributes);
+  }
+
+  @Override
+  public CompositeKey splitCompositeKey(final String compositeKey) {
+    return CompositeKey.parseCompositeKey(compositeKey);
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getQueryResult(final String query) {
+    throw new UnsupportedOperationException("Rich queries are not supported");
+  }
+
+  @Override
+  public QueryResultsIteratorWithMetadata<KeyValue> getQueryResultWithPagination(
+      final String query, final int pageSize, final String bookmark) {
+    throw new UnsupportedOperationException("Rich queries are not supported");
+  }
+
+  @Override
+  public QueryResultsIterator<KeyModification> getHistoryForKey(final String key) {
+    roundTrip(PeerRequest.GET_HISTORY_FOR_KEY);
+    return new PagedIterator<>(ledger.history(new Key(ReadWriteSet.WORLD_STATE, key)), null);
+  }
+
+  @Override
+  public byte[] getPrivateData(final String collection, final String key) {
+    roundTrip(PeerRequest.GET_STATE);
+    return read(collection, key);
+  }
+
+  @Override
+  public byte[] getPrivateDataHash(final String collection, final String key) {
+    roundTrip(PeerRequest.GET_PRIVATE_DATA_HASH);
+    final byte[] value = read(collection, key);
+    return value.length == 0 ? value : sha256(value);
+  }
+
+  @Override
+  public byte[] getPrivateDataValidationParameter(final String collection, final String key) {
+    throw new UnsupportedOperationException("Key-level endorsement policies are not supported");
+  }
+
+  @Override
+  public void putPrivateData(final String collection, final String key, final byte[] value) {
+    roundTrip(PeerRequest.PUT_STATE);
+    write(collection, key, value);
+  }
+
+  @Override
+  public void setPrivateDataValidationParameter(
+      final String collection, final String key, final byte[] value) {
+    throw new UnsupportedOperationException("Key-level endorsement policies are not supported");
+  }
+
+  @Override
+  public void delPrivateData(final String collection, final String key) {
+    roundTrip(PeerRequest.DEL_STATE);
+    write(collection, key, null);
+  }
+
+  @Override
+  public void purgePrivateData(final String collection, final String key) {
+    roundTrip(PeerRequest.PURGE_PRIVATE_DATA);
+    write(collection, key, null);
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getPrivateDataByRange(
+      final String collection, final String startKey, final String endKey) {
+    CompositeKey.validateSimpleKeys(startKey, endKey);
+    return scan(collection, rangeStart(startKey), rangeEnd(endKey));
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(
+      final String collection, final String compositeKey) {
+    final String prefix = normalizePartialKey(compositeKey);
+    return scan(collection, prefix, prefix + MAX_UNICODE_RUNE);
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(
+      final String collection, final CompositeKey compositeKey) {
+    return getPrivateDataByPartialCompositeKey(collection, compositeKey.toString());
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getPrivateDataByPartialCompositeKey(
+      final String collection, final String objectType, final String... attributes) {
+    return getPrivateDataByPartialCompositeKey(
+        collection, createCompositeKey(objectType, attributes));
+  }
+
+  @Override
+  public QueryResultsIterator<KeyValue> getPrivateDataQueryResult(
+      final String collection, final String query) {
+    throw new UnsupportedOperationException("Rich queries are not supported");
+  }
+
+  @Override
+  public void setEvent(final String name, final byte[] payload) {
+    if (name == null || name.isBlank()) {
+      throw new IllegalArgumentException("event name can not be nil string");
+    }
+    event =
+        ChaincodeEvent.newBuilder()
+            .setChaincodeId(chaincodeName)
+            .setTxId(txId)
+            .setEventName(name)
+            .setPayload(payload == null ? ByteString.EMPTY : ByteString.copyFrom(payload))
+            .build();
+  }
+
+  @Override
+  public ChaincodeEvent getEvent() {
+    return event;
+  }
+
+  @Override
+  public SignedProposal getSignedProposal() {
+    throw new UnsupportedOperationException("Signed proposals are not simulated");
+  }
+
+  @Override
+  public Instant getTxTimestamp() {
+    return txTimestamp;
+  }
+
+  @Override
+  public byte[] getCreator() {
+    return creator.clone();
+  }
+
+  @Override
+  public Map<String, byte[]> getTransient() {
+    return transientData;
+  }
+
+  @Override
+  public byte[] getBinding() {
+    return new byte[0];
+  }
+
+  @Override
+  public String getMspId() {
+    return mspId;
+  }
+
+  private byte[] read(final String namespace, final String key) {
+    final Key qualifiedKey = new Key(namespace, key);
+    final VersionedValue committed = ledger.read(qualifiedKey);
+    readWriteSet.recordRead(qualifiedKey, committed == null ? null : committed.version());
+    return committed == null ? new byte[0] : committed.value().clone();
+  }
+
+  private void write(final String namespace, final String key, final byte[] value) {
+    // The peer treats an empty value as a deletion
+    final byte[] written = value == null || value.length == 0 ? null : value.clone();
+    readWriteSet.recordWrite(new Key(namespace, key), written);
+  }
+
+  private QueryResultsIterator<KeyValue> scan(
+      final String namespace, final String startKey, final String endKey) {
+    roundTrip(PeerRequest.GET_STATE_BY_RANGE);
+    final RangeRead rangeRead = readWriteSet.recordRangeRead(namespace, startKey, endKey);
+    final List<VersionedEntry> entries =
+        ledger.scan(namespace, startKey, endKey, Integer.MAX_VALUE);
+    return new PagedIterator<>(
+        entries.stream().map(entry -> (KeyValue) new Entry(entry, rangeRead)).toList(), rangeRead);
+  }
+
+  /** Paginated queries are not re-validated at commit, so they are not recorded as range reads. */
+  private QueryResultsIteratorWithMetadata<KeyValue> scanPage(
+      final String startKey, final String endKey, final int pageSize, final String bookmark) {
+    if (pageSize <= 0) {
+      throw new IllegalArgumentException("Page size must be positive");
+    }
+    readWriteSet.recordPaginatedQuery();
+    roundTrip(PeerRequest.GET_STATE_BY_RANGE);
+    final String from = bookmark == null || bookmark.isEmpty() ? startKey : bookmark;
+    final List<VersionedEntry> entries =
+        ledger.scan(ReadWriteSet.WORLD_STATE, from, endKey, pageSize + 1);
+    final List<KeyValue> page =
+        entries.stream()
+            .limit(pageSize)
+            .map(entry -> (KeyValue) new Entry(entry, null))
+            .toList();
+    final QueryResponseMetadata metadata =
+        QueryResponseMetadata.newBuilder()
+            .setFetchedRecordsCount(page.size())
+            .setBookmark(entries.size() > pageSize ? entries.get(pageSize).key() : "")
+            .build();
+    return new PagedIterator<>(page, null) {
+      @Override
+      public QueryResponseMetadata getMetadata() {
+        return metadata;
+      }
+    };
+  }
+
+  private void roundTrip(final PeerRequest request) {
+    roundTrips.incrementAndGet(request.ordinal());
+    final Duration latency = latencyModel.latencyOf(request);
+    if (latency.isZero() || latency.isNegative()) {
+      return;
+    }
+    final long deadline = System.nanoTime() + latency.toNanos();
+    long remaining;
+    while ((remaining = deadline - System.nanoTime()) > 0) {
+      LockSupport.parkNanos(remaining);
+    }
+  }
+
+  // Like the shim, take a string without the composite key namespace as an object type
+  private static String normalizePartialKey(final String compositeKey) {
+    return compositeKey.startsWith(CompositeKey.NAMESPACE)
+        ? compositeKey
+        : new CompositeKey(compositeKey).toString();
+  }
+
+  private static String rangeStart(final String startKey) {
+    return startKey == null || startKey.isEmpty() ? UNSPECIFIED_START_KEY : startKey;
+  }
+
+  private static String rangeEnd(final String endKey) {
+    return endKey == null || endKey.isEmpty() ? null : endKey;
+  }
+
+  private static byte[] sha256(final byte[] value) {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(value);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  private static byte[] defaultCreator(final String mspId) {
+    return SerializedIdentity.newBuilder()
+        .setMspid(mspId)
+        .setIdBytes(ByteString.copyFrom(DEFAULT_CERTIFICATE))
+        .build()
+        .toByteArray();
+  }
+
+  private static byte[] loadDefaultCertificate() {
+    try (InputStream certificate =
+        InMemoryChaincodeStub.class.getResourceAsStream("client-cert.pem")) {
+      if (certificate == null) {
+        throw new IllegalStateException("Missing bundled client certificate");
+      }
+      return certificate.readAllBytes();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Iterator over results the peer returns in pages: fetching each page after the first one is a
+   * {@link PeerRequest#QUERY_STATE_NEXT} round-trip, closing it a {@link
+   * PeerRequest#QUERY_STATE_CLOSE} one. The shim has unrelated interfaces for plain and paginated
+   * results, so it implements both.
+   */
+  private class PagedIterator<T>
+      implements QueryResultsIterator<T>, QueryResultsIteratorWithMetadata<T> {
+
+    private final List<T> results;
+
+    private final RangeRead rangeRead;
+
+    PagedIterator(final List<T> results, final RangeRead rangeRead) {
+      this.results = results;
+      this.rangeRead = rangeRead;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+      return new Iterator<>() {
+        private int position;
+
+        @Override
+        public boolean hasNext() {
+          if (position < results.size()) {
+            return true;
+          }
+          if (rangeRead != null) {
+            rangeRead.markExhausted();
+          }
+          return false;
+        }
+
+        @Override
+        public T next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          if (position > 0 && position % QUERY_PAGE_SIZE == 0) {
+            roundTrip(PeerRequest.QUERY_STATE_NEXT);
+          }
+          final T result = results.get(position++);
+          if (result instanceof Entry entry) {
+            entry.recordRead();
+          }
+          return result;
+        }
+      };
+    }
+
+    @Override
+    public QueryResponseMetadata getMetadata() {
+      throw new UnsupportedOperationException("Only paginated queries have metadata");
+    }
+
+    @Override
+    public void close() {
+      roundTrip(PeerRequest.QUERY_STATE_CLOSE);
+    }
+  }
+
+  private record Entry(VersionedEntry entry, RangeRead rangeRead) implements KeyValue {
+
+    void recordRead() {
+      if (rangeRead != null) {
+        rangeRead.add(entry.key(), entry.value().version());
+      }
+    }
+
+    @Override
+    public String getKey() {
+      return entry.key();
+    }
+
+    @Override
+    public byte[] getValue() {
+      return entry.value().value().clone();
+    }
+
+    @Override
+    public String getStringValue() {
+      return new String(entry.value().value(), StandardCharsets.UTF_8);
+    }
+  }
+
+  /** Builder for a transaction; see {@link InMemoryLedger#newTransaction()}. */
+  public static final class Builder {
+
+    private final InMemoryLedger ledger;
+
+    private String txId;
+
+    private String channelId = "mychannel";
+
+    private String chaincodeName = "hypernate";
+
+    private String mspId = DEFAULT_MSP_ID;
+
+    private List<byte[]> args = List.of();
+
+    private byte[] creator;
+
+    private Map<String, byte[]> transientData = Map.of();
+
+    private Instant txTimestamp;
+
+    private LatencyModel latencyModel = LatencyModel.none();
+
+    private ChaincodeInvocationHandler invocationHandler =
+        (name, arguments, channel) -> {
+          throw new UnsupportedOperationException("No chaincode invocation handler configured");
+        };
+
+    Builder(final InMemoryLedger ledger, final String txId) {
+      this.ledger = ledger;
+      this.txId = txId;
+    }
+
+    public Builder txId(final String txId) {
+      this.txId = txId;
+      return this;
+    }
+
+    public Builder channelId(final String channelId) {
+      this.channelId = channelId;
+      return this;
+    }
+
+    /** Name of the chaincode, reported in {@link ChaincodeStub#getEvent() events}. */
+    public Builder chaincodeName(final String chaincodeName) {
+      this.chaincodeName = chaincodeName;
+      return this;
+    }
+
+    /** Function name and parameters of the invocation. */
+    public Builder args(final String function, final String... parameters) {
+      final List<byte[]> arguments = new ArrayList<>(parameters.length + 1);
+      arguments.add(function.getBytes(StandardCharsets.UTF_8));
+      for (final String parameter : parameters) {
+        arguments.add(parameter.getBytes(StandardCharsets.UTF_8));
+      }
+      this.args = arguments;
+      return this;
+    }
+
+    /**
+     * MSP ID of the peer and, unless {@link #creator(byte[])} is set, of the creator identity.
+     *
+     * <p>The default creator is a serialized identity with a bundled self-signed client
+     * certificate, so that the contract API can build its client identity from it.
+     */
+    public Builder mspId(final String mspId) {
+      this.mspId = mspId;
+      return this;
+    }
+
+    /** Serialized identity of the submitter. */
+    public Builder creator(final byte[] creator) {
+      this.creator = creator.clone();
+      return this;
+    }
+
+    public Builder transientData(final Map<String, byte[]> transientData) {
+      this.transientData = transientData;
+      return this;
+    }
+
+    /** Timestamp of the transaction; defaults to the time of {@link #build()}. */
+    public Builder txTimestamp(final Instant txTimestamp) {
+      this.txTimestamp = txTimestamp;
+      return this;
+    }
+
+    public Builder latency(final LatencyModel latencyModel) {
+      this.latencyModel = latencyModel;
+      return this;
+    }
+
+    public Builder invocationHandler(final ChaincodeInvocationHandler invocationHandler) {
+      this.invocationHandler = invocationHandler;
+      return this;
+    }
+
+    public InMemoryChaincodeStub build() {
+      return new InMemoryChaincodeStub(this);
+    }
+  }
+}
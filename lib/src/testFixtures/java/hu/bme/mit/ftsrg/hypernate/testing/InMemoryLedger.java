@@ -0,0 +1,306 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.testing;
+
+import hu.bme.mit.ftsrg.hypernate.registry.KeyRange;
+import hu.bme.mit.ftsrg.hypernate.testing.ReadWriteSet.Key;
+import hu.bme.mit.ftsrg.hypernate.testing.ReadWriteSet.RangeRead;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.hyperledger.fabric.shim.ledger.KeyModification;
+
+/**
+ * In-memory, versioned key space standing in for a peer's ledger.
+ *
+ * <p>Transactions are simulated on stubs obtained from {@link #newTransaction()}, then ordered
+ * into a block with {@link #commit(List)}. Committing validates the transactions one after the
+ * other like Fabric's MVCC validation does: a transaction is invalid if a key it read or a range it
+ * scanned was changed by an earlier block or an earlier valid transaction of the same block. Only
+ * the writes of valid transactions are applied.
+ *
+ * <p>Keys are ordered by code point, which matches the UTF-8 byte order of the peer's state
+ * database. The ledger is thread-safe, so transactions can be simulated concurrently.
+ */
+public final class InMemoryLedger {
+
+  /** Orders strings by code point rather than by UTF-16 code unit. */
+  static final Comparator<String> KEY_ORDER = KeyRange.KEY_ORDER;
+
+  private static final String GENESIS_TX_ID = "genesis";
+
+  private final Map<String, NavigableMap<String, VersionedValue>> namespaces =
+      new ConcurrentHashMap<>();
+
+  private final Map<Key, List<KeyModification>> history = new HashMap<>();
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final AtomicLong txCounter = new AtomicLong();
+
+  private long blockNum;
+
+  private long genesisTxNum;
+
+  /** Sets a world state key in the genesis block, bypassing validation. */
+  public void put(final String key, final byte[] value) {
+    putPrivateData(ReadWriteSet.WORLD_STATE, key, value);
+  }
+
+  /** Sets a private data key in the genesis block, bypassing validation. */
+  public void putPrivateData(final String collection, final String key, final byte[] value) {
+    lock.writeLock().lock();
+    try {
+      if (blockNum > 0) {
+        throw new IllegalStateException("The genesis block has already been committed");
+      }
+      apply(
+          new Key(collection, key),
+          value.clone(),
+          new Version(0, genesisTxNum++),
+          GENESIS_TX_ID,
+          Instant.EPOCH);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Returns the committed value of a world state key, or {@code null} if it does not exist. */
+  public byte[] get(final String key) {
+    final VersionedValue value = read(new Key(ReadWriteSet.WORLD_STATE, key));
+    return value == null ? null : value.value().clone();
+  }
+
+  /** Returns the committed version of a world state key, or {@code null} if it does not exist. */
+  public Version getVersion(final String key) {
+    final VersionedValue value = read(new Key(ReadWriteSet.WORLD_STATE, key));
+    return value == null ? null : value.version();
+  }
+
+  /** Number of keys in the world state. */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return namespace(ReadWriteSet.WORLD_STATE).size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Number of the last committed block; {@code 0} until the first block is committed. */
+  public long getBlockNumber() {
+    lock.readLock().lock();
+    try {
+      return blockNum;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Starts configuring a transaction to simulate against the current state of the ledger. */
+  public InMemoryChaincodeStub.Builder newTransaction() {
+    return new InMemoryChaincodeStub.Builder(this, "tx" + txCounter.incrementAndGet());
+  }
+
+  /** Commits a single-transaction block. */
+  public ValidationCode commit(final InMemoryChaincodeStub transaction) {
+    return commit(List.of(transaction)).get(0);
+  }
+
+  /**
+   * Validates the transactions in order as a single block and applies the writes of the valid ones.
+   *
+   * @return the validation code of each transaction, in the order of the transactions
+   */
+  public List<ValidationCode> commit(final List<InMemoryChaincodeStub> transactions) {
+    lock.writeLock().lock();
+    try {
+      blockNum++;
+      final List<ValidationCode> codes = new ArrayList<>(transactions.size());
+      for (int txNum = 0; txNum < transactions.size(); txNum++) {
+        final InMemoryChaincodeStub transaction = transactions.get(txNum);
+        if (transaction.getLedger() != this) {
+          throw new IllegalArgumentException(
+              "Transaction " + transaction.getTxId() + " was simulated on another ledger");
+        }
+        transaction.markCommitted();
+
+        final ReadWriteSet readWriteSet = transaction.getReadWriteSet();
+        final ValidationCode code = validate(readWriteSet);
+        if (code == ValidationCode.VALID) {
+          final Version version = new Version(blockNum, txNum);
+          readWriteSet
+              .getWrites()
+              .forEach(
+                  (key, value) ->
+                      apply(
+                          key,
+                          value,
+                          version,
+                          transaction.getTxId(),
+                          transaction.getTxTimestamp()));
+        }
+        codes.add(code);
+      }
+      return codes;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  VersionedValue read(final Key key) {
+    lock.readLock().lock();
+    try {
+      return namespace(key.namespace()).get(key.key());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns a snapshot of the committed entries of a namespace in {@code [startKey, endKey)}.
+   *
+   * @param endKey the exclusive end, or {@code null} for an unbounded range
+   * @param limit the maximum number of entries to return
+   */
+  List<VersionedEntry> scan(
+      final String namespace, final String startKey, final String endKey, final int limit) {
+    lock.readLock().lock();
+    try {
+      final List<VersionedEntry> entries = new ArrayList<>();
+      final Iterator<Map.Entry<String, VersionedValue>> iterator =
+          range(namespace(namespace), startKey, endKey).entrySet().iterator();
+      while (entries.size() < limit && iterator.hasNext()) {
+        final Map.Entry<String, VersionedValue> entry = iterator.next();
+        entries.add(new VersionedEntry(entry.getKey(), entry.getValue()));
+      }
+      return entries;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** The modifications of a key, newest first, as Fabric returns them. */
+  List<KeyModification> history(final Key key) {
+    lock.readLock().lock();
+    try {
+      final List<KeyModification> modifications =
+          new ArrayList<>(history.getOrDefault(key, List.of()));
+      Collections.reverse(modifications);
+      return modifications;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private ValidationCode validate(final ReadWriteSet readWriteSet) {
+    for (final Map.Entry<Key, Version> read : readWriteSet.getReads().entrySet()) {
+      final Key key = read.getKey();
+      final VersionedValue committed = namespace(key.namespace()).get(key.key());
+      if (!Objects.equals(committed == null ? null : committed.version(), read.getValue())) {
+        return ValidationCode.MVCC_READ_CONFLICT;
+      }
+    }
+
+    for (final RangeRead rangeRead : readWriteSet.getRangeReads()) {
+      final Iterator<Map.Entry<String, VersionedValue>> committed =
+          range(
+                  namespace(rangeRead.getNamespace()),
+                  rangeRead.getStartKey(),
+                  rangeRead.getEndKey())
+              .entrySet()
+              .iterator();
+      for (final Map.Entry<String, Version> result : rangeRead.getResults().entrySet()) {
+        if (!committed.hasNext()) {
+          return ValidationCode.PHANTOM_READ_CONFLICT;
+        }
+        final Map.Entry<String, VersionedValue> entry = committed.next();
+        if (!entry.getKey().equals(result.getKey())
+            || !entry.getValue().version().equals(result.getValue())) {
+          return ValidationCode.PHANTOM_READ_CONFLICT;
+        }
+      }
+      if (rangeRead.isExhausted() && committed.hasNext()) {
+        return ValidationCode.PHANTOM_READ_CONFLICT;
+      }
+    }
+
+    return ValidationCode.VALID;
+  }
+
+  private void apply(
+      final Key key,
+      final byte[] value,
+      final Version version,
+      final String txId,
+      final Instant timestamp) {
+    if (value == null) {
+      namespace(key.namespace()).remove(key.key());
+    } else {
+      namespace(key.namespace()).put(key.key(), new VersionedValue(value, version));
+    }
+    history
+        .computeIfAbsent(key, k -> new ArrayList<>())
+        .add(new HistoryEntry(txId, value, timestamp));
+  }
+
+  private NavigableMap<String, VersionedValue> namespace(final String namespace) {
+    return namespaces.computeIfAbsent(namespace, ns -> new TreeMap<>(KEY_ORDER));
+  }
+
+  private static NavigableMap<String, VersionedValue> range(
+      final NavigableMap<String, VersionedValue> namespace,
+      final String startKey,
+      final String endKey) {
+    return endKey == null
+        ? namespace.tailMap(startKey, true)
+        : namespace.subMap(startKey, true, endKey, false);
+  }
+
+  /** Committed value of a key and the version that wrote it. */
+  record VersionedValue(byte[] value, Version version) {}
+
+  /** Committed key-value pair returned by a scan. */
+  record VersionedEntry(String key, VersionedValue value) {}
+
+  private record HistoryEntry(String txId, byte[] value, Instant timestamp)
+      implements KeyModification {
+
+    @Override
+    public String getTxId() {
+      return txId;
+    }
+
+    @Override
+    public byte[] getValue() {
+      return value == null ? new byte[0] : value.clone();
+    }
+
+    @Override
+    public String getStringValue() {
+      return new String(getValue(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Instant getTimestamp() {
+      return timestamp;
+    }
+
+    @Override
+    public boolean isDeleted() {
+      return value == null;
+    }
+  }
+}
@@ -0,0 +1,42 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.testing;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/** Distribution of the key indices accessed by a {@link LoadHarness} workload. */
+@FunctionalInterface
+public interface KeyDistribution {
+
+  /** Draws a key index from {@code [0, keyCount)}. */
+  int sample(RandomGenerator random);
+
+  /** Every one of {@code keyCount} keys is equally likely. */
+  static KeyDistribution uniform(final int keyCount) {
+    if (keyCount <= 0) {
+      throw new IllegalArgumentException("Key count must be positive");
+    }
+    return random -> random.nextInt(keyCount);
+  }
+
+  /**
+   * Key {@code k} is accessed with a probability proportional to {@code 1 / (k + 1)^exponent}, so
+   * low indices are hot spots; an exponent around {@code 1} models typical skewed workloads.
+   */
+  static KeyDistribution zipfian(final int keyCount, final double exponent) {
+    if (keyCount <= 0) {
+      throw new IllegalArgumentException("Key count must be positive");
+    }
+    final double[] cumulative = new double[keyCount];
+    double sum = 0;
+    for (int k = 0; k < keyCount; k++) {
+      sum += 1 / Math.pow(k + 1, exponent);
+      cumulative[k] = sum;
+    }
+    final double total = sum;
+    return random -> {
+      final int index = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+      return Math.min(index >= 0 ? index : -index - 1, keyCount - 1);
+    };
+  }
+}
@@ -0,0 +1,43 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.testing;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/** Latency injected into every {@link PeerRequest} to model the chaincode-peer round-trip. */
+@FunctionalInterface
+public interface LatencyModel {
+
+  Duration latencyOf(PeerRequest request);
+
+  /** No injected latency; only round-trips are counted. */
+  static LatencyModel none() {
+    return request -> Duration.ZERO;
+  }
+
+  /** The same latency for every request. */
+  static LatencyModel fixed(final Duration latency) {
+    return request -> latency;
+  }
+
+  /** A latency drawn uniformly from {@code [min, max]} for every request. */
+  static LatencyModel uniform(final Duration min, final Duration max) {
+    final long minNanos = min.toNanos();
+    final long maxNanos = max.toNanos();
+    if (minNanos > maxNanos) {
+      throw new IllegalArgumentException("Minimum latency must not exceed the maximum");
+    }
+    return request ->
+        Duration.ofNanos(ThreadLocalRandom.current().nextLong(minNanos, maxNanos + 1));
+  }
+
+  /** Per-request latencies, falling back to {@code otherwise} for requests not in the map. */
+  static LatencyModel perRequest(
+      final Map<PeerRequest, Duration> latencies, final Duration otherwise) {
+    final Map<PeerRequest, Duration> copy = new EnumMap<>(PeerRequest.class);
+    copy.putAll(latencies);
+    return request -> copy.getOrDefault(request, otherwise);
+  }
+}
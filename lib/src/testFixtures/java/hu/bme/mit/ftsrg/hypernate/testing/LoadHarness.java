@@ -0,0 +1,370 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.testing;
+
+import hu.bme.mit.ftsrg.hypernate.context.HypernateContext;
+import hu.bme.mit.ftsrg.hypernate.contract.HypernateContract;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.hyperledger.fabric.contract.Context;
+
+/**
+ * Load generator running a {@link HypernateContract} against an {@link InMemoryLedger}.
+ *
+ * <p>Transactions drawn from a weighted mix are endorsed concurrently on a thread pool, each on its
+ * own {@link InMemoryChaincodeStub} and through the contract's own context creation and
+ * before/after-transaction hooks. Endorsed transactions are ordered into blocks in the order they
+ * finish, cut by size or timeout like Fabric's orderer, and committed with MVCC validation. The
+ * resulting {@link LoadReport} gives the committed throughput, invalidation rate, latency
+ * percentiles and round-trips per transaction.
+ *
+ * <p>Endorsement is not throttled by commits, so invalidation rates are those of a saturated
+ * channel. Runs are reproducible in terms of the transactions drawn (see {@link
+ * Builder#seed(long)}), but not in terms of their interleaving.
+ *
+ * @param <C> the type of the contract
+ */
+public final class LoadHarness<C extends HypernateContract> {
+
+  private final C contract;
+
+  private final InMemoryLedger ledger;
+
+  private final List<WeightedTransaction<C>> mix;
+
+  private final double[] cumulativeWeights;
+
+  private final int transactions;
+
+  private final int concurrency;
+
+  private final ExecutorService executor;
+
+  private final int blockSize;
+
+  private final Duration blockTimeout;
+
+  private final KeyDistribution keys;
+
+  private final LatencyModel latency;
+
+  private final long seed;
+
+  private LoadHarness(final Builder<C> builder) {
+    this.contract = builder.contract;
+    this.ledger = builder.ledger;
+    this.mix = List.copyOf(builder.mix);
+    this.cumulativeWeights = new double[mix.size()];
+    double sum = 0;
+    for (int i = 0; i < mix.size(); i++) {
+      sum += mix.get(i).weight();
+      cumulativeWeights[i] = sum;
+    }
+    this.transactions = builder.transactions;
+    this.concurrency = builder.concurrency;
+    this.executor = builder.executor;
+    this.blockSize = builder.blockSize;
+    this.blockTimeout = builder.blockTimeout;
+    this.keys = builder.keys;
+    this.latency = builder.latency;
+    this.seed = builder.seed;
+  }
+
+  public static <C extends HypernateContract> Builder<C> builder(
+      final C contract, final InMemoryLedger ledger) {
+    return new Builder<>(contract, ledger);
+  }
+
+  /** Runs the configured number of transactions and waits for all of them to be committed. */
+  public LoadReport run() throws InterruptedException {
+    final BlockingQueue<Endorsement> endorsed = new LinkedBlockingQueue<>();
+    final ExecutorService pool =
+        executor != null ? executor : Executors.newFixedThreadPool(concurrency);
+    final SplittableRandom random = new SplittableRandom(seed);
+    final long start = System.nanoTime();
+    try {
+      for (int i = 0; i < transactions; i++) {
+        final SplittableRandom transactionRandom = random.split();
+        pool.execute(() -> endorsed.add(endorse(transactionRandom)));
+      }
+      return order(endorsed, start);
+    } finally {
+      if (executor == null) {
+        pool.shutdownNow();
+      }
+    }
+  }
+
+  private Endorsement endorse(final SplittableRandom random) {
+    final long started = System.nanoTime();
+    InMemoryChaincodeStub stub = null;
+    try {
+      final WeightedTransaction<C> transaction = pick(random);
+      final int keyIndex = keys.sample(random);
+      stub =
+          ledger
+              .newTransaction()
+              .args(transaction.name(), Integer.toString(keyIndex))
+              .latency(latency)
+              .build();
+      final Context ctx = contract.createContext(stub);
+      if (!(ctx instanceof HypernateContext hypCtx)) {
+        throw new IllegalStateException("The contract must create a HypernateContext");
+      }
+      contract.beforeTransaction(ctx);
+      final Object result = transaction.function().invoke(contract, hypCtx, keyIndex);
+      contract.afterTransaction(ctx, result);
+      return new Endorsement(stub, started, false);
+    } catch (Throwable t) {
+      // Every endorsement must reach the orderer, which otherwise waits for it forever
+      return new Endorsement(stub, started, true);
+    }
+  }
+
+  private WeightedTransaction<C> pick(final SplittableRandom random) {
+    final double point = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+    final int index = Arrays.binarySearch(cumulativeWeights, point);
+    return mix.get(Math.min(index >= 0 ? index : -index - 1, mix.size() - 1));
+  }
+
+  private LoadReport order(final BlockingQueue<Endorsement> endorsed, final long start)
+      throws InterruptedException {
+    final Statistics statistics = new Statistics();
+    final List<Endorsement> block = new ArrayList<>(blockSize);
+    long received = 0;
+    long blockDeadline = 0;
+    while (received < transactions || !block.isEmpty()) {
+      Endorsement endorsement = null;
+      if (received < transactions) {
+        if (block.isEmpty()) {
+          endorsement = endorsed.take();
+        } else {
+          endorsement =
+              endorsed.poll(blockDeadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+      }
+
+      if (endorsement != null) {
+        received++;
+        if (endorsement.failed()) {
+          statistics.endorsementFailures++;
+        } else {
+          if (block.isEmpty()) {
+            blockDeadline = System.nanoTime() + blockTimeout.toNanos();
+          }
+          block.add(endorsement);
+        }
+        if (block.size() < blockSize && received < transactions) {
+          continue;
+        }
+      }
+
+      if (!block.isEmpty()) {
+        commit(block, statistics);
+        block.clear();
+      }
+    }
+    return statistics.report(System.nanoTime() - start);
+  }
+
+  private void commit(final List<Endorsement> block, final Statistics statistics) {
+    final List<ValidationCode> codes =
+        ledger.commit(block.stream().map(Endorsement::stub).toList());
+    final long committedAt = System.nanoTime();
+    for (int i = 0; i < block.size(); i++) {
+      statistics.record(block.get(i), codes.get(i), committedAt);
+    }
+    statistics.blocks++;
+  }
+
+  private record WeightedTransaction<C extends HypernateContract>(
+      String name, double weight, TransactionFunction<C> function) {}
+
+  private record Endorsement(InMemoryChaincodeStub stub, long started, boolean failed) {}
+
+  private final class Statistics {
+
+    private final Map<ValidationCode, Long> validationCodes = new EnumMap<>(ValidationCode.class);
+
+    private final long[] roundTripsByRequest = new long[PeerRequest.values().length];
+
+    private final long[] latencies = new long[transactions];
+
+    private int ordered;
+
+    private long endorsementFailures;
+
+    private long blocks;
+
+    private long roundTrips;
+
+    void record(final Endorsement endorsement, final ValidationCode code, final long committedAt) {
+      validationCodes.merge(code, 1L, Long::sum);
+      latencies[ordered++] = committedAt - endorsement.started();
+      roundTrips += endorsement.stub().getRoundTrips();
+      for (final PeerRequest request : PeerRequest.values()) {
+        roundTripsByRequest[request.ordinal()] += endorsement.stub().getRoundTrips(request);
+      }
+    }
+
+    LoadReport report(final long elapsedNanos) {
+      final long[] sorted = Arrays.copyOf(latencies, ordered);
+      Arrays.sort(sorted);
+      final Map<PeerRequest, Double> meanByRequest = new EnumMap<>(PeerRequest.class);
+      for (final PeerRequest request : PeerRequest.values()) {
+        if (roundTripsByRequest[request.ordinal()] > 0) {
+          meanByRequest.put(request, (double) roundTripsByRequest[request.ordinal()] / ordered);
+        }
+      }
+      return new LoadReport(
+          transactions,
+          endorsementFailures,
+          validationCodes,
+          blocks,
+          Duration.ofNanos(elapsedNanos),
+          percentile(sorted, 0.50),
+          percentile(sorted, 0.95),
+          percentile(sorted, 0.99),
+          percentile(sorted, 1.00),
+          ordered == 0 ? 0 : (double) roundTrips / ordered,
+          meanByRequest);
+    }
+
+    private static Duration percentile(final long[] sorted, final double percentile) {
+      if (sorted.length == 0) {
+        return Duration.ZERO;
+      }
+      final int rank = (int) Math.ceil(percentile * sorted.length);
+      return Duration.ofNanos(sorted[Math.max(rank, 1) - 1]);
+    }
+  }
+
+  /**
+   * Builder for a {@link LoadHarness}.
+   *
+   * <p>The defaults mirror Fabric's test network: blocks of at most 10 transactions, cut after 2
+   * seconds.
+   *
+   * @param <C> the type of the contract
+   */
+  public static final class Builder<C extends HypernateContract> {
+
+    private final C contract;
+
+    private final InMemoryLedger ledger;
+
+    private final List<WeightedTransaction<C>> mix = new ArrayList<>();
+
+    private int transactions = 1000;
+
+    private int concurrency = Runtime.getRuntime().availableProcessors();
+
+    private ExecutorService executor;
+
+    private int blockSize = 10;
+
+    private Duration blockTimeout = Duration.ofSeconds(2);
+
+    private KeyDistribution keys = KeyDistribution.uniform(1000);
+
+    private LatencyModel latency = LatencyModel.none();
+
+    private long seed;
+
+    Builder(final C contract, final InMemoryLedger ledger) {
+      this.contract = contract;
+      this.ledger = ledger;
+    }
+
+    /** Adds a transaction to the mix with a weight of one. */
+    public Builder<C> transaction(final String name, final TransactionFunction<C> function) {
+      return transaction(name, 1, function);
+    }
+
+    /**
+     * Adds a transaction to the mix.
+     *
+     * @param name the function name reported by the stub
+     * @param weight the relative frequency of the transaction in the mix
+     * @param function the transaction
+     */
+    public Builder<C> transaction(
+        final String name, final double weight, final TransactionFunction<C> function) {
+      if (weight <= 0) {
+        throw new IllegalArgumentException("Weight must be positive");
+      }
+      mix.add(new WeightedTransaction<>(name, weight, function));
+      return this;
+    }
+
+    /** Total number of transactions to run. */
+    public Builder<C> transactions(final int transactions) {
+      this.transactions = transactions;
+      return this;
+    }
+
+    /** Number of threads endorsing transactions concurrently. */
+    public Builder<C> concurrency(final int concurrency) {
+      this.concurrency = concurrency;
+      return this;
+    }
+
+    /**
+     * Executor endorsing the transactions instead of a fixed pool of {@link #concurrency(int)}
+     * threads, e.g., a virtual thread executor on newer JDKs. It is not shut down by the harness.
+     */
+    public Builder<C> executor(final ExecutorService executor) {
+      this.executor = executor;
+      return this;
+    }
+
+    /** Maximum number of transactions per block. */
+    public Builder<C> blockSize(final int blockSize) {
+      this.blockSize = blockSize;
+      return this;
+    }
+
+    /** Time after which a block is cut even if it is not full. */
+    public Builder<C> blockTimeout(final Duration blockTimeout) {
+      this.blockTimeout = blockTimeout;
+      return this;
+    }
+
+    public Builder<C> keys(final KeyDistribution keys) {
+      this.keys = keys;
+      return this;
+    }
+
+    /** Latency injected into every peer request of the endorsements. */
+    public Builder<C> latency(final LatencyModel latency) {
+      this.latency = latency;
+      return this;
+    }
+
+    /** Seed of the random choice of transactions and keys. */
+    public Builder<C> seed(final long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    public LoadHarness<C> build() {
+      if (mix.isEmpty()) {
+        throw new IllegalStateException("No transactions have been added");
+      }
+      if (transactions <= 0 || concurrency <= 0 || blockSize <= 0) {
+        throw new IllegalStateException(
+            "Transaction count, concurrency and block size must be positive");
+      }
+      return new LoadHarness<>(this);
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.testing;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Outcome of a {@link LoadHarness} run.
+ *
+ * <p>Latencies are measured from the start of the endorsement to the commit of the block containing
+ * the transaction, for valid and invalidated transactions alike.
+ *
+ * @param submitted the number of transactions started
+ * @param endorsementFailures the number of transactions that threw during endorsement
+ * @param validationCodes the number of ordered transactions per validation outcome
+ * @param blocks the number of blocks committed
+ * @param elapsed the wall-clock duration of the run
+ * @param latencyP50 the median latency
+ * @param latencyP95 the 95th percentile latency
+ * @param latencyP99 the 99th percentile latency
+ * @param latencyMax the maximum latency
+ * @param meanRoundTrips the mean number of peer requests per ordered transaction
+ * @param meanRoundTripsByRequest the mean number of peer requests per ordered transaction by type
+ */
+public record LoadReport(
+    long submitted,
+    long endorsementFailures,
+    Map<ValidationCode, Long> validationCodes,
+    long blocks,
+    Duration elapsed,
+    Duration latencyP50,
+    Duration latencyP95,
+    Duration latencyP99,
+    Duration latencyMax,
+    double meanRoundTrips,
+    Map<PeerRequest, Double> meanRoundTripsByRequest) {
+
+  public LoadReport {
+    validationCodes = Map.copyOf(validationCodes);
+    meanRoundTripsByRequest = Map.copyOf(meanRoundTripsByRequest);
+  }
+
+  /** Number of valid transactions. */
+  public long committed() {
+    return validationCodes.getOrDefault(ValidationCode.VALID, 0L);
+  }
+
+  /** Number of ordered transactions invalidated by MVCC validation. */
+  public long invalidated() {
+    return validationCodes.entrySet().stream()
+        .filter(e -> e.getKey() != ValidationCode.VALID)
+        .mapToLong(Map.Entry::getValue)
+        .sum();
+  }
+
+  /** Valid transactions per second of the run. */
+  public double committedTps() {
+    return elapsed.isZero() ? 0 : committed() * 1e9 / elapsed.toNanos();
+  }
+
+  /** Ratio of invalidated transactions among the ordered ones. */
+  public double invalidationRate() {
+    final long ordered = committed() + invalidated();
+    return ordered == 0 ? 0 : (double) invalidated() / ordered;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%d submitted, %d endorsement failures, %d committed in %d blocks (%.1f TPS), "
+            + "%.2f%% invalidated %s, latency p50=%dms p95=%dms p99=%dms max=%dms, "
+            + "%.2f round-trips per transaction %s",
+        submitted,
+        endorsementFailures,
+        committed(),
+        blocks,
+        committedTps(),
+        invalidationRate() * 100,
+        validationCodes,
+        latencyP50.toMillis(),
+        latencyP95.toMillis(),
+        latencyP99.toMillis(),
+        latencyMax.toMillis(),
+        meanRoundTrips,
+        meanRoundTripsByRequest);
+  }
+}
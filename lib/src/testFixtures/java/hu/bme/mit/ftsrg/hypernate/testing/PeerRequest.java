@@ -0,0 +1,21 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.testing;
+
+/**
+ * Request a chaincode sends to its peer, named after the shim's message types.
+ *
+ * <p>Each request is a synchronous round-trip in Fabric; {@link InMemoryChaincodeStub} counts them
+ * and delays each according to its {@link LatencyModel}.
+ */
+public enum PeerRequest {
+  GET_STATE,
+  PUT_STATE,
+  DEL_STATE,
+  GET_STATE_BY_RANGE,
+  QUERY_STATE_NEXT,
+  QUERY_STATE_CLOSE,
+  GET_HISTORY_FOR_KEY,
+  GET_PRIVATE_DATA_HASH,
+  PURGE_PRIVATE_DATA,
+  INVOKE_CHAINCODE
+}
@@ -0,0 +1,138 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.testing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read and write set captured while simulating a transaction on an {@link InMemoryChaincodeStub}.
+ *
+ * <p>Reads record the committed version observed ({@code null} if the key did not exist), writes
+ * record the new value ({@code null} for deletions). Like in Fabric, a transaction does not see its
+ * own writes, and a transaction that used paginated queries must not write.
+ */
+public final class ReadWriteSet {
+
+  /** Namespace of the world state; private data collections use their name as the namespace. */
+  public static final String WORLD_STATE = "";
+
+  private final Map<Key, Version> reads = new LinkedHashMap<>();
+
+  private final Map<Key, byte[]> writes = new LinkedHashMap<>();
+
+  private final List<RangeRead> rangeReads = new ArrayList<>();
+
+  private boolean paginated;
+
+  synchronized void recordRead(final Key key, final Version version) {
+    if (!reads.containsKey(key)) {
+      reads.put(key, version);
+    }
+  }
+
+  synchronized void recordWrite(final Key key, final byte[] value) {
+    if (paginated) {
+      throw new IllegalStateException(
+          "Transaction has already performed queries with pagination; writes are not allowed");
+    }
+    writes.put(key, value);
+  }
+
+  synchronized RangeRead recordRangeRead(
+      final String namespace, final String startKey, final String endKey) {
+    final RangeRead rangeRead = new RangeRead(namespace, startKey, endKey);
+    rangeReads.add(rangeRead);
+    return rangeRead;
+  }
+
+  synchronized void recordPaginatedQuery() {
+    if (!writes.isEmpty()) {
+      throw new IllegalStateException(
+          "Transaction has already performed writes; paginated queries are not supported");
+    }
+    paginated = true;
+  }
+
+  /** Versions of the keys read, in the order of the first read. */
+  public synchronized Map<Key, Version> getReads() {
+    return Collections.unmodifiableMap(new LinkedHashMap<>(reads));
+  }
+
+  /** Values written, in the order of the first write; deletions map to {@code null}. */
+  public synchronized Map<Key, byte[]> getWrites() {
+    return Collections.unmodifiableMap(new LinkedHashMap<>(writes));
+  }
+
+  public synchronized List<RangeRead> getRangeReads() {
+    return List.copyOf(rangeReads);
+  }
+
+  public synchronized boolean isReadOnly() {
+    return writes.isEmpty();
+  }
+
+  /**
+   * Key qualified with its namespace.
+   *
+   * @param namespace {@link #WORLD_STATE} or the name of a private data collection
+   * @param key the key within the namespace
+   */
+  public record Key(String namespace, String key) {}
+
+  /**
+   * Range query and the results the transaction actually consumed from it.
+   *
+   * <p>If the iterator was not exhausted, only the consumed prefix of the range is validated.
+   */
+  public static final class RangeRead {
+
+    private final String namespace;
+
+    private final String startKey;
+
+    private final String endKey;
+
+    private final Map<String, Version> results = new LinkedHashMap<>();
+
+    private boolean exhausted;
+
+    private RangeRead(final String namespace, final String startKey, final String endKey) {
+      this.namespace = namespace;
+      this.startKey = startKey;
+      this.endKey = endKey;
+    }
+
+    synchronized void add(final String key, final Version version) {
+      results.put(key, version);
+    }
+
+    synchronized void markExhausted() {
+      exhausted = true;
+    }
+
+    public String getNamespace() {
+      return namespace;
+    }
+
+    public String getStartKey() {
+      return startKey;
+    }
+
+    /** Exclusive end of the range; {@code null} if the range is unbounded. */
+    public String getEndKey() {
+      return endKey;
+    }
+
+    /** Keys consumed from the range and their versions, in key order. */
+    public synchronized Map<String, Version> getResults() {
+      return Collections.unmodifiableMap(new LinkedHashMap<>(results));
+    }
+
+    public synchronized boolean isExhausted() {
+      return exhausted;
+    }
+  }
+}
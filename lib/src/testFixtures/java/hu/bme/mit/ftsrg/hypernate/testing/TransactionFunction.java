@@ -0,0 +1,24 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.testing;
+
+import hu.bme.mit.ftsrg.hypernate.context.HypernateContext;
+import hu.bme.mit.ftsrg.hypernate.contract.HypernateContract;
+
+/**
+ * Transaction of a {@link LoadHarness} workload, typically a call to a method of the contract.
+ *
+ * @param <C> the type of the contract
+ */
+@FunctionalInterface
+public interface TransactionFunction<C extends HypernateContract> {
+
+  /**
+   * Invokes the transaction.
+   *
+   * @param contract the contract under test
+   * @param ctx the context created by the contract for the transaction
+   * @param keyIndex the key index drawn from the harness' {@link KeyDistribution}
+   * @return the result of the transaction
+   */
+  Object invoke(C contract, HypernateContext ctx, int keyIndex) throws Exception;
+}
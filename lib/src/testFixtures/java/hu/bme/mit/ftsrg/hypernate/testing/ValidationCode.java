@@ -0,0 +1,12 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.testing;
+
+/** Outcome of validating a simulated transaction, named after Fabric's transaction codes. */
+public enum ValidationCode {
+  /** The transaction was valid and its writes were applied. */
+  VALID,
+  /** A key read by the transaction was changed since it was read. */
+  MVCC_READ_CONFLICT,
+  /** The results of a range query of the transaction were changed since it ran. */
+  PHANTOM_READ_CONFLICT
+}
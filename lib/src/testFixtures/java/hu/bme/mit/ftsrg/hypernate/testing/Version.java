@@ -0,0 +1,21 @@
+/* SPDX-License-Identifier: Apache-2.0 */
+package hu.bme.mit.ftsrg.hypernate.testing;
+
+import java.util.Comparator;
+
+/**
+ * Version of a committed key, i.e., the height of the transaction that last wrote it.
+ *
+ * @param blockNum the number of the block containing the transaction
+ * @param txNum the position of the transaction in the block
+ */
+public record Version(long blockNum, long txNum) implements Comparable<Version> {
+
+  private static final Comparator<Version> ORDER =
+      Comparator.comparingLong(Version::blockNum).thenComparingLong(Version::txNum);
+
+  @Override
+  public int compareTo(final Version other) {
+    return ORDER.compare(this, other);
+  }
+}
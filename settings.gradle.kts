@@ -1,2 +1,3 @@
 rootProject.name = "hypernate"
 include("lib")
+include("benchmarks")